@@ -0,0 +1,110 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.config;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.dbcp2.PoolableConnection;
+import org.apache.commons.pool2.impl.DefaultPooledObjectInfo;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.log4j.Logger;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * {@link BasicDataSource} that also exposes the statistics of its underlying
+ * connection pool (threads waiting for a connection, how long they waited, 
+ * etc.). All values are 0 until the pool has been created by the first
+ * request for a connection.
+ * <p>
+ * If abandoned connections are logged but not removed, connections held for
+ * longer than the abandoned timeout are logged here instead (once per 
+ * borrow), as the pool itself only logs connections when it closes them.
+ */
+public class MonitoredDataSource extends BasicDataSource {
+	private static final Logger logger = Logger.getLogger(MonitoredDataSource.class);
+	
+	// Borrows already reported, as "connection@borrowTime"
+	private final Set<String> reportedBorrows = new HashSet<>();
+	
+	@Scheduled(fixedDelay = 60000)
+	public synchronized void logLongHeldConnections() {
+		GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+		if(pool == null || !getLogAbandoned() || getRemoveAbandonedOnMaintenance() || getRemoveAbandonedOnBorrow()) {
+			return;
+		}
+		long cutoff = System.currentTimeMillis() - getRemoveAbandonedTimeout() * 1000L;
+		Set<String> stillHeld = new HashSet<>();
+		for(DefaultPooledObjectInfo info : pool.listAllObjects()) {
+			if(info.getLastReturnTime() >= info.getLastBorrowTime() || info.getLastBorrowTime() > cutoff) {
+				continue;
+			}
+			String borrow = info.getPooledObjectToString() + "@" + info.getLastBorrowTime();
+			stillHeld.add(borrow);
+			if(!reportedBorrows.contains(borrow)) {
+				logger.warn("Connection " + info.getPooledObjectToString() + " has been held since " 
+						+ info.getLastBorrowTimeFormatted() + "; it may have been abandoned");
+			}
+		}
+		reportedBorrows.retainAll(stillHeld);
+		reportedBorrows.addAll(stillHeld);
+	}
+	
+	public int getNumWaiters() {
+		GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+		return pool == null ? 0 : pool.getNumWaiters();
+	}
+	
+	public long getMeanBorrowWaitTimeMillis() {
+		GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+		return pool == null ? 0 : pool.getMeanBorrowWaitTimeMillis();
+	}
+	
+	public long getMaxBorrowWaitTimeMillis() {
+		GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+		return pool == null ? 0 : pool.getMaxBorrowWaitTimeMillis();
+	}
+	
+	public long getBorrowedCount() {
+		GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+		return pool == null ? 0 : pool.getBorrowedCount();
+	}
+	
+	public long getCreatedCount() {
+		GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+		return pool == null ? 0 : pool.getCreatedCount();
+	}
+	
+	public long getDestroyedCount() {
+		GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+		return pool == null ? 0 : pool.getDestroyedCount();
+	}
+	
+	public long getDestroyedByEvictorCount() {
+		GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+		return pool == null ? 0 : pool.getDestroyedByEvictorCount();
+	}
+}
@@ -27,7 +27,6 @@ package pasta.config;
 import java.io.IOException;
 import java.util.Properties;
 
-import org.apache.commons.dbcp2.BasicDataSource;
 import org.apache.log4j.Logger;
 import org.hibernate.SessionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -49,6 +48,8 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
 import pasta.scheduler.AssessmentJobExecutor;
+import pasta.scheduler.DispatchPolicy;
+import pasta.scheduler.UnitTestExecutor;
 import pasta.service.PASTAOptions;
 
 @Configuration
@@ -83,17 +84,44 @@ public class WebApplicationConfig {
 	}
 	
 	@Bean(name="dataSource", destroyMethod="close")
-	public BasicDataSource createBasicDataSource() {
+	public MonitoredDataSource createBasicDataSource() {
 		String jdbcDriverClassName = env.getProperty("jdbc.driverClassName");
 		String jdbcUrl = env.getProperty("jdbc.url");
 		String jdbcUsername = env.getProperty("jdbc.username");
 		String jdbcPassword = env.getProperty("jdbc.password");
 		
-		BasicDataSource ds = new BasicDataSource();
+		MonitoredDataSource ds = new MonitoredDataSource();
 		ds.setDriverClassName(jdbcDriverClassName);
 		ds.setUrl(jdbcUrl);
 		ds.setUsername(jdbcUsername);
 		ds.setPassword(jdbcPassword);
+		
+		// Pool sizing; web requests and execution threads share the pool
+		ds.setInitialSize(env.getProperty("jdbc.pool.initialSize", Integer.class, 2));
+		ds.setMaxTotal(env.getProperty("jdbc.pool.maxTotal", Integer.class, 40));
+		ds.setMaxIdle(env.getProperty("jdbc.pool.maxIdle", Integer.class, 10));
+		ds.setMinIdle(env.getProperty("jdbc.pool.minIdle", Integer.class, 2));
+		ds.setMaxWaitMillis(env.getProperty("jdbc.pool.maxWaitMillis", Long.class, 30000L));
+		
+		// Prepared statement cache per connection
+		ds.setPoolPreparedStatements(env.getProperty("jdbc.pool.poolPreparedStatements", Boolean.class, true));
+		ds.setMaxOpenPreparedStatements(env.getProperty("jdbc.pool.maxOpenPreparedStatements", Integer.class, 100));
+		
+		// Validation (Connection.isValid unless a query is given) and idle eviction
+		ds.setValidationQuery(env.getProperty("jdbc.pool.validationQuery"));
+		ds.setValidationQueryTimeout(env.getProperty("jdbc.pool.validationQueryTimeout", Integer.class, 5));
+		ds.setTestOnBorrow(env.getProperty("jdbc.pool.testOnBorrow", Boolean.class, true));
+		ds.setTestWhileIdle(env.getProperty("jdbc.pool.testWhileIdle", Boolean.class, true));
+		ds.setTimeBetweenEvictionRunsMillis(env.getProperty("jdbc.pool.timeBetweenEvictionRunsMillis", Long.class, 60000L));
+		ds.setMinEvictableIdleTimeMillis(env.getProperty("jdbc.pool.minEvictableIdleTimeMillis", Long.class, 300000L));
+		
+		// Leak detection: connections held longer than the timeout (seconds)
+		// are logged. They are only closed if removeAbandoned is set; streaming
+		// exports hold one connection for the whole download, so the timeout
+		// must then be longer than any export can take.
+		ds.setLogAbandoned(env.getProperty("jdbc.pool.logAbandoned", Boolean.class, true));
+		ds.setRemoveAbandonedOnMaintenance(env.getProperty("jdbc.pool.removeAbandoned", Boolean.class, false));
+		ds.setRemoveAbandonedTimeout(env.getProperty("jdbc.pool.removeAbandonedTimeout", Integer.class, 900));
 		return ds;
 	}
 	
@@ -110,12 +138,29 @@ public class WebApplicationConfig {
 		if(max != null) {
 			try { maxPoolSize = new Integer(max); } catch (NumberFormatException e){}
 		}
-		return new AssessmentJobExecutor(corePoolSize, maxPoolSize);
+		DispatchPolicy policy = DispatchPolicy.fromOption(PASTAOptions.instance().get("execution.policy"));
+		String aging = PASTAOptions.instance().get("execution.policy.aging");
+		double agingFactor = 1.0;
+		if(aging != null) {
+			try { agingFactor = Double.parseDouble(aging); } catch (NumberFormatException e){}
+		}
+		return new AssessmentJobExecutor(corePoolSize, maxPoolSize, policy, agingFactor);
+	}
+	
+	@Bean(name="unitTestExecutor")
+	@DependsOn("pastaOptions")
+	public UnitTestExecutor createUnitTestExecutor() {
+		String size = PASTAOptions.instance().get("execution.unittest.threads.size");
+		int poolSize = 1;
+		if(size != null) {
+			try { poolSize = new Integer(size); } catch (NumberFormatException e){}
+		}
+		return new UnitTestExecutor(poolSize);
 	}
 	
 	@Autowired
 	@Bean(name="sessionFactory")
-	public LocalSessionFactoryBean createSessionFactory(BasicDataSource dataSource) {
+	public LocalSessionFactoryBean createSessionFactory(MonitoredDataSource dataSource) {
 		LocalSessionFactoryBean sf = new LocalSessionFactoryBean();
 		sf.setDataSource(dataSource);
 		
@@ -123,8 +168,27 @@ public class WebApplicationConfig {
 		hibernateProperties.setProperty("hibernate.dialect", "org.hibernate.dialect.MySQLDialect");
 		hibernateProperties.setProperty("hibernate.show_sql", "false");
 		hibernateProperties.setProperty("hibernate.hbm2ddl.auto", "update");
+		
+		// Batch inserts and updates (e.g. the test case results of a submission)
+		hibernateProperties.setProperty("hibernate.jdbc.batch_size", env.getProperty("hibernate.jdbc.batch_size", "50"));
+		hibernateProperties.setProperty("hibernate.jdbc.batch_versioned_data", "true");
+		hibernateProperties.setProperty("hibernate.order_inserts", "true");
+		hibernateProperties.setProperty("hibernate.order_updates", "true");
+		
+		// Second-level cache for read-mostly template and user entities (see ehcache.xml)
+		boolean cacheEnabled = Boolean.parseBoolean(env.getProperty("hibernate.cache.enabled", "true"));
+		boolean queryCacheEnabled = cacheEnabled && Boolean.parseBoolean(env.getProperty("hibernate.cache.query.enabled", "true"));
+		hibernateProperties.setProperty("hibernate.cache.use_second_level_cache", String.valueOf(cacheEnabled));
+		hibernateProperties.setProperty("hibernate.cache.use_query_cache", String.valueOf(queryCacheEnabled));
+		if(cacheEnabled) {
+			hibernateProperties.setProperty("hibernate.cache.region.factory_class", "org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory");
+			hibernateProperties.setProperty("hibernate.generate_statistics", "true");
+		}
 		sf.setHibernateProperties(hibernateProperties);
 		
+		// Package-level ID generators
+		sf.setAnnotatedPackages("pasta.domain");
+		
 		sf.setAnnotatedClasses(
 				pasta.domain.BaseEntity.class,
 				pasta.domain.PASTALoginUser.class,
@@ -29,6 +29,8 @@ import org.springframework.stereotype.Component;
 
 import pasta.domain.options.Option;
 import pasta.scheduler.AssessmentJobExecutor;
+import pasta.scheduler.DispatchPolicy;
+import pasta.scheduler.UnitTestExecutor;
 
 @Component
 public class ThreadPoolUpdater implements OptionsListener {
@@ -36,15 +38,30 @@ public class ThreadPoolUpdater implements OptionsListener {
 	@Autowired
 	private AssessmentJobExecutor executor;
 	
+	@Autowired
+	private UnitTestExecutor unitTestExecutor;
+	
 	@Override
 	public boolean actsOn(Option option) {
 		String key = option.getKey();
-		return key.equals("execution.threads.core.size") || key.equals("execution.threads.max.size");
+		return key.equals("execution.threads.core.size") || key.equals("execution.threads.max.size")
+				|| key.equals("execution.unittest.threads.size")
+				|| key.equals("execution.policy") || key.equals("execution.policy.aging");
 	}
 
 	@Override
 	public void optionUpdated(Option option) {
 		String key = option.getKey();
+		if(key.equals("execution.policy")) {
+			executor.setDispatchPolicy(DispatchPolicy.fromOption(option.getValue()));
+			return;
+		}
+		if(key.equals("execution.policy.aging")) {
+			try {
+				executor.setAgingFactor(Double.parseDouble(option.getValue()));
+			} catch(NumberFormatException | NullPointerException e) {}
+			return;
+		}
 		try {
 			int value = new Integer(option.getValue());
 			if(key.equals("execution.threads.core.size")) {
@@ -53,6 +70,9 @@ public class ThreadPoolUpdater implements OptionsListener {
 			if(key.equals("execution.threads.max.size")) {
 				executor.setMaximumPoolSize(value);
 			}
+			if(key.equals("execution.unittest.threads.size")) {
+				unitTestExecutor.setPoolSize(value);
+			}
 		} catch(NumberFormatException e) {
 			return;
 		}
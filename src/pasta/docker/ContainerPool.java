@@ -0,0 +1,285 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.docker;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A pool of pre-started execution containers for a single {@link Language}.
+ * <p>
+ * Containers are created lazily up to a maximum size, kept warm down to a
+ * minimum size, and reset between leases. Containers are discarded (and
+ * replaced as needed) when they fail a reset or health check, sit idle for
+ * longer than the idle timeout, or have been used the maximum number of times.
+ */
+public class ContainerPool {
+	protected static Logger logger = Logger.getLogger(ContainerPool.class);
+	
+	private final Language language;
+	private final PooledContainerOperations operations;
+	
+	private int minSize;
+	private int maxSize;
+	private long idleTimeout;
+	private int maxUses;
+	
+	private LinkedList<PooledContainer> idle;
+	private int size;
+	private boolean closed;
+	
+	private AtomicLong counter;
+	
+	public ContainerPool(Language language, int minSize, int maxSize, long idleTimeout, int maxUses) {
+		this(language, minSize, maxSize, idleTimeout, maxUses, PooledContainerOperations.docker());
+	}
+	
+	ContainerPool(Language language, int minSize, int maxSize, long idleTimeout, int maxUses, PooledContainerOperations operations) {
+		this.language = language;
+		this.operations = operations;
+		this.idle = new LinkedList<>();
+		this.size = 0;
+		this.closed = false;
+		this.counter = new AtomicLong();
+		configure(minSize, maxSize, idleTimeout, maxUses);
+	}
+	
+	/**
+	 * Change the pool's settings. If the maximum size is lowered, idle 
+	 * containers over the new maximum are removed straight away, and leased
+	 * ones as they are released.
+	 */
+	public void configure(int minSize, int maxSize, long idleTimeout, int maxUses) {
+		List<PooledContainer> toRemove = new LinkedList<>();
+		synchronized (this) {
+			this.maxSize = Math.max(0, maxSize);
+			this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+			this.idleTimeout = idleTimeout;
+			this.maxUses = maxUses;
+			while(size - toRemove.size() > this.maxSize && !idle.isEmpty()) {
+				toRemove.add(idle.removeLast());
+			}
+		}
+		for(PooledContainer container : toRemove) {
+			logger.debug("Removing pooled container " + container + " over the maximum pool size");
+			discard(container);
+		}
+	}
+	
+	public Language getLanguage() {
+		return language;
+	}
+	public synchronized int getSize() {
+		return size;
+	}
+	public synchronized int getIdleCount() {
+		return idle.size();
+	}
+	public synchronized int getMinSize() {
+		return minSize;
+	}
+	public synchronized int getMaxSize() {
+		return maxSize;
+	}
+	
+	/**
+	 * Lease a container from the pool. Idle containers are preferred; if there
+	 * are none, a new container is started as long as the pool is not full.
+	 * This method does not block waiting for a container to be released.
+	 * 
+	 * @return a running container, or null if the pool is full or closed
+	 */
+	public PooledContainer lease() {
+		synchronized (this) {
+			if(closed) {
+				return null;
+			}
+			if(!idle.isEmpty()) {
+				PooledContainer container = idle.removeFirst();
+				container.registerUse();
+				return container;
+			}
+			if(size >= maxSize) {
+				return null;
+			}
+			size++;
+		}
+		PooledContainer container = create();
+		if(container == null) {
+			synchronized (this) {
+				size--;
+			}
+			return null;
+		}
+		container.registerUse();
+		return container;
+	}
+	
+	/**
+	 * Return a leased container to the pool. The container is reset so that
+	 * nothing from the previous run is visible to the next. If the reset fails
+	 * or the container has reached its maximum number of uses, it is destroyed
+	 * instead.
+	 * 
+	 * @param container the container that was leased from this pool
+	 */
+	public void release(PooledContainer container) {
+		boolean recycle;
+		synchronized (this) {
+			recycle = (maxUses > 0 && container.getUses() >= maxUses) || size > maxSize;
+		}
+		if(!recycle && !operations.reset(container)) {
+			logger.warn("Could not reset pooled container " + container + "; discarding.");
+			recycle = true;
+		}
+		synchronized (this) {
+			if(!recycle && !closed && size <= maxSize) {
+				container.registerRelease();
+				idle.addFirst(container);
+				return;
+			}
+		}
+		discard(container);
+	}
+	
+	/**
+	 * Remove a leased container from the pool without returning it, e.g. if 
+	 * it could not be prepared for use.
+	 * 
+	 * @param container the container that was leased from this pool
+	 */
+	public void discard(PooledContainer container) {
+		logger.debug("Removing pooled container " + container);
+		operations.remove(container);
+		synchronized (this) {
+			size--;
+		}
+	}
+	
+	/**
+	 * Evict containers that have been idle for too long or are over the 
+	 * maximum size, discard any idle containers that fail a health check, 
+	 * then start new containers until the pool reaches its minimum size.
+	 */
+	public void maintain() {
+		List<PooledContainer> toCheck = new LinkedList<>();
+		List<PooledContainer> toEvict = new LinkedList<>();
+		synchronized (this) {
+			if(closed) {
+				return;
+			}
+			long now = System.currentTimeMillis();
+			int remaining = size;
+			Iterator<PooledContainer> it = idle.descendingIterator();
+			while(it.hasNext()) {
+				PooledContainer container = it.next();
+				it.remove();
+				if(remaining > maxSize || 
+						(remaining > minSize && idleTimeout > 0 && now - container.getLastUsed() > idleTimeout)) {
+					toEvict.add(container);
+					remaining--;
+				} else {
+					toCheck.add(container);
+				}
+			}
+		}
+		
+		for(PooledContainer container : toEvict) {
+			logger.debug("Evicting idle pooled container " + container);
+			discard(container);
+		}
+		
+		for(PooledContainer container : toCheck) {
+			if(operations.isHealthy(container)) {
+				synchronized (this) {
+					if(!closed) {
+						idle.addLast(container);
+						continue;
+					}
+				}
+			} else {
+				logger.warn("Pooled container " + container + " failed health check.");
+			}
+			discard(container);
+		}
+		
+		while(true) {
+			synchronized (this) {
+				if(closed || size >= minSize) {
+					break;
+				}
+				size++;
+			}
+			PooledContainer container = create();
+			synchronized (this) {
+				if(container == null) {
+					size--;
+					break;
+				}
+				if(closed) {
+					size--;
+				} else {
+					idle.addLast(container);
+					continue;
+				}
+			}
+			operations.remove(container);
+		}
+	}
+	
+	/**
+	 * Close the pool, removing all idle containers. Containers that are 
+	 * currently leased will be removed when they are released.
+	 */
+	public void shutdown() {
+		List<PooledContainer> toRemove;
+		synchronized (this) {
+			closed = true;
+			toRemove = new LinkedList<>(idle);
+			idle.clear();
+		}
+		for(PooledContainer container : toRemove) {
+			discard(container);
+		}
+	}
+	
+	private PooledContainer create() {
+		String name = "pasta-pool-" + language.getId() + "-" + System.currentTimeMillis() + "-" + counter.incrementAndGet();
+		PooledContainer container = operations.create(language, name);
+		if(container != null) {
+			logger.debug("Started pooled container " + name);
+		}
+		return container;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return language.getId() + " pool: " + size + " containers (" + idle.size() + " idle)";
+	}
+}
@@ -0,0 +1,220 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.docker;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.log4j.Logger;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import pasta.config.options.OptionsListener;
+import pasta.domain.options.Option;
+import pasta.service.PASTAOptions;
+
+/**
+ * Manages one {@link ContainerPool} per {@link Language}.
+ * <p>
+ * Pools are configured with the <code>execution.pool.*</code> options, which
+ * can be overridden per language with <code>languages.[id].pool.*</code>:
+ * <ul>
+ * <li><code>enabled</code>: whether containers should be pooled at all</li>
+ * <li><code>min.size</code>: number of containers to keep warm</li>
+ * <li><code>max.size</code>: maximum number of pooled containers</li>
+ * <li><code>idle.timeout</code>: seconds before an idle container above the minimum is removed</li>
+ * <li><code>max.uses</code>: number of leases before a container is recycled</li>
+ * </ul>
+ * If a pool is disabled or full, callers fall back to creating a fresh container.
+ */
+@Service("containerPoolManager")
+@DependsOn({"pastaOptions", "languageManager"})
+public class ContainerPoolManager implements OptionsListener {
+	protected static Logger logger = Logger.getLogger(ContainerPoolManager.class);
+	private static ContainerPoolManager instance;
+	
+	private Map<String, ContainerPool> pools;
+	private boolean initialised;
+	
+	private ContainerPoolManager() {
+		this.pools = new ConcurrentHashMap<>();
+		this.initialised = false;
+		instance = this;
+	}
+	
+	public static ContainerPoolManager getInstance() {
+		return instance;
+	}
+	
+	public Collection<ContainerPool> getPools() {
+		return pools.values();
+	}
+	
+	/**
+	 * Lease a pooled container for the given execution container, based on
+	 * its language. If successful, the execution container's ID will be set
+	 * and its source files will have been copied into the container.
+	 * 
+	 * @param container the container details to lease for
+	 * @return true if a pooled container was leased and prepared
+	 */
+	public boolean lease(ExecutionContainer container) {
+		if(!initialised || container.getLanguage() == null) {
+			return false;
+		}
+		ContainerPool pool = pools.get(container.getLanguage().getId());
+		if(pool == null) {
+			return false;
+		}
+		PooledContainer pooled = pool.lease();
+		if(pooled == null) {
+			logger.debug(pool + " exhausted; falling back to a new container");
+			return false;
+		}
+		container.setId(pooled.getId());
+		container.setPooledContainer(pooled);
+		if(!DockerManager.instance().attachPooledContainer(container)) {
+			logger.warn("Could not prepare pooled container " + pooled + " for " + container.getLabel());
+			pool.discard(pooled);
+			container.setId(null);
+			container.setPooledContainer(null);
+			return false;
+		}
+		logger.debug("Leased " + pooled + " for " + container.getLabel());
+		return true;
+	}
+	
+	/**
+	 * Copy the output of the given execution container back from its pooled
+	 * container, then return the pooled container to its pool.
+	 * 
+	 * @param container the container details that were leased for
+	 */
+	public void release(ExecutionContainer container) {
+		PooledContainer pooled = container.getPooledContainer();
+		if(pooled == null) {
+			return;
+		}
+		DockerManager.instance().detachPooledContainer(container);
+		container.setId(null);
+		container.setPooledContainer(null);
+		ContainerPool pool = container.getLanguage() == null ? null : pools.get(container.getLanguage().getId());
+		if(pool == null) {
+			DockerManager.instance().removePooledContainer(pooled);
+		} else {
+			pool.release(pooled);
+		}
+	}
+	
+	@Scheduled(fixedDelay = 30000)
+	public void maintainPools() {
+		if(!initialised) {
+			DockerManager.instance().removePooledContainers();
+			initialised = true;
+			configurePools();
+		}
+		for(ContainerPool pool : pools.values()) {
+			pool.maintain();
+		}
+	}
+	
+	private synchronized void configurePools() {
+		for(Language language : LanguageManager.getInstance().getLanguages()) {
+			String id = language.getId();
+			ContainerPool pool = pools.get(id);
+			if(!getBooleanOption(language, "enabled", true)) {
+				if(pool != null) {
+					logger.info("Disabling container pool for " + language.getName());
+					pools.remove(id);
+					pool.shutdown();
+				}
+				continue;
+			}
+			int minSize = getIntOption(language, "min.size", 1);
+			int maxSize = getIntOption(language, "max.size", 4);
+			long idleTimeout = getIntOption(language, "idle.timeout", 600) * 1000L;
+			int maxUses = getIntOption(language, "max.uses", 50);
+			if(pool == null) {
+				logger.info("Creating container pool for " + language.getName());
+				pools.put(id, new ContainerPool(language, minSize, maxSize, idleTimeout, maxUses));
+			} else {
+				pool.configure(minSize, maxSize, idleTimeout, maxUses);
+			}
+		}
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		for(ContainerPool pool : pools.values()) {
+			pool.shutdown();
+		}
+		pools.clear();
+	}
+	
+	private String getOption(Language language, String key) {
+		PASTAOptions options = PASTAOptions.instance();
+		String value = options.get("languages." + language.getId() + ".pool." + key);
+		if(value == null || value.isEmpty()) {
+			value = options.get("execution.pool." + key);
+		}
+		return value;
+	}
+	private int getIntOption(Language language, String key, int defaultValue) {
+		String value = getOption(language, key);
+		if(value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch(NumberFormatException e) {
+				logger.warn("\"" + value + "\" is not a valid value for pool " + key + ". Must be a whole number");
+			}
+		}
+		return defaultValue;
+	}
+	private boolean getBooleanOption(Language language, String key, boolean defaultValue) {
+		String value = getOption(language, key);
+		if(value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		return Boolean.parseBoolean(value.trim());
+	}
+
+	@Override
+	public boolean actsOn(Option option) {
+		String key = option.getKey();
+		return key.startsWith("execution.pool.") || 
+				(key.startsWith("languages.") && key.contains(".pool."));
+	}
+
+	@Override
+	public void optionUpdated(Option option) {
+		if(initialised) {
+			configurePools();
+		}
+	}
+}
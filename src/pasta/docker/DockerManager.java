@@ -27,7 +27,7 @@ package pasta.docker;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -36,7 +36,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -62,11 +67,12 @@ import com.github.dockerjava.core.DockerClientBuilder;
 import com.github.dockerjava.core.command.BuildImageResultCallback;
 import com.github.dockerjava.core.command.ExecStartResultCallback;
 
+import pasta.service.PASTAOptions;
 import pasta.util.Copy;
 import pasta.util.PASTAUtil;
 import pasta.util.ProjectProperties;
 import pasta.util.WhichProgram;
-import pasta.util.io.DualByteArrayOutputStream;
+import pasta.util.io.BoundedOutputCapture;
 
 public class DockerManager {
 	
@@ -78,6 +84,32 @@ public class DockerManager {
 	public static final String PASTA_LIB = "/pasta/lib";
 	public static final String WORK_DIR = "/sandbox";
 	
+	public static final String POOL_LABEL = "pasta-pool";
+	// Under the sandbox location; holds a private src/out pair per pooled container
+	private static final String POOL_DIRECTORY = ".pool";
+	
+	// Finds everything owned by the sandbox user, apart from its home directory itself
+	private static final String FIND_SANDBOX_FILES = 
+			"find / \\( -path /proc -o -path /sys \\) -prune -o -user pastasandbox ! -path \"$home\"";
+	/*
+	 * Run as root between leases of a pooled container. Kills the sandbox 
+	 * user's processes, clears the working, temporary and shared memory 
+	 * directories and the sandbox user's home, then removes anything else the
+	 * sandbox user owns. Prints "ok" only if nothing owned by the sandbox
+	 * user is left.
+	 */
+	static final String POOL_RESET_SCRIPT = 
+			"su -s /bin/sh pastasandbox -c 'kill -9 -1' 2>/dev/null; " +
+			"home=$(getent passwd pastasandbox | cut -d: -f6); " +
+			"find " + WORK_DIR + " /tmp /var/tmp /dev/shm " + PASTA_SRC + " " + PASTA_OUT + " -mindepth 1 -delete 2>/dev/null; " +
+			"if [ -d \"$home\" ] && [ \"$home\" != / ]; then find \"$home\" -mindepth 1 -delete; fi; " +
+			FIND_SANDBOX_FILES + " -exec rm -rf {} + 2>/dev/null; " +
+			"[ -z \"$(" + FIND_SANDBOX_FILES + " -print -quit)\" ] && echo ok";
+	
+	private static final long DEFAULT_OUTPUT_MEMORY_BYTES = 256 * 1024;
+	private static final long DEFAULT_OUTPUT_MAX_BYTES = 16 * 1024 * 1024;
+	private static final int KILL_THREADS = 2;
+	
 	private Object removeLock = new Object();
 	private Set<String> deleteLater;
 	
@@ -91,6 +123,13 @@ public class DockerManager {
 	
 	private DockerClient dockerClient;
 	
+	/*
+	 * Runs the kills for output overflows. This is not one of the job or unit
+	 * test executors, as their threads may all be waiting on the commands 
+	 * being killed.
+	 */
+	private final ThreadPoolExecutor killExecutor;
+	
 	private DockerManager() {
 		DefaultDockerClientConfig config = DefaultDockerClientConfig
 				.createDefaultConfigBuilder()
@@ -100,6 +139,14 @@ public class DockerManager {
 				.getInstance(config)
 				.build();
 		
+		AtomicInteger killThreads = new AtomicInteger();
+		killExecutor = new ThreadPoolExecutor(KILL_THREADS, KILL_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+			Thread thread = new Thread(r, "sandbox-kill-" + killThreads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		killExecutor.allowCoreThreadTimeOut(true);
+		
 		initialiseImages();
 		deleteLater = new LinkedHashSet<>();
 		instance = this;
@@ -246,11 +293,9 @@ public class DockerManager {
 	
 	//docker run -td --name java -v $(pwd)/src:/pasta/src/ -v $(pwd)/out:/pasta/out/ -v /home/pasta/content/lib/:/pasta/lib java
 	public void runContainer(ExecutionContainer container) {
-		String libDir = "";
-		try {
-			libDir = PASTAUtil.getTemplateResource("lib/").getAbsolutePath();
-		} catch (FileNotFoundException e) {
-			logger.error("Could not load lib directory for Docker container.", e);
+		ContainerPoolManager pools = ContainerPoolManager.getInstance();
+		if(pools != null && pools.lease(container)) {
+			return;
 		}
 		
 		Map<String, String> labels = new HashMap<>();
@@ -260,37 +305,13 @@ public class DockerManager {
 		
 		String hostSrc = toHostPath(container.getSrcLoc().getAbsolutePath());
 		String hostOut = toHostPath(container.getOutLoc().getAbsolutePath());
-		String hostLib = toHostPath(libDir);
 		
 		binds.add(new Bind(hostSrc, new Volume(PASTA_SRC + "/")));
 		binds.add(new Bind(hostOut, new Volume(PASTA_OUT + "/")));
-		binds.add(new Bind(hostLib, new Volume(PASTA_LIB + "/")));
-		
-		if(container.getLanguage().getId().equals("matlab")) {
-			binds.add(new Bind(WhichProgram.getInstance().path("matlab.install"), new Volume(PASTA_BIN + "/MATLAB/")));
-		}
+		addCommonBinds(container.getLanguage(), binds);
 		
 		try {
-			CreateContainerCmd cmd = dockerClient
-					.createContainerCmd(container.getImageName())
-					.withName(container.getLabel())
-					.withLabels(labels)
-					.withTty(true)
-					.withBinds(binds);
-			
-			String macKey = container.getLanguage().getId() + ".hardware-address";
-			String mac = LanguageManager.getInstance().getProperty(macKey);
-			if(mac != null && !mac.isEmpty()) {
-				cmd = cmd.withMacAddress(mac);
-			}
-			
-			String portsKey = container.getLanguage().getId() + ".exposed-ports";
-			String ports = LanguageManager.getInstance().getProperty(portsKey);
-			if(ports != null && !ports.isEmpty()) {
-				cmd = cmd.withExposedPorts(parsePorts(ports));
-			}
-			
-			CreateContainerResponse resp = cmd.exec();
+			CreateContainerResponse resp = createContainerCmd(container.getLanguage(), container.getLabel(), labels, binds).exec();
 			container.setId(resp.getId());
 			
 			dockerClient
@@ -303,11 +324,221 @@ public class DockerManager {
 		}
 	}
 	
+	/**
+	 * Finish with a container started by {@link #runContainer(ExecutionContainer)}, 
+	 * either returning it to its pool or removing it.
+	 * 
+	 * @param container the container to release
+	 */
+	public void releaseContainer(ExecutionContainer container) {
+		if(container.isPooled()) {
+			ContainerPoolManager.getInstance().release(container);
+		} else {
+			removeContainer(container.getId());
+		}
+	}
+	
+	private void addCommonBinds(Language language, List<Bind> binds) {
+		String libDir = "";
+		try {
+			libDir = PASTAUtil.getTemplateResource("lib/").getAbsolutePath();
+		} catch (FileNotFoundException e) {
+			logger.error("Could not load lib directory for Docker container.", e);
+		}
+		String hostLib = toHostPath(libDir);
+		binds.add(new Bind(hostLib, new Volume(PASTA_LIB + "/")));
+		
+		if(language.getId().equals("matlab")) {
+			binds.add(new Bind(WhichProgram.getInstance().path("matlab.install"), new Volume(PASTA_BIN + "/MATLAB/")));
+		}
+	}
+	
+	private CreateContainerCmd createContainerCmd(Language language, String name, Map<String, String> labels, List<Bind> binds) {
+		CreateContainerCmd cmd = dockerClient
+				.createContainerCmd(language.getImageName())
+				.withName(name)
+				.withLabels(labels)
+				.withTty(true)
+				.withBinds(binds);
+		
+		String macKey = language.getId() + ".hardware-address";
+		String mac = LanguageManager.getInstance().getProperty(macKey);
+		if(mac != null && !mac.isEmpty()) {
+			cmd = cmd.withMacAddress(mac);
+		}
+		
+		String portsKey = language.getId() + ".exposed-ports";
+		String ports = LanguageManager.getInstance().getProperty(portsKey);
+		if(ports != null && !ports.isEmpty()) {
+			cmd = cmd.withExposedPorts(parsePorts(ports));
+		}
+		return cmd;
+	}
+	
+	/**
+	 * Create and start a long-lived container for a {@link ContainerPool}.
+	 * <p>
+	 * As bind mounts cannot be changed once a container is running, each
+	 * pooled container gets its own private directory, whose <code>src</code> 
+	 * and <code>out</code> subdirectories are mounted at {@link #PASTA_SRC} 
+	 * and {@link #PASTA_OUT}. Job files are copied in and out of these on 
+	 * each lease; no other job's files are visible to the container.
+	 * 
+	 * @param language the language the container will run
+	 * @param name the name to give the container
+	 * @return the new container, or null if it could not be started
+	 */
+	public PooledContainer createPooledContainer(Language language, String name) {
+		Map<String, String> labels = new HashMap<>();
+		labels.put("image", language.getImageName());
+		labels.put(POOL_LABEL, language.getId());
+		
+		File directory = new File(getPoolDirectory(), name);
+		PooledContainer pooled = new PooledContainer(name, directory);
+		if(!pooled.getSrcDir().mkdirs() || !pooled.getOutDir().mkdirs()) {
+			logger.error("Could not create directories for pooled container " + name);
+			FileUtils.deleteQuietly(directory);
+			return null;
+		}
+		
+		List<Bind> binds = new LinkedList<>();
+		binds.add(new Bind(toHostPath(pooled.getSrcDir().getAbsolutePath()), new Volume(PASTA_SRC + "/")));
+		binds.add(new Bind(toHostPath(pooled.getOutDir().getAbsolutePath()), new Volume(PASTA_OUT + "/")));
+		addCommonBinds(language, binds);
+		
+		try {
+			pooled.setId(createContainerCmd(language, name, labels, binds).exec().getId());
+			dockerClient.startContainerCmd(pooled.getId()).exec();
+			return pooled;
+		} catch (DockerException e) {
+			logger.error("Could not start pooled container " + name, e);
+			removePooledContainer(pooled);
+		}
+		return null;
+	}
+	
+	/**
+	 * Remove a pooled container and its private directory.
+	 * 
+	 * @param container the pooled container
+	 */
+	public void removePooledContainer(PooledContainer container) {
+		if(container.getId() != null) {
+			removeContainer(container.getId());
+		}
+		FileUtils.deleteQuietly(container.getDirectory());
+	}
+	
+	/**
+	 * Prepare a leased pooled container to run the given execution container,
+	 * in the same way {@link #runContainer(ExecutionContainer)} prepares a new 
+	 * one: the job's source files are copied into the container's private 
+	 * source directory, and from there into the working directory.
+	 * 
+	 * @param container the execution container, with the pooled container set
+	 * @return true if the container is ready to run targets
+	 */
+	public boolean attachPooledContainer(ExecutionContainer container) {
+		PooledContainer pooled = container.getPooledContainer();
+		try {
+			FileUtils.copyDirectory(container.getSrcLoc(), pooled.getSrcDir());
+		} catch (IOException e) {
+			logger.error("Could not copy " + container.getSrcLoc() + " into pooled container " + pooled, e);
+			return false;
+		}
+		CombinedCommandResult result = runCommand(container, "sh", "-c", "cp -rp " + PASTA_SRC + "/* . && echo ok");
+		return result != null && result.getOutput().trim().endsWith("ok");
+	}
+	
+	/**
+	 * Copy everything the job wrote to {@link #PASTA_OUT} back to the 
+	 * execution container's output directory. Must be called before the 
+	 * pooled container is reset.
+	 * 
+	 * @param container the execution container, with the pooled container set
+	 */
+	public void detachPooledContainer(ExecutionContainer container) {
+		PooledContainer pooled = container.getPooledContainer();
+		try {
+			FileUtils.copyDirectory(pooled.getOutDir(), container.getOutLoc());
+		} catch (IOException e) {
+			logger.error("Could not copy output of " + container.getLabel() + " from pooled container " + pooled, e);
+		}
+	}
+	
+	/**
+	 * Reset a pooled container after use: kill any processes left running by
+	 * the sandbox user and remove all files written during the run, wherever
+	 * the sandbox user could write them, including the container's private 
+	 * source and output directories.
+	 * 
+	 * @param container the pooled container
+	 * @return true if the container was reset successfully
+	 */
+	public boolean resetPooledContainer(PooledContainer container) {
+		try {
+			CombinedCommandResult result = runCommand(container.getId(), container.getName(), "sh", "-c", POOL_RESET_SCRIPT);
+			return result != null && result.getOutput().trim().endsWith("ok");
+		} catch (DockerException e) {
+			logger.error("Error resetting pooled container " + container, e);
+			return false;
+		}
+	}
+	
+	public boolean isContainerHealthy(String id, String label) {
+		try {
+			Boolean running = dockerClient.inspectContainerCmd(id).exec().getState().getRunning();
+			if(running == null || !running) {
+				return false;
+			}
+			CombinedCommandResult result = runCommand(id, label, "echo", "ok");
+			return result != null && result.getOutput().trim().equals("ok");
+		} catch (DockerException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Remove all pooled containers and their directories, e.g. those left 
+	 * over from a previous run of PASTA.
+	 */
+	public void removePooledContainers() {
+		List<Container> containers = dockerClient
+				.listContainersCmd()
+				.withShowAll(true)
+				.withLabelFilter(POOL_LABEL)
+				.exec();
+		for (Container container : containers) {
+			logger.info("Removing stale pooled container " + container.getId());
+			removeContainer(container.getId());
+		}
+		FileUtils.deleteQuietly(getPoolDirectory());
+	}
+	
+	private File getPoolDirectory() {
+		return new File(ProjectProperties.getInstance().getSandboxLocation(), POOL_DIRECTORY);
+	}
+	
 	public CombinedCommandResult runCommand(ExecutionContainer container, String... command) {
-		return runCommand(container.getId(), container.getLabel(), command);
+		return runCommand(container.getId(), container.getLabel(), createOutputCapture(null, null), command);
 	}
 	
 	public CombinedCommandResult runCommand(String containerId, String containerLabel, String... command) {
+		return runCommand(containerId, containerLabel, createOutputCapture(null, null), command);
+	}
+	
+	/**
+	 * Run a command in a container, capturing its output with the given 
+	 * capture. The caller can watch the capture while the command runs, or 
+	 * give it an overflow handler to stop the command early.
+	 * 
+	 * @param containerId the container to run the command in
+	 * @param containerLabel the label of the container (for logging)
+	 * @param capture where to capture the output
+	 * @param command the command and its arguments
+	 * @return the captured output, or null if the command could not be run
+	 */
+	public CombinedCommandResult runCommand(String containerId, String containerLabel, BoundedOutputCapture capture, String... command) {
 		ExecCreateCmdResponse cmd = dockerClient.execCreateCmd(containerId)
 				.withCmd(command)
 				.withAttachStdout(true)
@@ -317,7 +548,7 @@ public class DockerManager {
 		String execId = cmd.getId();
 		
 		try (
-				DualByteArrayOutputStream streams = new DualByteArrayOutputStream();
+				BoundedOutputCapture streams = capture;
 			) {
 			ExecStartResultCallback callback = new ExecStartResultCallback(streams.getOutputStream(), streams.getErrorStream());
 			logger.trace("Start running command " + Arrays.toString(command) + " on " + containerLabel);
@@ -326,22 +557,69 @@ public class DockerManager {
 					.exec(callback)
 					.awaitCompletion();
 			logger.trace("Finished running command " + Arrays.toString(command) + " on " + containerLabel);
-			streams.flush();
-			String combinedStr = streams.toString(StandardCharsets.UTF_8.name());
-			String outStr = streams.getOutputStream().toString(StandardCharsets.UTF_8.name());
-			String errStr = streams.getErrorStream().toString(StandardCharsets.UTF_8.name());
-			return new CombinedCommandResult(combinedStr, outStr, errStr);
+			streams.close();
+			return new CombinedCommandResult(streams.getCombined(), streams.getOutput(), streams.getError());
 		} catch (InterruptedException e) {
 			logger.error("Error waiting for command to run.", e);
-		} catch (IOException e) {
-			logger.error("Error getting command output streams.", e);
 		}
 		
 		return null;
 	}
 	
+	/**
+	 * Run an Ant target. Output beyond <code>execution.output.memory.bytes</code> 
+	 * is spilled to <code>&lt;target&gt;.out.log</code> and 
+	 * <code>&lt;target&gt;.err.log</code> in the container's output directory.
+	 * If either stream goes over <code>execution.output.max.bytes</code>, all
+	 * sandboxed processes are killed so that the target finishes early.
+	 * 
+	 * @param container the container to run the target in
+	 * @param target the name of the target
+	 * @return the captured output, or null if the target could not be run
+	 */
 	public CombinedCommandResult runAntTarget(ExecutionContainer container, String target) {
-		return runCommand(container, "ant", "-v", "-f", "build.xml", target);
+		BoundedOutputCapture capture = createOutputCapture(container.getOutLoc(), target);
+		capture.setOverflowHandler(() -> {
+			logger.warn("Output limit exceeded by " + target + " target on " + container.getLabel() + "; killing sandbox processes");
+			killSandboxProcesses(container);
+		});
+		return runCommand(container.getId(), container.getLabel(), capture, "ant", "-v", "-f", "build.xml", target);
+	}
+	
+	private void killSandboxProcesses(ExecutionContainer container) {
+		// Run on a separate exec, as this is called from the thread reading the target's output
+		killExecutor.execute(() -> {
+			try {
+				runCommand(container, "sh", "-c", "su -s /bin/sh pastasandbox -c 'kill -9 -1' 2>/dev/null; true");
+			} catch (DockerException e) {
+				logger.error("Error killing sandbox processes on " + container.getLabel(), e);
+			}
+		});
+	}
+	
+	private BoundedOutputCapture createOutputCapture(File spillDir, String spillPrefix) {
+		long memoryLimit = getLongOption("execution.output.memory.bytes", DEFAULT_OUTPUT_MEMORY_BYTES);
+		return new BoundedOutputCapture(memoryLimit, getOutputMaxBytes(), spillDir, spillPrefix);
+	}
+	
+	/**
+	 * @return the most output (in bytes) to keep from each stream of a 
+	 * command, or from each output file written by a sandboxed program
+	 */
+	public static long getOutputMaxBytes() {
+		return getLongOption("execution.output.max.bytes", DEFAULT_OUTPUT_MAX_BYTES);
+	}
+	
+	private static long getLongOption(String key, long defaultValue) {
+		String value = PASTAOptions.instance().get(key);
+		if(value != null) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch(NumberFormatException e) {
+				logger.warn("\"" + value + "\" is not a valid value for " + key);
+			}
+		}
+		return defaultValue;
 	}
 	
 	/**
@@ -383,7 +661,17 @@ public class DockerManager {
 		return eps;
 	}
 	
-	public CommandResult executeDatabaseDump(List<String> command) {
+	/**
+	 * Run mysqldump (or another command) in PASTA's MySQL container, writing 
+	 * its output to the given stream as it is produced rather than holding 
+	 * it in memory.
+	 * 
+	 * @param command the command and its arguments
+	 * @param out where to write the output of the command
+	 * @return the error output of the command (the first 64 KB)
+	 * @throws IOException if the output could not be written
+	 */
+	public String executeDatabaseDump(List<String> command, OutputStream out) throws IOException {
 		List<Container> containers = dockerClient.listContainersCmd().withLabelFilter("pasta", "mysql").exec();
 		if(containers.size() == 0) {
 			throw new IllegalStateException("No Docker container running PASTA's MySQL found.");
@@ -394,10 +682,29 @@ public class DockerManager {
 			logger.warn("Found more than one container for running mysqldump. Executing on first one: " + container.getId());
 		}
 		
-		String[] commandArray = command.toArray(new String[command.size()]);
-		CombinedCommandResult runCommand = runCommand(container.getId(), container.getNames()[0], commandArray);
-		logger.info("OUTPUT:" + runCommand.getOutput());
-		logger.info("ERROR:" + runCommand.getError());
-		return runCommand;
+		ExecCreateCmdResponse cmd = dockerClient.execCreateCmd(container.getId())
+				.withCmd(command.toArray(new String[command.size()]))
+				.withAttachStdout(true)
+				.withAttachStderr(true)
+				.withAttachStdin(false)
+				.exec();
+		
+		try(BoundedOutputCapture errors = new BoundedOutputCapture(64 * 1024, 64 * 1024, null, null)) {
+			dockerClient
+					.execStartCmd(cmd.getId())
+					.exec(new ExecStartResultCallback(out, errors.getErrorStream()))
+					.awaitCompletion();
+			errors.close();
+			return errors.getError();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while running " + command.get(0), e);
+		} catch (RuntimeException e) {
+			// Errors writing to the output are rethrown wrapped by the callback
+			if(e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
 	}
 }
@@ -33,6 +33,7 @@ public class ExecutionContainer {
 	private File srcLoc;
 	private File outLoc;
 	private Language language;
+	private PooledContainer pooledContainer;
 	
 	public ExecutionContainer(String label, File srcLoc, File outLoc) {
 		this.label = label;
@@ -46,6 +47,9 @@ public class ExecutionContainer {
 	public void setLanguage(Language language) {
 		this.language = language;
 	}
+	public void setPooledContainer(PooledContainer pooledContainer) {
+		this.pooledContainer = pooledContainer;
+	}
 	
 	public String getId() {
 		return id;
@@ -59,9 +63,24 @@ public class ExecutionContainer {
 	public File getOutLoc() {
 		return outLoc;
 	}
+	/**
+	 * @return the host directory mounted at {@link DockerManager#PASTA_OUT} 
+	 * while the container is running. For a pooled container this is its
+	 * private output directory, which is only copied to {@link #getOutLoc()}
+	 * when the container is released.
+	 */
+	public File getMountedOutLoc() {
+		return pooledContainer == null ? outLoc : pooledContainer.getOutDir();
+	}
 	public Language getLanguage() {
 		return language;
 	}
+	public PooledContainer getPooledContainer() {
+		return pooledContainer;
+	}
+	public boolean isPooled() {
+		return pooledContainer != null;
+	}
 	
 	public String getImageName() {
 		return language.getImageName();
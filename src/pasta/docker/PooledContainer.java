@@ -0,0 +1,94 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.docker;
+
+import java.io.File;
+
+/**
+ * A long-lived container owned by a {@link ContainerPool}. Each container is
+ * started once and then leased out to many {@link ExecutionContainer}s,
+ * being reset in between.
+ * <p>
+ * Each container has its own private directory on the host, holding the 
+ * source and output directories that are mounted into it.
+ */
+public class PooledContainer {
+	
+	private String id;
+	private String name;
+	private File directory;
+	private int uses;
+	private long lastUsed;
+	
+	public PooledContainer(String name, File directory) {
+		this.name = name;
+		this.directory = directory;
+		this.uses = 0;
+		this.lastUsed = System.currentTimeMillis();
+	}
+	
+	public void setId(String id) {
+		this.id = id;
+	}
+	
+	public String getId() {
+		return id;
+	}
+	public String getName() {
+		return name;
+	}
+	public File getDirectory() {
+		return directory;
+	}
+	public File getSrcDir() {
+		return new File(directory, "src");
+	}
+	public File getOutDir() {
+		return new File(directory, "out");
+	}
+	public int getUses() {
+		return uses;
+	}
+	public long getLastUsed() {
+		return lastUsed;
+	}
+	
+	public void registerUse() {
+		this.uses++;
+	}
+	
+	/**
+	 * Record that the container has just been returned to the pool, so idle
+	 * time is measured from the end of its last job.
+	 */
+	public void registerRelease() {
+		this.lastUsed = System.currentTimeMillis();
+	}
+	
+	@Override
+	public String toString() {
+		return name + " (" + uses + " uses)";
+	}
+}
@@ -0,0 +1,67 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.docker;
+
+/**
+ * The container operations a {@link ContainerPool} relies on. Normally done
+ * by {@link DockerManager}; tests can supply their own.
+ */
+interface PooledContainerOperations {
+	
+	/**
+	 * @return a started container, or null if it could not be created
+	 */
+	PooledContainer create(Language language, String name);
+	
+	/**
+	 * @return true if nothing from the previous lease remains in the container
+	 */
+	boolean reset(PooledContainer container);
+	
+	boolean isHealthy(PooledContainer container);
+	
+	void remove(PooledContainer container);
+	
+	static PooledContainerOperations docker() {
+		return new PooledContainerOperations() {
+			@Override
+			public PooledContainer create(Language language, String name) {
+				return DockerManager.instance().createPooledContainer(language, name);
+			}
+			@Override
+			public boolean reset(PooledContainer container) {
+				return DockerManager.instance().resetPooledContainer(container);
+			}
+			@Override
+			public boolean isHealthy(PooledContainer container) {
+				return DockerManager.instance().isContainerHealthy(container.getId(), container.getName());
+			}
+			@Override
+			public void remove(PooledContainer container) {
+				DockerManager.instance().removePooledContainer(container);
+			}
+		};
+	}
+}
@@ -48,8 +48,10 @@ public abstract class BaseEntity implements Serializable {
 	@Transient
 	protected transient final Logger logger = Logger.getLogger(getClass());
 	
+	// "pasta_id" is auto-increment (see package-info.java) unless the entity
+	// declares its own generator with that name
 	@Id
-	@GeneratedValue
+	@GeneratedValue(generator = "pasta_id")
 	private Long id;
 	
 	@Version
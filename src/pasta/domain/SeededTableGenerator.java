@@ -0,0 +1,137 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.domain;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.hibernate.jdbc.AbstractReturningWork;
+import org.hibernate.type.Type;
+
+/**
+ * Table-based ID generator that starts each entity's IDs after the highest 
+ * ID already in that entity's table.
+ * <p>
+ * Entity IDs come from MySQL auto-increment columns, which stops Hibernate
+ * from batching inserts. Entities that are inserted many at a time (the 
+ * test case results of a submission) use this generator instead: IDs come 
+ * from a row per table in the generator table, allocated in blocks, so the 
+ * rows can be inserted in one JDBC batch. All other entities keep 
+ * auto-increment IDs.
+ * <p>
+ * No manual migration is needed. <code>hbm2ddl</code> creates the generator
+ * table, and the first time an ID is needed for a table that has no 
+ * generator row yet, the row is created from the current <code>max(id)</code>
+ * so existing rows keep their IDs. If several nodes seed the same row at 
+ * once, the first insert wins and the others are ignored. The auto-increment
+ * column is left in place, so the table can be switched back by removing 
+ * the generator from the entity.
+ * <p>
+ * Apart from seeding, allocation is left to the optimizer, which only goes
+ * to the database when its current block of IDs is used up. Each node holds
+ * its own block, so IDs are not in insertion order across nodes, and the 
+ * unused part of a block (up to <code>increment_size - 1</code> IDs) is 
+ * skipped when a node restarts.
+ */
+public class SeededTableGenerator extends TableGenerator {
+	private static final Logger logger = Logger.getLogger(SeededTableGenerator.class);
+	
+	private String targetTable;
+	private String targetColumn;
+	private volatile boolean seeded;
+	
+	@Override
+	public void configure(Type type, Properties params, Dialect dialect) throws MappingException {
+		super.configure(type, params, dialect);
+		this.targetTable = params.getProperty(PersistentIdentifierGenerator.TABLE);
+		this.targetColumn = params.getProperty(PersistentIdentifierGenerator.PK);
+	}
+	
+	@Override
+	public Serializable generate(SessionImplementor session, Object obj) {
+		if(!seeded) {
+			ensureSeeded(session);
+		}
+		return super.generate(session, obj);
+	}
+	
+	private synchronized void ensureSeeded(SessionImplementor session) {
+		if(seeded) {
+			return;
+		}
+		// Done in its own transaction, as for the generator row updates
+		session.getTransactionCoordinator().getTransaction().createIsolationDelegate().delegateWork(
+				new AbstractReturningWork<Void>() {
+					@Override
+					public Void execute(Connection connection) throws SQLException {
+						seed(connection);
+						return null;
+					}
+				}, true);
+		seeded = true;
+	}
+	
+	private void seed(Connection connection) throws SQLException {
+		try(PreparedStatement select = connection.prepareStatement(
+				"SELECT " + getValueColumnName() + " FROM " + getTableName() + " WHERE " + getSegmentColumnName() + " = ?")) {
+			select.setString(1, getSegmentValue());
+			try(ResultSet rs = select.executeQuery()) {
+				if(rs.next()) {
+					return;
+				}
+			}
+		}
+		
+		long next = 1;
+		try(PreparedStatement max = connection.prepareStatement(
+				"SELECT MAX(" + targetColumn + ") FROM " + targetTable);
+				ResultSet rs = max.executeQuery()) {
+			if(rs.next()) {
+				next = rs.getLong(1) + 1;
+			}
+		}
+		
+		// IGNORE: another node may have seeded the row since it was checked
+		try(PreparedStatement insert = connection.prepareStatement(
+				"INSERT IGNORE INTO " + getTableName() + " (" + getSegmentColumnName() + ", " + getValueColumnName() + ") VALUES (?, ?)")) {
+			insert.setString(1, getSegmentValue());
+			insert.setLong(2, next);
+			if(insert.executeUpdate() == 0) {
+				return;
+			}
+		}
+		logger.info("Starting IDs for " + targetTable + " at " + next);
+	}
+}
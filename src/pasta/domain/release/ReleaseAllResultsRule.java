@@ -33,7 +33,7 @@ import javax.persistence.InheritanceType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 
-import pasta.domain.result.AssessmentResult;
+import pasta.domain.result.SubmissionListItem;
 import pasta.domain.template.Assessment;
 import pasta.domain.user.PASTAUser;
 import pasta.util.ProjectProperties;
@@ -57,12 +57,12 @@ public abstract class ReleaseAllResultsRule extends ReleaseRule implements Seria
 	
 	@Override
 	protected boolean isMet(PASTAUser user) {
-		List<AssessmentResult> results = ProjectProperties.getInstance().getResultDAO()
-				.getAllResults(user, compareAssessment.getId(), true, false);
+		List<SubmissionListItem> results = ProjectProperties.getInstance().getResultDAO()
+				.getSubmissionListItems(user, compareAssessment.getId(), true, false);
 		return isMet(user, results);
 	}
 	
-	protected abstract boolean isMet(PASTAUser user, List<AssessmentResult> allCompareResults);
+	protected abstract boolean isMet(PASTAUser user, List<SubmissionListItem> allCompareResults);
 
 	public Assessment getCompareAssessment() {
 		return compareAssessment;
@@ -33,6 +33,9 @@ import javax.persistence.Id;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import pasta.domain.template.Assessment;
 import pasta.domain.user.PASTAUser;
 import pasta.util.ProjectProperties;
@@ -43,6 +46,7 @@ import pasta.util.ProjectProperties;
  * @since 20 Apr 2015
  */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pasta.template")
 @Inheritance(strategy = InheritanceType.TABLE_PER_CLASS)
 public abstract class ReleaseRule implements Comparable<ReleaseRule>, Serializable {
 	private static final long serialVersionUID = -2751801889498306673L;
@@ -33,7 +33,7 @@ import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.Table;
 
-import pasta.domain.result.AssessmentResult;
+import pasta.domain.result.SubmissionListItem;
 import pasta.domain.user.PASTAUser;
 
 /**
@@ -57,7 +57,7 @@ public class SubmissionCountRule extends ReleaseAllResultsRule implements Serial
 	private CompareMode compareMode;
 	
 	@Override
-	protected boolean isMet(PASTAUser user, List<AssessmentResult> allCompareResults) {
+	protected boolean isMet(PASTAUser user, List<SubmissionListItem> allCompareResults) {
 		int count = 0;
 		if(allCompareResults != null) {
 			count = allCompareResults.size();
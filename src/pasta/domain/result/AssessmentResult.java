@@ -49,6 +49,7 @@ import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 import javax.validation.constraints.Size;
 
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.LazyCollection;
 import org.hibernate.annotations.LazyCollectionOption;
 
@@ -97,12 +98,15 @@ public class AssessmentResult extends BaseEntity implements Serializable, Compar
 	@JoinColumn(name="submitted_by", nullable = true)
 	private PASTAUser submittedBy;
 	
+	// Detail collections are only loaded where needed; see ResultDAO#initialiseDetails
 	@OneToMany (cascade = CascadeType.ALL, orphanRemoval = true, mappedBy = "assessmentResult")
-	@LazyCollection(LazyCollectionOption.FALSE)
+	@LazyCollection(LazyCollectionOption.TRUE)
+	@BatchSize(size = 50)
 	private List<UnitTestResult> unitTests = new ArrayList<UnitTestResult>();
 	
 	@OneToMany (cascade = CascadeType.ALL, orphanRemoval = true, mappedBy = "assessmentResult")
-	@LazyCollection(LazyCollectionOption.FALSE)
+	@LazyCollection(LazyCollectionOption.TRUE)
+	@BatchSize(size = 50)
 	private List<HandMarkingResult> handMarkingResults = new ArrayList<HandMarkingResult>();
 	
 	@ManyToOne
@@ -341,7 +345,7 @@ public class AssessmentResult extends BaseEntity implements Serializable, Compar
 	public Collection<String> getCompilationErrors() {
 		LinkedHashSet<String> uniqueErrors = new LinkedHashSet<String>();
 		for(UnitTestResult result : unitTests){
-			if(result.getCompileErrors()!= null && !result.getCompileErrors().isEmpty()){
+			if(result.isCompileError()){
 				uniqueErrors.add(result.getCompileErrors());
 			}
 		}
@@ -386,7 +390,7 @@ public class AssessmentResult extends BaseEntity implements Serializable, Compar
 	public Collection<String> getRuntimeErrors() {
 		LinkedHashSet<String> uniqueErrors = new LinkedHashSet<String>();
 		for(UnitTestResult result : unitTests){
-			if(result.getRuntimeErrors()!= null && !result.getRuntimeErrors().isEmpty()){
+			if(result.isRuntimeError()){
 				uniqueErrors.add(result.getRuntimeErrors());
 			}
 		}
@@ -33,10 +33,8 @@ import java.util.Map;
 import org.apache.log4j.Logger;
 
 import pasta.domain.user.PASTAUser;
-import pasta.repository.ResultDAO;
 import pasta.service.ResultManager;
 import pasta.service.UserManager;
-import pasta.util.ProjectProperties;
 
 public class AssessmentResultSummaryCalculator {
 	private static Logger logger = Logger.getLogger(AssessmentResultSummaryCalculator.class);
@@ -65,16 +63,14 @@ public class AssessmentResultSummaryCalculator {
 		Collection<PASTAUser> allUsers = userManager.getUserList();
 		
 		output.add("Calculating all results...");
-		Map<PASTAUser, Map<Long, AssessmentResult>> calculatedResults = resultManager.getLatestResultsIncludingGroupQuick(allUsers);
-		
-		ResultDAO dao = ProjectProperties.getInstance().getResultDAO();
+		Map<PASTAUser, Map<Long, SubmissionListItem>> calculatedResults = resultManager.getLatestSubmissionsIncludingGroup(allUsers);
 		
 		for(PASTAUser user : allUsers) {
 			output.add("Saving results for " + user.getUsername());
-			Map<Long, AssessmentResult> results = calculatedResults.get(user);
-			for(AssessmentResult result : results.values()) {
+			Map<Long, SubmissionListItem> results = calculatedResults.get(user);
+			for(SubmissionListItem result : results.values()) {
 				AssessmentResultSummary summary = new AssessmentResultSummary(user, result.getAssessment(), result.getPercentage());
-				dao.saveOrUpdate(summary);
+				resultManager.saveOrUpdate(summary);
 			}
 		}
 	}
@@ -0,0 +1,224 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.domain.result;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import pasta.domain.template.Assessment;
+import pasta.domain.template.WeightedHandMarking;
+import pasta.domain.template.WeightedUnitTest;
+import pasta.domain.user.PASTAUser;
+
+/**
+ * A lightweight, read-only view of a submission, for lists that only need
+ * to know who submitted what and when, and the marks it received.
+ * <p>
+ * Items are built by {@link pasta.repository.ResultDAO} from projections, so
+ * none of the unit test output, test case details or feedback of the 
+ * submission are loaded. Marks are calculated in the same way as in
+ * {@link AssessmentResult}.
+ * <p>
+ * Items for a user and their group can be merged with
+ * {@link #combine(PASTAUser, SubmissionListItem...)}, in the same way as
+ * {@link CombinedAssessmentResult}.
+ */
+public class SubmissionListItem implements Serializable {
+
+	private static final long serialVersionUID = 2203868531047446125L;
+	
+	private Long id;
+	private PASTAUser user;
+	private PASTAUser submittedBy;
+	private Assessment assessment;
+	private Date submissionDate;
+	private boolean waitingToRun;
+	private boolean groupResult;
+	
+	private double rawAutoMarks;
+	private double rawHandMarks;
+	
+	public SubmissionListItem(Long id, PASTAUser user, PASTAUser submittedBy, Assessment assessment,
+			Date submissionDate, boolean waitingToRun, boolean groupResult) {
+		this.id = id;
+		this.user = user;
+		this.submittedBy = submittedBy;
+		this.assessment = assessment;
+		this.submissionDate = submissionDate;
+		this.waitingToRun = waitingToRun;
+		this.groupResult = groupResult;
+	}
+	
+	/**
+	 * Combine the items of several submissions (e.g. a user's and their 
+	 * group's) for the same assessment into one. The combined item has no ID,
+	 * submitter or submission date.
+	 * 
+	 * @param user the user the combined item is for
+	 * @param items the items to combine; null items are ignored
+	 * @return the combined item
+	 */
+	public static SubmissionListItem combine(PASTAUser user, SubmissionListItem... items) {
+		SubmissionListItem combined = new SubmissionListItem(null, user, null, null, null, false, false);
+		for(SubmissionListItem item : items) {
+			if(item == null) {
+				continue;
+			}
+			if(combined.assessment == null) {
+				combined.assessment = item.assessment;
+			}
+			combined.waitingToRun = combined.waitingToRun || item.waitingToRun;
+			combined.rawAutoMarks += item.rawAutoMarks;
+			combined.rawHandMarks += item.rawHandMarks;
+		}
+		return combined;
+	}
+	
+	/**
+	 * Add the marks of one unit test module of this submission.
+	 * 
+	 * @param unitTestId the ID of the unit test that was run
+	 * @param passed the number of test cases that passed
+	 * @param total the total number of test cases
+	 */
+	public void addUnitTestResult(long unitTestId, long passed, long total) {
+		if(total == 0) {
+			return;
+		}
+		double weight = 0;
+		for(WeightedUnitTest test : assessment.getAllUnitTests()) {
+			if(test.getTest().getId() == unitTestId) {
+				weight = test.getWeight();
+				break;
+			}
+		}
+		rawAutoMarks += ((double) passed / total) * weight;
+	}
+	
+	/**
+	 * Add the marks of one hand marking result of this submission. As in 
+	 * {@link AssessmentResult}, only results for hand marking templates that 
+	 * are still part of the assessment, and of the right kind (group or 
+	 * individual), are counted.
+	 * 
+	 * @param result the hand marking result
+	 */
+	public void addHandMarkingResult(HandMarkingResult result) {
+		WeightedHandMarking template = result.getWeightedHandMarking();
+		if(template == null || template.isGroupWork() != groupResult) {
+			return;
+		}
+		boolean current = false;
+		for(WeightedHandMarking assessmentTemplate : assessment.getHandMarking()) {
+			if(assessmentTemplate.getId().equals(template.getId())) {
+				current = true;
+				break;
+			}
+		}
+		if(!current) {
+			return;
+		}
+		try {
+			rawHandMarks += result.getPercentage() * assessment.getWeighting(result.getHandMarking());
+		} catch(Exception e) {
+			// ignore anything that throws exceptions (probably a partially marked submission)
+		}
+	}
+	
+	public Long getId() {
+		return id;
+	}
+	public PASTAUser getUser() {
+		return user;
+	}
+	public PASTAUser getSubmittedBy() {
+		return submittedBy;
+	}
+	public Assessment getAssessment() {
+		return assessment;
+	}
+	public Date getSubmissionDate() {
+		return submissionDate;
+	}
+	public boolean isWaitingToRun() {
+		return waitingToRun;
+	}
+	public boolean isGroupResult() {
+		return groupResult;
+	}
+	
+	public double getPercentage() {
+		return getPercentage(rawAutoMarks + rawHandMarks, getTotalMaxWeight());
+	}
+	public double getAutoMarkPercentage() {
+		return getPercentage(rawAutoMarks, getAssessmentUnitTestsWeight());
+	}
+	public double getAutoMarkAsPercentageOfTotal() {
+		return getPercentage(rawAutoMarks, getTotalMaxWeight());
+	}
+	public double getHandMarkPercentage() {
+		return getPercentage(rawHandMarks, getAssessmentHandMarkingWeight());
+	}
+	public double getHandMarkAsPercentageOfTotal() {
+		return getPercentage(rawHandMarks, getTotalMaxWeight());
+	}
+	
+	public double getMarks() {
+		return getPercentage() * assessment.getMarks();
+	}
+	public double getAutoMarks() {
+		return getAutoMarkAsPercentageOfTotal() * assessment.getMarks();
+	}
+	public double getHandMarks() {
+		return getHandMarkAsPercentageOfTotal() * assessment.getMarks();
+	}
+	
+	private double getPercentage(double mark, double maxMark) {
+		if(maxMark == 0) {
+			return 0;
+		}
+		return mark / maxMark;
+	}
+	
+	private double getTotalMaxWeight() {
+		return getAssessmentHandMarkingWeight() + getAssessmentUnitTestsWeight();
+	}
+	
+	private double getAssessmentHandMarkingWeight() {
+		double weight = 0;
+		for(WeightedHandMarking marking : assessment.getHandMarking()) {
+			weight += marking.getWeight();
+		}
+		return weight;
+	}
+	
+	private double getAssessmentUnitTestsWeight() {
+		double weight = 0;
+		for(WeightedUnitTest test : assessment.getAllUnitTests()) {
+			weight += test.getWeight();
+		}
+		return weight;
+	}
+}
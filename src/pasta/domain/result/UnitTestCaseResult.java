@@ -35,8 +35,12 @@ import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.validation.constraints.Size;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import pasta.domain.BaseEntity;
 import pasta.domain.VerboseName;
+import pasta.util.BlobStore;
 
 /**
  * Container class to hold the result of a single unit test.
@@ -57,6 +61,12 @@ import pasta.domain.VerboseName;
  */
 @Entity
 @Table(name = "unit_test_case_results")
+@GenericGenerator(name = "pasta_id", strategy = "pasta.domain.SeededTableGenerator", parameters = {
+		@Parameter(name = "table_name", value = "id_generators"),
+		@Parameter(name = "prefer_entity_table_as_segment_value", value = "true"),
+		@Parameter(name = "increment_size", value = "50"),
+		@Parameter(name = "optimizer", value = "pooled-lo")
+})
 @VerboseName("unit test case result")
 public class UnitTestCaseResult extends BaseEntity implements Serializable, Comparable<UnitTestCaseResult>{
 	
@@ -83,6 +93,11 @@ public class UnitTestCaseResult extends BaseEntity implements Serializable, Comp
 	@Size (max = MAX_EXT_MESSAGE_LENGTH)
 	private String extendedMessage = "";
 	
+	// Reference to the full extended message in the BlobStore when the 
+	// column above only holds a preview
+	@Column(name = "extended_message_ref", length = BlobStore.REF_LENGTH)
+	private String extendedMessageRef;
+	
 	private String testDescription;
 	
 	private String type;
@@ -116,14 +131,15 @@ public class UnitTestCaseResult extends BaseEntity implements Serializable, Comp
 		this.testMessage = testMessage;
 	}
 	public String getExtendedMessage() {
-		return extendedMessage;
+		return BlobStore.instance().load(extendedMessageRef, extendedMessage);
 	}
 	public void setExtendedMessage(String extendedMessage) {
 		extendedMessage = extendedMessage.trim();
 		if(extendedMessage.length() >= (MAX_EXT_MESSAGE_LENGTH - 3)) {
 			extendedMessage = extendedMessage.substring(0, MAX_EXT_MESSAGE_LENGTH - 3) + "...";
 		}
-		this.extendedMessage = extendedMessage;
+		this.extendedMessageRef = BlobStore.instance().store(extendedMessage);
+		this.extendedMessage = extendedMessageRef == null ? extendedMessage : BlobStore.preview(extendedMessage);
 	}
 	public double getTime() {
 		return time;
@@ -47,6 +47,7 @@ import javax.persistence.OrderBy;
 import javax.persistence.Table;
 import javax.validation.constraints.Size;
 
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.LazyCollection;
 import org.hibernate.annotations.LazyCollectionOption;
 
@@ -54,6 +55,7 @@ import pasta.domain.BaseEntity;
 import pasta.domain.VerboseName;
 import pasta.domain.template.UnitTest;
 import pasta.domain.template.WeightedUnitTest;
+import pasta.util.BlobStore;
 import pasta.util.PASTAUtil;
 
 /**
@@ -89,7 +91,8 @@ public class UnitTestResult extends BaseEntity implements Serializable, Comparab
 	
 	@OneToMany (cascade = CascadeType.ALL, orphanRemoval = true, mappedBy = "unitTestResult")
 	@OrderBy ("testName")
-	@LazyCollection (LazyCollectionOption.FALSE)
+	@LazyCollection (LazyCollectionOption.TRUE)
+	@BatchSize (size = 50)
 	private List<UnitTestCaseResult> testCases = new ArrayList<>();
 	
 	@Column (name = "internal_error")
@@ -102,7 +105,8 @@ public class UnitTestResult extends BaseEntity implements Serializable, Comparab
 	@CollectionTable(name = "unit_test_results_validation_errors", 
 		joinColumns = @JoinColumn(name = "unit_test_result_id"))
 	@Column(name = "error")
-	@LazyCollection (LazyCollectionOption.FALSE)
+	@LazyCollection (LazyCollectionOption.TRUE)
+	@BatchSize (size = 50)
 	private Set<ResultFeedback> validationErrors = new TreeSet<ResultFeedback>();
 	
 	@Column (name = "compile_errors", length = COMPILE_ERROR_MAX_LENGTH)
@@ -123,6 +127,20 @@ public class UnitTestResult extends BaseEntity implements Serializable, Comparab
 	@Column (name = "runtime_output", length = RUNTIME_OUTPUT_MAX_LENGTH)
 	@Size (max = RUNTIME_OUTPUT_MAX_LENGTH)
 	private String fullOutput;
+	
+	// References to the full text in the BlobStore when the columns above 
+	// only hold a preview
+	@Column (name = "compile_errors_ref", length = BlobStore.REF_LENGTH)
+	private String compileErrorsRef;
+	
+	@Column (name = "runtime_errors_ref", length = BlobStore.REF_LENGTH)
+	private String runtimeErrorsRef;
+	
+	@Column (name = "files_compiled_ref", length = BlobStore.REF_LENGTH)
+	private String filesCompiledRef;
+	
+	@Column (name = "runtime_output_ref", length = BlobStore.REF_LENGTH)
+	private String fullOutputRef;
 
 	public UnitTest getTest() {
 		return getTesterTest() == null ? (getWeightedUnitTest() == null ? null : getWeightedUnitTest().getTest()) : getTesterTest();
@@ -224,21 +242,42 @@ public class UnitTestResult extends BaseEntity implements Serializable, Comparab
 	}
 
 	public String getCompileErrors() {
+		return BlobStore.instance().load(compileErrorsRef, compileErrors);
+	}
+
+	/**
+	 * @return true if the compile errors are held in the {@link BlobStore}, in
+	 *         which case {@link #getCompileErrorsPreview()} is only the start
+	 */
+	public boolean isCompileErrorsTruncated() {
+		return compileErrorsRef != null;
+	}
+	public String getCompileErrorsPreview() {
 		return compileErrors;
 	}
 
 	public void setCompileErrors(String compileErrors) {
-		this.compileErrors = PASTAUtil.truncate(compileErrors, COMPILE_ERROR_MAX_LENGTH);
+		compileErrors = PASTAUtil.truncate(compileErrors, COMPILE_ERROR_MAX_LENGTH);
+		this.compileErrorsRef = BlobStore.instance().store(compileErrors);
+		this.compileErrors = compileErrorsRef == null ? compileErrors : BlobStore.preview(compileErrors);
 	}
 
 	public boolean isRuntimeError() {
 		return runtimeErrors != null && !runtimeErrors.isEmpty();
 	}
 	public String getRuntimeErrors() {
+		return BlobStore.instance().load(runtimeErrorsRef, runtimeErrors);
+	}
+	public boolean isRuntimeErrorsTruncated() {
+		return runtimeErrorsRef != null;
+	}
+	public String getRuntimeErrorsPreview() {
 		return runtimeErrors;
 	}
 	public void setRuntimeErrors(String runtimeErrors) {
-		this.runtimeErrors = PASTAUtil.truncate(runtimeErrors, RUNTIME_ERROR_MAX_LENGTH);
+		runtimeErrors = PASTAUtil.truncate(runtimeErrors, RUNTIME_ERROR_MAX_LENGTH);
+		this.runtimeErrorsRef = BlobStore.instance().store(runtimeErrors);
+		this.runtimeErrors = runtimeErrorsRef == null ? runtimeErrors : BlobStore.preview(runtimeErrors);
 	}
 
 	public boolean isCleanError() {
@@ -250,19 +289,42 @@ public class UnitTestResult extends BaseEntity implements Serializable, Comparab
 	}
 
 	public String getFilesCompiled() {
+		return BlobStore.instance().load(filesCompiledRef, filesCompiled);
+	}
+
+	public boolean isFilesCompiledTruncated() {
+		return filesCompiledRef != null;
+	}
+	public String getFilesCompiledPreview() {
 		return filesCompiled;
 	}
 
 	public void setFilesCompiled(String filesCompiled) {
-		this.filesCompiled = PASTAUtil.truncate(filesCompiled, FILES_COMPILED_MAX_LENGTH);
+		filesCompiled = PASTAUtil.truncate(filesCompiled, FILES_COMPILED_MAX_LENGTH);
+		this.filesCompiledRef = BlobStore.instance().store(filesCompiled);
+		this.filesCompiled = filesCompiledRef == null ? filesCompiled : BlobStore.preview(filesCompiled);
 	}
 
+	/**
+	 * @return the full runtime output; if it is held in the {@link BlobStore}
+	 *         this reads it from disk, so use {@link #getFullOutputPreview()}
+	 *         where the start of the output is enough
+	 */
 	public String getFullOutput() {
+		return BlobStore.instance().load(fullOutputRef, fullOutput);
+	}
+	
+	public boolean isFullOutputTruncated() {
+		return fullOutputRef != null;
+	}
+	public String getFullOutputPreview() {
 		return fullOutput;
 	}
 
 	public void setFullOutput(String fullOutput) {
-		this.fullOutput = PASTAUtil.truncate(fullOutput, RUNTIME_OUTPUT_MAX_LENGTH);
+		fullOutput = PASTAUtil.truncate(fullOutput, RUNTIME_OUTPUT_MAX_LENGTH);
+		this.fullOutputRef = BlobStore.instance().store(fullOutput);
+		this.fullOutput = fullOutputRef == null ? fullOutput : BlobStore.preview(fullOutput);
 	}
 
 	public double getPercentage(){
@@ -339,11 +401,11 @@ public class UnitTestResult extends BaseEntity implements Serializable, Comparab
 		
 		this.setBuildError(buildError || other.buildError);
 		this.setCleanError(cleanError || other.cleanError);
-		this.setCompileErrors(combineStrings(compileErrors, other.compileErrors));
-		this.setFilesCompiled(combineStrings(filesCompiled, other.filesCompiled));
+		this.setCompileErrors(combineStrings(getCompileErrors(), other.getCompileErrors()));
+		this.setFilesCompiled(combineStrings(getFilesCompiled(), other.getFilesCompiled()));
 		this.setInternalError(internalError || other.internalError);
-		this.setRuntimeErrors(combineStrings(runtimeErrors, other.runtimeErrors));
-		this.setFullOutput(combineStrings(fullOutput, other.fullOutput));
+		this.setRuntimeErrors(combineStrings(getRuntimeErrors(), other.getRuntimeErrors()));
+		this.setFullOutput(combineStrings(getFullOutput(), other.getFullOutput()));
 		
 		if(this.getTestCases() == null && other.getTestCases() != null) {
 			this.testCases = new LinkedList<UnitTestCaseResult>();
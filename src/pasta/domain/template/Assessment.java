@@ -48,6 +48,8 @@ import javax.persistence.OneToOne;
 import javax.persistence.Table;
 import javax.validation.constraints.Size;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.LazyCollection;
 import org.hibernate.annotations.LazyCollectionOption;
 
@@ -120,6 +122,7 @@ import pasta.util.ProjectProperties;
  *
  */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pasta.template")
 @Table (name = "assessments")
 @VerboseName("assessment")
 public class Assessment extends BaseEntity implements Comparable<Assessment> {
@@ -158,6 +161,7 @@ public class Assessment extends BaseEntity implements Comparable<Assessment> {
 			mappedBy = "assessment"
 	)
 	@LazyCollection(LazyCollectionOption.FALSE)
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pasta.template")
 	private Set<WeightedUnitTest> unitTests = new TreeSet<WeightedUnitTest>();
 	
 	@OneToMany (
@@ -166,12 +170,14 @@ public class Assessment extends BaseEntity implements Comparable<Assessment> {
 			mappedBy = "assessment"
 	)
 	@LazyCollection(LazyCollectionOption.FALSE)
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pasta.template")
 	private Set<WeightedHandMarking> handMarking = new TreeSet<WeightedHandMarking>();
 	
 	@ElementCollection
 	@JoinTable(name = "assessment_languages", joinColumns = @JoinColumn(name = "assessment_id"))
 	@Column(name = "language")
 	@LazyCollection(LazyCollectionOption.FALSE)
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pasta.template")
 	private Set<Language> submissionLanguages = new TreeSet<Language>();
 	
 	@Column (name="group_lock_date")
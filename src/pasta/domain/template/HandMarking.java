@@ -39,6 +39,8 @@ import javax.persistence.OrderBy;
 import javax.persistence.OrderColumn;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.LazyCollection;
 import org.hibernate.annotations.LazyCollectionOption;
 
@@ -70,6 +72,7 @@ import pasta.domain.VerboseName;
  *
  */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pasta.template")
 @Table (name = "hand_markings")
 @VerboseName("hand marking module")
 public class HandMarking extends BaseEntity implements Comparable<HandMarking> {
@@ -39,6 +39,8 @@ import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.LazyCollection;
 import org.hibernate.annotations.LazyCollectionOption;
 
@@ -68,6 +70,7 @@ import pasta.util.ProjectProperties;
  */
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pasta.template")
 @Table (name = "unit_tests")
 @VerboseName("unit test module")
 public class UnitTest extends BaseEntity implements Comparable<UnitTest> {
@@ -35,6 +35,9 @@ import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import pasta.domain.BaseEntity;
 import pasta.domain.VerboseName;
 import pasta.domain.result.HandMarkingResult;
@@ -55,6 +58,7 @@ import pasta.domain.result.HandMarkingResult;
  */
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pasta.template")
 @Table (name = "weighted_hand_markings")
 @VerboseName("weighted hand-marking module")
 public class WeightedHandMarking extends BaseEntity implements Comparable<WeightedHandMarking> {
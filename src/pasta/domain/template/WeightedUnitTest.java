@@ -35,6 +35,9 @@ import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import pasta.domain.BaseEntity;
 import pasta.domain.VerboseName;
 import pasta.domain.result.UnitTestResult;
@@ -55,6 +58,7 @@ import pasta.domain.result.UnitTestResult;
  */
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pasta.template")
 @Table (name = "weighted_unit_tests")
 @VerboseName("weighted unit test module")
 public class WeightedUnitTest extends BaseEntity implements Comparable<WeightedUnitTest> {
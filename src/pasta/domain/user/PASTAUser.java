@@ -39,6 +39,9 @@ import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import pasta.domain.BaseEntity;
 import pasta.domain.UserPermissionLevel;
 import pasta.domain.VerboseName;
@@ -54,6 +57,7 @@ import pasta.scheduler.AssessmentJob;
  * @since 2012-10-12
  */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pasta.user")
 @Table(name = "users",uniqueConstraints={@UniqueConstraint(columnNames={"username"})})
 @Inheritance(strategy=InheritanceType.JOINED)
 @VerboseName("user")
@@ -277,7 +277,10 @@ public class AssessmentDAO extends BaseDAO {
 	
 	@SuppressWarnings("unchecked")
 	public List<Assessment> getAllAssessments() {
-		return sessionFactory.getCurrentSession().createCriteria(Assessment.class).list();
+		return sessionFactory.getCurrentSession().createCriteria(Assessment.class)
+				.setCacheable(true)
+				.setCacheRegion(QUERY_CACHE_REGION)
+				.list();
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -285,6 +288,8 @@ public class AssessmentDAO extends BaseDAO {
 		return sessionFactory.getCurrentSession()
 				.createCriteria(Assessment.class)
 				.setProjection(Projections.property("id"))
+				.setCacheable(true)
+				.setCacheRegion(QUERY_CACHE_REGION)
 				.list();
 	}
 	
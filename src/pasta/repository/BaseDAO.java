@@ -33,16 +33,27 @@ import org.hibernate.Criteria;
 import org.hibernate.ReplicationMode;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.stat.Statistics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import pasta.domain.BaseEntity;
+import pasta.domain.template.Assessment;
+import pasta.domain.template.WeightedHandMarking;
+import pasta.domain.template.WeightedUnitTest;
 
 @Transactional
 @Repository("baseDAO")
 public class BaseDAO {
 
+	/**
+	 * Query cache region for lookups over the cached template and user entities.
+	 */
+	protected static final String QUERY_CACHE_REGION = "pasta.query";
+	
 	protected final Logger logger = Logger.getLogger(getClass());
 	
 	@Autowired
@@ -51,22 +62,26 @@ public class BaseDAO {
 	public void saveOrUpdate(BaseEntity entity) {
 		Long id = entity.getId();
 		sessionFactory.getCurrentSession().saveOrUpdate(entity);
+		evictOwnerCollection(entity);
 		logger.info((id == entity.getId() ? "Updated " : "Created ") + entity.toString());
 	}
 	
 	public Long save(BaseEntity entity) {
 		sessionFactory.getCurrentSession().save(entity);
+		evictOwnerCollection(entity);
 		logger.info("Created " + entity.toString());
 		return entity.getId();
 	}
 	
 	public void update(BaseEntity entity) {
 		sessionFactory.getCurrentSession().update(entity);
+		evictOwnerCollection(entity);
 		logger.info("Updated " + entity.toString());
 	}
 	
 	public void delete(BaseEntity entity) {
 		String desc = entity.toString();
+		evictOwnerCollection(entity);
 		sessionFactory.getCurrentSession().delete(entity);
 		logger.info("Deleted " + desc);
 	}
@@ -74,4 +89,73 @@ public class BaseDAO {
 	public BaseEntity get(Class<? extends BaseEntity> clazz, Long id) {
 		return (BaseEntity) sessionFactory.getCurrentSession().get(clazz, id);
 	}
+	
+	/**
+	 * @return the session factory statistics, including second-level and query
+	 * cache hit and miss counts; only collected when the cache is enabled
+	 */
+	public Statistics getStatistics() {
+		return sessionFactory.getStatistics();
+	}
+	
+	/**
+	 * Evict everything from the second-level and query caches, e.g. after the
+	 * database has been changed outside of PASTA.
+	 */
+	public void evictAllCaches() {
+		org.hibernate.Cache cache = sessionFactory.getCache();
+		cache.evictEntityRegions();
+		cache.evictCollectionRegions();
+		cache.evictDefaultQueryRegion();
+		cache.evictQueryRegions();
+		logger.info("Evicted all second-level cache regions");
+	}
+	
+	/**
+	 * Weighted unit tests and hand marking templates are cached as part of
+	 * their assessment's collections. When one is written directly rather
+	 * than through the assessment, Hibernate does not touch the cached
+	 * collection, so drop it once the transaction has committed.
+	 * 
+	 * @param entity the entity being written
+	 */
+	private void evictOwnerCollection(BaseEntity entity) {
+		final String role;
+		final Assessment owner;
+		if(entity instanceof WeightedUnitTest) {
+			role = Assessment.class.getName() + ".unitTests";
+			owner = ((WeightedUnitTest) entity).getAssessment();
+		} else if(entity instanceof WeightedHandMarking) {
+			role = Assessment.class.getName() + ".handMarking";
+			owner = ((WeightedHandMarking) entity).getAssessment();
+		} else {
+			return;
+		}
+		if(owner == null || owner.getId() == null) {
+			return;
+		}
+		final Long ownerId = owner.getId();
+		afterCommit(() -> sessionFactory.getCache().evictCollection(role, ownerId));
+	}
+	
+	/**
+	 * Run the given action once the current transaction has committed, or 
+	 * straight away if there is no transaction. Used for cache evictions, so
+	 * that another transaction cannot put the old state back in the cache 
+	 * before this one commits.
+	 * 
+	 * @param action the action to run
+	 */
+	protected void afterCommit(final Runnable action) {
+		if(TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					action.run();
+				}
+			});
+		} else {
+			action.run();
+		}
+	}
 }
@@ -43,7 +43,10 @@ public class HandMarkingDAO extends BaseDAO {
 	
 	@SuppressWarnings("unchecked")
 	public List<HandMarking> getAllHandMarkings() {
-		return sessionFactory.getCurrentSession().createCriteria(HandMarking.class).list();
+		return sessionFactory.getCurrentSession().createCriteria(HandMarking.class)
+				.setCacheable(true)
+				.setCacheRegion(QUERY_CACHE_REGION)
+				.list();
 	}
 
 	public HandMarking getHandMarking(long id) {
@@ -25,24 +25,27 @@ SOFTWARE.
 package pasta.repository;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.TreeMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.Cache;
 import org.hibernate.Criteria;
+import org.hibernate.Hibernate;
 import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.DetachedCriteria;
@@ -53,20 +56,18 @@ import org.hibernate.criterion.Subqueries;
 import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import pasta.domain.result.AssessmentResult;
 import pasta.domain.result.AssessmentResultSummary;
 import pasta.domain.result.HandMarkingResult;
+import pasta.domain.result.SubmissionListItem;
 import pasta.domain.result.UnitTestCaseResult;
 import pasta.domain.result.UnitTestResult;
 import pasta.domain.template.Assessment;
 import pasta.domain.template.WeightedHandMarking;
 import pasta.domain.user.PASTAGroup;
 import pasta.domain.user.PASTAUser;
+import pasta.testing.JUnitResultReader;
 import pasta.util.ProjectProperties;
 
 /**
@@ -88,9 +89,95 @@ public class ResultDAO extends BaseDAO {
 	
 	protected final Log logger = LogFactory.getLog(getClass());
 	
+	/**
+	 * Maximum number of values bound to a single <code>in (...)</code> list.
+	 */
+	private static final int MAX_IN_LIST_SIZE = 500;
+	
+	/**
+	 * Selects the columns of a {@link SubmissionListItem}, in constructor 
+	 * order; used by {@link #toSubmissionListItems(List)}.
+	 */
+	private static final String SUBMISSION_LIST_ITEM_HQL = 
+			"select r.id, u, sb, a, r.submissionDate, r.waitingToRun, r.groupResult " +
+			"from AssessmentResult r join r.user u join r.assessment a left join r.submittedBy sb";
+	
+	/**
+	 * Delete a summary; use {@link pasta.service.ResultManager#delete(AssessmentResultSummary)}
+	 * so that the grade centre is updated.
+	 * 
+	 * @param result the summary to delete
+	 */
 	public void delete(AssessmentResultSummary result) {
 		sessionFactory.getCurrentSession().delete(result);
 	}
+	
+	/**
+	 * Delete all unit test results (and their test case results) of an 
+	 * assessment result using bulk deletes, rather than loading and deleting
+	 * each row.
+	 * <p>
+	 * Bulk deletes bypass the session, so pending changes are flushed first 
+	 * and the assessment result (with its unit test results) is then evicted
+	 * from the session; any copy loaded before the call is detached and out 
+	 * of date, and should be reloaded. The cached unit test result regions 
+	 * and the result's cached collection are evicted once the transaction 
+	 * has committed.
+	 * <p>
+	 * Output of the deleted rows held in the {@link pasta.util.BlobStore} is 
+	 * left in place, as other results may refer to the same blobs; it is 
+	 * removed by {@link pasta.service.ResultManager#sweepBlobStore()} once 
+	 * nothing refers to it.
+	 * 
+	 * @param resultId the ID of the assessment result
+	 * @return the number of unit test results deleted
+	 */
+	public int deleteUnitTestResults(final long resultId) {
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+		session.createSQLQuery("DELETE ve FROM unit_test_results_validation_errors ve "
+				+ "INNER JOIN unit_test_results utr ON utr.id = ve.unit_test_result_id "
+				+ "WHERE utr.assessment_result_id = :resultId")
+				.addSynchronizedQuerySpace("unit_test_results_validation_errors")
+				.setLong("resultId", resultId)
+				.executeUpdate();
+		session.createQuery("delete from UnitTestCaseResult where unitTestResult.id in "
+				+ "(select utr.id from UnitTestResult utr where utr.assessmentResult.id = :resultId)")
+				.setLong("resultId", resultId)
+				.executeUpdate();
+		int deleted = session.createQuery("delete from UnitTestResult where assessmentResult.id = :resultId")
+				.setLong("resultId", resultId)
+				.executeUpdate();
+		
+		// Cascades to the loaded unit test and test case results
+		session.evict(session.load(AssessmentResult.class, resultId));
+		afterCommit(() -> {
+			Cache cache = sessionFactory.getCache();
+			cache.evictCollection(AssessmentResult.class.getName() + ".unitTests", resultId);
+			cache.evictEntityRegion(UnitTestResult.class);
+			cache.evictEntityRegion(UnitTestCaseResult.class);
+			cache.evictCollectionRegion(UnitTestResult.class.getName() + ".testCases");
+			cache.evictCollectionRegion(UnitTestResult.class.getName() + ".validationErrors");
+		});
+		return deleted;
+	}
+	
+	/**
+	 * @return every {@link pasta.util.BlobStore} reference held by a unit 
+	 *         test result or test case result
+	 */
+	@SuppressWarnings("unchecked")
+	public Set<String> getBlobRefs() {
+		List<String> refs = sessionFactory.getCurrentSession().createSQLQuery(
+				"SELECT compile_errors_ref FROM unit_test_results WHERE compile_errors_ref IS NOT NULL "
+				+ "UNION SELECT runtime_errors_ref FROM unit_test_results WHERE runtime_errors_ref IS NOT NULL "
+				+ "UNION SELECT files_compiled_ref FROM unit_test_results WHERE files_compiled_ref IS NOT NULL "
+				+ "UNION SELECT runtime_output_ref FROM unit_test_results WHERE runtime_output_ref IS NOT NULL "
+				+ "UNION SELECT extended_message_ref FROM unit_test_case_results WHERE extended_message_ref IS NOT NULL")
+				.setReadOnly(true)
+				.list();
+		return new HashSet<>(refs);
+	}
 
 	/**
 	 * Save the assessment summary to the database.
@@ -102,7 +189,11 @@ public class ResultDAO extends BaseDAO {
 	}
 
 	public AssessmentResult getAssessmentResult(long id) {
-		return (AssessmentResult) sessionFactory.getCurrentSession().get(AssessmentResult.class, id);
+		AssessmentResult result = (AssessmentResult) sessionFactory.getCurrentSession().get(AssessmentResult.class, id);
+		if(result != null) {
+			initialiseDetails(result);
+		}
+		return result;
 	}
 	
 	public AssessmentResultSummary getAssessmentResultSummary(PASTAUser user, Assessment assessment) {
@@ -145,7 +236,7 @@ public class ResultDAO extends BaseDAO {
 		@SuppressWarnings("unchecked")
 		AssessmentResult result = (AssessmentResult) DataAccessUtils.uniqueResult(cr.list());
 		if(result != null) {
-			refreshHandMarking(result);
+			loadDetails(result);
 		}
 		return result;
 	}
@@ -160,7 +251,7 @@ public class ResultDAO extends BaseDAO {
 		@SuppressWarnings("unchecked")
 		AssessmentResult result = (AssessmentResult) DataAccessUtils.uniqueResult(cr.list());
 		if(result != null) {
-			refreshHandMarking(result);
+			loadDetails(result);
 		}
 		return result;
 	}
@@ -183,7 +274,7 @@ public class ResultDAO extends BaseDAO {
 		
 		AssessmentResult result = (AssessmentResult) DataAccessUtils.uniqueResult(cr.list());
 		if(result != null) {
-			refreshHandMarking(result);
+			loadDetails(result);
 		}
 		return result;
 	}
@@ -205,7 +296,7 @@ public class ResultDAO extends BaseDAO {
 		List<AssessmentResult> results = cr.list();
 		if(results != null) {
 			for(AssessmentResult result : results) {
-				refreshHandMarking(result);
+				loadDetails(result);
 			}
 		}
 		return results;
@@ -229,6 +320,37 @@ public class ResultDAO extends BaseDAO {
 		return cr.list();
 	}
 	
+	/**
+	 * Lightweight version of {@link #getAllResults(PASTAUser, long, boolean, boolean)}
+	 * for lists of submissions: none of the unit test or hand marking details
+	 * are loaded.
+	 */
+	public List<SubmissionListItem> getSubmissionListItems(PASTAUser user, long assessmentId, boolean latestFirst, boolean includeGroup) {
+		Criteria cr = sessionFactory.getCurrentSession().createCriteria(AssessmentResult.class);
+		if(user != null) {
+			restrictCriteriaUser(cr, user, includeGroup, assessmentId);
+		}
+		if(assessmentId > 0) {
+			cr.createCriteria("assessment").add(Restrictions.eq("id", assessmentId));
+		}
+		if(latestFirst) {
+			cr.addOrder(Order.desc("submissionDate"));
+		} else {
+			cr.addOrder(Order.asc("submissionDate"));
+		}
+		cr.setProjection(Projections.projectionList()
+				.add(Projections.property("id"))
+				.add(Projections.property("user"))
+				.add(Projections.property("submittedBy"))
+				.add(Projections.property("assessment"))
+				.add(Projections.property("submissionDate"))
+				.add(Projections.property("waitingToRun"))
+				.add(Projections.property("groupResult")));
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = cr.list();
+		return toSubmissionListItems(rows);
+	}
+	
 	public List<AssessmentResult> getResultsForMultiUserAssessment(List<PASTAUser> users,
 			long assessmentId, int resultCount, boolean latestFirst) {
 		Criteria cr = sessionFactory.getCurrentSession().createCriteria(AssessmentResult.class);
@@ -253,45 +375,69 @@ public class ResultDAO extends BaseDAO {
 		List<AssessmentResult> results = cr.list();
 		if(results != null) {
 			for(AssessmentResult result : results) {
-				refreshHandMarking(result);
+				loadDetails(result);
 			}
 		}
 		return results;
 	}
 	
-		@SuppressWarnings("unchecked")
-		public List<AssessmentResult> getLatestResultsForMultiUser(List<PASTAUser> users) {
-			if(users.isEmpty()) {
-				return new LinkedList<AssessmentResult>();
-			}
-
-			DetachedCriteria latestSub = DetachedCriteria.forClass(AssessmentResult.class);
-			latestSub.setProjection(
-					Projections.projectionList()
-					.add(Projections.groupProperty("user"))
-					.add(Projections.groupProperty("assessment"))
-					.add(Projections.max("submissionDate"))
-					);
-			latestSub.add(Restrictions.in("user", users));
-
-			Criteria cr = sessionFactory.getCurrentSession().createCriteria(AssessmentResult.class)
-					.add(Subqueries.propertiesIn(new String[] {"user", "assessment", "submissionDate"}, latestSub));
-
-			return cr.list();
+	/**
+	 * Get the latest submission of each of the given users for every 
+	 * assessment they have submitted to, without loading any unit test or
+	 * hand marking details.
+	 * 
+	 * @param users the users (or groups)
+	 * @return one item per user and assessment; of several submissions made
+	 *         at the same time, the one saved last
+	 */
+	public List<SubmissionListItem> getLatestSubmissionListItems(List<PASTAUser> users) {
+		if(users.isEmpty()) {
+			return new LinkedList<SubmissionListItem>();
 		}
-
-		public List<AssessmentResultSummary> getResultsSummaryForMultiUser(Set<PASTAUser> users) {
-			if(users.isEmpty()) {
-				return new LinkedList<AssessmentResultSummary>();
-			}
 		
-			Criteria cr = sessionFactory.getCurrentSession().createCriteria(AssessmentResultSummary.class)
-					.add(Restrictions.in("id.user", users));
+		List<SubmissionListItem> items = new ArrayList<>();
+		for(List<PASTAUser> chunk : chunk(users)) {
+			@SuppressWarnings("unchecked")
+			List<Object[]> rows = sessionFactory.getCurrentSession()
+					.createQuery(SUBMISSION_LIST_ITEM_HQL + " where u in (:users) "
+							+ "and r.id = (select max(r2.id) from AssessmentResult r2 "
+							+ "where r2.user = r.user and r2.assessment = r.assessment "
+							+ "and r2.submissionDate = (select max(r3.submissionDate) from AssessmentResult r3 "
+							+ "where r3.user = r.user and r3.assessment = r.assessment))")
+					.setParameterList("users", chunk)
+					.list();
+			items.addAll(toSubmissionListItems(rows));
+		}
+		return items;
+	}
 
+	/**
+	 * Get the date of the latest submission each of the given users (or 
+	 * groups) made for an assessment, without loading the results.
+	 * 
+	 * @param users the users (or groups)
+	 * @param assessmentId the ID of the assessment
+	 * @return submission dates by username, ordered by username; users with
+	 *         no submissions are left out
+	 */
+	public Map<String, Date> getLatestSubmissionDates(List<PASTAUser> users, long assessmentId) {
+		Map<String, Date> dates = new TreeMap<>();
+		for(List<PASTAUser> chunk : chunk(users)) {
 			@SuppressWarnings("unchecked")
-			List<AssessmentResultSummary> list = (List<AssessmentResultSummary>)cr.list();
-			return list;
+			List<Object[]> rows = sessionFactory.getCurrentSession()
+					.createQuery("select u.username, max(r.submissionDate) from AssessmentResult r join r.user u "
+							+ "where r.assessment.id = :assessmentId and u in (:users) group by u.username")
+					.setLong("assessmentId", assessmentId)
+					.setParameterList("users", chunk)
+					.list();
+			for(Object[] row : rows) {
+				if(row[1] != null) {
+					dates.put((String) row[0], (Date) row[1]);
+				}
+			}
 		}
+		return dates;
+	}
 
 	private void restrictCriteriaUser(Criteria cr, PASTAUser user, boolean includeGroup, long assessmentId) {
 		if(includeGroup) {
@@ -354,77 +500,8 @@ public class ResultDAO extends BaseDAO {
 		// check to see if there is a results.xml file
 		File testResults = new File(location+"/result.xml");
 		if(testResults.exists() && testResults.length() != 0){
-			try{	
-				DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-				DocumentBuilder dBuilder;
-				dBuilder = dbFactory.newDocumentBuilder();
-				Document doc = dBuilder.parse(testResults);
-				doc.getDocumentElement().normalize();
-				
-				ArrayList<UnitTestCaseResult> testCases = new ArrayList<UnitTestCaseResult>();
-				
-				NodeList unitTestList = doc.getElementsByTagName("testcase");
-				if (unitTestList != null && unitTestList.getLength() > 0) {
-					for (int i = 0; i < unitTestList.getLength(); i++) {
-						Node unitTestNode = unitTestList.item(i);
-						if (unitTestNode.getNodeType() == Node.ELEMENT_NODE) {
-							UnitTestCaseResult caseResult = new UnitTestCaseResult();
-							
-							Element unitTestElement = (Element) unitTestNode;
-							// name
-							caseResult.setTestName(unitTestElement.getAttribute("name"));
-							// time
-							caseResult.setTime(Double.parseDouble(unitTestElement.getAttribute("time")));
-							// test case - assume it is a pass.
-							caseResult.setTestResult(UnitTestCaseResult.PASS);
-							
-							if(testDescriptions != null) {
-								caseResult.setTestDescription(testDescriptions.get(caseResult.getTestName()));
-							}
-							
-							// if failed
-							if(unitTestElement.hasChildNodes()){
-								Element failedUnitTestElement = (Element) unitTestNode.getChildNodes().item(1);
-								
-								// new result
-								caseResult.setTestResult(failedUnitTestElement.getNodeName());
-								// message
-								if(failedUnitTestElement.hasAttribute("message")){
-									caseResult.setTestMessage(failedUnitTestElement.getAttribute("message"));
-								}
-								// type
-								if(failedUnitTestElement.hasAttribute("type")){
-									caseResult.setType((failedUnitTestElement.getAttribute("type")));
-								}
-								// extended message
-								if(getText(failedUnitTestElement) != null){
-									String message = getText(failedUnitTestElement);
-									caseResult.setExtendedMessage(message);
-									
-									// Include error line number for Java submissions
-									if(errorContext != null && caseResult.getType() != null && caseResult.isError()) {
-										String find = "(\\(.+?\\.java:[0-9]+\\))";
-										Pattern p = Pattern.compile(find);
-										Matcher m = p.matcher(message);
-										boolean found = false;
-										while(m.find() && !found) {
-											String line = m.group();
-											for(String file : errorContext) {
-												if(line.contains(file)) {
-													caseResult.setType(caseResult.getType() + " at " + line);
-													found = true;
-													break;
-												}
-											}
-										}
-									}
-								}
-							}
-							testCases.add(caseResult);
-						}
-					}
-				}
-				result.setTestCases(testCases);
+			try{
+				result.setTestCases(new JUnitResultReader(errorContext, testDescriptions).read(testResults));
 				return result;
 			} 
 			catch (Exception e){
@@ -435,6 +512,90 @@ public class ResultDAO extends BaseDAO {
 		return null;
 	}
 	
+	/**
+	 * Build list items from rows selected by {@link #SUBMISSION_LIST_ITEM_HQL}
+	 * (or an equivalent projection), and add their marks. Marks are loaded 
+	 * with two aggregate queries per {@value #MAX_IN_LIST_SIZE} submissions
+	 * rather than by loading the results themselves.
+	 */
+	private List<SubmissionListItem> toSubmissionListItems(List<Object[]> rows) {
+		Map<Long, SubmissionListItem> items = new LinkedHashMap<>();
+		for(Object[] row : rows) {
+			Long id = (Long) row[0];
+			items.put(id, new SubmissionListItem(id, (PASTAUser) row[1], (PASTAUser) row[2], (Assessment) row[3],
+					(Date) row[4], (Boolean) row[5], (Boolean) row[6]));
+		}
+		
+		for(List<Long> ids : chunk(new ArrayList<>(items.keySet()))) {
+			@SuppressWarnings("unchecked")
+			List<Object[]> unitTestRows = sessionFactory.getCurrentSession()
+					.createQuery("select utr.assessmentResult.id, t.id, "
+							+ "sum(case when tc.testResult = '" + UnitTestCaseResult.PASS + "' then 1 else 0 end), count(tc.id) "
+							+ "from UnitTestResult utr join utr.weightedUnitTest wut join wut.test t left join utr.testCases tc "
+							+ "where utr.assessmentResult.id in (:ids) "
+							+ "group by utr.id, utr.assessmentResult.id, t.id")
+					.setParameterList("ids", ids)
+					.list();
+			for(Object[] row : unitTestRows) {
+				SubmissionListItem item = items.get(row[0]);
+				Number passed = (Number) row[2];
+				Number total = (Number) row[3];
+				item.addUnitTestResult((Long) row[1], passed == null ? 0 : passed.longValue(), total == null ? 0 : total.longValue());
+			}
+			
+			@SuppressWarnings("unchecked")
+			List<HandMarkingResult> handMarkingResults = sessionFactory.getCurrentSession()
+					.createQuery("select distinct h from HandMarkingResult h join fetch h.assessmentResult ar "
+							+ "left join fetch h.result where ar.id in (:ids)")
+					.setParameterList("ids", ids)
+					.list();
+			for(HandMarkingResult result : handMarkingResults) {
+				items.get(result.getAssessmentResult().getId()).addHandMarkingResult(result);
+			}
+		}
+		return new ArrayList<>(items.values());
+	}
+	
+	private static <T> List<List<T>> chunk(List<T> values) {
+		List<List<T>> chunks = new LinkedList<>();
+		for(int i = 0; i < values.size(); i += MAX_IN_LIST_SIZE) {
+			chunks.add(values.subList(i, Math.min(values.size(), i + MAX_IN_LIST_SIZE)));
+		}
+		return chunks;
+	}
+	
+	/**
+	 * Prepare a result for use once it is detached: bring its hand marking
+	 * results up to date with the assessment and load its details.
+	 */
+	private void loadDetails(AssessmentResult result) {
+		refreshHandMarking(result);
+		initialiseDetails(result);
+	}
+	
+	/**
+	 * The unit test and hand marking details of a result are loaded lazily. 
+	 * Initialise them so the result can be used after the session is closed.
+	 * When this is called for each result of a list, the collections are 
+	 * loaded in batches rather than one query per result.
+	 * 
+	 * @param result the result to initialise
+	 */
+	static void initialiseDetails(AssessmentResult result) {
+		Hibernate.initialize(result.getHandMarkingResults());
+		for(UnitTestResult utResult : result.getUnitTests()) {
+			initialiseDetails(utResult);
+		}
+	}
+	
+	static void initialiseDetails(UnitTestResult result) {
+		if(result == null) {
+			return;
+		}
+		Hibernate.initialize(result.getTestCases());
+		Hibernate.initialize(result.getValidationErrors());
+	}
+
 	private void refreshHandMarking(AssessmentResult result) {
 		List<HandMarkingResult> oldResults = new ArrayList<HandMarkingResult>(result.getHandMarkingResults());
 		result.getHandMarkingResults().clear();
@@ -498,37 +659,55 @@ public class ResultDAO extends BaseDAO {
 				.list();
 	}
 
-	private static String getText(Element element) {
-		StringBuffer stringBuffer = new StringBuffer();
-		NodeList elementChildren = element.getChildNodes();
-		boolean found = false;
-		for (int i = 0; i < elementChildren.getLength(); i++) {
-		  Node node = elementChildren.item(i);
-		  if (node.getNodeType() == Node.TEXT_NODE) {
-		    stringBuffer.append(node.getNodeValue());
-		    found = true;
-		  }
-		}
-		return found ? stringBuffer.toString() : null;
+	/**
+	 * Receives rows read by a scrolling query, one at a time.
+	 */
+	public interface RowHandler {
+		public void handle(Object[] row) throws IOException;
 	}
-
-	@SuppressWarnings("unchecked")
-	public List<Object[]> getAllTestCaseDetails() {
+	
+	/**
+	 * Read the outcome of every test case of every submission, in submission 
+	 * then test case order, passing each row to the handler as it is read 
+	 * rather than loading them all.
+	 * <p>
+	 * Columns: submission_id, test_case, result, test_case_weight
+	 * 
+	 * @param assessmentId only include submissions for this assessment, or null for all
+	 * @param from only include submissions made on or after this date, or null
+	 * @param to only include submissions made before this date, or null
+	 * @param handler the handler for each row
+	 */
+	public void scrollAllTestCaseDetails(Long assessmentId, Date from, Date to, RowHandler handler) throws IOException {
+		String where = getReportFilter(assessmentId, from, to);
 		String sql = "SELECT ar.id AS 'submission_id', utcr.name AS 'test_case', utcr.result, (wut.weight / tcc.test_case_count) AS 'test_case_weight' " + 
 				"FROM assessment_results ar " + 
 				"INNER JOIN unit_test_results utr ON ar.id = utr.assessment_result_id " + 
 				"INNER JOIN unit_test_case_results utcr ON utcr.unit_test_result_id = utr.id " + 
 				"INNER JOIN weighted_unit_tests wut ON wut.id = utr.weighted_unit_test_id " + 
 				"INNER JOIN ( " + 
-				"  SELECT unit_test_result_id AS 'utr_id', count(*) AS 'test_case_count' FROM unit_test_case_results GROUP BY unit_test_result_id " + 
+				getTestCaseCounts(assessmentId, from, to) + 
 				") AS tcc ON tcc.utr_id = utr.id " + 
+				where + 
 				"ORDER BY ar.id, utcr.name";
-		SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(sql);
-		return query.list();
+		scroll(sessionFactory.getCurrentSession().createSQLQuery(sql), assessmentId, from, to, handler);
 	}
 	
-	@SuppressWarnings("unchecked")
-	public List<Object[]> getAllSubmissionDetails() {
+	/**
+	 * Read the details of every submission in submission date order, passing
+	 * each row to the handler as it is read rather than loading them all.
+	 * <p>
+	 * Columns: submission_id, assessment_id, assessment_name, 
+	 * assessment_release_date, assessment_due_date, auto_mark_weighted_percentage,
+	 * submission_date, user, permission_level, submitted_by, group_members
+	 * 
+	 * @param assessmentId only include submissions for this assessment, or null for all
+	 * @param from only include submissions made on or after this date, or null
+	 * @param to only include submissions made before this date, or null
+	 * @param handler the handler for each row
+	 */
+	public void scrollAllSubmissionDetails(Long assessmentId, Date from, Date to, RowHandler handler) throws IOException {
+		String where = getReportFilter(assessmentId, from, to);
 		String sql = "SELECT ar.id AS 'submission_id', a.id AS 'assessment_id', a.name AS 'assessment_name', " + 
 				"rd.date AS 'assessment_release_date', a.dueDate AS 'assessment_due_date', " + 
 				"grades.auto_percent * 100.0 AS 'auto_mark_weighted_percentage', " + 
@@ -545,25 +724,78 @@ public class ResultDAO extends BaseDAO {
 				"  SELECT ag.id AS 'group_id', GROUP_CONCAT(u.username SEPARATOR ',') AS 'members' FROM assessment_groups ag INNER JOIN assessment_group_members agm ON (ag.id = agm.assessment_group_id) inner join users u on (agm.user_id = u.id) group by ag.id " + 
 				") agm ON (agm.group_id = ar.user_id) " + 
 				"INNER JOIN ( " + 
-				"  SELECT ar.id AS submission_id, (SUM(((correct.pass_test_case_count / tcc.test_case_count) * wut.weight)) / SUM(wut.weight)) AS auto_percent " + 
+				"  SELECT ar.id AS submission_id, (SUM(((tcc.pass_test_case_count / tcc.test_case_count) * wut.weight)) / SUM(wut.weight)) AS auto_percent " + 
 				"  FROM assessment_results ar " + 
 				"  INNER JOIN unit_test_results utr ON ar.id = utr.assessment_result_id " + 
 				"  INNER JOIN weighted_unit_tests wut ON wut.id = utr.weighted_unit_test_id " + 
 				"  INNER JOIN ( " + 
-				"    SELECT unit_test_result_id AS 'utr_id', count(*) AS 'test_case_count' " + 
-				"    FROM unit_test_case_results " + 
-				"    GROUP BY unit_test_result_id " + 
+				getTestCaseCounts(assessmentId, from, to) + 
 				"  ) AS tcc ON tcc.utr_id = utr.id " + 
-				"  INNER JOIN ( " + 
-				"    SELECT unit_test_result_id AS 'utr_id', SUM(result='pass') AS 'pass_test_case_count' " + 
-				"    FROM unit_test_case_results " + 
-				"    GROUP BY unit_test_result_id " + 
-				"  ) AS correct ON correct.utr_id = utr.id " + 
+				"  " + where + 
 				"  GROUP BY ar.id " + 
 				") AS grades ON grades.submission_id = ar.id " + 
+				where + 
 				"ORDER BY ar.submission_date";
-		SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(sql);
-		return query.list();
+		scroll(sessionFactory.getCurrentSession().createSQLQuery(sql), assessmentId, from, to, handler);
+	}
+	
+	/**
+	 * The number of test cases and of passed test cases of each unit test 
+	 * result, for use as a derived table. If the report is filtered, only 
+	 * results of matching submissions are counted, so that a filtered report
+	 * does not aggregate every test case result in the database.
+	 * <p>
+	 * Columns: utr_id, test_case_count, pass_test_case_count
+	 */
+	private static String getTestCaseCounts(Long assessmentId, Date from, Date to) {
+		String sql = "SELECT tc_utcr.unit_test_result_id AS 'utr_id', count(*) AS 'test_case_count', " + 
+				"SUM(tc_utcr.result='pass') AS 'pass_test_case_count' " + 
+				"FROM unit_test_case_results tc_utcr ";
+		if(assessmentId != null || from != null || to != null) {
+			sql += "INNER JOIN unit_test_results tc_utr ON tc_utr.id = tc_utcr.unit_test_result_id " + 
+					"INNER JOIN assessment_results ar ON ar.id = tc_utr.assessment_result_id " + 
+					getReportFilter(assessmentId, from, to);
+		}
+		return sql + "GROUP BY tc_utcr.unit_test_result_id ";
+	}
+	
+	private static String getReportFilter(Long assessmentId, Date from, Date to) {
+		StringBuilder where = new StringBuilder("WHERE 1 = 1 ");
+		if(assessmentId != null) {
+			where.append("AND ar.assessment_id = :assessmentId ");
+		}
+		if(from != null) {
+			where.append("AND ar.submission_date >= :from ");
+		}
+		if(to != null) {
+			where.append("AND ar.submission_date < :to ");
+		}
+		return where.toString();
+	}
+	
+	private static void scroll(SQLQuery query, Long assessmentId, Date from, Date to, RowHandler handler) throws IOException {
+		if(assessmentId != null) {
+			query.setLong("assessmentId", assessmentId);
+		}
+		if(from != null) {
+			query.setTimestamp("from", from);
+		}
+		if(to != null) {
+			query.setTimestamp("to", to);
+		}
+		// Integer.MIN_VALUE makes the MySQL driver stream rows instead of 
+		// reading the whole result set into memory
+		ScrollableResults rows = query
+				.setReadOnly(true)
+				.setFetchSize(Integer.MIN_VALUE)
+				.scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			while(rows.next()) {
+				handler.handle(rows.get());
+			}
+		} finally {
+			rows.close();
+		}
 	}
 
 	public List<AssessmentResult> getAllResultsForAssessment(Assessment assessment) {
@@ -573,7 +805,7 @@ public class ResultDAO extends BaseDAO {
 		List<AssessmentResult> results = cr.list();
 		if(results != null) {
 			for(AssessmentResult result : results) {
-				refreshHandMarking(result);
+				loadDetails(result);
 			}
 		}
 		return results;
@@ -586,7 +818,7 @@ public class ResultDAO extends BaseDAO {
 		List<AssessmentResult> results = cr.list();
 		if(results != null) {
 			for(AssessmentResult result : results) {
-				refreshHandMarking(result);
+				loadDetails(result);
 			}
 		}
 		return results;
@@ -598,6 +830,130 @@ public class ResultDAO extends BaseDAO {
 		cr.add(Restrictions.eq("id.user", user));
 		return cr.list();
 	}
+	/**
+	 * Get the unit test case outcomes of every user's latest individual
+	 * submission for an assessment, in one query.
+	 * <p>
+	 * Each row is (user id, test case name, result). A latest submission
+	 * with no test case results gives a single row with a null name and
+	 * result, so that the user is still counted as having submitted.
+	 * 
+	 * @param assessmentId the id of the assessment
+	 * @return the list of rows
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Object[]> getLatestTestCaseOutcomes(long assessmentId) {
+		String sql = "SELECT ar.user_id, utcr.name, utcr.result " + 
+				"FROM assessment_results ar " + 
+				"INNER JOIN ( " + 
+				"  SELECT user_id, MAX(submission_date) AS latest FROM assessment_results WHERE assessment_id = :assessmentId GROUP BY user_id " + 
+				") AS latest ON latest.user_id = ar.user_id AND latest.latest = ar.submission_date " + 
+				"LEFT OUTER JOIN unit_test_results utr ON utr.assessment_result_id = ar.id " + 
+				"LEFT OUTER JOIN unit_test_case_results utcr ON utcr.unit_test_result_id = utr.id " + 
+				"WHERE ar.assessment_id = :assessmentId";
+		SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(sql);
+		query.setLong("assessmentId", assessmentId);
+		return query.list();
+	}
+	
+	/*
+	 * Submission times of each active student for an assessment, including
+	 * submissions made by a group they belong to for that assessment.
+	 */
+	private static final String STUDENT_SUBMISSIONS_SQL = 
+			"SELECT u.id AS user_id, ar.submission_date " + 
+			"FROM users u " + 
+			"INNER JOIN assessment_results ar ON ar.user_id = u.id AND ar.assessment_id = :assessmentId " + 
+			"WHERE u.active = 1 AND u.permission_level = 'STUDENT' " + 
+			"UNION ALL " + 
+			"SELECT u.id AS user_id, ar.submission_date " + 
+			"FROM users u " + 
+			"INNER JOIN assessment_group_members agm ON agm.user_id = u.id " + 
+			"INNER JOIN assessment_groups ag ON ag.id = agm.assessment_group_id AND ag.assessment_id = :assessmentId " + 
+			"INNER JOIN assessment_results ar ON ar.user_id = ag.id AND ar.assessment_id = :assessmentId " + 
+			"WHERE u.active = 1 AND u.permission_level = 'STUDENT'";
+	
+	/**
+	 * Count the distinct submissions made by or for active students on each
+	 * day. A group submission is counted once.
+	 * 
+	 * @param assessmentId the id of the assessment
+	 * @return rows of (day, submission count)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Object[]> getDailySubmissionCounts(long assessmentId) {
+		String sql = "SELECT DATE(sub.submission_date) AS day, COUNT(DISTINCT sub.submission_date) " + 
+				"FROM (" + STUDENT_SUBMISSIONS_SQL + ") AS sub " + 
+				"GROUP BY DATE(sub.submission_date)";
+		SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(sql);
+		query.setLong("assessmentId", assessmentId);
+		return query.list();
+	}
+	
+	/**
+	 * Get the time of each active student's first submission (individual or
+	 * group) for an assessment. Students who have not submitted are not
+	 * included.
+	 * 
+	 * @param assessmentId the id of the assessment
+	 * @return rows of (user id, first submission date)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Object[]> getFirstSubmissionDates(long assessmentId) {
+		String sql = "SELECT sub.user_id, MIN(sub.submission_date) " + 
+				"FROM (" + STUDENT_SUBMISSIONS_SQL + ") AS sub " + 
+				"GROUP BY sub.user_id";
+		SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(sql);
+		query.setLong("assessmentId", assessmentId);
+		return query.list();
+	}
+	
+	/**
+	 * Get the active students who have made no submission (individual or
+	 * group) for an assessment.
+	 * 
+	 * @param assessmentId the id of the assessment
+	 * @return rows of (user id, username)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Object[]> getStudentsWithoutSubmission(long assessmentId) {
+		String sql = "SELECT u.id, u.username FROM users u " + 
+				"WHERE u.active = 1 AND u.permission_level = 'STUDENT' " + 
+				"AND u.id NOT IN (SELECT sub.user_id FROM (" + STUDENT_SUBMISSIONS_SQL + ") AS sub)";
+		SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(sql);
+		query.setLong("assessmentId", assessmentId);
+		return query.list();
+	}
+	
+	/**
+	 * Get every cached result summary as a bare (user id, assessment id,
+	 * percentage) row, without loading the user or assessment entities.
+	 * 
+	 * @return the list of summary rows
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Object[]> getAllResultSummaryCells() {
+		return sessionFactory.getCurrentSession()
+				.createQuery("select s.id.user.id, s.id.assessment.id, s.percent from AssessmentResultSummary s")
+				.list();
+	}
+	
+	/**
+	 * @param userId the ID of the user
+	 * @param assessmentId the ID of the assessment
+	 * @return the percentage of the user's summary for the assessment, or
+	 *         null if they have none
+	 */
+	public Double getResultSummaryPercentage(long userId, long assessmentId) {
+		Number percentage = (Number) sessionFactory.getCurrentSession()
+				.createQuery("select s.percent from AssessmentResultSummary s "
+						+ "where s.id.user.id = :userId and s.id.assessment.id = :assessmentId")
+				.setLong("userId", userId)
+				.setLong("assessmentId", assessmentId)
+				.uniqueResult();
+		return percentage == null ? null : percentage.doubleValue();
+	}
+	
 	@SuppressWarnings("unchecked")
 	public List<AssessmentResultSummary> getAllResultSummariesForAssessment(Assessment assessment) {
 		Criteria cr = sessionFactory.getCurrentSession().createCriteria(AssessmentResultSummary.class);
@@ -46,11 +46,18 @@ public class UnitTestDAO extends BaseDAO {
 	
 	@SuppressWarnings("unchecked")
 	public List<UnitTest> getAllUnitTests() {
-		return sessionFactory.getCurrentSession().createCriteria(UnitTest.class).list();
+		return sessionFactory.getCurrentSession().createCriteria(UnitTest.class)
+				.setCacheable(true)
+				.setCacheRegion(QUERY_CACHE_REGION)
+				.list();
 	}
 
 	public UnitTest getUnitTest(long id) {
-		return (UnitTest) sessionFactory.getCurrentSession().get(UnitTest.class, id);
+		UnitTest test = (UnitTest) sessionFactory.getCurrentSession().get(UnitTest.class, id);
+		if(test != null) {
+			ResultDAO.initialiseDetails(test.getTestResult());
+		}
+		return test;
 	}
 	
 	public WeightedUnitTest getWeightedUnitTest(long id) {
@@ -155,6 +155,7 @@ public class UserDAO extends BaseDAO {
 	public PASTAUser getUser(String username){
 		Criteria cr = sessionFactory.getCurrentSession().createCriteria(PASTAUser.class);
 		cr.add(Restrictions.eq("username", username));
+		cr.setCacheable(true).setCacheRegion(QUERY_CACHE_REGION);
 		@SuppressWarnings("unchecked")
 		List<PASTAUser> results = cr.list();
 		if(results.isEmpty()) {
@@ -237,7 +238,10 @@ public class UserDAO extends BaseDAO {
 	@SuppressWarnings("unchecked")
 	private List<PASTAUser> getUserList(boolean includeInactive, boolean includeGroups, UserPermissionLevel permissionLevel) {
 		if(includeInactive && includeGroups && permissionLevel == null) {
-			return sessionFactory.getCurrentSession().createCriteria(PASTAUser.class).list();
+			return sessionFactory.getCurrentSession().createCriteria(PASTAUser.class)
+					.setCacheable(true)
+					.setCacheRegion(QUERY_CACHE_REGION)
+					.list();
 		} else {
 			Criteria cr = sessionFactory.getCurrentSession().createCriteria(PASTAUser.class);
 			if(!includeInactive)
@@ -257,6 +261,7 @@ public class UserDAO extends BaseDAO {
 					cr.add(Restrictions.eq("permissionLevel", permissionLevel));
 				}
 			}
+			cr.setCacheable(true).setCacheRegion(QUERY_CACHE_REGION);
 			return cr.list();
 		}
 	}
@@ -30,6 +30,8 @@ import java.util.Date;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -87,17 +89,34 @@ public class AssessmentJob extends Job implements Serializable{
 	
 	private boolean running;
 	
+	@Enumerated(EnumType.STRING)
+	private JobPriority priority;
+	
+	/**
+	 * The {@link ExecutionNode} that has claimed this job, or null if unclaimed
+	 */
+	@Column(name = "owner")
+	private String owner;
+	
+	@Column(name = "lease_expiry")
+	private Date leaseExpiry;
+	
 	@Transient
 	private Language language;
 	
 	public AssessmentJob(){}
 	
 	public AssessmentJob(PASTAUser user, long assessmentId, Date runDate, AssessmentResult result){
+		this(user, assessmentId, runDate, result, JobPriority.INTERACTIVE);
+	}
+	
+	public AssessmentJob(PASTAUser user, long assessmentId, Date runDate, AssessmentResult result, JobPriority priority){
 		super(runDate);
 		this.user = user;
 		this.assessmentId = assessmentId;
 		this.results = result;
 		this.running = false;
+		this.priority = priority;
 	}
 
 	public PASTAUser getUser() {
@@ -128,6 +147,27 @@ public class AssessmentJob extends Job implements Serializable{
 		this.running = running;
 	}
 	
+	public JobPriority getPriority() {
+		return priority == null ? JobPriority.INTERACTIVE : priority;
+	}
+	public void setPriority(JobPriority priority) {
+		this.priority = priority;
+	}
+	
+	public String getOwner() {
+		return owner;
+	}
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+	
+	public Date getLeaseExpiry() {
+		return leaseExpiry;
+	}
+	public void setLeaseExpiry(Date leaseExpiry) {
+		this.leaseExpiry = leaseExpiry;
+	}
+	
 	public Language getLanguage() {
 		if(language != null) {
 			return language;
@@ -149,6 +189,8 @@ public class AssessmentJob extends Job implements Serializable{
 				" job for " + user.getUsername() + 
 				" submitted at " + results.getSubmissionDate() + 
 				" by " + results.getSubmittedBy().getUsername() +
-				(running ? " (running)" : ""); 
+				(getPriority() == JobPriority.INTERACTIVE ? "" : " [" + getPriority() + "]") +
+				(running ? " (running)" : "") +
+				(owner == null ? "" : " on " + owner); 
 	}
 }
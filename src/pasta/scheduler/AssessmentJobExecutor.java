@@ -24,68 +24,137 @@ SOFTWARE.
 
 package pasta.scheduler;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.annotation.PostConstruct;
+
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import pasta.repository.ResultDAO;
 import pasta.service.ExecutionManager;
+import pasta.service.reporting.TestCaseStatsManager;
 
-public class AssessmentJobExecutor extends ThreadPoolExecutor {
+public class AssessmentJobExecutor extends ThreadPoolExecutor implements JobDispatcher {
 
 	protected Logger logger = Logger.getLogger(getClass());
 	
 	@Autowired private ResultDAO resultDAO;
+	@Autowired private TestCaseStatsManager testCaseStatsManager;
 	@Autowired private ExecutionScheduler scheduler;
 	@Autowired protected ExecutionManager executionManager;
 
 	private ConcurrentSkipListSet<Long> processingIds;
-	private ConcurrentSkipListSet<Long> executingIds;
+	private ConcurrentMap<Long, AssessmentJob> executing;
 	private ConcurrentMap<String, Lock> locks;
 	
 	public AssessmentJobExecutor(int corePoolSize, int maxPoolSize) {
-		super(corePoolSize, maxPoolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+		this(corePoolSize, maxPoolSize, DispatchPolicy.DUE_DATE, 1.0);
+	}
+	
+	public AssessmentJobExecutor(int corePoolSize, int maxPoolSize, DispatchPolicy policy, double agingFactor) {
+		super(corePoolSize, maxPoolSize, 60, TimeUnit.SECONDS, new AssessmentJobQueue(policy, agingFactor));
 		locks = new ConcurrentHashMap<String, Lock>();
 		processingIds = new ConcurrentSkipListSet<Long>();
-		executingIds = new ConcurrentSkipListSet<Long>();
+		executing = new ConcurrentHashMap<Long, AssessmentJob>();
+	}
+	
+	@PostConstruct
+	public void registerWithScheduler() {
+		scheduler.setDispatcher(this);
 	}
 	
+	@Override
 	public boolean offer(AssessmentJob job) {
 		logger.trace("Offering " + job.toString());
 		if(executionManager == null) {
 			logger.warn("Rejecting job: no execution manager.");
 			return false;
 		}
-		if(hasJob(job)) {
+		if(!processingIds.add(job.getId())) {
 			logger.trace("Rejecting job - already have it");
 			return false;
 		}
+		boolean claimed = false;
+		try {
+			claimed = scheduler.claim(job);
+		} catch(Exception e) {
+			logger.error("Unable to claim assessment job #" + job.getId(), e);
+		}
+		if(!claimed) {
+			logger.trace("Rejecting job - claimed by another node");
+			processingIds.remove(job.getId());
+			return false;
+		}
 		logger.trace("Accepting job");
-		processingIds.add(job.getId());
 		execute(new AssessmentJobTask(job, executionManager, locks));
 		return true;
 	}
 	
+	public void setDispatchPolicy(DispatchPolicy policy) {
+		((AssessmentJobQueue) getQueue()).setPolicy(policy);
+	}
+	
+	public void setAgingFactor(double agingFactor) {
+		((AssessmentJobQueue) getQueue()).setAgingFactor(agingFactor);
+	}
+	
 	public boolean hasJob(AssessmentJob job) {
 		return processingIds.contains(job.getId());
 	}
 	
+	@Override
+	public boolean hasCapacity() {
+		return getActiveCount() + getQueue().size() < getMaximumPoolSize();
+	}
+	
+	/**
+	 * @return the IDs of all jobs this executor has claimed, queued or running
+	 */
+	public List<Long> getHeldJobIds() {
+		return new ArrayList<>(processingIds);
+	}
+	
+	/**
+	 * Stop accepting jobs and release the claims on jobs that have not 
+	 * started yet, so that other nodes can pick them up. Running jobs are 
+	 * left to finish.
+	 */
+	public void shutdownAndRelease() {
+		List<Runnable> pending = new ArrayList<>();
+		getQueue().drainTo(pending);
+		shutdown();
+		List<Long> ids = new ArrayList<>();
+		for(Runnable r : pending) {
+			ids.add(((AssessmentJobTask) r).getJob().getId());
+		}
+		try {
+			scheduler.releaseLeases(ids);
+		} catch(Exception e) {
+			logger.error("Unable to release assessment job claims", e);
+		}
+	}
+	
 	@Override
 	protected void beforeExecute(Thread t, Runnable r) {
 		super.beforeExecute(t, r);
 		AssessmentJobTask task = (AssessmentJobTask) r;
-		executingIds.add(task.job.getId());
-		task.job.setRunning(true);
-		scheduler.update(task.job);
+		executing.put(task.job.getId(), task.job);
+		try {
+			scheduler.setRunning(task.job, true);
+		} catch(Exception e) {
+			logger.error("Unable to mark assessment job #" + task.job.getId() + " as running", e);
+		}
 		logger.debug("Starting execution of " + r.toString());
 	}
 	
@@ -99,15 +168,23 @@ public class AssessmentJobExecutor extends ThreadPoolExecutor {
 		}
 		task.job.getResults().setWaitingToRun(false);
 		try {
+			long start = System.currentTimeMillis();
 			resultDAO.update(task.job.getResults());
+			logger.debug("Saved results of assessment job #" + task.job.getId() + " in " 
+					+ (System.currentTimeMillis() - start) + "ms");
+			testCaseStatsManager.invalidate(task.job.getResults().getAssessment().getId());
 		} catch(Exception e) {
 			logger.error("Unable to update results from assessment job #" + task.job.getId(), e);
 		}
 		task.job.setRunning(false);
-		scheduler.update(task.job);
+		// Delete before releasing the ID so a reconciliation pass cannot re-offer a finished job
+		try {
+			scheduler.finish(task.job);
+		} catch(Exception e) {
+			logger.error("Unable to delete finished assessment job #" + task.job.getId(), e);
+		}
 		processingIds.remove(task.job.getId());
-		executingIds.remove(task.job.getId());
-		scheduler.delete(task.job);
+		executing.remove(task.job.getId());
 	}
 	
 	public void clearAllTasks() {
@@ -117,12 +194,29 @@ public class AssessmentJobExecutor extends ThreadPoolExecutor {
 			it.remove();
 		}
 		processingIds.clear();
-		executingIds.clear();
+		executing.clear();
 		locks.clear();
 	}
 	
 	public boolean isExecuting(AssessmentJob job) {
-		return executingIds.contains(job.getId());
+		return executing.containsKey(job.getId());
+	}
+	
+	/**
+	 * Get all jobs this executor has, in the order they are being run: jobs 
+	 * that are currently running (oldest first) followed by queued jobs in
+	 * the order they will be dispatched.
+	 * 
+	 * @return the list of running and queued jobs
+	 */
+	@Override
+	public List<AssessmentJob> getJobQueue() {
+		List<AssessmentJob> jobs = new ArrayList<>(executing.values());
+		jobs.sort(Comparator.comparing(AssessmentJob::getRunDate));
+		for(Runnable r : ((AssessmentJobQueue) getQueue()).getOrderedTasks()) {
+			jobs.add(((AssessmentJobTask) r).getJob());
+		}
+		return jobs;
 	}
 	
 	static class AssessmentJobTask implements Runnable {
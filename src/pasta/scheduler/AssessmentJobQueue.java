@@ -0,0 +1,420 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.scheduler;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The work queue of the {@link AssessmentJobExecutor}.
+ * <p>
+ * Rather than first-in first-out, tasks are ordered by:
+ * <ol>
+ * <li>the {@link JobPriority} of the job, so that new submissions are run 
+ * before tutor re-runs, which are run before bulk re-runs;</li>
+ * <li>a per-user fair share round within each priority, so that a user with
+ * many jobs queued gets one job run per round rather than all of them before 
+ * anyone else;</li>
+ * <li>the {@link DispatchPolicy}: either the due date of the assessment, or 
+ * the estimated run time of the job less an aging allowance for the time it
+ * has spent waiting;</li>
+ * <li>the submission date, earliest first.</li>
+ * </ol>
+ * Fair share rounds work like a virtual clock: a job is placed in the round
+ * after the last queued job by the same user, but never earlier than the 
+ * round currently being run.
+ * <p>
+ * Aging only reorders jobs within the same priority and round. A job that has
+ * waited a long time is never run ahead of a job of a lower priority class, 
+ * nor ahead of a job from an earlier round; it only overtakes shorter jobs 
+ * that are level with it on both.
+ * <p>
+ * Under {@link DispatchPolicy#DUE_DATE} the queue is a heap, so taking a task
+ * costs O(log n). Under {@link DispatchPolicy#SHORTEST_FIRST} the effective 
+ * cost of every job changes as time passes, so no fixed heap order holds and 
+ * each take or peek scans the whole queue in O(n). With queues of at most a 
+ * few thousand jobs, each of which takes seconds to run, the scan is cheap.
+ */
+public class AssessmentJobQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+	private final ReentrantLock lock;
+	private final Condition notEmpty;
+	
+	private final PriorityQueue<QueueEntry> queue;
+	private final Map<JobPriority, Long> currentRound;
+	private final Map<JobPriority, Map<String, Long>> lastUserRound;
+	private long sequence;
+	
+	private volatile DispatchPolicy policy;
+	private volatile double agingFactor;
+	
+	public AssessmentJobQueue() {
+		this(DispatchPolicy.DUE_DATE, 1.0);
+	}
+	
+	/**
+	 * @param policy the order of jobs within a priority and round
+	 * @param agingFactor for {@link DispatchPolicy#SHORTEST_FIRST}, the number
+	 * of milliseconds taken off a job's estimated run time for each 
+	 * millisecond it has been waiting
+	 */
+	public AssessmentJobQueue(DispatchPolicy policy, double agingFactor) {
+		this.lock = new ReentrantLock();
+		this.notEmpty = lock.newCondition();
+		this.queue = new PriorityQueue<>(QueueEntry.DUE_DATE_ORDER);
+		this.currentRound = new EnumMap<>(JobPriority.class);
+		this.lastUserRound = new EnumMap<>(JobPriority.class);
+		for(JobPriority priority : JobPriority.values()) {
+			currentRound.put(priority, 0L);
+			lastUserRound.put(priority, new HashMap<>());
+		}
+		this.sequence = 0;
+		setPolicy(policy);
+		setAgingFactor(agingFactor);
+	}
+	
+	public DispatchPolicy getPolicy() {
+		return policy;
+	}
+	public void setPolicy(DispatchPolicy policy) {
+		this.policy = policy == null ? DispatchPolicy.DUE_DATE : policy;
+	}
+	
+	public double getAgingFactor() {
+		return agingFactor;
+	}
+	public void setAgingFactor(double agingFactor) {
+		this.agingFactor = Math.max(0, agingFactor);
+	}
+	
+	@Override
+	public boolean offer(Runnable task) {
+		if(task == null) {
+			throw new NullPointerException();
+		}
+		// Estimating may touch the file system, so do it before locking
+		long estimate = 0;
+		AssessmentJob job = null;
+		if(task instanceof AssessmentJobExecutor.AssessmentJobTask) {
+			job = ((AssessmentJobExecutor.AssessmentJobTask) task).getJob();
+			estimate = estimate(job);
+		}
+		lock.lock();
+		try {
+			queue.add(createEntry(task, job, estimate));
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return the estimated run time of the job in milliseconds, or 0 if it 
+	 * cannot be estimated
+	 */
+	long estimate(AssessmentJob job) {
+		try {
+			return ExecutionEstimator.estimateTime(job);
+		} catch(RuntimeException e) {
+			return 0;
+		}
+	}
+	
+	long now() {
+		return System.currentTimeMillis();
+	}
+	
+	private QueueEntry createEntry(Runnable task, AssessmentJob job, long estimate) {
+		JobPriority priority = JobPriority.INTERACTIVE;
+		String user = null;
+		Date dueDate = null;
+		Date runDate = null;
+		if(job != null) {
+			priority = job.getPriority();
+			user = job.getUser().getUsername();
+			runDate = job.getRunDate();
+			if(job.getResults() != null && job.getResults().getAssessment() != null) {
+				dueDate = job.getResults().getAssessment().getDueDate();
+			}
+		}
+		
+		long round = currentRound.get(priority);
+		if(user != null) {
+			Map<String, Long> userRounds = lastUserRound.get(priority);
+			Long last = userRounds.get(user);
+			if(last != null && last + 1 > round) {
+				round = last + 1;
+			}
+			userRounds.put(user, round);
+		}
+		return new QueueEntry(task, priority, round, dueDate, runDate, estimate, 
+				now(), sequence++);
+	}
+	
+	private Comparator<QueueEntry> currentOrder() {
+		if(policy == DispatchPolicy.SHORTEST_FIRST) {
+			return QueueEntry.shortestFirst(now(), agingFactor);
+		}
+		return QueueEntry.DUE_DATE_ORDER;
+	}
+	
+	private Runnable dequeue() {
+		QueueEntry entry;
+		if(policy == DispatchPolicy.SHORTEST_FIRST) {
+			// Effective cost changes as jobs wait, so the heap order cannot be used
+			entry = queue.stream().min(currentOrder()).orElse(null);
+			if(entry != null) {
+				queue.remove(entry);
+			}
+		} else {
+			entry = queue.poll();
+		}
+		if(entry == null) {
+			return null;
+		}
+		if(entry.round > currentRound.get(entry.priority)) {
+			currentRound.put(entry.priority, entry.round);
+			// Users whose last job is in a past round no longer affect placement
+			lastUserRound.get(entry.priority).values().removeIf(round -> round < entry.round);
+		}
+		return entry.task;
+	}
+	
+	@Override
+	public Runnable poll() {
+		lock.lock();
+		try {
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public Runnable take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while(queue.isEmpty()) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while(queue.isEmpty()) {
+				if(nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void put(Runnable task) {
+		offer(task);
+	}
+	
+	@Override
+	public boolean offer(Runnable task, long timeout, TimeUnit unit) {
+		return offer(task);
+	}
+	
+	@Override
+	public Runnable peek() {
+		lock.lock();
+		try {
+			QueueEntry entry = queue.stream().min(currentOrder()).orElse(null);
+			return entry == null ? null : entry.task;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+	
+	@Override
+	public boolean remove(Object task) {
+		lock.lock();
+		try {
+			return queue.removeIf(entry -> entry.task == task);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public int drainTo(Collection<? super Runnable> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+	
+	@Override
+	public int drainTo(Collection<? super Runnable> c, int maxElements) {
+		if(c == this) {
+			throw new IllegalArgumentException();
+		}
+		lock.lock();
+		try {
+			int count = 0;
+			while(count < maxElements && !queue.isEmpty()) {
+				c.add(dequeue());
+				count++;
+			}
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return a snapshot of the queued tasks, in the order they will be run
+	 */
+	public List<Runnable> getOrderedTasks() {
+		List<QueueEntry> entries;
+		Comparator<QueueEntry> order;
+		lock.lock();
+		try {
+			entries = new ArrayList<>(queue);
+			order = currentOrder();
+		} finally {
+			lock.unlock();
+		}
+		entries.sort(order);
+		List<Runnable> tasks = new ArrayList<>(entries.size());
+		for(QueueEntry entry : entries) {
+			tasks.add(entry.task);
+		}
+		return tasks;
+	}
+	
+	/**
+	 * Iterates over a snapshot of the queue, in the order tasks will be run.
+	 * Removing through the iterator removes the task from the queue.
+	 */
+	@Override
+	public Iterator<Runnable> iterator() {
+		final Iterator<Runnable> snapshot = getOrderedTasks().iterator();
+		return new Iterator<Runnable>() {
+			private Runnable last;
+			@Override
+			public boolean hasNext() {
+				return snapshot.hasNext();
+			}
+			@Override
+			public Runnable next() {
+				if(!snapshot.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				last = snapshot.next();
+				return last;
+			}
+			@Override
+			public void remove() {
+				if(last == null) {
+					throw new IllegalStateException();
+				}
+				AssessmentJobQueue.this.remove(last);
+				last = null;
+			}
+		};
+	}
+	
+	private static class QueueEntry {
+		static final Comparator<QueueEntry> DUE_DATE_ORDER = Comparator
+				.comparing((QueueEntry e) -> e.priority)
+				.thenComparingLong(e -> e.round)
+				.thenComparing(e -> e.dueDate, Comparator.nullsLast(Comparator.naturalOrder()))
+				.thenComparing(e -> e.runDate, Comparator.nullsLast(Comparator.naturalOrder()))
+				.thenComparingLong(e -> e.sequence);
+		
+		static Comparator<QueueEntry> shortestFirst(long now, double agingFactor) {
+			return Comparator
+					.comparing((QueueEntry e) -> e.priority)
+					.thenComparingLong(e -> e.round)
+					.thenComparingDouble(e -> e.estimate - agingFactor * (now - e.queuedAt))
+					.thenComparing(e -> e.runDate, Comparator.nullsLast(Comparator.naturalOrder()))
+					.thenComparingLong(e -> e.sequence);
+		}
+		
+		final Runnable task;
+		final JobPriority priority;
+		final long round;
+		final Date dueDate;
+		final Date runDate;
+		final long estimate;
+		final long queuedAt;
+		final long sequence;
+		
+		QueueEntry(Runnable task, JobPriority priority, long round, Date dueDate, Date runDate, 
+				long estimate, long queuedAt, long sequence) {
+			this.task = task;
+			this.priority = priority;
+			this.round = round;
+			this.dueDate = dueDate;
+			this.runDate = runDate;
+			this.estimate = estimate;
+			this.queuedAt = queuedAt;
+			this.sequence = sequence;
+		}
+	}
+}
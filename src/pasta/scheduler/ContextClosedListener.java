@@ -33,9 +33,12 @@ import org.springframework.stereotype.Component;
 public class ContextClosedListener implements ApplicationListener<ContextClosedEvent> {
     @Autowired
     AssessmentJobExecutor assessmentJobExecutor;
+    @Autowired
+    UnitTestExecutor unitTestExecutor;
 
     @Override
 	public void onApplicationEvent(ContextClosedEvent event) {
-        assessmentJobExecutor.shutdown();
+        assessmentJobExecutor.shutdownAndRelease();
+        unitTestExecutor.shutdown();
     }  
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.scheduler;
+
+/**
+ * How the {@link AssessmentJobQueue} orders jobs within the same 
+ * {@link JobPriority} and fair share round.
+ * <ul>
+ * <li>DUE_DATE: earliest assessment due date first, then earliest submission</li>
+ * <li>SHORTEST_FIRST: lowest estimated run time first (from 
+ * {@link ExecutionEstimator}), with jobs aging towards the front of the queue 
+ * the longer they wait so that long jobs are not starved</li>
+ * </ul>
+ * Selected with the <code>execution.policy</code> option.
+ */
+public enum DispatchPolicy {
+	DUE_DATE, SHORTEST_FIRST;
+	
+	/**
+	 * @param value an option value, e.g. "sjf" or "shortest-first"
+	 * @return the matching policy, or {@link #DUE_DATE} if not recognised
+	 */
+	public static DispatchPolicy fromOption(String value) {
+		if(value == null) {
+			return DUE_DATE;
+		}
+		String cleaned = value.trim().toUpperCase().replace('-', '_');
+		if(cleaned.equals("SJF")) {
+			return SHORTEST_FIRST;
+		}
+		for(DispatchPolicy policy : values()) {
+			if(policy.name().equals(cleaned)) {
+				return policy;
+			}
+		}
+		return DUE_DATE;
+	}
+}
@@ -26,6 +26,8 @@ package pasta.scheduler;
 
 import java.io.File;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import pasta.docker.Language;
 import pasta.docker.LanguageManager;
@@ -34,7 +36,32 @@ import pasta.domain.template.BlackBoxTestCase;
 import pasta.domain.template.UnitTest;
 import pasta.util.PASTAUtil;
 
+/**
+ * Estimates how long assessment jobs will take to run.
+ * <p>
+ * A static estimate is calculated from the configured timeouts of a unit test 
+ * plus the configured overheads of the language. As tests are run, their 
+ * actual run times are recorded with {@link #recordTime(UnitTest, Language, long)}
+ * and kept as exponentially decaying averages:
+ * <ul>
+ * <li>per unit test and language, used directly once available;</li>
+ * <li>per language, as the ratio of actual to static estimate, used to scale
+ * the static estimate of tests that have not been run yet.</li>
+ * </ul>
+ * Test timeouts parsed from unit test source code are cached per unit test 
+ * until {@link #invalidate(UnitTest)} is called or the source file changes.
+ */
 public class ExecutionEstimator {
+	
+	/**
+	 * Weight given to each new measurement in the decaying averages.
+	 */
+	private static final double DECAY = 0.3;
+	private static final String ANY_LANGUAGE = "*";
+	
+	private static final ConcurrentMap<String, DecayingAverage> testTimes = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, DecayingAverage> languageRatios = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<Long, TestTimeouts> timeoutCache = new ConcurrentHashMap<>();
 
 	public static long estimateTime(AssessmentJob job) {
 		return estimateTime(job.getResults().getAssessment(), job.getLanguage());
@@ -53,7 +80,37 @@ public class ExecutionEstimator {
 	public static long estimateTime(UnitTest unitTest) {
 		return estimateTime(unitTest, null);
 	}
+	
+	/**
+	 * Predict the run time of a unit test, using measured run times where
+	 * they are available and falling back to {@link #staticEstimate(UnitTest, Language)}.
+	 * 
+	 * @param unitTest the test to estimate
+	 * @param language the language of the submission, or null if unknown
+	 * @return the estimated run time in milliseconds
+	 */
 	public static long estimateTime(UnitTest unitTest, Language language) {
+		DecayingAverage measured = testTimes.get(testKey(unitTest, language));
+		if(measured != null) {
+			return Math.round(measured.get());
+		}
+		long estimate = staticEstimate(unitTest, language);
+		DecayingAverage ratio = languageRatios.get(languageKey(language));
+		if(ratio != null) {
+			return Math.round(estimate * ratio.get());
+		}
+		return estimate;
+	}
+	
+	/**
+	 * Estimate the run time of a unit test from its configured timeouts and 
+	 * the configured overheads of the language.
+	 * 
+	 * @param unitTest the test to estimate
+	 * @param language the language of the submission, or null if unknown
+	 * @return the estimated run time in milliseconds
+	 */
+	public static long staticEstimate(UnitTest unitTest, Language language) {
 		long time = 0;
 		if(unitTest.getBlackBoxTimeout() == null) {
 			time += unitTest.getTestCases().stream()
@@ -65,14 +122,7 @@ public class ExecutionEstimator {
 		}
 		
 		if(unitTest.getAdvancedTimeout() == null) {
-			File main = unitTest.getMainSourceFile();
-			if(main != null) {
-				Map<String, Long> timeouts = PASTAUtil.extractTestTimeouts(main);
-				time += timeouts.entrySet().stream()
-						.reduce(0L, 
-								(total, e) -> total + e.getValue(), 
-								Long::sum);
-			}
+			time += getTimeouts(unitTest).total;
 		} else {
 			time += unitTest.getAdvancedTimeout();
 		}
@@ -98,15 +148,117 @@ public class ExecutionEstimator {
 		}
 		
 		if(unitTest.hasCode()) {
-			File main = unitTest.getMainSourceFile();
-			if(main != null) {
+			TestTimeouts timeouts = getTimeouts(unitTest);
+			if(timeouts.hasMainFile) {
 				Language java = LanguageManager.getInstance().getLanguage("java");
-				Map<String, Long> timeouts = PASTAUtil.extractTestTimeouts(main);
 				overhead += java.getTestSuiteExecutionOverhead();
-				overhead += timeouts.size() * java.getTestCaseExecutionOverhead();
+				overhead += timeouts.count * java.getTestCaseExecutionOverhead();
 			}
 		}
 		
 		return overhead;
 	}
+	
+	/**
+	 * Record how long a unit test actually took to run, updating the models
+	 * used for future estimates.
+	 * 
+	 * @param unitTest the test that was run
+	 * @param language the language of the submission, or null if unknown
+	 * @param millis the wall time taken to run the test
+	 */
+	public static void recordTime(UnitTest unitTest, Language language, long millis) {
+		if(unitTest == null || millis < 0) {
+			return;
+		}
+		testTimes.computeIfAbsent(testKey(unitTest, language), k -> new DecayingAverage()).add(millis);
+		if(language != null) {
+			testTimes.computeIfAbsent(testKey(unitTest, null), k -> new DecayingAverage()).add(millis);
+		}
+		long estimate = staticEstimate(unitTest, language);
+		if(estimate > 0) {
+			languageRatios.computeIfAbsent(languageKey(language), k -> new DecayingAverage())
+					.add((double) millis / estimate);
+		}
+	}
+	
+	/**
+	 * Forget the cached timeouts for a unit test, e.g. after its code has 
+	 * been changed.
+	 * 
+	 * @param unitTest the test that has changed
+	 */
+	public static void invalidate(UnitTest unitTest) {
+		if(unitTest != null && unitTest.getId() != null) {
+			timeoutCache.remove(unitTest.getId());
+		}
+	}
+	
+	private static TestTimeouts getTimeouts(UnitTest unitTest) {
+		if(unitTest.getId() == null) {
+			return new TestTimeouts(unitTest.getMainSourceFile());
+		}
+		TestTimeouts cached = timeoutCache.get(unitTest.getId());
+		if(cached == null || !cached.isValid()) {
+			cached = new TestTimeouts(unitTest.getMainSourceFile());
+			timeoutCache.put(unitTest.getId(), cached);
+		}
+		return cached;
+	}
+	
+	private static String testKey(UnitTest unitTest, Language language) {
+		return unitTest.getId() + "|" + languageKey(language);
+	}
+	private static String languageKey(Language language) {
+		return language == null ? ANY_LANGUAGE : language.getId();
+	}
+	
+	private static class TestTimeouts {
+		final File mainFile;
+		final long lastModified;
+		final boolean hasMainFile;
+		final long total;
+		final int count;
+		
+		TestTimeouts(File mainFile) {
+			this.mainFile = mainFile;
+			this.hasMainFile = mainFile != null;
+			this.lastModified = hasMainFile ? mainFile.lastModified() : 0;
+			long total = 0;
+			int count = 0;
+			if(hasMainFile) {
+				Map<String, Long> timeouts = PASTAUtil.extractTestTimeouts(mainFile);
+				for(Long timeout : timeouts.values()) {
+					if(timeout != null) {
+						total += timeout;
+					}
+				}
+				count = timeouts.size();
+			}
+			this.total = total;
+			this.count = count;
+		}
+		
+		boolean isValid() {
+			return !hasMainFile || (mainFile.exists() && mainFile.lastModified() == lastModified);
+		}
+	}
+	
+	private static class DecayingAverage {
+		private double value;
+		private boolean empty = true;
+		
+		synchronized void add(double sample) {
+			if(empty) {
+				value = sample;
+				empty = false;
+			} else {
+				value = DECAY * sample + (1 - DECAY) * value;
+			}
+		}
+		
+		synchronized double get() {
+			return value;
+		}
+	}
 }
@@ -0,0 +1,107 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.scheduler;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+
+import org.apache.log4j.Logger;
+
+import pasta.service.PASTAOptions;
+
+/**
+ * Identity and settings of this PASTA node as an assessment job worker.
+ * <p>
+ * Several PASTA nodes can share one database. Each node claims an 
+ * {@link AssessmentJob} by writing its ID and a lease expiry to the job row
+ * before queuing it, and renews the lease while it holds the job. A job whose 
+ * lease has expired (e.g. because its node died) can be claimed by any node.
+ * <p>
+ * Options:
+ * <ul>
+ * <li><code>execution.node.id</code>: a unique, stable name for this node 
+ * (default: host name)</li>
+ * <li><code>execution.node.enabled</code>: whether this node runs assessment
+ * jobs at all; set to false for a web-only node</li>
+ * <li><code>execution.distributed</code>: whether other nodes share the job 
+ * table, in which case this node only claims as many jobs as it can start 
+ * running</li>
+ * <li><code>execution.lease.seconds</code>: how long a claim lasts without a
+ * heartbeat; at least 60, as leases are renewed every 20 seconds</li>
+ * </ul>
+ * Lease expiry uses the node's clock, so node clocks should be kept in sync.
+ */
+public class ExecutionNode {
+	private static final Logger logger = Logger.getLogger(ExecutionNode.class);
+	
+	private static final int DEFAULT_LEASE_SECONDS = 120;
+	private static String defaultId;
+	
+	private ExecutionNode() {}
+	
+	public static String getId() {
+		String id = PASTAOptions.instance().get("execution.node.id");
+		if(id != null && !id.trim().isEmpty()) {
+			return id.trim();
+		}
+		return getDefaultId();
+	}
+	
+	private static synchronized String getDefaultId() {
+		if(defaultId == null) {
+			try {
+				defaultId = InetAddress.getLocalHost().getHostName();
+			} catch(UnknownHostException e) {
+				// The JVM name is usually "pid@host"
+				defaultId = ManagementFactory.getRuntimeMXBean().getName();
+			}
+			if(defaultId == null || defaultId.isEmpty()) {
+				defaultId = UUID.randomUUID().toString();
+			}
+			logger.info("Execution node ID: " + defaultId);
+		}
+		return defaultId;
+	}
+	
+	public static boolean isExecutionEnabled() {
+		return !"false".equalsIgnoreCase(PASTAOptions.instance().get("execution.node.enabled"));
+	}
+	
+	public static boolean isDistributed() {
+		return "true".equalsIgnoreCase(PASTAOptions.instance().get("execution.distributed"));
+	}
+	
+	public static int getLeaseSeconds() {
+		String value = PASTAOptions.instance().get("execution.lease.seconds");
+		if(value != null) {
+			try {
+				return Math.max(60, Integer.parseInt(value));
+			} catch(NumberFormatException e) {}
+		}
+		return DEFAULT_LEASE_SECONDS;
+	}
+}
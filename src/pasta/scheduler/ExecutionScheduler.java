@@ -24,7 +24,9 @@ SOFTWARE.
 
 package pasta.scheduler;
 
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
@@ -35,18 +37,26 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import pasta.domain.result.AssessmentResult;
 import pasta.domain.user.PASTAUser;
 import pasta.service.ResultManager;
-import pasta.util.PASTAUtil;
 
 /**
  * Class that handles the execution of jobs.
  * <p>
  * This class interacts with the database and is used to query
- * the database for any outstanding jobs.
+ * the database for any outstanding jobs. New jobs are handed straight to
+ * the {@link JobDispatcher} once they have been committed; the
+ * database copy is kept until the job finishes so that lost jobs can be
+ * recovered.
+ * <p>
+ * A node must claim a job (see {@link ExecutionNode}) before running it, so
+ * several nodes can safely share the job table.
  * 
  * @author Alex Radu
  * @version 2.0
@@ -58,22 +68,74 @@ import pasta.util.PASTAUtil;
 public class ExecutionScheduler {
 	private static Logger logger = Logger.getLogger(ExecutionScheduler.class);
 	
-	private List<AssessmentJob> jobQueueCache;
-	private Date lastQueueUpdate;
-	
 	@Autowired
 	private ResultManager resultManager;
 	
 	@Autowired
 	private SessionFactory sessionFactory;
 	
+	private volatile JobDispatcher dispatcher;
+	
+	/**
+	 * Called by the dispatcher once it is ready to take jobs. Until then, 
+	 * new jobs wait in the database for the next poll.
+	 * 
+	 * @param dispatcher the dispatcher for new jobs on this node
+	 */
+	public void setDispatcher(JobDispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+	
 	public void scheduleJob(PASTAUser user, long assessmentId, AssessmentResult result, Date runDate) {
+		scheduleJob(user, assessmentId, result, runDate, JobPriority.INTERACTIVE);
+	}
+	
+	public void scheduleJob(PASTAUser user, long assessmentId, AssessmentResult result, Date runDate, JobPriority priority) {
 		if(result.isWaitingToRun()) {
 			return;
 		}
 		result.setWaitingToRun(true);
 		resultManager.update(result);
-		save(new AssessmentJob(user, assessmentId, runDate, result));
+		AssessmentJob job = new AssessmentJob(user, assessmentId, runDate, result, priority);
+		save(job);
+		if(job.getId() != null) {
+			dispatchAfterCommit(job);
+		}
+	}
+	
+	/**
+	 * Offer a newly saved job to the executor as soon as the current 
+	 * transaction commits, rather than waiting for the next database poll. If 
+	 * the transaction rolls back, the job is never offered.
+	 * 
+	 * @param job the job to dispatch
+	 */
+	private void dispatchAfterCommit(final AssessmentJob job) {
+		if(!ExecutionNode.isExecutionEnabled()) {
+			return;
+		}
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			dispatch(job);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				dispatch(job);
+			}
+		});
+	}
+	
+	private void dispatch(AssessmentJob job) {
+		JobDispatcher dispatcher = this.dispatcher;
+		if(dispatcher == null) {
+			return;
+		}
+		// When sharing the job table, leave the job for an idle node rather than queuing it here
+		if(ExecutionNode.isDistributed() && !dispatcher.hasCapacity()) {
+			return;
+		}
+		dispatcher.offer(job);
 	}
 	
 	public void save(Job job) {
@@ -102,6 +164,104 @@ public class ExecutionScheduler {
 			logger.error("Exception while deleting job", e);
 		}
 	}
+	
+	/**
+	 * Atomically claim a job for this node. The claim succeeds if the job is
+	 * unclaimed, already claimed by this node, or its lease has expired.
+	 * <p>
+	 * Runs in its own transaction so the claim is visible to other nodes 
+	 * straight away, and so it can be called after another transaction has
+	 * committed.
+	 * 
+	 * @param job the job to claim
+	 * @return true if this node now owns the job
+	 */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public boolean claim(AssessmentJob job) {
+		String node = ExecutionNode.getId();
+		Date now = new Date();
+		Date expiry = new Date(now.getTime() + ExecutionNode.getLeaseSeconds() * 1000L);
+		int updated = sessionFactory.getCurrentSession()
+				.createQuery("update AssessmentJob set owner = :node, leaseExpiry = :expiry "
+						+ "where id = :id and (owner is null or owner = :node or leaseExpiry < :now)")
+				.setParameter("node", node)
+				.setParameter("expiry", expiry)
+				.setParameter("id", job.getId())
+				.setParameter("now", now)
+				.executeUpdate();
+		if(updated == 1) {
+			job.setOwner(node);
+			job.setLeaseExpiry(expiry);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Extend the lease on jobs held by this node.
+	 * 
+	 * @param jobIds the IDs of the jobs this node is queuing or running
+	 * @return the number of leases renewed; less than the number of IDs if 
+	 * some jobs have been finished or claimed by another node
+	 */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public int renewLeases(Collection<Long> jobIds) {
+		if(jobIds.isEmpty()) {
+			return 0;
+		}
+		Date expiry = new Date(System.currentTimeMillis() + ExecutionNode.getLeaseSeconds() * 1000L);
+		return sessionFactory.getCurrentSession()
+				.createQuery("update AssessmentJob set leaseExpiry = :expiry "
+						+ "where owner = :node and id in (:ids)")
+				.setParameter("expiry", expiry)
+				.setParameter("node", ExecutionNode.getId())
+				.setParameterList("ids", jobIds)
+				.executeUpdate();
+	}
+	
+	/**
+	 * Give up claims held by this node, e.g. on jobs still queued when 
+	 * shutting down, so other nodes do not have to wait for the leases to 
+	 * expire.
+	 * 
+	 * @param jobIds the IDs of the jobs to release
+	 */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public void releaseLeases(Collection<Long> jobIds) {
+		if(jobIds.isEmpty()) {
+			return;
+		}
+		sessionFactory.getCurrentSession()
+				.createQuery("update AssessmentJob set owner = null, leaseExpiry = null, running = false "
+						+ "where owner = :node and id in (:ids)")
+				.setParameter("node", ExecutionNode.getId())
+				.setParameterList("ids", jobIds)
+				.executeUpdate();
+	}
+	
+	public void setRunning(AssessmentJob job, boolean running) {
+		job.setRunning(running);
+		sessionFactory.getCurrentSession()
+				.createQuery("update AssessmentJob set running = :running where id = :id and owner = :node")
+				.setParameter("running", running)
+				.setParameter("id", job.getId())
+				.setParameter("node", ExecutionNode.getId())
+				.executeUpdate();
+	}
+	
+	/**
+	 * Delete a finished job, unless another node has claimed it in the 
+	 * meantime (in which case that node will run and delete it).
+	 * 
+	 * @param job the finished job
+	 */
+	public void finish(AssessmentJob job) {
+		sessionFactory.getCurrentSession()
+				.createQuery("delete from AssessmentJob where id = :id and owner = :node")
+				.setParameter("id", job.getId())
+				.setParameter("node", ExecutionNode.getId())
+				.executeUpdate();
+	}
 
 	/**
 	 * Get the outstanding {@link pasta.scheduler.AssessmentJob} for assessments.
@@ -124,26 +284,52 @@ public class ExecutionScheduler {
 	}
 	
 	/**
-	 * Gets the outstanding list of assessment jobs, with a cache that dirties
-	 * every 3 seconds. Cache designed to cope with many async requests.
+	 * Gets the running and queued assessment jobs in the order the executor
+	 * will run them. This is read from memory, so it is cheap enough to call
+	 * on every queue status request.
 	 * 
-	 * @return the cached list of outstanding assessment jobs
+	 * @return the list of running and queued assessment jobs
+	 * @see JobDispatcher#getJobQueue()
 	 */
 	public List<AssessmentJob> getAssessmentQueue() {
-		boolean dirtyCache = 
-				jobQueueCache == null ||
-				lastQueueUpdate == null ||
-				PASTAUtil.elapseTime(lastQueueUpdate, Calendar.SECOND, 3).before(new Date());
-		
-		if(dirtyCache) {
-			jobQueueCache = getOutstandingAssessmentJobs();
-			lastQueueUpdate = new Date();
+		JobDispatcher dispatcher = this.dispatcher;
+		if(dispatcher == null || ExecutionNode.isDistributed() || !ExecutionNode.isExecutionEnabled()) {
+			return getSharedAssessmentQueue();
 		}
+		return dispatcher.getJobQueue();
+	}
+	
+	/**
+	 * Get the outstanding jobs that no node holds a current lease on.
+	 * 
+	 * @return the claimable jobs, by priority then run date
+	 */
+	public List<AssessmentJob> getClaimableAssessmentJobs() {
+		Date now = new Date();
+		Criteria cr = sessionFactory.getCurrentSession().createCriteria(AssessmentJob.class);
+		cr.add(Restrictions.le("runDate", now));
+		cr.add(Restrictions.or(
+				Restrictions.isNull("owner"), 
+				Restrictions.eq("owner", ExecutionNode.getId()),
+				Restrictions.lt("leaseExpiry", now)));
+		cr.addOrder(Order.asc("runDate"));
 		
-		return jobQueueCache;
+		@SuppressWarnings("unchecked")
+		List<AssessmentJob> list = cr.list();
+		list.sort(Comparator.comparing(AssessmentJob::getPriority));
+		return list;
 	}
-	public void clearJobCache() {
-		jobQueueCache = null;
-		lastQueueUpdate = null;
+	
+	/**
+	 * When nodes share the job table, the local executor only knows about its
+	 * own jobs, so build the queue from the database instead: running jobs 
+	 * first, then waiting jobs by priority and run date.
+	 */
+	private List<AssessmentJob> getSharedAssessmentQueue() {
+		List<AssessmentJob> jobs = new ArrayList<>(getOutstandingAssessmentJobs());
+		jobs.sort(Comparator.comparing((AssessmentJob job) -> !job.isRunning())
+				.thenComparing(AssessmentJob::getPriority)
+				.thenComparing(AssessmentJob::getRunDate));
+		return jobs;
 	}
 }
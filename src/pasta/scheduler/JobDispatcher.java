@@ -0,0 +1,51 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package pasta.scheduler;
+
+import java.util.List;
+
+/**
+ * Runs assessment jobs handed over by the {@link ExecutionScheduler}.
+ * <p>
+ * The dispatcher registers itself with the scheduler rather than the 
+ * scheduler depending on it, because the dispatcher in turn uses the 
+ * scheduler to claim and finish jobs.
+ */
+public interface JobDispatcher {
+	/**
+	 * @param job a committed job
+	 * @return true if the job was claimed and queued by this node
+	 */
+	public boolean offer(AssessmentJob job);
+	
+	/**
+	 * @return true if a newly offered job would start running straight away
+	 */
+	public boolean hasCapacity();
+	
+	/**
+	 * @return the running and queued jobs, in the order they will be run
+	 */
+	public List<AssessmentJob> getJobQueue();
+}
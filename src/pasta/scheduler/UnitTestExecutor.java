@@ -0,0 +1,113 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.scheduler;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Shared pool used to run the unit tests of a single assessment job in 
+ * parallel.
+ * <p>
+ * The size of the pool caps the number of unit tests running across all
+ * jobs, while {@link #runAll(List, int)} caps the number running for any one
+ * job so that one large submission cannot take every thread.
+ */
+public class UnitTestExecutor extends ThreadPoolExecutor {
+
+	protected Logger logger = Logger.getLogger(getClass());
+	
+	public UnitTestExecutor(int poolSize) {
+		super(Math.max(1, poolSize), Math.max(1, poolSize), 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+	}
+	
+	public void setPoolSize(int poolSize) {
+		poolSize = Math.max(1, poolSize);
+		if(poolSize > getMaximumPoolSize()) {
+			setMaximumPoolSize(poolSize);
+			setCorePoolSize(poolSize);
+		} else {
+			setCorePoolSize(poolSize);
+			setMaximumPoolSize(poolSize);
+		}
+	}
+	
+	/**
+	 * Run all of the given tasks, with at most <code>maxConcurrent</code> of
+	 * them queued or running at once, and wait for them all to finish. If 
+	 * <code>maxConcurrent</code> is 1 or less, tasks are run one at a time on
+	 * the calling thread.
+	 * 
+	 * @param tasks the tasks to run
+	 * @param maxConcurrent the maximum number of tasks to run at once
+	 */
+	public void runAll(List<Runnable> tasks, int maxConcurrent) {
+		if(maxConcurrent <= 1 || tasks.size() <= 1 || isShutdown()) {
+			for(Runnable task : tasks) {
+				task.run();
+			}
+			return;
+		}
+		
+		ExecutorCompletionService<Void> completion = new ExecutorCompletionService<>(this);
+		List<Future<Void>> futures = new LinkedList<>();
+		Iterator<Runnable> it = tasks.iterator();
+		int outstanding = 0;
+		try {
+			while(it.hasNext() && outstanding < maxConcurrent) {
+				futures.add(completion.submit(it.next(), null));
+				outstanding++;
+			}
+			while(outstanding > 0) {
+				Future<Void> done = completion.take();
+				outstanding--;
+				try {
+					done.get();
+				} catch(ExecutionException e) {
+					logger.error("Error running unit test task", e.getCause());
+				}
+				if(it.hasNext()) {
+					futures.add(completion.submit(it.next(), null));
+					outstanding++;
+				}
+			}
+		} catch(InterruptedException e) {
+			logger.warn("Interrupted while waiting for unit tests; cancelling remaining tests.");
+			for(Future<Void> future : futures) {
+				future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+		}
+	}
+}
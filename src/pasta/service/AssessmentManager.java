@@ -82,6 +82,8 @@ public class AssessmentManager {
 	private UserManager userManager;
 	@Autowired
 	private ReleaseManager releaseManager;
+	@Autowired
+	private GradeCentreManager gradeCentreManager;
 	
 	@Autowired
 	private UnitTestDAO unitTestDAO;
@@ -134,6 +136,8 @@ public class AssessmentManager {
 	 */
 	public boolean removeAssessment(long assessmentId) {
 		assDao.removeAssessment(assessmentId);
+		// The assessment's summaries are deleted with it
+		gradeCentreManager.invalidate();
 		return true;
 	}
 	
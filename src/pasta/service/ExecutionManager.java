@@ -31,7 +31,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
@@ -52,7 +51,10 @@ import pasta.domain.user.PASTAUser;
 import pasta.repository.AssessmentDAO;
 import pasta.scheduler.AssessmentJob;
 import pasta.scheduler.AssessmentJobExecutor;
+import pasta.scheduler.ExecutionEstimator;
+import pasta.scheduler.ExecutionNode;
 import pasta.scheduler.ExecutionScheduler;
+import pasta.scheduler.UnitTestExecutor;
 import pasta.testing.task.DirectoryCopyTask;
 import pasta.util.PASTAUtil;
 import pasta.util.ProjectProperties;
@@ -82,6 +84,7 @@ public class ExecutionManager {
 
 	@Autowired private ExecutionScheduler scheduler;
 	@Autowired private AssessmentJobExecutor executor;
+	@Autowired private UnitTestExecutor unitTestExecutor;
 	
 	public static final Logger logger = Logger
 			.getLogger(ExecutionManager.class);
@@ -92,6 +95,15 @@ public class ExecutionManager {
 		
 		Assessment assessment = assDao.getAssessment(job.getAssessmentId());
 		
+		// Jobs are loaded without the details of their results, so reload the
+		// result in full before its unit test results are replaced
+		AssessmentResult jobResults = resultManager.getAssessmentResult(job.getResults().getId());
+		if(jobResults == null) {
+			logger.warn("Results #" + job.getResults().getId() + " no longer exist; not running " + job);
+			return;
+		}
+		job.setResults(jobResults);
+		
 		logger.info("Running " + assessment.getName() + " unit tests for " + user.getUsername());
 		
 		String submissionLabel = user.getUsername() + "_" + job.getAssessmentId() + 
@@ -114,87 +126,41 @@ public class ExecutionManager {
 		
 		File submissionLoc = job.getSubmissionRoot();
 		
-		Set<Long> validTestIds = new HashSet<>();
+		List<WeightedUnitTest> testsToRun = new LinkedList<>();
 		for(WeightedUnitTest weightedTest : assessment.getAllUnitTests()) {
 			if(weightedTest.isGroupWork() != userIsGroup) {
 				continue;
 			}
-			validTestIds.add(weightedTest.getTest().getId());
+			testsToRun.add(weightedTest);
 		}
 		
-		for(WeightedUnitTest weightedTest : assessment.getAllUnitTests()) {
-			if(weightedTest.isGroupWork() != userIsGroup) {
-				continue;
-			}
-			
-			UnitTest test = weightedTest.getTest();
-			File sandboxTop = new File(sandboxRoot, test.getFileAppropriateName());
-			File sandboxSrc = new File(sandboxTop, "src/");
-			File sandboxOut = new File(sandboxTop, "out/");
-			sandboxSrc.mkdirs();
-			sandboxOut.mkdirs();
-			
-			String executionLabel = submissionLabel + "_" + test.getFileAppropriateName();
-			ExecutionContainer container = new ExecutionContainer(executionLabel, sandboxSrc, sandboxOut);
-			
-			// Check if test has been run before, and remove previous results if so
-			List<UnitTestResult> staleResults = new LinkedList<>();
-			for(UnitTestResult existingResult : job.getResults().getUnitTests()) {
-				if(existingResult == null) {
-					continue;
-				}
-				if(existingResult.getTest() == null || 
-						existingResult.getTest().getId() == test.getId() ||
-						!validTestIds.contains(existingResult.getTest().getId())) {
-					staleResults.add(existingResult);
-				}
+		// Every valid test is re-run, so remove all previous results. This is
+		// done with bulk deletes, then the result is reloaded without them.
+		if(!testsToRun.isEmpty() && !job.getResults().getUnitTests().isEmpty()) {
+			int deleted = resultManager.deleteUnitTestResults(job.getResults());
+			logger.debug("Deleted " + deleted + " previous unit test results for " + job.getResults());
+			jobResults = resultManager.getAssessmentResult(job.getResults().getId());
+			if(jobResults == null) {
+				logger.warn("Results #" + job.getResults().getId() + " no longer exist; not running " + job);
+				return;
 			}
-			for(UnitTestResult staleResult : staleResults) {
-				staleResult.clearValidationErrors();
-				staleResult.removeAllTestCases();
-				job.getResults().removeUnitTest(staleResult);
-			}
-			
-			// Create the new results object that will be used
+			job.setResults(jobResults);
+		}
+		
+		// Results objects are created up front so that the (shared) assessment
+		// result is only modified on this thread; each test then only writes 
+		// to its own results object.
+		List<Runnable> testTasks = new LinkedList<>();
+		for(WeightedUnitTest weightedTest : testsToRun) {
 			UnitTestResult utResults = new UnitTestResult();
 			utResults.setWeightedUnitTest(weightedTest);
 			job.getResults().addUnitTest(utResults);
-			
-			// Code we are interested in testing
-			File importantCode = test.getSubmissionCodeLocation(submissionLoc);
-			logger.debug("Copying " + importantCode + " to " + sandboxSrc);
-			new DirectoryCopyTask(importantCode, sandboxSrc).go();
-			
-			List<String> context = null;
-			if(assessment.isAllowed(LanguageManager.getInstance().getLanguage("java"))) {
-				// Get a list of files submitted for tracking later
-				context = new LinkedList<String>();
-				if(assessment.getShortSolutionName() != null && !assessment.getShortSolutionName().isEmpty()) {
-					// Add solutionName.java just in case this is a Java 
-					// submission, as that will be the most important file
-					String shortName = assessment.getShortSolutionName();
-					context.add(shortName + "." + LanguageManager.getInstance().getLanguage("java").getExtensions().get(0));
-				}
-				context.addAll(Arrays.asList(PASTAUtil.listDirectoryContents(importantCode, true)));
-			}
-			
-			// Run any black box tests
-			if(test.hasBlackBoxTests()) {
-				String solutionName = assessment.getSolutionName();
-				if(solutionName == null || solutionName.isEmpty()) {
-					utResults.addValidationError("Assessment setup error: contact administrator.");
-					logger.error("No solution name set for " + assessment.getName());
-					continue;
-				}
-				unitTestManager.runBlackBoxTests(test, solutionName, utResults, importantCode, context, container);
-			}
-			
-			String mainClass = test.getMainClassName();
-			if(test.hasCode() && mainClass != null && !mainClass.isEmpty()) {
-				unitTestManager.runJUnitTests(test, utResults, mainClass, context, container);
-			}
+			testTasks.add(() -> runUnitTest(assessment, weightedTest.getTest(), utResults, 
+					submissionLoc, sandboxRoot, submissionLabel));
 		}
 		
+		unitTestExecutor.runAll(testTasks, getUnitTestsPerJob());
+		
 		logger.debug("Deleting final sandbox location " + sandboxRoot);
 		try {
 			FileUtils.deleteDirectory(sandboxRoot);
@@ -222,19 +188,98 @@ public class ExecutionManager {
 		}
 	}
 
+	private void runUnitTest(Assessment assessment, UnitTest test, UnitTestResult utResults, 
+			File submissionLoc, File sandboxRoot, String submissionLabel) {
+		File sandboxTop = new File(sandboxRoot, test.getFileAppropriateName());
+		File sandboxSrc = new File(sandboxTop, "src/");
+		File sandboxOut = new File(sandboxTop, "out/");
+		sandboxSrc.mkdirs();
+		sandboxOut.mkdirs();
+		
+		String executionLabel = submissionLabel + "_" + test.getFileAppropriateName();
+		ExecutionContainer container = new ExecutionContainer(executionLabel, sandboxSrc, sandboxOut);
+		long startTime = System.currentTimeMillis();
+		
+		// Code we are interested in testing
+		File importantCode = test.getSubmissionCodeLocation(submissionLoc);
+		logger.debug("Copying " + importantCode + " to " + sandboxSrc);
+		new DirectoryCopyTask(importantCode, sandboxSrc).go();
+		
+		List<String> context = null;
+		if(assessment.isAllowed(LanguageManager.getInstance().getLanguage("java"))) {
+			// Get a list of files submitted for tracking later
+			context = new LinkedList<String>();
+			if(assessment.getShortSolutionName() != null && !assessment.getShortSolutionName().isEmpty()) {
+				// Add solutionName.java just in case this is a Java 
+				// submission, as that will be the most important file
+				String shortName = assessment.getShortSolutionName();
+				context.add(shortName + "." + LanguageManager.getInstance().getLanguage("java").getExtensions().get(0));
+			}
+			context.addAll(Arrays.asList(PASTAUtil.listDirectoryContents(importantCode, true)));
+		}
+		
+		// Run any black box tests
+		if(test.hasBlackBoxTests()) {
+			String solutionName = assessment.getSolutionName();
+			if(solutionName == null || solutionName.isEmpty()) {
+				utResults.addValidationError("Assessment setup error: contact administrator.");
+				logger.error("No solution name set for " + assessment.getName());
+				return;
+			}
+			unitTestManager.runBlackBoxTests(test, solutionName, utResults, importantCode, context, container);
+		}
+		
+		String mainClass = test.getMainClassName();
+		if(test.hasCode() && mainClass != null && !mainClass.isEmpty()) {
+			unitTestManager.runJUnitTests(test, utResults, mainClass, context, container);
+		}
+		
+		ExecutionEstimator.recordTime(test, container.getLanguage(), System.currentTimeMillis() - startTime);
+	}
+	
+	private int getUnitTestsPerJob() {
+		String value = PASTAOptions.instance().get("execution.unittest.threads.per.job");
+		if(value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch(NumberFormatException e) {
+				logger.warn("\"" + value + "\" is not a valid value for execution.unittest.threads.per.job");
+			}
+		}
+		return 1;
+	}
+	
 	/**
 	 * Get outstanding assessment jobs
 	 * <p>
-	 * This method runs on a fixed delay (currently 10 sec). The system waits
+	 * This method runs on a fixed delay (currently 60 sec). The system waits
 	 * x ms between the end of the method and calling it again.
 	 * 
-	 * This queries the database for outstanding jobs, get the list, process them
-	 * all, then check the database again. When a check to the database is empty,
-	 * the system goes back to waiting.
+	 * New jobs are dispatched to the executor directly by 
+	 * {@link ExecutionScheduler#scheduleJob(PASTAUser, long, AssessmentResult, java.util.Date)}, 
+	 * so this is only a reconciliation pass: it queries the database for 
+	 * outstanding jobs and offers any that the executor does not already have, 
+	 * e.g. jobs left over from before a restart.
+	 * <p>
+	 * When several nodes share the job table ({@link ExecutionNode#isDistributed()}),
+	 * only claimable jobs are considered, and only as many as this node can 
+	 * start running.
 	 */
-	@Scheduled(fixedDelay = 5000)
+	@Scheduled(fixedDelay = 60000)
 	public void executeRemainingAssessmentJobs() {
+		if(!ExecutionNode.isExecutionEnabled()) {
+			return;
+		}
 		synchronized (scheduler) {
+			if(ExecutionNode.isDistributed()) {
+				for(AssessmentJob job : scheduler.getClaimableAssessmentJobs()) {
+					if(!executor.hasCapacity()) {
+						break;
+					}
+					executor.offer(job);
+				}
+				return;
+			}
 			List<AssessmentJob> outstandingJobs = scheduler.getOutstandingAssessmentJobs();
 			for(AssessmentJob job : outstandingJobs) {
 				executor.offer(job);
@@ -242,6 +287,37 @@ public class ExecutionManager {
 		}
 	}
 	
+	/**
+	 * Jobs submitted to other nodes are not dispatched to this one, so poll
+	 * for them more often when the job table is shared.
+	 */
+	@Scheduled(fixedDelay = 5000)
+	public void pollSharedAssessmentJobs() {
+		if(ExecutionNode.isDistributed()) {
+			executeRemainingAssessmentJobs();
+		}
+	}
+	
+	/**
+	 * Heartbeat: renew the leases on all jobs this node holds, so other nodes
+	 * do not reclaim them.
+	 */
+	@Scheduled(fixedDelay = 20000)
+	public void renewAssessmentJobLeases() {
+		List<Long> jobIds = executor.getHeldJobIds();
+		if(jobIds.isEmpty()) {
+			return;
+		}
+		try {
+			int renewed = scheduler.renewLeases(jobIds);
+			if(renewed < jobIds.size()) {
+				logger.debug("Renewed " + renewed + " of " + jobIds.size() + " assessment job leases");
+			}
+		} catch(Exception e) {
+			logger.error("Unable to renew assessment job leases", e);
+		}
+	}
+	
 	@Scheduled(fixedDelay = 3600000)
 	public void fixWaitingJobs() {
 		synchronized (scheduler) {
@@ -270,7 +346,7 @@ public class ExecutionManager {
 	public List<String> getExecutingTaskDetails() {
 		List<String> results = new LinkedList<String>();
 		int pos = 1;
-		for(AssessmentJob job : scheduler.getOutstandingAssessmentJobs()) {
+		for(AssessmentJob job : scheduler.getAssessmentQueue()) {
 			String details = pos++ + ": " + job.toString();
 			results.add(details);
 		}
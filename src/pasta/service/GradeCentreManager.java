@@ -0,0 +1,355 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import pasta.domain.result.AssessmentResultSummary;
+import pasta.domain.template.Assessment;
+import pasta.domain.user.PASTAUser;
+import pasta.repository.ResultDAO;
+import pasta.scheduler.ExecutionNode;
+
+/**
+ * In-memory matrix of the latest mark for every user and assessment, used to
+ * serve the grade centre.
+ * <p>
+ * The matrix is loaded from the cached {@link AssessmentResultSummary} rows the
+ * first time it is needed, then kept up to date as summaries are saved through
+ * {@link ResultManager#saveOrUpdate(AssessmentResultSummary)} and results or
+ * summaries are deleted through {@link ResultManager}. Cells are
+ * primitive percentages indexed by user row and assessment column;
+ * <code>NaN</code> marks a missing result.
+ * <p>
+ * Every row carries the stamp of its last change, so a {@link Slice} of the
+ * matrix (a stream, a tutorial, ...) has an ETag that only changes when one of
+ * its own rows, its user list or the assessment list changes.
+ * <p>
+ * When several nodes share the database (<code>execution.distributed</code>),
+ * other nodes' updates are not seen here, so the matrix is reloaded if it is
+ * older than {@link #DISTRIBUTED_MAX_AGE_MS}.
+ */
+@Service("gradeCentreManager")
+public class GradeCentreManager {
+	private static Logger logger = Logger.getLogger(GradeCentreManager.class);
+	
+	private static final long DISTRIBUTED_MAX_AGE_MS = 30000;
+	
+	@Autowired
+	private ResultDAO resultDAO;
+	
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	private final Map<Long, Integer> userRows = new HashMap<>();
+	private final Map<Long, Integer> assessmentColumns = new HashMap<>();
+	private double[][] cells = new double[0][];
+	private long[] rowStamps = new long[0];
+	// (user ID, assessment ID) pairs to re-read before the matrix is next used
+	private final Set<List<Long>> staleCells = new HashSet<>();
+	
+	private boolean loaded = false;
+	private long loadedAt;
+	private long generation = 0;
+	private long clock = 0;
+	
+	/**
+	 * A read-only copy of part of the grade matrix.
+	 */
+	public static class Slice {
+		private final List<PASTAUser> users;
+		private final List<Assessment> assessments;
+		private final double[][] percentages;
+		private final String eTag;
+		
+		private Slice(List<PASTAUser> users, List<Assessment> assessments, double[][] percentages, String eTag) {
+			this.users = users;
+			this.assessments = assessments;
+			this.percentages = percentages;
+			this.eTag = eTag;
+		}
+		
+		public List<PASTAUser> getUsers() {
+			return users;
+		}
+		
+		public List<Assessment> getAssessments() {
+			return assessments;
+		}
+		
+		/**
+		 * @param userIndex the index of the user in {@link #getUsers()}
+		 * @param assessmentIndex the index of the assessment in {@link #getAssessments()}
+		 * @return the user's latest percentage [0.0, 1.0] for the assessment, or
+		 *         <code>NaN</code> if they have no result
+		 */
+		public double getPercentage(int userIndex, int assessmentIndex) {
+			return percentages[userIndex][assessmentIndex];
+		}
+		
+		public boolean hasResult(int userIndex, int assessmentIndex) {
+			return !Double.isNaN(percentages[userIndex][assessmentIndex]);
+		}
+		
+		/**
+		 * @return a quoted entity tag for this slice
+		 */
+		public String getETag() {
+			return eTag;
+		}
+	}
+	
+	/**
+	 * Copy the rows for the given users and the columns for the given
+	 * assessments out of the matrix.
+	 * 
+	 * @param users the users, in the order they should appear
+	 * @param assessments the assessments, in the order they should appear
+	 * @return the slice
+	 */
+	public Slice getSlice(Collection<PASTAUser> users, Collection<Assessment> assessments) {
+		List<PASTAUser> userList = new ArrayList<>(users);
+		List<Assessment> assessmentList = new ArrayList<>(assessments);
+		double[][] percentages = new double[userList.size()][assessmentList.size()];
+		
+		int shape = 1;
+		for(PASTAUser user : userList) {
+			shape = 31 * shape + Objects.hash(user.getId(), user.getUsername(), user.getStream(), user.getTutorial());
+		}
+		for(Assessment assessment : assessmentList) {
+			shape = 31 * shape + Objects.hash(assessment.getId(), assessment.getMarks());
+		}
+		
+		ensureLoaded();
+		long latestStamp = 0;
+		long sliceGeneration;
+		lock.readLock().lock();
+		try {
+			sliceGeneration = generation;
+			int[] columns = new int[assessmentList.size()];
+			for(int j = 0; j < columns.length; j++) {
+				Integer column = assessmentColumns.get(assessmentList.get(j).getId());
+				columns[j] = column == null ? -1 : column;
+			}
+			for(int i = 0; i < userList.size(); i++) {
+				Integer row = userRows.get(userList.get(i).getId());
+				if(row == null) {
+					Arrays.fill(percentages[i], Double.NaN);
+					continue;
+				}
+				latestStamp = Math.max(latestStamp, rowStamps[row]);
+				double[] rowCells = cells[row];
+				for(int j = 0; j < columns.length; j++) {
+					int column = columns[j];
+					percentages[i][j] = column < 0 || column >= rowCells.length ? Double.NaN : rowCells[column];
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		
+		String eTag = "\"" + sliceGeneration + "-" + latestStamp + "-" + Integer.toHexString(shape) + "\"";
+		return new Slice(userList, assessmentList, percentages, eTag);
+	}
+	
+	/**
+	 * Record a saved summary in the matrix once the current transaction
+	 * commits. If the transaction rolls back, the matrix is not changed.
+	 * 
+	 * @param summary the summary that has been saved
+	 */
+	public void update(AssessmentResultSummary summary) {
+		final long userId = summary.getUser().getId();
+		final long assessmentId = summary.getAssessment().getId();
+		final double percentage = summary.getPercentage();
+		afterCommit(() -> setCell(userId, assessmentId, percentage));
+	}
+	
+	/**
+	 * Drop the matrix so that it is reloaded from the database the next time
+	 * it is needed, e.g. after summaries have been recalculated or deleted in
+	 * bulk. Inside a transaction, this happens once the transaction commits.
+	 */
+	public void invalidate() {
+		afterCommit(() -> {
+			lock.writeLock().lock();
+			try {
+				clear();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		});
+	}
+	
+	/**
+	 * Re-read one cell from the database the next time the matrix is used, 
+	 * e.g. after the summary for it has been deleted. Inside a transaction, 
+	 * the cell is only marked once the transaction commits.
+	 * 
+	 * @param userId the ID of the user
+	 * @param assessmentId the ID of the assessment
+	 */
+	public void refresh(final long userId, final long assessmentId) {
+		afterCommit(() -> {
+			lock.writeLock().lock();
+			try {
+				// Anything changed before the load will be read from the database
+				if(loaded) {
+					staleCells.add(Arrays.asList(userId, assessmentId));
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		});
+	}
+	
+	private static void afterCommit(final Runnable action) {
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
+	}
+	
+	private void setCell(long userId, long assessmentId, double percentage) {
+		lock.writeLock().lock();
+		try {
+			// Anything saved before the load will be read from the database
+			if(!loaded) {
+				return;
+			}
+			putCell(userId, assessmentId, percentage);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void ensureLoaded() {
+		lock.readLock().lock();
+		try {
+			if(loaded && !isStale() && staleCells.isEmpty()) {
+				return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		
+		lock.writeLock().lock();
+		try {
+			if(loaded && !isStale()) {
+				reloadStaleCells();
+				return;
+			}
+			clear();
+			// Read inside the write lock so no committed update can slip between the query and the load
+			long start = System.currentTimeMillis();
+			List<Object[]> summaries = resultDAO.getAllResultSummaryCells();
+			for(Object[] summary : summaries) {
+				putCell(((Number) summary[0]).longValue(), ((Number) summary[1]).longValue(), 
+						((Number) summary[2]).doubleValue());
+			}
+			loaded = true;
+			loadedAt = System.currentTimeMillis();
+			logger.debug("Loaded grade matrix of " + userRows.size() + " users x " + assessmentColumns.size()
+					+ " assessments in " + (loadedAt - start) + "ms");
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void reloadStaleCells() {
+		for(List<Long> cell : staleCells) {
+			Double percentage = resultDAO.getResultSummaryPercentage(cell.get(0), cell.get(1));
+			putCell(cell.get(0), cell.get(1), percentage == null ? Double.NaN : percentage);
+		}
+		staleCells.clear();
+	}
+	
+	private boolean isStale() {
+		return ExecutionNode.isDistributed() && System.currentTimeMillis() - loadedAt > DISTRIBUTED_MAX_AGE_MS;
+	}
+	
+	private void clear() {
+		userRows.clear();
+		assessmentColumns.clear();
+		cells = new double[0][];
+		rowStamps = new long[0];
+		staleCells.clear();
+		loaded = false;
+		generation++;
+	}
+	
+	private void putCell(long userId, long assessmentId, double percentage) {
+		Integer column = assessmentColumns.get(assessmentId);
+		if(column == null) {
+			column = assessmentColumns.size();
+			assessmentColumns.put(assessmentId, column);
+		}
+		Integer row = userRows.get(userId);
+		if(row == null) {
+			row = userRows.size();
+			userRows.put(userId, row);
+			if(row >= cells.length) {
+				int capacity = Math.max(16, cells.length * 2);
+				cells = Arrays.copyOf(cells, capacity);
+				rowStamps = Arrays.copyOf(rowStamps, capacity);
+			}
+			cells[row] = newRow(0);
+		}
+		double[] rowCells = cells[row];
+		if(column >= rowCells.length) {
+			double[] grown = newRow(Math.max(column + 1, rowCells.length * 2));
+			System.arraycopy(rowCells, 0, grown, 0, rowCells.length);
+			cells[row] = rowCells = grown;
+		}
+		rowCells[column] = percentage;
+		rowStamps[row] = ++clock;
+	}
+	
+	private static double[] newRow(int length) {
+		double[] row = new double[Math.max(length, 8)];
+		Arrays.fill(row, Double.NaN);
+		return row;
+	}
+}
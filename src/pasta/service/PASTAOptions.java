@@ -185,8 +185,9 @@ public class PASTAOptions {
 				if(!allKeys.contains(option.getKey()) || 
 						!get(option.getKey()).equals(option.getValue())) {
 					optionsDao.saveOrUpdate(option);
-					registerUpdate(option);
+					// Listeners may read other options, so they must see the new value
 					clear(option.getKey());
+					registerUpdate(option);
 				}
 				allKeys.remove(option.getKey());
 			}
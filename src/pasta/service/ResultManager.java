@@ -25,6 +25,7 @@ SOFTWARE.
 package pasta.service;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -32,22 +33,25 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 import org.springframework.stereotype.Service;
 
 import pasta.domain.result.AssessmentResult;
 import pasta.domain.result.AssessmentResultSummary;
 import pasta.domain.result.CombinedAssessmentResult;
+import pasta.domain.result.SubmissionListItem;
 import pasta.domain.user.PASTAGroup;
 import pasta.domain.user.PASTAUser;
 import pasta.repository.ResultDAO;
+import pasta.service.reporting.SubmissionStatsManager;
+import pasta.service.reporting.TestCaseStatsManager;
+import pasta.util.BlobStore;
 import pasta.util.PASTAUtil;
 
 /**
@@ -60,6 +64,9 @@ import pasta.util.PASTAUtil;
 public class ResultManager {
 	private static Logger logger = Logger.getLogger(ResultManager.class);
 	
+	// Results being written may not be committed yet; leave their blobs alone
+	private static final long BLOB_SWEEP_MIN_AGE = 86400000;
+	
 	@Autowired
 	private ApplicationContext context;
 	@Autowired
@@ -69,6 +76,12 @@ public class ResultManager {
 	private GroupManager groupManager;
 	@Autowired
 	private AssessmentManager assessmentManager;
+	@Autowired
+	private GradeCentreManager gradeCentreManager;
+	@Autowired
+	private TestCaseStatsManager testCaseStatsManager;
+	@Autowired
+	private SubmissionStatsManager submissionStatsManager;
 	
 	public Collection<AssessmentResult> getAllResultsForUserAssessment(PASTAUser user, long assessmentId) {
 		return resultDAO.getAllResults(user, assessmentId, true, false);
@@ -113,23 +126,18 @@ public class ResultManager {
 	}
 	
 	/**
-	 * Get the latest result for the collection of users.
-	 * <p>
-	 * Gets all of the cached assessment results for every assessment on the system, for the
-	 * collection of users given.
+	 * Get the date of the latest submission each of the given users (or groups)
+	 * made for an assessment.
 	 * 
-	 * @param allUsers the collection of {@link pasta.domain.user.PASTAUser} that are being queried
-	 * @return the map (Long userId , Long assessmentId, {@link pasta.domain.result.AssessmentResult} assessmentResults) 
+	 * @param users the users (or groups)
+	 * @param assessmentId the ID of the assessment
+	 * @return submission dates by username, ordered by username
 	 */
-	public Map<PASTAUser, Map<Long, AssessmentResult>> getLatestResults(Collection<PASTAUser> allUsers){
-		Map<PASTAUser, Map<Long, AssessmentResult>> results = new TreeMap<>();
-		
-		for(PASTAUser user: allUsers){
-			Map<Long, AssessmentResult> currResultMap = getLatestResults(user);
-			results.put(user, currResultMap);
+	public Map<String, Date> getLatestSubmissionDates(Collection<PASTAUser> users, long assessmentId) {
+		if(users.isEmpty()) {
+			return new TreeMap<>();
 		}
-		
-		return results;
+		return resultDAO.getLatestSubmissionDates(new ArrayList<>(users), assessmentId);
 	}
 	
 	/**
@@ -150,45 +158,23 @@ public class ResultManager {
 	}
 	
 	/**
-	 * Get the latest result for the collection of users, including their marks from the group.
-	 * 
-	 * @param allUsers the collection of {@link pasta.domain.user.PASTAUser} that are being queried
-	 * @return the map (Long userId , Long assessmentId, {@link pasta.domain.result.CombinedAssessmentResult} assessmentResults) 
-	 */
-	public Map<PASTAUser, Map<Long, Double>> getLatestResultsIncludingGroupEvenQuicker(Collection<PASTAUser> allUsers){
-		Map<PASTAUser, Map<Long, Double>> results = new TreeMap<>();
-		
-		Set<PASTAUser> users = new TreeSet<>(allUsers);
-		List<AssessmentResultSummary> userResults = resultDAO.getResultsSummaryForMultiUser(users);
-		
-		for(AssessmentResultSummary userResult : userResults) {
-			Map<Long, Double> thisUserResults = results.get(userResult.getUser());
-			if(thisUserResults == null) {
-				thisUserResults = new TreeMap<>();
-				results.put(userResult.getUser(), thisUserResults);
-			}
-			thisUserResults.put(userResult.getAssessment().getId(), userResult.getPercentage());
-		}
-		return results;
-		
-	}
-	
-	/**
-	 * Get the latest result for the collection of users, including their marks from the group.
+	 * Get the latest submission for the collection of users, including their marks from the group.
+	 * <p>
+	 * Only the marks of each submission are loaded, not the unit test or hand marking details.
 	 * 
 	 * @param allUsers the collection of {@link pasta.domain.user.PASTAUser} that are being queried
-	 * @return the map (Long userId , Long assessmentId, {@link pasta.domain.result.CombinedAssessmentResult} assessmentResults) 
+	 * @return the map (PASTAUser user, Long assessmentId, {@link pasta.domain.result.SubmissionListItem} latest submission) 
 	 */
-	public Map<PASTAUser, Map<Long, AssessmentResult>> getLatestResultsIncludingGroupQuick(Collection<PASTAUser> allUsers){
+	public Map<PASTAUser, Map<Long, SubmissionListItem>> getLatestSubmissionsIncludingGroup(Collection<PASTAUser> allUsers){
 		List<Long> allAssessmentIds = assessmentManager.getAssessmentIDList();
 		Map<PASTAUser, Map<Long, PASTAGroup>> allUserGroups = groupManager.getAllUserGroups(allUsers);
 		
 		List<PASTAUser> groups = new LinkedList<>();
 		groups.addAll(groupManager.getGroups(allUsers));
-		List<AssessmentResult> groupResults = resultDAO.getLatestResultsForMultiUser(groups);
-		Map<PASTAUser, Map<Long, AssessmentResult>> groupResultsMap = new TreeMap<>();
-		for(AssessmentResult groupResult : groupResults) {
-			Map<Long, AssessmentResult> thisGroupResults = groupResultsMap.get(groupResult.getUser());
+		List<SubmissionListItem> groupResults = resultDAO.getLatestSubmissionListItems(groups);
+		Map<PASTAUser, Map<Long, SubmissionListItem>> groupResultsMap = new TreeMap<>();
+		for(SubmissionListItem groupResult : groupResults) {
+			Map<Long, SubmissionListItem> thisGroupResults = groupResultsMap.get(groupResult.getUser());
 			if(thisGroupResults == null) {
 				thisGroupResults = new TreeMap<>();
 				groupResultsMap.put(groupResult.getUser(), thisGroupResults);
@@ -197,10 +183,10 @@ public class ResultManager {
 		}
 		
 		List<PASTAUser> users = new LinkedList<>(allUsers);
-		List<AssessmentResult> userResults = resultDAO.getLatestResultsForMultiUser(users);
-		Map<PASTAUser, Map<Long, AssessmentResult>> userResultsMap = new TreeMap<>();
-		for(AssessmentResult userResult : userResults) {
-			Map<Long, AssessmentResult> thisUserResults = userResultsMap.get(userResult.getUser());
+		List<SubmissionListItem> userResults = resultDAO.getLatestSubmissionListItems(users);
+		Map<PASTAUser, Map<Long, SubmissionListItem>> userResultsMap = new TreeMap<>();
+		for(SubmissionListItem userResult : userResults) {
+			Map<Long, SubmissionListItem> thisUserResults = userResultsMap.get(userResult.getUser());
 			if(thisUserResults == null) {
 				thisUserResults = new TreeMap<>();
 				userResultsMap.put(userResult.getUser(), thisUserResults);
@@ -208,21 +194,21 @@ public class ResultManager {
 			thisUserResults.put(userResult.getAssessment().getId(), userResult);
 		}
 		
-		Map<PASTAUser, Map<Long, AssessmentResult>> results = new TreeMap<>();
+		Map<PASTAUser, Map<Long, SubmissionListItem>> results = new TreeMap<>();
 		for(PASTAUser user : allUsers) {
-			Map<Long, AssessmentResult> thisUserResults = userResultsMap.get(user);
+			Map<Long, SubmissionListItem> thisUserResults = userResultsMap.get(user);
 			Map<Long, PASTAGroup> thisUserGroups = allUserGroups.get(user);
-			Map<Long, AssessmentResult> thisUserCombinedResults = results.get(user);
+			Map<Long, SubmissionListItem> thisUserCombinedResults = results.get(user);
 			if(thisUserCombinedResults == null) {
-				thisUserCombinedResults = new TreeMap<Long, AssessmentResult>();
+				thisUserCombinedResults = new TreeMap<Long, SubmissionListItem>();
 				results.put(user, thisUserCombinedResults);
 			}
 			for(Long assessmentId : allAssessmentIds) {
-				AssessmentResult individualResult = thisUserResults == null ? null : thisUserResults.get(assessmentId);
+				SubmissionListItem individualResult = thisUserResults == null ? null : thisUserResults.get(assessmentId);
 				PASTAGroup group = thisUserGroups == null ? null : thisUserGroups.get(assessmentId);
-				AssessmentResult groupResult = null;
+				SubmissionListItem groupResult = null;
 				if(group != null) {
-					Map<Long, AssessmentResult> thisGroupResults = groupResultsMap.get(group);
+					Map<Long, SubmissionListItem> thisGroupResults = groupResultsMap.get(group);
 					groupResult = thisGroupResults == null ? null : thisGroupResults.get(assessmentId);
 				}
 				if(individualResult == null) {
@@ -233,10 +219,7 @@ public class ResultManager {
 					if(groupResult == null) {
 						thisUserCombinedResults.put(assessmentId, individualResult);
 					} else {
-						CombinedAssessmentResult combined = new CombinedAssessmentResult(user);
-						combined.addResult(individualResult);
-						combined.addResult(groupResult);
-						thisUserCombinedResults.put(assessmentId, combined);
+						thisUserCombinedResults.put(assessmentId, SubmissionListItem.combine(user, individualResult, groupResult));
 					}
 				}
 			}
@@ -340,14 +323,45 @@ public class ResultManager {
 
 	public void save(AssessmentResult result) {
 		resultDAO.save(result);
+		testCaseStatsManager.invalidate(result.getAssessment().getId());
+		submissionStatsManager.recordSubmission(result);
 	}
 
 	public void saveOrUpdate(AssessmentResultSummary summary) {
 		resultDAO.saveOrUpdate(summary);
+		gradeCentreManager.update(summary);
 	}
 
 	public void update(AssessmentResult result) {
 		resultDAO.update(result);
+		testCaseStatsManager.invalidate(result.getAssessment().getId());
+	}
+
+	public int deleteUnitTestResults(AssessmentResult result) {
+		int deleted = resultDAO.deleteUnitTestResults(result.getId());
+		gradeCentreManager.refresh(result.getUser().getId(), result.getAssessment().getId());
+		return deleted;
+	}
+	
+	public void delete(AssessmentResultSummary summary) {
+		resultDAO.delete(summary);
+		gradeCentreManager.refresh(summary.getUser().getId(), summary.getAssessment().getId());
+	}
+
+	/**
+	 * Remove output from the {@link BlobStore} that no result refers to any
+	 * more, e.g. after results have been deleted or rerun.
+	 */
+	@Scheduled(initialDelay = 3600000, fixedDelay = 86400000)
+	public void sweepBlobStore() {
+		BlobStore store = BlobStore.instance();
+		if(!store.getStoreDirectory().isDirectory()) {
+			return;
+		}
+		int deleted = store.sweep(resultDAO.getBlobRefs(), BLOB_SWEEP_MIN_AGE);
+		if(deleted > 0) {
+			logger.info("Removed " + deleted + " unreferenced blobs");
+		}
 	}
 
 	public List<AssessmentResult> getWaitingResults() {
@@ -361,6 +375,13 @@ public class ResultManager {
 			for(AssessmentResult result : results) {
 				resultDAO.delete(result);
 			}
+			// The summaries were calculated from the deleted results
+			for(AssessmentResultSummary summary : resultDAO.getAllResultSummariesForAssessment(results.get(0).getAssessment())) {
+				resultDAO.delete(summary);
+			}
 		}
+		gradeCentreManager.invalidate();
+		testCaseStatsManager.invalidate(assessmentId);
+		submissionStatsManager.invalidate(assessmentId);
 	}
 }
@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.Collection;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
@@ -42,8 +43,10 @@ import pasta.domain.template.Assessment;
 import pasta.domain.user.PASTAUser;
 import pasta.repository.AssessmentDAO;
 import pasta.scheduler.ExecutionScheduler;
+import pasta.scheduler.JobPriority;
 import pasta.util.PASTAUtil;
 import pasta.util.ProjectProperties;
+import pasta.util.io.ZipExtractor.ZipLimitException;
 
 /**
  * Submission manager.
@@ -154,8 +157,14 @@ public class SubmissionManager {
 					throw new InvalidMediaTypeException("ZIP", "Not really a zip file.");
 				}
 			}
+		} catch (ZipLimitException e) {
+			logger.warn("Rejected submission from " + user.getUsername() + ": " + e.getMessage());
+			FileUtils.deleteQuietly(unzipTo);
+			return null;
 		} catch (IllegalStateException | IOException e) {
 			logger.error("Cannot save submission to disk.", e);
+			// Don't leave a partial submission behind to be picked up later
+			FileUtils.deleteQuietly(unzipTo);
 			return null;
 		}
 		return unzipTo;
@@ -170,8 +179,21 @@ public class SubmissionManager {
 	 * @param result the assessment result object to store results in
 	 */
 	public void runAssessment(PASTAUser user, long assessmentId, String assessmentDate, AssessmentResult result){
+		runAssessment(user, assessmentId, assessmentDate, result, JobPriority.INTERACTIVE);
+	}
+	
+	/**
+	 * Schedule an assessment attempt for a given user for execution
+	 * 
+	 * @param user the user
+	 * @param assessmentId the id of the assessment
+	 * @param assessmentDate the date of the assessment (format yyyy-MM-dd'T'HH-mm-ss)
+	 * @param result the assessment result object to store results in
+	 * @param priority the class of job, used to order the execution queue
+	 */
+	public void runAssessment(PASTAUser user, long assessmentId, String assessmentDate, AssessmentResult result, JobPriority priority){
 		try {
-			scheduler.scheduleJob(user, assessmentId, result, PASTAUtil.parseDate(assessmentDate));
+			scheduler.scheduleJob(user, assessmentId, result, PASTAUtil.parseDate(assessmentDate), priority);
 		} catch (ParseException e) {
 			logger.error("Unable to re-run assessment "
 					+ assessmentId + " for " + user.getUsername()
@@ -192,7 +214,7 @@ public class SubmissionManager {
 			AssessmentResult currResult = resultManager.getLatestResults(user).get(assessment.getId());
 			if(currResult != null){
 				// add them to the queue
-				scheduler.scheduleJob(user, assessment.getId(), currResult, currResult.getSubmissionDate());
+				scheduler.scheduleJob(user, assessment.getId(), currResult, currResult.getSubmissionDate(), JobPriority.BULK);
 			}
 		}
 	}
@@ -61,12 +61,14 @@ import pasta.domain.template.UnitTest;
 import pasta.repository.AssessmentDAO;
 import pasta.repository.ResultDAO;
 import pasta.repository.UnitTestDAO;
+import pasta.scheduler.ExecutionEstimator;
 import pasta.testing.AntJob;
 import pasta.testing.AntResults;
 import pasta.testing.BlackBoxTestRunner;
 import pasta.testing.CBlackBoxTestRunner;
 import pasta.testing.CPPBlackBoxTestRunner;
 import pasta.testing.JUnitTestRunner;
+import pasta.testing.JavaBlackBoxTestRunner;
 import pasta.testing.Runner;
 import pasta.testing.task.CleanupSpecificFilesTask;
 import pasta.testing.task.DirectoryCopyTask;
@@ -129,6 +131,7 @@ public class UnitTestManager {
 	 * @param thisTest the unit test to save
 	 */
 	public void updateUnitTest(UnitTest thisTest) {
+		ExecutionEstimator.invalidate(thisTest);
 		// Save unit test to database
 		try {
 			unitTestDAO.update(thisTest);
@@ -318,6 +321,10 @@ public class UnitTestManager {
 		if(subLanguage.getId().equals("c")) {
 			((CBlackBoxTestRunner) runner).setGCCArguments(test.getBlackBoxOptions().getGccCommandLineArgs());
 		}
+		if(subLanguage.getId().equals("java")) {
+			((JavaBlackBoxTestRunner) runner).setSingleJVM("true".equalsIgnoreCase(
+					PASTAOptions.instance().get("execution.blackbox.java.single.jvm")));
+		}
 		
 		String[] targets = null;
 		if(test.hasBlackBoxTestsWithOutputCheck()) {
@@ -409,7 +416,7 @@ public class UnitTestManager {
 				File compileErrorFile = new File(container.getOutLoc(), "compile.errors");
 				thisResult.setBuildError(true);
 				thisResult.setCompileErrors(runner.extractCompileErrors(compileErrorFile, results).replaceAll(Matcher.quoteReplacement(DockerManager.WORK_DIR), ""));
-				if(thisResult.getCompileErrors() != null && !thisResult.getCompileErrors().isEmpty()) {
+				if(thisResult.isCompileError()) {
 					logger.debug("Test ran with compile error");
 				} else {
 					logger.debug("Test ran with build error");
@@ -425,7 +432,7 @@ public class UnitTestManager {
 					errorContents = errorContents.replaceAll(".*: the monitored command dumped core", "").trim();
 				}
 				thisResult.setRuntimeErrors(errorContents.replaceAll(Matcher.quoteReplacement(DockerManager.WORK_DIR), ""));
-				if(thisResult.getRuntimeErrors() != null && !thisResult.getRuntimeErrors().isEmpty()) {
+				if(thisResult.isRuntimeError()) {
 					logger.debug("Test ran with runtime errors");
 				}
 			}
@@ -718,6 +725,7 @@ public class UnitTestManager {
 	}
 
 	public void deleteUserCode(UnitTest test) {
+		ExecutionEstimator.invalidate(test);
 		try {
 			FileUtils.deleteDirectory(test.getCodeLocation());
 		} catch (IOException e) {
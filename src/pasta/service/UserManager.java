@@ -69,6 +69,8 @@ public class UserManager {
 	private UserDAO userDao;
 	@Autowired
 	private LoginDAO loginDao;
+	@Autowired
+	private GradeCentreManager gradeCentreManager;
 	
 	@Autowired
 	private ApplicationContext context;
@@ -261,6 +263,8 @@ public class UserManager {
 	 */
 	public void deleteUser(PASTAUser toDelete) {
 		userDao.deleteSingleUser(toDelete);
+		// The user's summaries are deleted with them
+		gradeCentreManager.invalidate();
 	}
 
 	/**
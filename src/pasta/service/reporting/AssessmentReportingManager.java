@@ -24,6 +24,7 @@ SOFTWARE.
 
 package pasta.service.reporting;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -42,7 +43,6 @@ import org.springframework.stereotype.Service;
 
 import pasta.domain.ratings.AssessmentRating;
 import pasta.domain.result.AssessmentResult;
-import pasta.domain.result.UnitTestCaseResult;
 import pasta.domain.template.Assessment;
 import pasta.domain.user.PASTAUser;
 import pasta.repository.AssessmentDAO;
@@ -50,12 +50,11 @@ import pasta.repository.ResultDAO;
 import pasta.service.RatingManager;
 import pasta.service.ResultManager;
 import pasta.service.UserManager;
+import pasta.service.reporting.SubmissionStatsManager.SubmissionStats;
+import pasta.service.reporting.TestCaseStatsManager.TestCaseStats;
 import pasta.util.PASTAUtil;
-import pasta.util.ProjectProperties;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.core.JsonGenerator;
 
 @Service("assessmentReportingManager")
 @Repository
@@ -72,53 +71,62 @@ public class AssessmentReportingManager {
 	private RatingManager ratingManager;
 	@Autowired
 	private ResultManager resultManager;
+	@Autowired
+	private TestCaseStatsManager testCaseStatsManager;
+	@Autowired
+	private SubmissionStatsManager submissionStatsManager;
 	
-	public String getAllAssessments() {
+	/**
+	 * Write an array of every assessment category, each with its assessments.
+	 * 
+	 * @param json the generator to write to
+	 * @throws IOException if writing fails
+	 */
+	public void writeAllAssessments(JsonGenerator json) throws IOException {
 		Map<String, Set<Assessment>> allAssessments = assDao.getAllAssessmentsByCategory();
-		ObjectMapper mapper = new ObjectMapper();
-		ArrayNode root = mapper.createArrayNode();
+		json.writeStartArray();
 		for(Map.Entry<String, Set<Assessment>> entry : allAssessments.entrySet()) {
-			ObjectNode categoryNode = mapper.createObjectNode();
-			String category = entry.getKey();
-			categoryNode.put("category", category);
-			ArrayNode assessmentsNode = mapper.createArrayNode();
+			json.writeStartObject();
+			json.writeStringField("category", entry.getKey());
+			json.writeArrayFieldStart("assessments");
 			for(Assessment assessment : entry.getValue()) {
-				assessmentsNode.add(getAssessmentJSON(assessment));
+				writeAssessment(assessment, json);
 			}
-			categoryNode.set("assessments", assessmentsNode);
-			root.add(categoryNode);
+			json.writeEndArray();
+			json.writeEndObject();
 		}
-		return root.toString();
+		json.writeEndArray();
 	}
 	
-	public String getAssessment(Assessment assessment) {
-		return getAssessmentJSON(assessment).toString();
+	/**
+	 * Write an object holding the basic details of an assessment.
+	 * 
+	 * @param assessment the assessment
+	 * @param json the generator to write to
+	 * @throws IOException if writing fails
+	 */
+	public void writeAssessment(Assessment assessment, JsonGenerator json) throws IOException {
+		json.writeStartObject();
+		json.writeNumberField("id", assessment.getId());
+		json.writeStringField("name", assessment.getName());
+		json.writeStringField("dueDate", PASTAUtil.formatDateReadable(assessment.getDueDate()));
+		json.writeNumberField("marks", assessment.getMarks());
+		json.writeEndObject();
 	}
 	
-	public ObjectNode getAssessmentJSON(Assessment assessment) {
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode assessmentNode = mapper.createObjectNode();
-		assessmentNode.put("id", assessment.getId());
-		assessmentNode.put("name", assessment.getName());
-		assessmentNode.put("dueDate", PASTAUtil.formatDateReadable(assessment.getDueDate()));
-		assessmentNode.put("marks", assessment.getMarks());
-		return assessmentNode;
-	}
-
-	public String getMarksSummary(Assessment assessment) {
-		return getMarksSummaryJSON(assessment).toString();
-	}
+	/*
+	 * The write*Fields methods below write their fields into a JSON object that
+	 * the caller has already started, so the caller can add its own fields.
+	 */
 	
-	public ObjectNode getMarksSummaryJSON(Assessment assessment) {
-		return getMarksSummaryJSON(assessment, null);
+	public void writeMarksSummaryFields(Assessment assessment, JsonGenerator json) throws IOException {
+		writeMarksSummaryFields(assessment, null, json);
 	}
 	
-	public ObjectNode getMarksSummaryJSON(Assessment assessment, PASTAUser user) {
+	public void writeMarksSummaryFields(Assessment assessment, PASTAUser user, JsonGenerator json) throws IOException {
 		Collection<PASTAUser> students = userManager.getStudentList();
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode marksSummaryNode = mapper.createObjectNode();
-		marksSummaryNode.put("maxMark", assessment.getMarks());
-		marksSummaryNode.put("numTests", assessment.getAllTestNames().size());
+		json.writeNumberField("maxMark", assessment.getMarks());
+		json.writeNumberField("numTests", assessment.getAllTestNames().size());
 		
 		Set<PASTAUser> tutoredStudents = new TreeSet<>();
 		if(user != null && user.isTutor()) {
@@ -126,8 +134,10 @@ public class AssessmentReportingManager {
 		}
 		
 		Double yourMark = null;
-		ArrayNode marksNode = mapper.createArrayNode();
-		ArrayNode classMarksNode = mapper.createArrayNode();
+		double[] marks = new double[students.size()];
+		double[] classMarks = new double[students.size()];
+		int markCount = 0;
+		int classMarkCount = 0;
 		for(PASTAUser student : students) {
 			AssessmentResult result = resultDAO.getLatestIndividualResult(student, assessment.getId());
 			double mark = -1;
@@ -137,23 +147,22 @@ public class AssessmentReportingManager {
 			if(student.equals(user)) {
 				yourMark = mark;
 			}
-			(tutoredStudents.contains(student) ? classMarksNode : marksNode).add(mark);
+			if(tutoredStudents.contains(student)) {
+				classMarks[classMarkCount++] = mark;
+			} else {
+				marks[markCount++] = mark;
+			}
 		}
-		marksSummaryNode.set("marks", marksNode);
+		writeNumbers("marks", marks, markCount, json);
 		if(!tutoredStudents.isEmpty()) {
-			marksSummaryNode.set("classMarks", classMarksNode);
+			writeNumbers("classMarks", classMarks, classMarkCount, json);
 		}
 		if(yourMark != null) {
-			marksSummaryNode.put("yourMark", yourMark);
+			json.writeNumberField("yourMark", yourMark);
 		}
-		return marksSummaryNode;
-	}
-	
-	public String getAssessmentRatings(Assessment assessment) {
-		return getAssessmentRatingsJSON(assessment).toString();
 	}
 	
-	public ObjectNode getAssessmentRatingsJSON(Assessment assessment) {
+	public void writeAssessmentRatingsFields(Assessment assessment, JsonGenerator json) throws IOException {
 		List<AssessmentRating> ratings = ratingManager.getRatingsForAssessment(assessment);
 		List<String> comments = new ArrayList<String>();
 		List<Integer> ratingValues = new ArrayList<Integer>();
@@ -165,72 +174,33 @@ public class AssessmentReportingManager {
 		}
 		Collections.shuffle(comments);
 		Collections.shuffle(ratingValues);
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode ratingsNode = mapper.createObjectNode();
-		ArrayNode commentsNode = mapper.createArrayNode();
+		json.writeArrayFieldStart("comments");
 		for(String comment : comments) {
 			if(comment != null && !comment.trim().isEmpty()) {
-				commentsNode.add(comment);
+				json.writeString(comment);
 			}
 		}
-		ratingsNode.set("comments", commentsNode);
-		ArrayNode valuesNode = mapper.createArrayNode();
+		json.writeEndArray();
+		json.writeArrayFieldStart("ratings");
 		for(Integer value : ratingValues) {
-			valuesNode.add(value);
+			json.writeNumber(value);
 		}
-		ratingsNode.set("ratings", valuesNode);
-		ratingsNode.put("ratingCount", ratingCount);
-		return ratingsNode;
+		json.writeEndArray();
+		json.writeNumberField("ratingCount", ratingCount);
 	}
 	
-	public ObjectNode getAssessmentSubmissionsJSON(Assessment assessment) {
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode root = mapper.createObjectNode();
-		
-		Collection<PASTAUser> students = userManager.getStudentList();
-		root.put("studentCount", students.size());
+	public void writeAssessmentSubmissionsFields(Assessment assessment, JsonGenerator json) throws IOException {
+		SubmissionStats stats = submissionStatsManager.getStats(assessment.getId());
+		json.writeNumberField("studentCount", stats.getStudentCount());
 		
-		Set<Date> allSubmissions = new TreeSet<>();
-		Set<PASTAUser> noSubmissions = new TreeSet<>();
-		
-		HashMap<Date, Integer> submissionCounts = new HashMap<>();
-		HashMap<Date, Integer> startedCount = new HashMap<>();
-		
-		for(PASTAUser user : students) {
-			List<Date> submissionHistory = resultManager.getSubmissionDates(user, assessment.getId());
-			
-			boolean first = true;
-			for(Date date : submissionHistory) {
-				Date roundDate = getDay(date);
-				if(!allSubmissions.contains(date)) {
-					Integer count = submissionCounts.get(roundDate);
-					if(count == null) {
-						count = 0;
-					}
-					submissionCounts.put(roundDate, count+1);
-				}
-				if(first) {
-					Integer count = startedCount.get(roundDate);
-					if(count == null) {
-						count = 0;
-					}
-					startedCount.put(roundDate, count+1);
-				}
-				first = false;
-			}
-			
-			if(submissionHistory.isEmpty()) {
-				noSubmissions.add(user);
-			} else {
-				allSubmissions.addAll(submissionHistory);
-			}
-		}
+		Map<Date, Integer> submissionCounts = stats.getSubmissionCounts();
+		Map<Date, Integer> startedCount = stats.getStartedCounts();
 		
-		ArrayNode noSubmissionNode = mapper.createArrayNode();
-		for(PASTAUser user : noSubmissions) {
-			noSubmissionNode.add(user.getUsername());
+		json.writeArrayFieldStart("noSubmission");
+		for(String username : stats.getNoSubmissionUsernames()) {
+			json.writeString(username);
 		}
-		root.set("noSubmission", noSubmissionNode);
+		json.writeEndArray();
 		
 		TreeSet<Date> dates = new TreeSet<>(submissionCounts.keySet());
 		if(!dates.isEmpty()) {
@@ -251,36 +221,31 @@ public class AssessmentReportingManager {
 		}
 		
 		SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
-		ArrayNode datesNode = mapper.createArrayNode();
+		json.writeArrayFieldStart("dates");
 		for(Date date : dates) {
-			datesNode.add(sdf.format(date));
+			json.writeString(sdf.format(date));
 		}
-		root.set("dates", datesNode);
+		json.writeEndArray();
 		
-		ArrayNode submissionCountsNode = mapper.createArrayNode();
+		json.writeArrayFieldStart("submissionCounts");
 		for(Date date : dates) {
 			Integer count = submissionCounts.get(date);
-			if(count == null) {
-				count = 0;
-			}
-			submissionCountsNode.add(count);
+			json.writeNumber(count == null ? 0 : count);
 		}
-		root.set("submissionCounts", submissionCountsNode);
+		json.writeEndArray();
 		
-		ArrayNode startedCountsNode = mapper.createArrayNode();
+		json.writeArrayFieldStart("startedCounts");
 		int totalCount = 0;
 		for(Date date : dates) {
 			Integer count = startedCount.get(date);
-			if(count == null) {
-				count = 0;
+			if(count != null) {
+				totalCount += count;
 			}
-			totalCount += count;
-			startedCountsNode.add(totalCount);
+			json.writeNumber(totalCount);
 		}
-		root.set("startedCounts", startedCountsNode);
-		
-		return root;
+		json.writeEndArray();
 	}
+	
 	private Date getDay(Date date) {
 		Calendar cal = Calendar.getInstance();
 		cal.setTime(date);
@@ -291,45 +256,42 @@ public class AssessmentReportingManager {
 		return cal.getTime();
 	}
 	
-	public ObjectNode getTestCaseCountsSummaryJSON(Assessment assessment, PASTAUser user) {
+	public void writeTestCaseCountsSummaryFields(Assessment assessment, PASTAUser user, JsonGenerator json) throws IOException {
 		Collection<PASTAUser> students = userManager.getStudentList();
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode passCountSummaryNode = mapper.createObjectNode();
-		passCountSummaryNode.put("numTests", assessment.getAllTestNames().size());
+		json.writeNumberField("numTests", assessment.getAllTestNames().size());
 		
 		Set<PASTAUser> tutoredStudents = new TreeSet<>();
 		if(user != null && user.isTutor()) {
 			tutoredStudents.addAll(userManager.getTutoredStudents(user));
 		}
 		
+		TestCaseStats stats = testCaseStatsManager.getStats(assessment);
 		Long yourPassCount = null;
-		ArrayNode passCountsNode = mapper.createArrayNode();
-		ArrayNode classPassCountsNode = mapper.createArrayNode();
+		long[] passCounts = new long[students.size()];
+		long[] classPassCounts = new long[students.size()];
+		int passCountCount = 0;
+		int classPassCountCount = 0;
 		for(PASTAUser student : students) {
-			AssessmentResult result = resultDAO.getLatestIndividualResult(student, assessment.getId());
-			long passCount = -1;
-			if(result != null) {
-				passCount = result.getUnitTests().stream()
-						.flatMap(utr -> utr.getTestCases().stream())
-						.filter(UnitTestCaseResult::isPass)
-						.count();
-			}
+			long passCount = stats.getPassCount(student.getId());
 			if(student.equals(user)) {
 				yourPassCount = passCount;
 			}
-			(tutoredStudents.contains(student) ? classPassCountsNode : passCountsNode).add(passCount);
+			if(tutoredStudents.contains(student)) {
+				classPassCounts[classPassCountCount++] = passCount;
+			} else {
+				passCounts[passCountCount++] = passCount;
+			}
 		}
-		passCountSummaryNode.set("passCounts", passCountsNode);
+		writeNumbers("passCounts", passCounts, passCountCount, json);
 		if(!tutoredStudents.isEmpty()) {
-			passCountSummaryNode.set("classPassCounts", classPassCountsNode);
+			writeNumbers("classPassCounts", classPassCounts, classPassCountCount, json);
 		}
 		if(yourPassCount != null) {
-			passCountSummaryNode.put("yourPassCount", yourPassCount);
+			json.writeNumberField("yourPassCount", yourPassCount);
 		}
-		return passCountSummaryNode;
 	}
 
-	public ObjectNode getTestCaseDifficultyJSON(Assessment assessment, PASTAUser user) {
+	public void writeTestCaseDifficultyFields(Assessment assessment, PASTAUser user, JsonGenerator json) throws IOException {
 		Collection<PASTAUser> students = userManager.getStudentList();
 		List<String> testNames = assessment.getAllTestNames();
 		
@@ -345,20 +307,19 @@ public class AssessmentReportingManager {
 			tutoredStudents.addAll(userManager.getTutoredStudents(user));
 		}
 		
+		TestCaseStats stats = testCaseStatsManager.getStats(assessment);
 		for(PASTAUser student : students) {
-			AssessmentResult result = resultDAO.getLatestIndividualResult(student, assessment.getId());
-			if(result == null) {
+			if(!stats.hasSubmitted(student.getId())) {
 				continue;
 			}
 			
 			Map<String, int[]> counts = tutoredStudents.contains(student) ? classCounts : otherCounts;
-			result.getUnitTests().stream()
-			.flatMap(utr -> utr.getTestCases().stream())
-			.forEach(utcr -> {
-				int[] c = counts.get(utcr.getTestName());
-				if(c == null) return;
-				c[utcr.isPass() ? 0 : (utcr.isFailure() ? 1 : 2)]++;
-			});
+			for(Map.Entry<String, int[]> count : counts.entrySet()) {
+				byte outcome = stats.getOutcome(student.getId(), count.getKey());
+				if(outcome != TestCaseStatsManager.NO_RESULT) {
+					count.getValue()[outcome]++;
+				}
+			}
 		}
 		
 		Collections.sort(testNames, (a, b) -> {
@@ -374,37 +335,46 @@ public class AssessmentReportingManager {
 			return a.compareToIgnoreCase(b);
 		});
 		
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode testsSummaryNode = mapper.createObjectNode();
-		
-		ArrayNode testsNode = mapper.createArrayNode();
+		json.writeArrayFieldStart("tests");
 		for(String testName : testNames) {
-			testsNode.add(testName);
+			json.writeString(testName);
 		}
-		testsSummaryNode.set("tests", testsNode);
+		json.writeEndArray();
 		
-		ArrayNode testResultsNode = mapper.createArrayNode();
+		json.writeArrayFieldStart("testResults");
 		for(String testName : testNames) {
-			ObjectNode testNode = mapper.createObjectNode();
-			testNode.put("testName", testName);
-			ObjectNode countsNode = mapper.createObjectNode();
-			int[] counts = otherCounts.get(testName);
-			countsNode.put("pass", counts[0]);
-			countsNode.put("fail", counts[1]);
-			countsNode.put("error", counts[2]);
-			testNode.set("counts", countsNode);
+			json.writeStartObject();
+			json.writeStringField("testName", testName);
+			writeCounts("counts", otherCounts.get(testName), json);
 			if(!tutoredStudents.isEmpty()) {
-				countsNode = mapper.createObjectNode();
-				counts = classCounts.get(testName);
-				countsNode.put("pass", counts[0]);
-				countsNode.put("fail", counts[1]);
-				countsNode.put("error", counts[2]);
-				testNode.set("classCounts", countsNode);
+				writeCounts("classCounts", classCounts.get(testName), json);
 			}
-			testResultsNode.add(testNode);
+			json.writeEndObject();
 		}
-		
-		testsSummaryNode.set("testResults", testResultsNode);
-		return testsSummaryNode;
+		json.writeEndArray();
+	}
+	
+	private void writeNumbers(String fieldName, double[] values, int count, JsonGenerator json) throws IOException {
+		json.writeArrayFieldStart(fieldName);
+		for(int i = 0; i < count; i++) {
+			json.writeNumber(values[i]);
+		}
+		json.writeEndArray();
+	}
+	
+	private void writeNumbers(String fieldName, long[] values, int count, JsonGenerator json) throws IOException {
+		json.writeArrayFieldStart(fieldName);
+		for(int i = 0; i < count; i++) {
+			json.writeNumber(values[i]);
+		}
+		json.writeEndArray();
+	}
+	
+	private void writeCounts(String fieldName, int[] counts, JsonGenerator json) throws IOException {
+		json.writeObjectFieldStart(fieldName);
+		json.writeNumberField("pass", counts[0]);
+		json.writeNumberField("fail", counts[1]);
+		json.writeNumberField("error", counts[2]);
+		json.writeEndObject();
 	}
  }
@@ -25,101 +25,101 @@ SOFTWARE.
 package pasta.service.reporting;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.util.List;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
-public class CSVReport {
+import pasta.repository.ResultDAO.RowHandler;
 
-	private String[] header;
-	private CSVPage[] pages;
+/**
+ * Writes report rows as CSV files in a zip as they are read from the 
+ * database, so the report is never held in memory.
+ * <p>
+ * If the page length is more than 0, a new file is started after that many
+ * rows (e.g. to stay under a spreadsheet's row limit), named 
+ * <code>results001.csv</code>, <code>results002.csv</code>, etc. Otherwise
+ * all rows are written to <code>results.csv</code>.
+ */
+public class CSVReport implements RowHandler {
+
+	private final ZipOutputStream zip;
+	private final Writer writer;
+	private final String[] header;
+	private final int pageLength;
+	private int pageCount;
+	private int lineNum;
 	
-	public CSVReport(String[] header, List<Object[]> results, int pageLength) {
+	public CSVReport(ZipOutputStream zip, String[] header, int pageLength) {
+		this.zip = zip;
+		// Not closed, as that would close the zip
+		this.writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
 		this.header = header;
-		
-		if(results.isEmpty()) {
-			pages = new CSVPage[1];
-			pages[0] = new CSVPage(this, 0);
-			return;
-		}
-		
-		if(pageLength <= 0) {
-			pageLength = results.size();
-		}
-		
-		int pageCount = (int) Math.ceil(results.size() / (double)pageLength);
-		pages = new CSVPage[pageCount];
-		
-		int lineNum = -1;
-		int pageNum = 0;
-		
-		pages[pageNum] = new CSVPage(this, pageLength);
-		
-		StringBuilder sb;
-		for(Object[] row : results) {
-			if(++lineNum >= pageLength) {
-				lineNum = 0;
-				pages[++pageNum] = new CSVPage(this, pageLength);
-			}
-			
-			sb = new StringBuilder();
-			
-			for(int i = 0; i < row.length; i++) {
-				if(i > 0) {
-					sb.append(',');
-				}
-				if(row[i] instanceof Number) {
-					sb.append(row[i].toString());
-				} else {
-					sb.append('"')
-					  .append(row[i].toString().replace("\"", "\\\""))
-					  .append('"');
-				}
-			}
-			
-			pages[pageNum].lines[lineNum] = sb.toString();
-			
-		}
+		this.pageLength = pageLength;
+		this.pageCount = 0;
+		this.lineNum = 0;
 	}
 
 	public String[] getHeader() {
 		return header;
 	}
-	public CSVPage[] getPages() {
-		return pages;
+	
+	@Override
+	public void handle(Object[] row) throws IOException {
+		if(pageCount == 0 || (pageLength > 0 && lineNum >= pageLength)) {
+			startPage();
+		}
+		for(int i = 0; i < row.length; i++) {
+			if(i > 0) {
+				writer.write(',');
+			}
+			if(row[i] == null) {
+				continue;
+			}
+			if(row[i] instanceof Number) {
+				writer.write(row[i].toString());
+			} else {
+				writer.write('"');
+				writer.write(row[i].toString().replace("\"", "\\\""));
+				writer.write('"');
+			}
+		}
+		writer.write(System.lineSeparator());
+		lineNum++;
 	}
-
-	public static class CSVPage {
-		private CSVReport parent;
-		private String[] lines;
-		
-		private CSVPage(CSVReport parent, int pageSize) {
-			lines = new String[pageSize];
-			this.parent = parent;
+	
+	private void startPage() throws IOException {
+		if(pageCount > 0) {
+			writer.flush();
+			zip.closeEntry();
 		}
+		pageCount++;
+		lineNum = 0;
 		
-		public void output(OutputStream out) throws IOException {
-			String[] header = parent.getHeader();
-			for(int i = 0; i < header.length; i++) {
-				if(i > 0) {
-					out.write(",".getBytes());
-				}
-				out.write(header[i].getBytes());
-			}
-			out.write(System.lineSeparator().getBytes());
-			for(String line : lines) {
-				if(line == null) {
-					break;
-				}
-				out.write(line.getBytes());
-				out.write(System.lineSeparator().getBytes());
+		String entryName = "results";
+		if(pageLength > 0) {
+			entryName += String.format("%03d", pageCount);
+		}
+		zip.putNextEntry(new ZipEntry(entryName + ".csv"));
+		for(int i = 0; i < header.length; i++) {
+			if(i > 0) {
+				writer.write(',');
 			}
+			writer.write(header[i]);
 		}
+		writer.write(System.lineSeparator());
 	}
 	
-	public static void main(String[] args) {
-		int pages = 0;
-		int x = 5;
-		int numDigits = (int) Math.ceil(Math.log10(pages + 1));
-		System.out.println(String.format("digits: %d - %0" + numDigits + "d", numDigits, x));
+	/**
+	 * Finish the last file. If there were no rows, this writes a file with
+	 * just the header.
+	 */
+	public void finish() throws IOException {
+		if(pageCount == 0) {
+			startPage();
+		}
+		writer.flush();
+		zip.closeEntry();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,315 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.service.reporting;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import pasta.domain.UserPermissionLevel;
+import pasta.domain.result.AssessmentResult;
+import pasta.domain.user.PASTAUser;
+import pasta.repository.ResultDAO;
+import pasta.service.GroupManager;
+
+/**
+ * Cached per-day submission statistics for the submissions timeline report.
+ * <p>
+ * The statistics for an assessment are grouped by day in the database (see
+ * {@link ResultDAO#getDailySubmissionCounts(long)}), then kept up to date as
+ * new submissions are saved through {@link #recordSubmission(AssessmentResult)}.
+ * Deleting results drops the cached statistics. Changes to the student list or
+ * to group membership are not tracked, so cached statistics are also reloaded
+ * once they are older than {@link #MAX_AGE_MS}.
+ */
+@Service("submissionStatsManager")
+public class SubmissionStatsManager {
+	private static Logger logger = Logger.getLogger(SubmissionStatsManager.class);
+	
+	private static final long MAX_AGE_MS = 5 * 60 * 1000;
+	
+	@Autowired
+	private ResultDAO resultDAO;
+	@Autowired
+	private GroupManager groupManager;
+	
+	// Loads are held as futures so that the queries run outside the map and
+	// concurrent requests for the same assessment wait for a single load
+	private final ConcurrentHashMap<Long, FutureTask<SubmissionStats>> cache = new ConcurrentHashMap<>();
+	
+	/**
+	 * Submission counts for one assessment, by day.
+	 */
+	public static class SubmissionStats {
+		private final long loadedAt = System.currentTimeMillis();
+		private long loadFinishedAt;
+		private final Map<Date, Integer> submissionCounts = new HashMap<>();
+		private final Map<Date, Integer> startedCounts = new HashMap<>();
+		private final Set<Long> submitted = new HashSet<>();
+		private final Map<Long, String> noSubmission = new HashMap<>();
+		
+		private SubmissionStats() {}
+		
+		/**
+		 * @return the number of active students
+		 */
+		public synchronized int getStudentCount() {
+			return submitted.size() + noSubmission.size();
+		}
+		
+		/**
+		 * @return the number of submissions made on each day
+		 */
+		public synchronized Map<Date, Integer> getSubmissionCounts() {
+			return new TreeMap<>(submissionCounts);
+		}
+		
+		/**
+		 * @return the number of students who made their first submission on
+		 *         each day
+		 */
+		public synchronized Map<Date, Integer> getStartedCounts() {
+			return new TreeMap<>(startedCounts);
+		}
+		
+		/**
+		 * @return the sorted usernames of students with no submissions
+		 */
+		public synchronized List<String> getNoSubmissionUsernames() {
+			List<String> usernames = new ArrayList<>(noSubmission.values());
+			Collections.sort(usernames);
+			return usernames;
+		}
+		
+		private synchronized void addSubmission(Date submissionDate, Collection<Long> studentIds) {
+			Date day = getDay(submissionDate);
+			increment(submissionCounts, day, 1);
+			for(Long studentId : studentIds) {
+				if(submitted.add(studentId)) {
+					increment(startedCounts, day, 1);
+					noSubmission.remove(studentId);
+				}
+			}
+		}
+		
+		private static void increment(Map<Date, Integer> counts, Date day, int amount) {
+			Integer count = counts.get(day);
+			counts.put(day, (count == null ? 0 : count) + amount);
+		}
+	}
+	
+	/**
+	 * Get the submission statistics for an assessment, loading them if they
+	 * are not cached.
+	 * 
+	 * @param assessmentId the id of the assessment
+	 * @return the statistics
+	 */
+	public SubmissionStats getStats(long assessmentId) {
+		FutureTask<SubmissionStats> task = cache.get(assessmentId);
+		if(task != null) {
+			SubmissionStats cached = await(assessmentId, task);
+			if(System.currentTimeMillis() - cached.loadedAt < MAX_AGE_MS) {
+				return cached;
+			}
+		}
+		
+		FutureTask<SubmissionStats> newTask = new FutureTask<>(() -> load(assessmentId));
+		boolean added = task == null ? cache.putIfAbsent(assessmentId, newTask) == null 
+				: cache.replace(assessmentId, task, newTask);
+		if(!added) {
+			// Another thread is already loading; use its statistics
+			task = cache.get(assessmentId);
+			if(task != null) {
+				return await(assessmentId, task);
+			}
+		}
+		newTask.run();
+		return await(assessmentId, newTask);
+	}
+	
+	private SubmissionStats await(long assessmentId, FutureTask<SubmissionStats> task) {
+		try {
+			return task.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading submission statistics for assessment " + assessmentId, e);
+		} catch(ExecutionException e) {
+			// Don't keep the failure; the next request will try again
+			cache.remove(assessmentId, task);
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Could not load submission statistics for assessment " + assessmentId, e.getCause());
+		}
+	}
+	
+	private SubmissionStats load(long assessmentId) {
+		long start = System.currentTimeMillis();
+		SubmissionStats stats = new SubmissionStats();
+		for(Object[] row : resultDAO.getDailySubmissionCounts(assessmentId)) {
+			SubmissionStats.increment(stats.submissionCounts, getDay((Date) row[0]), ((Number) row[1]).intValue());
+		}
+		for(Object[] row : resultDAO.getFirstSubmissionDates(assessmentId)) {
+			stats.submitted.add(((Number) row[0]).longValue());
+			SubmissionStats.increment(stats.startedCounts, getDay((Date) row[1]), 1);
+		}
+		for(Object[] row : resultDAO.getStudentsWithoutSubmission(assessmentId)) {
+			stats.noSubmission.put(((Number) row[0]).longValue(), (String) row[1]);
+		}
+		logger.debug("Loaded submission statistics for assessment " + assessmentId 
+				+ " in " + (System.currentTimeMillis() - start) + "ms");
+		stats.loadFinishedAt = System.nanoTime();
+		return stats;
+	}
+	
+	/**
+	 * Add a new submission to the cached statistics for its assessment once
+	 * the current transaction commits.
+	 * 
+	 * @param result the newly saved result for the submission
+	 */
+	public void recordSubmission(AssessmentResult result) {
+		final long assessmentId = result.getAssessment().getId();
+		if(!cache.containsKey(assessmentId)) {
+			return;
+		}
+		
+		final Date submissionDate = result.getSubmissionDate();
+		final List<Long> studentIds = new ArrayList<>();
+		PASTAUser user = result.getUser();
+		if(user.isGroup()) {
+			for(PASTAUser member : groupManager.getGroup(user.getId()).getMembers()) {
+				if(isActiveStudent(member)) {
+					studentIds.add(member.getId());
+				}
+			}
+		} else if(isActiveStudent(user)) {
+			studentIds.add(user.getId());
+		}
+		if(studentIds.isEmpty()) {
+			return;
+		}
+		
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			// Already committed, so cached statistics may or may not include it
+			cache.remove(assessmentId);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			private long committingAt;
+			
+			@Override
+			public void beforeCommit(boolean readOnly) {
+				committingAt = System.nanoTime();
+			}
+			
+			@Override
+			public void afterCommit() {
+				addSubmission(assessmentId, submissionDate, studentIds, committingAt);
+			}
+		});
+	}
+	
+	/*
+	 * Only statistics that finished loading before the submission started 
+	 * committing are known not to include it. Anything else (a load still
+	 * running, or one that ran during the commit) is dropped and reloaded,
+	 * rather than risk counting the submission twice.
+	 */
+	private void addSubmission(long assessmentId, Date submissionDate, List<Long> studentIds, long committingAt) {
+		FutureTask<SubmissionStats> task = cache.get(assessmentId);
+		if(task == null) {
+			return;
+		}
+		SubmissionStats stats = null;
+		if(task.isDone()) {
+			try {
+				stats = task.get();
+			} catch(InterruptedException | ExecutionException e) {
+				// Treated as not loaded
+			}
+		}
+		if(stats != null && stats.loadFinishedAt - committingAt < 0) {
+			stats.addSubmission(submissionDate, studentIds);
+		} else {
+			cache.remove(assessmentId, task);
+		}
+	}
+	
+	/**
+	 * Forget the statistics for an assessment once the current transaction
+	 * commits.
+	 * 
+	 * @param assessmentId the id of the assessment
+	 */
+	public void invalidate(final long assessmentId) {
+		afterCommit(() -> cache.remove(assessmentId));
+	}
+	
+	private static boolean isActiveStudent(PASTAUser user) {
+		return user.isActive() && user.getPermissionLevel() == UserPermissionLevel.STUDENT;
+	}
+	
+	private static void afterCommit(final Runnable action) {
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
+	}
+	
+	private static Date getDay(Date date) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(date);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		return cal.getTime();
+	}
+}
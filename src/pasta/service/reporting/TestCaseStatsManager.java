@@ -0,0 +1,235 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.service.reporting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import pasta.domain.result.UnitTestCaseResult;
+import pasta.domain.template.Assessment;
+import pasta.repository.ResultDAO;
+
+/**
+ * Cached unit test case statistics for the latest individual submission of
+ * every user, used by the test case reports.
+ * <p>
+ * The statistics for an assessment are loaded with a single query (see
+ * {@link ResultDAO#getLatestTestCaseOutcomes(long)}) and kept until a result
+ * for that assessment is saved or updated, or the assessment's test names
+ * change.
+ */
+@Service("testCaseStatsManager")
+public class TestCaseStatsManager {
+	private static Logger logger = Logger.getLogger(TestCaseStatsManager.class);
+	
+	public static final byte NO_RESULT = -1;
+	public static final byte PASS = 0;
+	public static final byte FAILURE = 1;
+	public static final byte ERROR = 2;
+	
+	@Autowired
+	private ResultDAO resultDAO;
+	
+	// Loads are held as futures so that the query runs outside the map and
+	// concurrent requests for the same assessment wait for a single load
+	private final ConcurrentHashMap<Long, FutureTask<TestCaseStats>> cache = new ConcurrentHashMap<>();
+	
+	/**
+	 * Test case outcomes of the latest submission of each user for one assessment.
+	 */
+	public static class TestCaseStats {
+		private final List<String> testNames;
+		private final Map<String, Integer> testIndexes;
+		private final Map<Long, int[]> passCounts = new HashMap<>();
+		private final Map<Long, byte[]> outcomes = new HashMap<>();
+		
+		private TestCaseStats(List<String> testNames) {
+			this.testNames = Collections.unmodifiableList(new ArrayList<>(testNames));
+			this.testIndexes = new HashMap<>();
+			for(String testName : testNames) {
+				if(!testIndexes.containsKey(testName)) {
+					testIndexes.put(testName, testIndexes.size());
+				}
+			}
+		}
+		
+		private void add(long userId, String testName, String result) {
+			int[] passCount = passCounts.get(userId);
+			byte[] userOutcomes = outcomes.get(userId);
+			if(passCount == null) {
+				passCount = new int[1];
+				passCounts.put(userId, passCount);
+				userOutcomes = new byte[testIndexes.size()];
+				Arrays.fill(userOutcomes, NO_RESULT);
+				outcomes.put(userId, userOutcomes);
+			}
+			if(testName == null || result == null) {
+				return;
+			}
+			byte outcome = UnitTestCaseResult.PASS.equals(result) ? PASS : 
+				(UnitTestCaseResult.FAILURE.equals(result) ? FAILURE : ERROR);
+			if(outcome == PASS) {
+				passCount[0]++;
+			}
+			Integer index = testIndexes.get(testName.trim());
+			if(index != null) {
+				userOutcomes[index] = outcome;
+			}
+		}
+		
+		public List<String> getTestNames() {
+			return testNames;
+		}
+		
+		/**
+		 * @param userId the id of the user
+		 * @return whether the user has submitted the assessment
+		 */
+		public boolean hasSubmitted(long userId) {
+			return passCounts.containsKey(userId);
+		}
+		
+		/**
+		 * @param userId the id of the user
+		 * @return the number of test cases passed by the user's latest
+		 *         submission, or -1 if they have not submitted
+		 */
+		public int getPassCount(long userId) {
+			int[] passCount = passCounts.get(userId);
+			return passCount == null ? -1 : passCount[0];
+		}
+		
+		/**
+		 * @param userId the id of the user
+		 * @param testName the name of the test case
+		 * @return {@link TestCaseStatsManager#PASS}, {@link TestCaseStatsManager#FAILURE},
+		 *         {@link TestCaseStatsManager#ERROR} or
+		 *         {@link TestCaseStatsManager#NO_RESULT}
+		 */
+		public byte getOutcome(long userId, String testName) {
+			byte[] userOutcomes = outcomes.get(userId);
+			Integer index = testIndexes.get(testName);
+			if(userOutcomes == null || index == null) {
+				return NO_RESULT;
+			}
+			return userOutcomes[index];
+		}
+	}
+	
+	/**
+	 * Get the test case statistics for an assessment, loading them if they are
+	 * not cached.
+	 * 
+	 * @param assessment the assessment
+	 * @return the statistics
+	 */
+	public TestCaseStats getStats(Assessment assessment) {
+		final long assessmentId = assessment.getId();
+		final List<String> testNames = assessment.getAllTestNames();
+		FutureTask<TestCaseStats> task = cache.get(assessmentId);
+		if(task != null) {
+			TestCaseStats cached = await(assessmentId, task);
+			if(cached.getTestNames().equals(testNames)) {
+				return cached;
+			}
+		}
+		
+		FutureTask<TestCaseStats> newTask = new FutureTask<>(() -> load(assessmentId, testNames));
+		boolean added = task == null ? cache.putIfAbsent(assessmentId, newTask) == null 
+				: cache.replace(assessmentId, task, newTask);
+		if(!added) {
+			// Another thread got there first; only use its load if the test names match
+			task = cache.get(assessmentId);
+			if(task != null) {
+				TestCaseStats cached = await(assessmentId, task);
+				if(cached.getTestNames().equals(testNames)) {
+					return cached;
+				}
+			}
+		}
+		newTask.run();
+		return await(assessmentId, newTask);
+	}
+	
+	private TestCaseStats await(long assessmentId, FutureTask<TestCaseStats> task) {
+		try {
+			return task.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading test case statistics for assessment " + assessmentId, e);
+		} catch(ExecutionException e) {
+			// Don't keep the failure; the next request will try again
+			cache.remove(assessmentId, task);
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Could not load test case statistics for assessment " + assessmentId, e.getCause());
+		}
+	}
+	
+	private TestCaseStats load(long assessmentId, List<String> testNames) {
+		long start = System.currentTimeMillis();
+		TestCaseStats stats = new TestCaseStats(testNames);
+		List<Object[]> rows = resultDAO.getLatestTestCaseOutcomes(assessmentId);
+		for(Object[] row : rows) {
+			stats.add(((Number) row[0]).longValue(), (String) row[1], (String) row[2]);
+		}
+		logger.debug("Loaded " + rows.size() + " test case outcomes for assessment " + assessmentId 
+				+ " in " + (System.currentTimeMillis() - start) + "ms");
+		return stats;
+	}
+	
+	/**
+	 * Forget the statistics for an assessment once the current transaction
+	 * commits, so that they are reloaded with the committed results.
+	 * 
+	 * @param assessmentId the id of the assessment
+	 */
+	public void invalidate(final long assessmentId) {
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			cache.remove(assessmentId);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				cache.remove(assessmentId);
+			}
+		});
+	}
+}
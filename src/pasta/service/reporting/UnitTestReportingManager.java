@@ -24,13 +24,16 @@ SOFTWARE.
 
 package pasta.service.reporting;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.zip.ZipOutputStream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
@@ -309,21 +312,31 @@ public class UnitTestReportingManager {
 		}
 	}
 
-	public CSVReport getAllUnitTestAttemptsReport(int pageSize) {
-		List<Object[]> attempts = resultDAO.getAllTestCaseDetails();
+	/**
+	 * Write the outcome of every test case of every submission (optionally 
+	 * filtered by assessment and submission date) to a CSV report.
+	 */
+	public void writeAllUnitTestAttemptsReport(ZipOutputStream zip, int pageSize, Long assessmentId, Date from, Date to) throws IOException {
 		String[] header = {
 				"submission_id", "test_case", "result", "test_case_weight", 
 		};
-		return new CSVReport(header, attempts, pageSize);
+		CSVReport report = new CSVReport(zip, header, pageSize);
+		resultDAO.scrollAllTestCaseDetails(assessmentId, from, to, report);
+		report.finish();
 	}
 	
-	public CSVReport getAllSubmissionsReport(int pageSize) {
-		List<Object[]> attempts = resultDAO.getAllSubmissionDetails();
+	/**
+	 * Write the details of every submission (optionally filtered by assessment
+	 * and submission date) to a CSV report.
+	 */
+	public void writeAllSubmissionsReport(ZipOutputStream zip, int pageSize, Long assessmentId, Date from, Date to) throws IOException {
 		String[] header = {
 				"submission_id", "assessment_id", "assessment_name", "assessment_release_date",
 				"assessment_due_date", "auto_mark_weighted_percentage", "submission_date",
 				"user", "permission_level", "submitted_by", "group_members"
 		};
-		return new CSVReport(header, attempts, pageSize);
+		CSVReport report = new CSVReport(zip, header, pageSize);
+		resultDAO.scrollAllSubmissionDetails(assessmentId, from, to, report);
+		report.finish();
 	}
 }
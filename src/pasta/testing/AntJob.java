@@ -25,11 +25,13 @@ SOFTWARE.
 package pasta.testing;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 
 import pasta.docker.CombinedCommandResult;
@@ -40,6 +42,13 @@ import pasta.testing.task.Task;
 public class AntJob {
 	private static final Logger logger = Logger.getLogger(AntJob.class);
 	
+	private static final String BUILD_TARGET = "build";
+	private static final String SETUP_TARGET = "setup";
+	// The binDir property in the build templates, relative to the working directory
+	private static final String BIN_DIR = "bin";
+	private static final String BUILD_MARKER = "/tmp/pasta-build-marker";
+	private static final String ARTIFACTS_FILENAME = ".pasta-build.tar";
+	
 	private AntResults results;
 	private Runner runner;
 	private ExecutionContainer container;
@@ -120,7 +129,16 @@ public class AntJob {
 			}
 		}
 		
+		if(target.equals(BUILD_TARGET) && BuildCache.instance().isEnabled()) {
+			doCachedBuild();
+			return;
+		}
+		
 		CombinedCommandResult rs = DockerManager.instance().runAntTarget(container, target);
+		recordTarget(target, rs);
+	}
+	
+	private boolean recordTarget(String target, CombinedCommandResult rs) {
 		boolean success = rs.getError().isEmpty();
 		
 		if(!success) {
@@ -131,6 +149,92 @@ public class AntJob {
 		logger.trace("Target output:\n" + rs.getOutput());
 		results.append(target, rs.getCombined());
 		results.setSuccess(target, success);
+		return success;
+	}
+	
+	/**
+	 * Run the build target, reusing the compiled files from an earlier build
+	 * of the same submission and test code if there is one in the {@link BuildCache}.
+	 * <p>
+	 * The setup target is run once first and a marker file touched, so that 
+	 * the files created by compiling can be told apart from those copied in 
+	 * by setup. On a hit, the cached files are extracted and
+	 * the setup output is recorded with the cached build output. On a miss, 
+	 * or if the restore fails part way, the build is run and the files it 
+	 * created are saved to the cache if it succeeded.
+	 */
+	private void doCachedBuild() {
+		BuildCache cache = BuildCache.instance();
+		DockerManager docker = DockerManager.instance();
+		String key = cache.computeKey(container);
+		if(key == null) {
+			recordTarget(BUILD_TARGET, docker.runAntTarget(container, BUILD_TARGET));
+			return;
+		}
+		
+		CombinedCommandResult setup = docker.runAntTarget(container, SETUP_TARGET);
+		docker.runCommand(container, "touch", BUILD_MARKER);
+		
+		BuildCache.Entry entry = cache.get(key);
+		// If setup failed, the build fails too; run it so that it reports why
+		if(entry != null && setup != null && setup.getError().isEmpty()) {
+			String output = restoreBuild(entry);
+			if(output != null) {
+				logger.debug("Restored build " + key + " from cache");
+				results.registerExtraLabel(SETUP_TARGET);
+				results.append(SETUP_TARGET, setup.getCombined());
+				results.setSuccess(SETUP_TARGET, true);
+				results.append(BUILD_TARGET, output);
+				results.setSuccess(BUILD_TARGET, true);
+				return;
+			}
+		}
+		
+		boolean success = recordTarget(BUILD_TARGET, docker.runAntTarget(container, BUILD_TARGET));
+		if(success) {
+			File artifacts = new File(container.getMountedOutLoc(), ARTIFACTS_FILENAME);
+			CombinedCommandResult rs = docker.runCommand(container, "sh", "-c", 
+					"cd " + BIN_DIR + " && find . -type f -newer " + BUILD_MARKER 
+					+ " -print0 | tar -cf " + DockerManager.PASTA_OUT + "/" + ARTIFACTS_FILENAME + " --null -T -");
+			if(rs != null && rs.getError().isEmpty() && artifacts.isFile()) {
+				cache.put(key, artifacts, results.getOutput(BUILD_TARGET));
+			} else {
+				FileUtils.deleteQuietly(artifacts);
+			}
+		}
+	}
+	
+	/**
+	 * Extract the cached build into the bin directory; setup must already 
+	 * have been run. If extracting fails part way, the files listed in the 
+	 * archive are removed again so that the build starts from the setup 
+	 * state.
+	 * 
+	 * @return the output of the cached build, or null if it could not be 
+	 * restored
+	 */
+	private String restoreBuild(BuildCache.Entry entry) {
+		DockerManager docker = DockerManager.instance();
+		File artifacts = new File(container.getMountedOutLoc(), ARTIFACTS_FILENAME);
+		try {
+			String output = entry.getBuildOutput();
+			FileUtils.copyFile(entry.getArtifacts(), artifacts);
+			// -m: give restored files a new modified time so they are newer than their sources
+			CombinedCommandResult rs = docker.runCommand(container, "tar", "-xmf", 
+					DockerManager.PASTA_OUT + "/" + ARTIFACTS_FILENAME, "-C", BIN_DIR);
+			if(rs == null || !rs.getError().isEmpty()) {
+				logger.warn("Could not restore cached build: " + (rs == null ? "" : rs.getError()));
+				docker.runCommand(container, "sh", "-c", "cd " + BIN_DIR + " && tar -tf " + DockerManager.PASTA_OUT + "/" 
+						+ ARTIFACTS_FILENAME + " | while IFS= read -r f; do [ -d \"$f\" ] || rm -f -- \"$f\"; done");
+				return null;
+			}
+			return output;
+		} catch(IOException e) {
+			logger.warn("Could not restore cached build", e);
+			return null;
+		} finally {
+			FileUtils.deleteQuietly(artifacts);
+		}
 	}
 	
 	private void setup() {
@@ -139,7 +243,7 @@ public class AntJob {
 
 	private void cleanup() {
 		performTasks(cleanupTasks);
-		DockerManager.instance().removeContainer(container.getId());
+		DockerManager.instance().releaseContainer(container);
 	}
 	
 	private void performTasks(List<Task> tasks) {
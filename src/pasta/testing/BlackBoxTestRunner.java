@@ -30,6 +30,7 @@ import java.util.Optional;
 
 import org.apache.commons.lang.StringEscapeUtils;
 
+import pasta.docker.DockerManager;
 import pasta.docker.Language;
 import pasta.domain.template.BlackBoxTestCase;
 import pasta.domain.template.UnitTest;
@@ -54,6 +55,8 @@ public abstract class BlackBoxTestRunner extends JUnitTestRunner {
 		addOption("timeoutPath", WhichProgram.getInstance().path("timeout"));
 		addOption("timePath", WhichProgram.getInstance().path("time"));
 		addOption("carryDir", "pbbt_carry");
+		// ulimit -f counts 1 KB blocks
+		addOption("bbOutputLimitBlocks", String.valueOf((DockerManager.getOutputMaxBytes() + 1023) / 1024));
 	}
 
 	public void setTestData(List<BlackBoxTestCase> testCases, Language language) {
@@ -0,0 +1,304 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.testing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+
+import com.github.dockerjava.api.model.Image;
+
+import pasta.docker.DockerManager;
+import pasta.docker.ExecutionContainer;
+import pasta.service.PASTAOptions;
+import pasta.util.ProjectProperties;
+
+/**
+ * Content-addressed cache of compiled build outputs.
+ * <p>
+ * The key for a build is a hash of everything that goes into the container
+ * source directory (submission code, test code, accessory files and the 
+ * generated build file) together with the language and the ID of the 
+ * execution image. If a later build has the same key, the compiled files are
+ * restored instead of compiling again. The build compiles the test code 
+ * along with the submission, so the test code has to be part of the key, 
+ * and each unit test has its own entries. Only building the same submission
+ * against the same test again hits the cache, i.e. re-runs (an assessment 
+ * re-run after a change to another test, a job retried after a failure).
+ * <p>
+ * Each entry is a directory under <code>&lt;project&gt;/cache/build/</code> 
+ * holding a tar of the files created by the build and the build output. 
+ * Entries are evicted least recently used first once the total size goes 
+ * over <code>execution.build.cache.size</code> megabytes.
+ * 
+ * @see AntJob
+ */
+public class BuildCache {
+	private static final Logger logger = Logger.getLogger(BuildCache.class);
+	
+	public static final String ARTIFACTS_FILENAME = "artifacts.tar";
+	public static final String OUTPUT_FILENAME = "build.out";
+	
+	private static final long DEFAULT_MAX_SIZE_MB = 1024;
+	
+	private static BuildCache instance;
+	
+	private final File cacheDir;
+	// Access-ordered: the first entry is the least recently used
+	private final LinkedHashMap<String, Long> entrySizes;
+	private long totalSize;
+	private boolean loaded;
+	
+	private BuildCache(File cacheDir) {
+		this.cacheDir = cacheDir;
+		this.entrySizes = new LinkedHashMap<>(16, 0.75f, true);
+		this.totalSize = 0;
+		this.loaded = false;
+	}
+	
+	public static synchronized BuildCache instance() {
+		if(instance == null) {
+			instance = new BuildCache(new File(ProjectProperties.getInstance().getProjectLocation(), "cache/build"));
+		}
+		return instance;
+	}
+	
+	public boolean isEnabled() {
+		return !"false".equalsIgnoreCase(PASTAOptions.instance().get("execution.build.cache.enabled"));
+	}
+	
+	/**
+	 * Calculate the cache key for building the contents of a container's 
+	 * source directory.
+	 * 
+	 * @param container the container about to be built
+	 * @return the key, or null if it could not be calculated
+	 */
+	public String computeKey(ExecutionContainer container) {
+		MessageDigest digest = DigestUtils.getSha256Digest();
+		try {
+			digest.update(container.getLanguage().getId().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(getImageId(container.getImageName()).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			hashTree(digest, container.getSrcLoc(), "");
+		} catch(IOException e) {
+			logger.warn("Could not hash build input " + container.getSrcLoc(), e);
+			return null;
+		}
+		return Hex.encodeHexString(digest.digest());
+	}
+	
+	private String getImageId(String imageName) {
+		try {
+			Image image = DockerManager.instance().getImage(imageName);
+			if(image != null) {
+				return image.getId();
+			}
+		} catch(Exception e) {
+			logger.warn("Could not get ID of image " + imageName, e);
+		}
+		return imageName;
+	}
+	
+	private void hashTree(MessageDigest digest, File file, String relativePath) throws IOException {
+		if(file.isDirectory()) {
+			File[] children = file.listFiles();
+			if(children == null) {
+				return;
+			}
+			// Listing order is not defined, so sort for a stable hash
+			Arrays.sort(children);
+			for(File child : children) {
+				hashTree(digest, child, relativePath + "/" + child.getName());
+			}
+		} else if(file.isFile()) {
+			digest.update(relativePath.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			try(InputStream in = new FileInputStream(file)) {
+				DigestUtils.updateDigest(digest, in);
+			}
+			digest.update((byte) 0);
+		}
+	}
+	
+	/**
+	 * @param key the build key
+	 * @return the cached build, or null if there is none
+	 */
+	public synchronized Entry get(String key) {
+		ensureLoaded();
+		if(entrySizes.get(key) == null) {
+			return null;
+		}
+		File dir = new File(cacheDir, key);
+		Entry entry = new Entry(dir);
+		if(!entry.getArtifacts().isFile() || !entry.getOutputFile().isFile()) {
+			// Removed from under us, e.g. by another node sharing the cache
+			removeEntry(key);
+			return null;
+		}
+		dir.setLastModified(System.currentTimeMillis());
+		return entry;
+	}
+	
+	/**
+	 * Store the result of a successful build.
+	 * 
+	 * @param key the build key
+	 * @param artifacts a tar of the files created by the build; this file is 
+	 * moved into the cache
+	 * @param buildOutput the output of the build target
+	 */
+	public void put(String key, File artifacts, String buildOutput) {
+		File tempDir = new File(cacheDir, key + ".tmp-" + UUID.randomUUID());
+		File dir = new File(cacheDir, key);
+		try {
+			tempDir.mkdirs();
+			FileUtils.moveFile(artifacts, new File(tempDir, ARTIFACTS_FILENAME));
+			FileUtils.write(new File(tempDir, OUTPUT_FILENAME), buildOutput, StandardCharsets.UTF_8);
+			long size = FileUtils.sizeOfDirectory(tempDir);
+			synchronized(this) {
+				ensureLoaded();
+				if(dir.exists()) {
+					FileUtils.deleteDirectory(tempDir);
+					return;
+				}
+				// Rename so that readers never see a partly written entry
+				Files.move(tempDir.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				entrySizes.put(key, size);
+				totalSize += size;
+				evict();
+			}
+		} catch(IOException e) {
+			logger.warn("Could not store build " + key + " in cache", e);
+			FileUtils.deleteQuietly(tempDir);
+		} finally {
+			FileUtils.deleteQuietly(artifacts);
+		}
+	}
+	
+	private void evict() {
+		long maxSize = getMaxSize();
+		Iterator<Map.Entry<String, Long>> it = entrySizes.entrySet().iterator();
+		while(totalSize > maxSize && it.hasNext()) {
+			Map.Entry<String, Long> lru = it.next();
+			it.remove();
+			totalSize -= lru.getValue();
+			FileUtils.deleteQuietly(new File(cacheDir, lru.getKey()));
+			logger.trace("Evicted build " + lru.getKey() + " from cache");
+		}
+	}
+	
+	private void removeEntry(String key) {
+		Long size = entrySizes.remove(key);
+		if(size != null) {
+			totalSize -= size;
+		}
+		FileUtils.deleteQuietly(new File(cacheDir, key));
+	}
+	
+	private long getMaxSize() {
+		String value = PASTAOptions.instance().get("execution.build.cache.size");
+		long megabytes = DEFAULT_MAX_SIZE_MB;
+		if(value != null) {
+			try {
+				megabytes = Long.parseLong(value.trim());
+			} catch(NumberFormatException e) {
+				logger.warn("\"" + value + "\" is not a valid value for execution.build.cache.size");
+			}
+		}
+		return megabytes * 1024 * 1024;
+	}
+	
+	/**
+	 * Read existing entries from disk the first time the cache is used, 
+	 * using the last modified date of each entry as its last use.
+	 */
+	private void ensureLoaded() {
+		if(loaded) {
+			return;
+		}
+		loaded = true;
+		cacheDir.mkdirs();
+		File[] dirs = cacheDir.listFiles(File::isDirectory);
+		if(dirs == null) {
+			return;
+		}
+		List<File> entries = new ArrayList<>();
+		for(File dir : dirs) {
+			if(dir.getName().contains(".tmp-")) {
+				FileUtils.deleteQuietly(dir);
+			} else {
+				entries.add(dir);
+			}
+		}
+		entries.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+		for(File dir : entries) {
+			long size = FileUtils.sizeOfDirectory(dir);
+			entrySizes.put(dir.getName(), size);
+			totalSize += size;
+		}
+		logger.info("Loaded " + entrySizes.size() + " cached builds (" + (totalSize / 1024 / 1024) + " MB)");
+		evict();
+	}
+	
+	public static class Entry {
+		private final File dir;
+		
+		private Entry(File dir) {
+			this.dir = dir;
+		}
+		
+		public File getArtifacts() {
+			return new File(dir, ARTIFACTS_FILENAME);
+		}
+		
+		private File getOutputFile() {
+			return new File(dir, OUTPUT_FILENAME);
+		}
+		
+		public String getBuildOutput() throws IOException {
+			return FileUtils.readFileToString(getOutputFile(), StandardCharsets.UTF_8);
+		}
+	}
+}
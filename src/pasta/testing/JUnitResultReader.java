@@ -0,0 +1,192 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.testing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import pasta.domain.result.UnitTestCaseResult;
+
+/**
+ * Streaming reader for JUnit XML reports (<code>result.xml</code>).
+ * <p>
+ * Each <code>&lt;testcase&gt;</code> is turned into a 
+ * {@link UnitTestCaseResult} as it is read, so the whole report is never held
+ * in memory. A test case passes unless its first child element is a failure
+ * (or error, etc.), in which case that element's name, message, type and text
+ * are used.
+ * <p>
+ * If an error context is given, the first stack frame that contains one of 
+ * the listed file names is appended to the error type (e.g. 
+ * <code>java.lang.NullPointerException at (Main.java:12)</code>).
+ */
+public class JUnitResultReader {
+	
+	private static final Pattern STACK_FRAME_PATTERN = Pattern.compile("(\\(.+?\\.java:[0-9]+\\))");
+	
+	private static final XMLInputFactory FACTORY;
+	static {
+		FACTORY = XMLInputFactory.newInstance();
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+	
+	private final List<String> errorContext;
+	private final Map<String, String> testDescriptions;
+	
+	/**
+	 * @param errorContext names of files to report error lines for, or null
+	 * @param testDescriptions descriptions of tests by test name, or null
+	 */
+	public JUnitResultReader(Collection<String> errorContext, Map<String, String> testDescriptions) {
+		this.errorContext = errorContext == null ? null : new ArrayList<>(errorContext);
+		this.testDescriptions = testDescriptions;
+	}
+	
+	public List<UnitTestCaseResult> read(File resultFile) throws IOException, XMLStreamException {
+		try(InputStream in = Files.newInputStream(resultFile.toPath())) {
+			return read(in);
+		}
+	}
+	
+	public List<UnitTestCaseResult> read(InputStream in) throws XMLStreamException {
+		List<UnitTestCaseResult> testCases = new ArrayList<>();
+		XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+		try {
+			while(reader.hasNext()) {
+				if(reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("testcase")) {
+					testCases.add(readTestCase(reader));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return testCases;
+	}
+	
+	/*
+	 * Reads from the start of a <testcase> element to its end.
+	 */
+	private UnitTestCaseResult readTestCase(XMLStreamReader reader) throws XMLStreamException {
+		UnitTestCaseResult caseResult = new UnitTestCaseResult();
+		caseResult.setTestName(reader.getAttributeValue(null, "name"));
+		caseResult.setTime(Double.parseDouble(reader.getAttributeValue(null, "time")));
+		caseResult.setTestResult(UnitTestCaseResult.PASS);
+		if(testDescriptions != null) {
+			caseResult.setTestDescription(testDescriptions.get(caseResult.getTestName()));
+		}
+		
+		boolean readOutcome = false;
+		int depth = 1;
+		while(depth > 0) {
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				if(!readOutcome) {
+					readOutcome = true;
+					readOutcome(reader, caseResult);
+				} else {
+					depth++;
+				}
+			} else if(event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+		return caseResult;
+	}
+	
+	/*
+	 * Reads from the start of a <failure>/<error> element to its end. Only 
+	 * text directly inside the element is part of the extended message.
+	 */
+	private void readOutcome(XMLStreamReader reader, UnitTestCaseResult caseResult) throws XMLStreamException {
+		caseResult.setTestResult(reader.getLocalName());
+		String message = reader.getAttributeValue(null, "message");
+		if(message != null) {
+			caseResult.setTestMessage(message);
+		}
+		String type = reader.getAttributeValue(null, "type");
+		if(type != null) {
+			caseResult.setType(type);
+		}
+		
+		StringBuilder text = null;
+		int depth = 1;
+		while(depth > 0) {
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if(event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if(depth == 1 && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.SPACE)) {
+				if(text == null) {
+					text = new StringBuilder();
+				}
+				text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+			}
+		}
+		
+		if(text != null) {
+			String extendedMessage = text.toString();
+			caseResult.setExtendedMessage(extendedMessage);
+			if(errorContext != null && caseResult.getType() != null && caseResult.isError()) {
+				String frame = findContextFrame(extendedMessage);
+				if(frame != null) {
+					caseResult.setType(caseResult.getType() + " at " + frame);
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Find the first stack frame such as "(Main.java:12)" that contains any of
+	 * the error context entries, so "Main.java", "Main" and "ain.java:1" all 
+	 * match that frame.
+	 */
+	private String findContextFrame(String stackTrace) {
+		Matcher m = STACK_FRAME_PATTERN.matcher(stackTrace);
+		while(m.find()) {
+			String frame = m.group();
+			for(String file : errorContext) {
+				if(frame.contains(file)) {
+					return frame;
+				}
+			}
+		}
+		return null;
+	}
+}
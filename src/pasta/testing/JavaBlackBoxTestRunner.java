@@ -25,7 +25,13 @@ SOFTWARE.
 package pasta.testing;
 
 import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.Optional;
 
+import org.apache.commons.lang.StringEscapeUtils;
+
+import pasta.docker.Language;
+import pasta.domain.template.BlackBoxTestCase;
 import pasta.util.PASTAUtil;
 
 /**
@@ -39,5 +45,30 @@ public class JavaBlackBoxTestRunner extends BlackBoxTestRunner {
 	
 	public JavaBlackBoxTestRunner() throws FileNotFoundException {
 		super(PASTAUtil.getTemplateResource("build_templates/" + TEMPLATE_FILENAME));
+		addOption("fastBlackBox", "no");
+		addOption("bbHarnessCases", "");
+	}
+	
+	/**
+	 * @param singleJVM whether to run all test cases in one JVM using
+	 * <code>pasta.PASTABlackBoxHarness</code> rather than starting a JVM for
+	 * each test case
+	 */
+	public void setSingleJVM(boolean singleJVM) {
+		addOption("fastBlackBox", singleJVM ? "yes" : "no");
+	}
+	
+	@Override
+	public void setTestData(List<BlackBoxTestCase> testCases, Language language) {
+		super.setTestData(testCases, language);
+		// One line per test case for the harness: name, timeout (seconds), command line
+		StringBuilder cases = new StringBuilder();
+		for(BlackBoxTestCase testCase : testCases) {
+			cases.append(testCase.getTestName()).append('\t')
+				.append(String.valueOf((testCase.getTimeout() + language.getTestCaseExecutionOverhead()) / 1000.0)).append('\t')
+				.append(StringEscapeUtils.escapeXml(Optional.ofNullable(testCase.getCommandLine()).orElse("")))
+				.append('\n');
+		}
+		addOption("bbHarnessCases", cases.toString());
 	}
 }
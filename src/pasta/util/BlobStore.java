@@ -0,0 +1,224 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import pasta.service.PASTAOptions;
+
+/**
+ * Content-addressed store for large blocks of text (mainly test output).
+ * <p>
+ * Text is deflate-compressed and written to 
+ * <code>&lt;project&gt;/blobs/ab/cdef...</code>, where the name is the SHA-256
+ * of the text. The hash is the reference kept in the database, so identical 
+ * output (e.g. the same compile error for a whole class) is only stored once.
+ * Blobs are never modified after they are written.
+ * <p>
+ * Storing is off unless <code>results.blobstore.enabled</code> is true, and
+ * only applies to text longer than <code>results.blobstore.threshold</code>
+ * characters. Existing references can always be read.
+ * <p>
+ * As one blob may be shared by many results, blobs are not deleted with 
+ * their results; {@link #sweep(Set, long)} removes those no longer 
+ * referenced. The store directory is included in database dumps, and must
+ * be restored along with the database.
+ */
+public class BlobStore {
+	private static final Logger logger = Logger.getLogger(BlobStore.class);
+	
+	public static final int REF_LENGTH = 64;
+	public static final int PREVIEW_LENGTH = 1000;
+	
+	private static final int DEFAULT_THRESHOLD = 4096;
+	
+	private static BlobStore instance;
+	
+	private final File storeDir;
+	
+	private BlobStore(File storeDir) {
+		this.storeDir = storeDir;
+	}
+	
+	public static synchronized BlobStore instance() {
+		if(instance == null) {
+			instance = new BlobStore(new File(ProjectProperties.getInstance().getProjectLocation(), "blobs"));
+		}
+		return instance;
+	}
+	
+	public File getStoreDirectory() {
+		return storeDir;
+	}
+	
+	public boolean isEnabled() {
+		return "true".equalsIgnoreCase(PASTAOptions.instance().get("results.blobstore.enabled"));
+	}
+	
+	public int getThreshold() {
+		String value = PASTAOptions.instance().get("results.blobstore.threshold");
+		if(value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch(NumberFormatException e) {
+				logger.warn("\"" + value + "\" is not a valid value for results.blobstore.threshold");
+			}
+		}
+		return DEFAULT_THRESHOLD;
+	}
+	
+	/**
+	 * Store the given text if the store is enabled and the text is long 
+	 * enough to be worth moving out of the database.
+	 * 
+	 * @param content the text to store
+	 * @return the reference to the stored text, or null if it was not stored
+	 */
+	public String store(String content) {
+		if(content == null || !isEnabled() || content.length() <= getThreshold()) {
+			return null;
+		}
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		String ref = DigestUtils.sha256Hex(bytes);
+		File blob = getBlobFile(ref);
+		if(blob.exists()) {
+			// Mark as recently used so a concurrent sweep does not remove it
+			blob.setLastModified(System.currentTimeMillis());
+			return ref;
+		}
+		File tmp = new File(blob.getParentFile(), ref + "." + UUID.randomUUID() + ".tmp");
+		try {
+			blob.getParentFile().mkdirs();
+			try(OutputStream out = new DeflaterOutputStream(Files.newOutputStream(tmp.toPath()))) {
+				out.write(bytes);
+			}
+			Files.move(tmp.toPath(), blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException e) {
+			logger.error("Could not write blob " + ref, e);
+			tmp.delete();
+			return null;
+		}
+		return ref;
+	}
+	
+	/**
+	 * @param ref a reference returned by {@link #store(String)}
+	 * @return the stored text, or null if it could not be read
+	 */
+	public String load(String ref) {
+		File blob = getBlobFile(ref);
+		if(!blob.exists()) {
+			logger.warn("Missing blob " + ref);
+			return null;
+		}
+		try(InputStream in = new InflaterInputStream(Files.newInputStream(blob.toPath()))) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(blob.length() * 4, Integer.MAX_VALUE));
+			IOUtils.copy(in, out);
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		} catch(IOException e) {
+			logger.error("Could not read blob " + ref, e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Load the text for a reference, falling back to the preview if there is
+	 * no reference or the blob cannot be read.
+	 */
+	public String load(String ref, String preview) {
+		if(ref == null) {
+			return preview;
+		}
+		String content = load(ref);
+		return content == null ? preview : content;
+	}
+	
+	/**
+	 * @return the start of the text to keep in the database in place of the 
+	 * full text
+	 */
+	public static String preview(String content) {
+		if(content == null || content.length() <= PREVIEW_LENGTH) {
+			return content;
+		}
+		return content.substring(0, PREVIEW_LENGTH - 3) + "...";
+	}
+	
+	/**
+	 * Delete blobs that are not referenced any more, along with any temporary
+	 * files left by failed writes.
+	 * 
+	 * @param referenced every reference still held in the database
+	 * @param minAge blobs written or reused more recently than this many 
+	 *        milliseconds ago are kept, as the results referring to them may
+	 *        not have been committed yet
+	 * @return the number of files deleted
+	 */
+	public int sweep(Set<String> referenced, long minAge) {
+		File[] dirs = storeDir.listFiles(File::isDirectory);
+		if(dirs == null) {
+			return 0;
+		}
+		long cutoff = System.currentTimeMillis() - minAge;
+		int deleted = 0;
+		for(File dir : dirs) {
+			File[] blobs = dir.listFiles();
+			if(blobs == null) {
+				continue;
+			}
+			for(File blob : blobs) {
+				String ref = dir.getName() + blob.getName();
+				if(blob.lastModified() < cutoff && !referenced.contains(ref) && blob.delete()) {
+					deleted++;
+				}
+			}
+			// Only succeeds if empty
+			dir.delete();
+		}
+		return deleted;
+	}
+	
+	private File getBlobFile(String ref) {
+		if(!ref.matches("[0-9a-f]{64}")) {
+			throw new IllegalArgumentException("Invalid blob reference " + ref);
+		}
+		return new File(new File(storeDir, ref.substring(0, 2)), ref.substring(2));
+	}
+}
@@ -24,13 +24,10 @@ SOFTWARE.
 
 package pasta.util;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
@@ -72,6 +69,7 @@ import pasta.docker.CommandResult;
 import pasta.domain.FileTreeNode;
 import pasta.domain.user.PASTAGroup;
 import pasta.domain.user.PASTAUser;
+import pasta.util.io.ZipExtractor;
 
 /**
  * Groups together commonly used methods.
@@ -91,64 +89,15 @@ public class PASTAUtil {
 	private static SimpleDateFormat readableSdf = new SimpleDateFormat("EEE dd MMMM yyyy 'at' HH:mm");
 
 	/**
-	 * Code used to extract a zip file.
+	 * Code used to extract a zip file, within the limits set by the
+	 * <code>unzip.*</code> options (see {@link ZipExtractor}).
 	 * 
 	 * @param zipFile the file to extract
-	 * @throws ZipException
+	 * @throws ZipException if the zip is invalid or too large
 	 * @throws IOException
 	 */
 	static public void extractFolder(String zipFile) throws ZipException, IOException {
-	    logger.info("Unzipping " + zipFile);
-	    int BUFFER = 2048;
-	    File file = new File(zipFile);
-
-	    ZipFile zip = new ZipFile(file);
-	    
-	    String newPath = file.getParent();
-
-	    new File(newPath).mkdir();
-	    Enumeration zipFileEntries = zip.entries();
-
-	    // Process each entry
-	    while (zipFileEntries.hasMoreElements()){
-	        // grab a zip file entry
-	        ZipEntry entry = (ZipEntry) zipFileEntries.nextElement();
-	        String currentEntry = entry.getName();
-	        File destFile = new File(newPath, currentEntry);
-	        //destFile = new File(newPath, destFile.getName());
-	        File destinationParent = destFile.getParentFile();
-
-	        // create the parent directory structure if needed
-	        destinationParent.mkdirs();
-
-	        if (!entry.isDirectory()){
-	            BufferedInputStream is = new BufferedInputStream(zip
-	            .getInputStream(entry));
-	            int currentByte;
-	            // establish buffer for writing file
-	            byte data[] = new byte[BUFFER];
-
-	            // write the current file to disk
-	            FileOutputStream fos = new FileOutputStream(destFile);
-	            BufferedOutputStream dest = new BufferedOutputStream(fos,
-	            BUFFER);
-
-	            // read and write until last byte is encountered
-	            while ((currentByte = is.read(data, 0, BUFFER)) != -1) {
-	                dest.write(data, 0, currentByte);
-	            }
-	            dest.flush();
-	            dest.close();
-	            fos.close();
-	            is.close();
-	        }
-
-	        if (currentEntry.endsWith(".zip")){
-	            // found a zip file, try to open
-	            extractFolder(destFile.getAbsolutePath());
-	        }
-	    }
-	    zip.close();
+	    ZipExtractor.fromOptions().extract(new File(zipFile));
 	}
 	
 	public static String[] listZipContents(File file) throws ZipException, IOException {
@@ -0,0 +1,309 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.util.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Captures the standard output and error of a command without holding all
+ * of it in memory.
+ * <p>
+ * Each stream (output, error, and the two combined) keeps the first 
+ * <code>memoryLimit</code> bytes and the last few kilobytes in memory. If a 
+ * spill directory is given, the output and error streams are also written 
+ * to files there once they pass <code>memoryLimit</code>, up to 
+ * <code>maxBytes</code>. The captured strings have a marker where bytes 
+ * were left out, and any UTF-8 character cut in two there is left out too.
+ * <p>
+ * Once any stream passes <code>maxBytes</code>, the overflow handler is run 
+ * (once), e.g. to stop the command early.
+ */
+public class BoundedOutputCapture implements Closeable {
+	private static final Logger logger = Logger.getLogger(BoundedOutputCapture.class);
+	
+	private static final int MAX_TAIL_BYTES = 16 * 1024;
+	
+	private final CappedStream output;
+	private final CappedStream error;
+	private final CappedStream combined;
+	private final AtomicBoolean overflowed;
+	private volatile Runnable overflowHandler;
+	
+	/**
+	 * @param memoryLimit bytes of each stream to keep in memory before 
+	 * spilling to file
+	 * @param maxBytes bytes of each stream to capture in total; the rest is 
+	 * discarded
+	 * @param spillDir directory for spill files, or null to discard anything
+	 * over the memory limit
+	 * @param spillPrefix spill files are named <code>prefix.out.log</code> 
+	 * and <code>prefix.err.log</code>
+	 */
+	public BoundedOutputCapture(long memoryLimit, long maxBytes, File spillDir, String spillPrefix) {
+		this.overflowed = new AtomicBoolean(false);
+		this.combined = new CappedStream(null, memoryLimit, maxBytes, null);
+		this.output = new CappedStream(combined, memoryLimit, maxBytes, 
+				spillDir == null ? null : new File(spillDir, spillPrefix + ".out.log"));
+		this.error = new CappedStream(combined, memoryLimit, maxBytes, 
+				spillDir == null ? null : new File(spillDir, spillPrefix + ".err.log"));
+	}
+	
+	/**
+	 * @return a capture that keeps everything in memory
+	 */
+	public static BoundedOutputCapture unbounded() {
+		return new BoundedOutputCapture(Long.MAX_VALUE, Long.MAX_VALUE, null, null);
+	}
+	
+	public void setOverflowHandler(Runnable overflowHandler) {
+		this.overflowHandler = overflowHandler;
+	}
+	
+	public OutputStream getOutputStream() {
+		return output;
+	}
+	public OutputStream getErrorStream() {
+		return error;
+	}
+	
+	public String getOutput() {
+		return output.toString();
+	}
+	public String getError() {
+		return error.toString();
+	}
+	public String getCombined() {
+		return combined.toString();
+	}
+	
+	/**
+	 * @return the total number of bytes written to the output and error 
+	 * streams so far, including any discarded
+	 */
+	public long getTotalBytes() {
+		return output.total + error.total;
+	}
+	
+	public boolean isOverflowed() {
+		return overflowed.get();
+	}
+	
+	@Override
+	public void close() {
+		output.close();
+		error.close();
+		combined.close();
+	}
+	
+	private void overflow() {
+		if(overflowed.compareAndSet(false, true)) {
+			Runnable handler = overflowHandler;
+			if(handler != null) {
+				try {
+					handler.run();
+				} catch(RuntimeException e) {
+					logger.error("Error handling output overflow", e);
+				}
+			}
+		}
+	}
+	
+	private class CappedStream extends OutputStream {
+		private final CappedStream parent;
+		private final long memoryLimit;
+		private final long maxBytes;
+		private final File spillFile;
+		
+		private final ByteArrayOutputStream head;
+		private final byte[] tail;
+		private int tailStart;
+		private int tailLength;
+		private OutputStream spill;
+		private volatile long total;
+		
+		CappedStream(CappedStream parent, long memoryLimit, long maxBytes, File spillFile) {
+			this.parent = parent;
+			this.memoryLimit = memoryLimit;
+			this.maxBytes = maxBytes;
+			this.spillFile = spillFile;
+			this.head = new ByteArrayOutputStream();
+			this.tail = new byte[(int) Math.min(MAX_TAIL_BYTES, memoryLimit)];
+		}
+		
+		@Override
+		public void write(int b) {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+		
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			if(parent != null) {
+				parent.write(b, off, len);
+			}
+			long before = total;
+			total += len;
+			
+			int toHead = (int) Math.max(0, Math.min(len, memoryLimit - before));
+			if(toHead > 0) {
+				head.write(b, off, toHead);
+			}
+			if(toHead < len) {
+				writeTail(b, off + toHead, len - toHead);
+				if(spillFile != null) {
+					// The head part of this write reaches the file with the rest of the head
+					int toSpill = (int) Math.max(0, Math.min(len, maxBytes - before));
+					writeSpill(b, off + toHead, Math.max(0, toSpill - toHead));
+				}
+			}
+			if(before <= maxBytes && total > maxBytes) {
+				overflow();
+			}
+		}
+		
+		private void writeTail(byte[] b, int off, int len) {
+			if(tail.length == 0) {
+				return;
+			}
+			if(len >= tail.length) {
+				System.arraycopy(b, off + len - tail.length, tail, 0, tail.length);
+				tailStart = 0;
+				tailLength = tail.length;
+				return;
+			}
+			for(int i = 0; i < len; i++) {
+				tail[(tailStart + tailLength) % tail.length] = b[off + i];
+				if(tailLength < tail.length) {
+					tailLength++;
+				} else {
+					tailStart = (tailStart + 1) % tail.length;
+				}
+			}
+		}
+		
+		private void writeSpill(byte[] b, int off, int len) {
+			try {
+				if(spill == null) {
+					spill = new BufferedOutputStream(new FileOutputStream(spillFile));
+					// The file holds everything, so start with what was kept in memory
+					head.writeTo(spill);
+				}
+				if(len > 0) {
+					spill.write(b, off, len);
+				}
+			} catch(IOException e) {
+				logger.warn("Could not write output to " + spillFile, e);
+			}
+		}
+		
+		@Override
+		public synchronized void close() {
+			if(spill != null) {
+				try {
+					spill.close();
+				} catch(IOException e) {
+					logger.warn("Could not close " + spillFile, e);
+				}
+			}
+		}
+		
+		@Override
+		public synchronized String toString() {
+			byte[] headBytes = head.toByteArray();
+			if(total <= memoryLimit) {
+				return new String(headBytes, StandardCharsets.UTF_8);
+			}
+			byte[] tailBytes = new byte[tailLength];
+			for(int i = 0; i < tailLength; i++) {
+				tailBytes[i] = tail[(tailStart + i) % tail.length];
+			}
+			long omitted = total - headBytes.length - tailLength;
+			if(omitted == 0) {
+				// Nothing was left out, so decode as one to keep characters split across the two
+				byte[] all = Arrays.copyOf(headBytes, headBytes.length + tailBytes.length);
+				System.arraycopy(tailBytes, 0, all, headBytes.length, tailBytes.length);
+				return new String(all, StandardCharsets.UTF_8);
+			}
+			// Leave out any characters cut in two at either side of the gap
+			int headEnd = completeLength(headBytes);
+			int tailOffset = continuationLength(tailBytes);
+			omitted += (headBytes.length - headEnd) + tailOffset;
+			StringBuilder sb = new StringBuilder(new String(headBytes, 0, headEnd, StandardCharsets.UTF_8));
+			sb.append(System.lineSeparator()).append("[... ").append(omitted).append(" bytes omitted");
+			if(spillFile != null) {
+				sb.append("; first ").append(Math.min(total, maxBytes)).append(" bytes saved to ").append(spillFile.getName());
+			}
+			if(total > maxBytes) {
+				sb.append("; output limit of ").append(maxBytes).append(" bytes exceeded");
+			}
+			sb.append(" ...]").append(System.lineSeparator());
+			sb.append(new String(tailBytes, tailOffset, tailBytes.length - tailOffset, StandardCharsets.UTF_8));
+			return sb.toString();
+		}
+	}
+	
+	/*
+	 * Length of the given UTF-8 bytes up to the end of the last complete 
+	 * character.
+	 */
+	private static int completeLength(byte[] bytes) {
+		int start = bytes.length - 1;
+		while(start > 0 && bytes.length - start < 4 && isContinuation(bytes[start])) {
+			start--;
+		}
+		if(start < 0) {
+			return 0;
+		}
+		int lead = bytes[start] & 0xFF;
+		int charLength = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+		return start + charLength > bytes.length ? start : bytes.length;
+	}
+	
+	/*
+	 * Number of continuation bytes at the start of the given UTF-8 bytes, 
+	 * i.e. the end of a character that started before them.
+	 */
+	private static int continuationLength(byte[] bytes) {
+		int length = 0;
+		while(length < bytes.length && length < 3 && isContinuation(bytes[length])) {
+			length++;
+		}
+		return length;
+	}
+	
+	private static boolean isContinuation(byte b) {
+		return (b & 0xC0) == 0x80;
+	}
+}
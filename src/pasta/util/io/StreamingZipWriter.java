@@ -0,0 +1,195 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.util.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes a zip file directly to an output stream (e.g. an HTTP response) as
+ * files are added, rather than building it in memory.
+ * <p>
+ * If <code>readAheadThreads</code> is more than 0, small files are read on 
+ * that many background threads a few entries ahead of the one being written,
+ * so slow disks are read in parallel while the zip is written in order. 
+ * Files that are already compressed (archives, images, etc.) are stored 
+ * rather than deflated again.
+ */
+public class StreamingZipWriter implements Closeable {
+	private static final Logger logger = Logger.getLogger(StreamingZipWriter.class);
+	
+	private static final long MAX_READ_AHEAD_SIZE = 4 * 1024 * 1024;
+	private static final int READ_AHEAD_PER_THREAD = 4;
+	
+	private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(
+			"zip", "jar", "war", "gz", "tgz", "bz2", "xz", "7z", "rar",
+			"png", "jpg", "jpeg", "gif", "mp3", "mp4", "pdf", "docx", "xlsx", "pptx"));
+	
+	private final ZipOutputStream zip;
+	private final ExecutorService readers;
+	private final int readAhead;
+	private final Deque<PendingEntry> pending;
+	
+	public StreamingZipWriter(OutputStream out, int readAheadThreads) {
+		this.zip = new ZipOutputStream(out);
+		this.readers = readAheadThreads > 0 ? Executors.newFixedThreadPool(readAheadThreads) : null;
+		this.readAhead = readAheadThreads * READ_AHEAD_PER_THREAD;
+		this.pending = new ArrayDeque<>();
+	}
+	
+	/**
+	 * Add all files under a directory.
+	 * 
+	 * @param directory the directory to add
+	 * @param prefix the path in the zip to add the files under, ending with "/"
+	 */
+	public void addDirectory(File directory, String prefix) throws IOException {
+		File[] children = directory.listFiles();
+		if(children == null) {
+			return;
+		}
+		for(File child : children) {
+			if(child.isDirectory()) {
+				addDirectory(child, prefix + child.getName() + "/");
+			} else {
+				addFile(child, prefix + child.getName());
+			}
+		}
+	}
+	
+	public void addFile(File file, String name) throws IOException {
+		PendingEntry entry = new PendingEntry(file, name);
+		if(readers != null && file.length() <= MAX_READ_AHEAD_SIZE) {
+			entry.contents = readers.submit(() -> Files.readAllBytes(file.toPath()));
+		}
+		pending.add(entry);
+		while(pending.size() > readAhead) {
+			write(pending.poll());
+		}
+	}
+	
+	private void write(PendingEntry entry) throws IOException {
+		byte[] contents = null;
+		if(entry.contents != null) {
+			try {
+				contents = entry.contents.get();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading " + entry.file, e);
+			} catch(ExecutionException e) {
+				logger.warn("Could not read " + entry.file + "; leaving it out of the zip", e.getCause());
+				return;
+			}
+		} else if(!entry.file.canRead()) {
+			logger.warn("Could not read " + entry.file + "; leaving it out of the zip");
+			return;
+		}
+		
+		ZipEntry ze = new ZipEntry(entry.name);
+		ze.setTime(entry.file.lastModified());
+		if(isCompressed(entry.name)) {
+			// Stored entries need their size and CRC before the data
+			CRC32 crc = new CRC32();
+			long size = 0;
+			if(contents != null) {
+				crc.update(contents);
+				size = contents.length;
+			} else {
+				byte[] buffer = new byte[8192];
+				try(InputStream in = Files.newInputStream(entry.file.toPath())) {
+					int read;
+					while((read = in.read(buffer)) != -1) {
+						crc.update(buffer, 0, read);
+						size += read;
+					}
+				}
+			}
+			ze.setMethod(ZipEntry.STORED);
+			ze.setSize(size);
+			ze.setCompressedSize(size);
+			ze.setCrc(crc.getValue());
+		}
+		
+		zip.putNextEntry(ze);
+		if(contents != null) {
+			zip.write(contents);
+		} else {
+			Files.copy(entry.file.toPath(), zip);
+		}
+		zip.closeEntry();
+	}
+	
+	private static boolean isCompressed(String name) {
+		int dot = name.lastIndexOf('.');
+		return dot >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase());
+	}
+	
+	/**
+	 * Write any remaining entries and finish the zip. This also closes the 
+	 * underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			while(!pending.isEmpty()) {
+				write(pending.poll());
+			}
+			zip.close();
+		} finally {
+			if(readers != null) {
+				readers.shutdownNow();
+			}
+		}
+	}
+	
+	private static class PendingEntry {
+		private final File file;
+		private final String name;
+		private Future<byte[]> contents;
+		
+		private PendingEntry(File file, String name) {
+			this.file = file;
+			this.name = name;
+		}
+	}
+}
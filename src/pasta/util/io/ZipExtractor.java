@@ -0,0 +1,326 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package pasta.util.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+
+import pasta.service.PASTAOptions;
+
+/**
+ * Extracts zip files (e.g. submissions) into the directory that contains them,
+ * also extracting any nested <code>.zip</code> files found inside.
+ * <p>
+ * Extraction is bounded: the total number of entries, the total number of 
+ * bytes written and the compression ratio of each entry are limited, and 
+ * extraction stops as soon as a limit is passed. Entries that would be 
+ * written outside the target directory are rejected. On failure, any files 
+ * already written are removed.
+ * <p>
+ * If <code>threads</code> is more than 1, file entries are inflated and
+ * written on that many threads.
+ */
+public class ZipExtractor {
+	private static final Logger logger = Logger.getLogger(ZipExtractor.class);
+	
+	private static final int MAX_BUFFER_SIZE = 256 * 1024;
+	private static final int MIN_BUFFER_SIZE = 8 * 1024;
+	private static final int MAX_NESTING = 5;
+	// Small, highly repetitive files (e.g. blank lines) are not treated as bombs
+	private static final long RATIO_GRACE_BYTES = 1024 * 1024;
+	
+	private final int maxEntries;
+	private final long maxBytes;
+	private final int maxRatio;
+	private final int threads;
+	
+	/**
+	 * @param maxEntries the most entries to extract, including nested zips
+	 * @param maxBytes the most bytes to write, including nested zips
+	 * @param maxRatio the highest uncompressed to compressed size ratio allowed for an entry
+	 * @param threads the number of threads to extract with
+	 */
+	public ZipExtractor(int maxEntries, long maxBytes, int maxRatio, int threads) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.maxRatio = maxRatio;
+		this.threads = Math.max(1, threads);
+	}
+	
+	/**
+	 * @return an extractor configured from the <code>unzip.*</code> options
+	 */
+	public static ZipExtractor fromOptions() {
+		return new ZipExtractor(
+				(int) getOption("unzip.max.entries", 10000),
+				getOption("unzip.max.bytes", 512L * 1024 * 1024),
+				(int) getOption("unzip.max.ratio", 100),
+				(int) getOption("unzip.threads", 1));
+	}
+	
+	private static long getOption(String key, long defaultValue) {
+		String value = PASTAOptions.instance().get(key);
+		if(value != null) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch(NumberFormatException e) {
+				logger.warn("\"" + value + "\" is not a valid value for " + key);
+			}
+		}
+		return defaultValue;
+	}
+	
+	/**
+	 * Extract a zip file into the directory that contains it.
+	 * 
+	 * @param zipFile the zip file
+	 * @return how much was extracted and how long it took
+	 * @throws ZipLimitException if the zip is too large or has unsafe entries
+	 * @throws IOException if the zip cannot be read or extracted
+	 */
+	public Result extract(File zipFile) throws IOException {
+		long start = System.currentTimeMillis();
+		Extraction extraction = new Extraction();
+		try {
+			extraction.extract(zipFile, 0);
+		} catch(IOException | RuntimeException e) {
+			extraction.failed(e);
+			throw e;
+		} finally {
+			extraction.close();
+		}
+		Result result = new Result(extraction.entries.get(), extraction.bytes.get(), 
+				System.currentTimeMillis() - start);
+		logger.info("Unzipped " + zipFile + ": " + result);
+		return result;
+	}
+	
+	/**
+	 * State for one call to {@link ZipExtractor#extract(File)}, shared by 
+	 * nested zips so they count towards the same limits.
+	 */
+	private class Extraction {
+		private final AtomicInteger entries = new AtomicInteger();
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicReference<Exception> failure = new AtomicReference<>();
+		private final Queue<File> written = new ConcurrentLinkedQueue<>();
+		private final ExecutorService workers = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		
+		private void extract(File zipFile, int depth) throws IOException {
+			if(depth > MAX_NESTING) {
+				throw new ZipLimitException("Zip files are nested more than " + MAX_NESTING + " deep");
+			}
+			File base = zipFile.getParentFile().getCanonicalFile();
+			base.mkdirs();
+			
+			List<File> nested = new ArrayList<>();
+			try(ZipFile zip = new ZipFile(zipFile)) {
+				if(entries.addAndGet(zip.size()) > maxEntries) {
+					throw new ZipLimitException("More than " + maxEntries + " entries");
+				}
+				
+				// Later entries with the same name replace earlier ones
+				Map<File, ZipEntry> files = new LinkedHashMap<>();
+				Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+				while(zipEntries.hasMoreElements()) {
+					ZipEntry entry = zipEntries.nextElement();
+					File destination = resolve(base, entry.getName());
+					if(entry.isDirectory()) {
+						destination.mkdirs();
+					} else {
+						destination.getParentFile().mkdirs();
+						files.put(destination, entry);
+						if(entry.getName().endsWith(".zip")) {
+							nested.add(destination);
+						}
+					}
+				}
+				
+				if(workers == null) {
+					for(Map.Entry<File, ZipEntry> file : files.entrySet()) {
+						write(zip, file.getValue(), file.getKey());
+					}
+				} else {
+					writeInParallel(zip, files);
+				}
+			}
+			
+			for(File nestedZip : nested) {
+				extract(nestedZip, depth + 1);
+			}
+		}
+		
+		private void writeInParallel(ZipFile zip, Map<File, ZipEntry> files) throws IOException {
+			List<Future<?>> tasks = new ArrayList<>(files.size());
+			for(Map.Entry<File, ZipEntry> file : files.entrySet()) {
+				tasks.add(workers.submit(() -> {
+					write(zip, file.getValue(), file.getKey());
+					return null;
+				}));
+			}
+			// Wait for every task, even after a failure, so nothing is still 
+			// writing when the zip is closed or the output is cleaned up
+			for(Future<?> task : tasks) {
+				try {
+					task.get();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					failure.compareAndSet(null, e);
+				} catch(ExecutionException e) {
+					failure.compareAndSet(null, (Exception) e.getCause());
+				}
+			}
+			Exception e = failure.get();
+			if(e instanceof IOException) {
+				throw (IOException) e;
+			}
+			if(e != null) {
+				throw new IOException("Could not extract " + zip.getName(), e);
+			}
+		}
+		
+		private void write(ZipFile zip, ZipEntry entry, File destination) throws IOException {
+			if(failure.get() != null) {
+				return;
+			}
+			long size = entry.getSize();
+			if(size > maxBytes - bytes.get()) {
+				throw new ZipLimitException("Extracted size is larger than " + maxBytes + " bytes");
+			}
+			long ratioLimit = Math.max(RATIO_GRACE_BYTES, entry.getCompressedSize() * maxRatio);
+			int bufferSize = size < 0 ? MAX_BUFFER_SIZE : (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, size));
+			byte[] buffer = new byte[bufferSize];
+			
+			written.add(destination);
+			long entryBytes = 0;
+			try(InputStream in = zip.getInputStream(entry);
+					OutputStream out = new FileOutputStream(destination)) {
+				int read;
+				while((read = in.read(buffer)) != -1) {
+					entryBytes += read;
+					if(bytes.addAndGet(read) > maxBytes) {
+						throw new ZipLimitException("Extracted size is larger than " + maxBytes + " bytes");
+					}
+					if(entry.getCompressedSize() > 0 && entryBytes > ratioLimit) {
+						throw new ZipLimitException(entry.getName() + " is compressed more than " + maxRatio + " times");
+					}
+					if(failure.get() != null) {
+						return;
+					}
+					out.write(buffer, 0, read);
+				}
+			} catch(IOException | RuntimeException e) {
+				failure.compareAndSet(null, e);
+				throw e;
+			}
+		}
+		
+		private void failed(Exception e) {
+			failure.compareAndSet(null, e);
+		}
+		
+		private void close() {
+			if(workers != null) {
+				workers.shutdownNow();
+			}
+			if(failure.get() != null) {
+				for(File file : written) {
+					file.delete();
+				}
+			}
+		}
+	}
+	
+	private static File resolve(File base, String name) throws IOException {
+		File destination = new File(base, name).getCanonicalFile();
+		if(!destination.toPath().startsWith(base.toPath())) {
+			throw new ZipLimitException("Entry " + name + " is outside the target directory");
+		}
+		return destination;
+	}
+	
+	/**
+	 * Thrown when a zip file passes one of the extraction limits or has an 
+	 * entry that would be written outside the target directory.
+	 */
+	public static class ZipLimitException extends ZipException {
+		private static final long serialVersionUID = 3315104186452279843L;
+
+		public ZipLimitException(String message) {
+			super(message);
+		}
+	}
+	
+	/**
+	 * The amount extracted by one call to {@link ZipExtractor#extract(File)}.
+	 */
+	public static class Result {
+		private final int entries;
+		private final long bytes;
+		private final long millis;
+		
+		private Result(int entries, long bytes, long millis) {
+			this.entries = entries;
+			this.bytes = bytes;
+			this.millis = millis;
+		}
+		
+		public int getEntries() {
+			return entries;
+		}
+		public long getBytes() {
+			return bytes;
+		}
+		public long getMillis() {
+			return millis;
+		}
+		
+		@Override
+		public String toString() {
+			return entries + " entries, " + bytes + " bytes in " + millis + "ms";
+		}
+	}
+}
@@ -36,7 +36,7 @@ import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.springframework.web.servlet.view.document.AbstractExcelView;
 
-import pasta.domain.result.AssessmentResult;
+import pasta.domain.result.SubmissionListItem;
 import pasta.domain.template.Assessment;
 import pasta.domain.user.PASTAUser;
 
@@ -62,7 +62,7 @@ public class ExcelAutoMarkView extends AbstractExcelView{
 			HttpServletRequest request, HttpServletResponse response) throws Exception {
 		
 		// get data
-		Map<PASTAUser, Map<Long, AssessmentResult>> resultList = (Map<PASTAUser, Map<Long, AssessmentResult>>) map.get("latestResults");
+		Map<PASTAUser, Map<Long, SubmissionListItem>> resultList = (Map<PASTAUser, Map<Long, SubmissionListItem>>) map.get("latestResults");
 		ArrayList<Assessment> assList = new ArrayList<Assessment>((Collection<Assessment>) map.get("assessmentList"));
 		Collection<PASTAUser> userList = (Collection<PASTAUser>)map.get("userList");
 		
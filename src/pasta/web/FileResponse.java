@@ -0,0 +1,239 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package pasta.web;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves a file from disk as an HTTP response.
+ * <p>
+ * Sets <code>Content-Length</code>, <code>ETag</code> and
+ * <code>Last-Modified</code>, answers conditional GETs with
+ * <code>304 Not Modified</code> and honours a single byte range
+ * (<code>Range: bytes=...</code>, optionally guarded by <code>If-Range</code>).
+ * Multiple ranges are not supported; such requests get the whole file.
+ * <p>
+ * If the container offers sendfile (Tomcat's NIO and APR connectors do), the
+ * body is handed to it; otherwise it is written with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+ */
+public class FileResponse {
+
+	private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+	
+	private static final long[] UNSATISFIABLE = new long[0];
+	
+	private FileResponse() {}
+	
+	/**
+	 * Write the file (or the requested range of it) to the response.
+	 * 
+	 * @param request the request, used for conditional and range headers
+	 * @param response the response to write to
+	 * @param file the file to serve
+	 * @param contentType the content type to send, or null to leave it unset
+	 * @param disposition the Content-Disposition header to send, or null
+	 * @throws IOException if the file cannot be read or the response written
+	 */
+	public static void send(HttpServletRequest request, HttpServletResponse response, File file,
+			String contentType, String disposition) throws IOException {
+		if(!file.isFile()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		
+		long length = file.length();
+		// HTTP dates only have second precision
+		long lastModified = file.lastModified() / 1000 * 1000;
+		String eTag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+		
+		response.setHeader("ETag", eTag);
+		response.setDateHeader("Last-Modified", lastModified);
+		response.setHeader("Accept-Ranges", "bytes");
+		response.setHeader("Cache-Control", "private, no-cache");
+		
+		if(isNotModified(request, eTag, lastModified)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		
+		long start = 0;
+		long end = length - 1;
+		String range = request.getHeader("Range");
+		if(range != null && rangeStillValid(request, eTag, lastModified)) {
+			long[] bounds = parseRange(range, length);
+			if(bounds == UNSATISFIABLE) {
+				response.setHeader("Content-Range", "bytes */" + length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			if(bounds != null) {
+				start = bounds[0];
+				end = bounds[1];
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+			}
+		}
+		
+		long count = end - start + 1;
+		if(contentType != null) {
+			response.setContentType(contentType);
+		}
+		if(disposition != null) {
+			response.setHeader("Content-Disposition", disposition);
+		}
+		response.setHeader("Content-Length", Long.toString(count));
+		if(count == 0) {
+			return;
+		}
+		
+		if(Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+			request.setAttribute(SENDFILE_FILENAME_ATTR, file.getCanonicalPath());
+			request.setAttribute(SENDFILE_START_ATTR, start);
+			request.setAttribute(SENDFILE_END_ATTR, end + 1);
+			return;
+		}
+		
+		try(FileInputStream in = new FileInputStream(file);
+				FileChannel channel = in.getChannel()) {
+			WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+			long position = start;
+			while(count > 0) {
+				long sent = channel.transferTo(position, count, out);
+				if(sent <= 0) {
+					// File shrank underneath us
+					break;
+				}
+				position += sent;
+				count -= sent;
+			}
+		}
+		response.flushBuffer();
+	}
+	
+	private static boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if(ifNoneMatch != null) {
+			return matchesETag(ifNoneMatch, eTag);
+		}
+		long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+		return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
+	}
+	
+	private static boolean rangeStillValid(HttpServletRequest request, String eTag, long lastModified) {
+		String ifRange = request.getHeader("If-Range");
+		if(ifRange == null) {
+			return true;
+		}
+		ifRange = ifRange.trim();
+		if(ifRange.startsWith("\"")) {
+			return ifRange.equals(eTag);
+		}
+		if(ifRange.startsWith("W/")) {
+			// Weak validators may not be used for ranges
+			return false;
+		}
+		return lastModified == getDateHeader(request, "If-Range");
+	}
+	
+	private static boolean matchesETag(String header, String eTag) {
+		for(String candidate : header.split(",")) {
+			candidate = candidate.trim();
+			if(candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if(candidate.equals("*") || candidate.equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static long getDateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		} catch(IllegalArgumentException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Parse a single <code>bytes=</code> range against a file of the given length.
+	 * 
+	 * @return inclusive {start, end}, {@link #UNSATISFIABLE}, or null if the
+	 *         header should be ignored and the whole file sent
+	 */
+	private static long[] parseRange(String header, long length) {
+		header = header.trim();
+		if(!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+			return null;
+		}
+		String spec = header.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if(dash < 0) {
+			return null;
+		}
+		String first = spec.substring(0, dash).trim();
+		String last = spec.substring(dash + 1).trim();
+		long start, end;
+		try {
+			if(first.isEmpty()) {
+				// Suffix range: the last N bytes
+				long suffix = Long.parseLong(last);
+				if(suffix < 0) {
+					return null;
+				}
+				if(suffix == 0 || length == 0) {
+					return UNSATISFIABLE;
+				}
+				start = Math.max(0, length - suffix);
+				end = length - 1;
+			} else {
+				start = Long.parseLong(first);
+				end = last.isEmpty() ? length - 1 : Long.parseLong(last);
+				if(start < 0 || end < start) {
+					return null;
+				}
+				if(start >= length) {
+					return UNSATISFIABLE;
+				}
+				end = Math.min(end, length - 1);
+			}
+		} catch(NumberFormatException e) {
+			return null;
+		}
+		return new long[] {start, end};
+	}
+}
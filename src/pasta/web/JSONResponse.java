@@ -0,0 +1,123 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Streams JSON straight to an HTTP response.
+ * <p>
+ * Large JSON responses (grade centre, reports) are written token by token
+ * with a {@link JsonGenerator} rather than built as a tree or string first.
+ * If the client accepts it, the response is gzip compressed on the way out.
+ * <p>
+ * Closing the generator finishes the response.
+ */
+public class JSONResponse {
+
+	private static final int GZIP_BUFFER_SIZE = 8192;
+	
+	// Thread safe once configured; also gives generators a codec for writeTree()
+	private static final ObjectMapper mapper = new ObjectMapper();
+	
+	private JSONResponse() {}
+	
+	/**
+	 * Set up the response for JSON and open a generator over its body.
+	 * 
+	 * @param request the request, used to negotiate compression
+	 * @param response the response to write to
+	 * @return the generator; the caller must close it
+	 * @throws IOException if the response stream cannot be opened
+	 */
+	public static JsonGenerator open(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Vary", "Accept-Encoding");
+		
+		OutputStream out = response.getOutputStream();
+		if(acceptsGzip(request)) {
+			response.setHeader("Content-Encoding", "gzip");
+			out = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+		}
+		return mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+	}
+	
+	/**
+	 * Check the request's <code>If-None-Match</code> header against the given
+	 * entity tag, as the response would be encoded for this request. The gzip
+	 * and identity bodies differ byte for byte, so they get different strong
+	 * tags (<code>"tag-gzip"</code> for the gzip body).
+	 * 
+	 * @param request the request
+	 * @param response the response; given the ETag and Vary headers
+	 * @param eTag a quoted entity tag for the content
+	 * @return true if the response has been set to 304 Not Modified and no
+	 *         body should be written
+	 */
+	public static boolean checkNotModified(HttpServletRequest request, HttpServletResponse response, String eTag) {
+		response.setHeader("Vary", "Accept-Encoding");
+		if(acceptsGzip(request) && eTag.endsWith("\"")) {
+			eTag = eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+		}
+		return new ServletWebRequest(request, response).checkNotModified(eTag);
+	}
+	
+	private static boolean acceptsGzip(HttpServletRequest request) {
+		String accept = request.getHeader("Accept-Encoding");
+		if(accept == null) {
+			return false;
+		}
+		for(String coding : accept.split(",")) {
+			String[] parts = coding.trim().split(";");
+			if(!parts[0].trim().equalsIgnoreCase("gzip")) {
+				continue;
+			}
+			for(int i = 1; i < parts.length; i++) {
+				String param = parts[i].trim();
+				if(param.startsWith("q=")) {
+					try {
+						return Double.parseDouble(param.substring(2).trim()) > 0;
+					} catch(NumberFormatException e) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+}
@@ -24,15 +24,20 @@ SOFTWARE.
 
 package pasta.web.controller;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -42,10 +47,12 @@ import javax.sql.DataSource;
 import javax.validation.Valid;
 
 import org.apache.commons.dbcp2.BasicDataSource;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.ui.ModelMap;
@@ -58,7 +65,9 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import pasta.docker.CommandResult;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import pasta.config.MonitoredDataSource;
 import pasta.docker.DockerManager;
 import pasta.domain.UserPermissionLevel;
 import pasta.domain.form.ChangePasswordForm;
@@ -68,14 +77,16 @@ import pasta.domain.form.validate.UpdateOptionsFormValidator;
 import pasta.domain.form.validate.UpdateUsersFormValidator;
 import pasta.domain.user.PASTAUser;
 import pasta.login.DBAuthValidator;
+import pasta.repository.BaseDAO;
+import pasta.service.AssessmentManager;
 import pasta.service.ExecutionManager;
 import pasta.service.PASTAOptions;
 import pasta.service.UserManager;
-import pasta.service.reporting.CSVReport;
-import pasta.service.reporting.CSVReport.CSVPage;
 import pasta.service.reporting.UnitTestReportingManager;
+import pasta.util.BlobStore;
 import pasta.util.ProjectProperties;
 import pasta.util.WhichProgram;
+import pasta.web.JSONResponse;
 import pasta.web.WebUtils;
 
 /**
@@ -105,6 +116,9 @@ public class AdminController {
 	@Autowired
 	private ExecutionManager executionManager;
 	
+	@Autowired
+	private AssessmentManager assessmentManager;
+	
 	@Autowired
 	private UnitTestReportingManager unitTestReportingManager;
 	
@@ -114,6 +128,10 @@ public class AdminController {
 	@Autowired
 	private UpdateOptionsFormValidator updateOptionsValidator;
 	
+	@Autowired
+	@Qualifier("baseDAO")
+	private BaseDAO baseDAO;
+	
 	// ///////////////////////////////////////////////////////////////////////////
 	// Models //
 	// ///////////////////////////////////////////////////////////////////////////
@@ -337,16 +355,121 @@ public class AdminController {
 	}
 	
 	@RequestMapping(value = "/downloads/", method = RequestMethod.GET)
-	public String viewDownloads() {
+	public String viewDownloads(Model model) {
 		WebUtils.ensureAccess(UserPermissionLevel.INSTRUCTOR);
+		model.addAttribute("assessments", assessmentManager.getAssessmentList());
 		return "admin/downloads";
 	}
 	
+	/**
+	 * $PASTAUrl$/admin/cache/
+	 * <p>
+	 * Hit, miss and put counts of the second-level and query caches, as JSON.
+	 * <p>
+	 * <b>REQUIRES: Instructor permission</b>
+	 */
+	@RequestMapping(value = "/cache/", method = RequestMethod.GET)
+	public void viewCacheStatistics(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		WebUtils.ensureAccess(UserPermissionLevel.INSTRUCTOR);
+		
+		Statistics stats = baseDAO.getStatistics();
+		try(JsonGenerator json = JSONResponse.open(request, response)) {
+			json.writeStartObject();
+			json.writeBooleanField("enabled", stats.isStatisticsEnabled());
+			json.writeNumberField("secondLevelCacheHits", stats.getSecondLevelCacheHitCount());
+			json.writeNumberField("secondLevelCacheMisses", stats.getSecondLevelCacheMissCount());
+			json.writeNumberField("secondLevelCachePuts", stats.getSecondLevelCachePutCount());
+			json.writeNumberField("queryCacheHits", stats.getQueryCacheHitCount());
+			json.writeNumberField("queryCacheMisses", stats.getQueryCacheMissCount());
+			json.writeNumberField("queryCachePuts", stats.getQueryCachePutCount());
+			json.writeObjectFieldStart("regions");
+			for(String region : stats.getSecondLevelCacheRegionNames()) {
+				SecondLevelCacheStatistics regionStats = stats.getSecondLevelCacheStatistics(region);
+				if(regionStats == null) {
+					continue;
+				}
+				json.writeObjectFieldStart(region);
+				json.writeNumberField("hits", regionStats.getHitCount());
+				json.writeNumberField("misses", regionStats.getMissCount());
+				json.writeNumberField("puts", regionStats.getPutCount());
+				json.writeNumberField("elementsInMemory", regionStats.getElementCountInMemory());
+				json.writeEndObject();
+			}
+			json.writeEndObject();
+			json.writeEndObject();
+		}
+	}
+	
+	/**
+	 * $PASTAUrl$/admin/cache/clear/ - POST
+	 * <p>
+	 * Empty the second-level and query caches, e.g. after the database has
+	 * been edited by hand.
+	 * <p>
+	 * <b>REQUIRES: Instructor permission</b>
+	 * 
+	 * @param request the http request object, used to send the user back to the page that referred them
+	 * @return redirect to the referrer url
+	 */
+	@RequestMapping(value = "/cache/clear/", method = RequestMethod.POST)
+	public String clearCaches(HttpServletRequest request) {
+		WebUtils.ensureAccess(UserPermissionLevel.INSTRUCTOR);
+		baseDAO.evictAllCaches();
+		return "redirect:" + request.getHeader("Referer");
+	}
+	
 	@Autowired
 	private DataSource dataSource;
 	
+	/**
+	 * $PASTAUrl$/admin/database/pool/
+	 * <p>
+	 * Live statistics of the database connection pool, as JSON.
+	 * <p>
+	 * <b>REQUIRES: Instructor permission</b>
+	 */
+	@RequestMapping(value = "/database/pool/", method = RequestMethod.GET)
+	public void viewConnectionPoolStatistics(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		WebUtils.ensureAccess(UserPermissionLevel.INSTRUCTOR);
+		
+		MonitoredDataSource ds = (MonitoredDataSource) dataSource;
+		try(JsonGenerator json = JSONResponse.open(request, response)) {
+			json.writeStartObject();
+			json.writeNumberField("active", ds.getNumActive());
+			json.writeNumberField("idle", ds.getNumIdle());
+			json.writeNumberField("maxTotal", ds.getMaxTotal());
+			json.writeNumberField("waiters", ds.getNumWaiters());
+			json.writeNumberField("meanWaitMillis", ds.getMeanBorrowWaitTimeMillis());
+			json.writeNumberField("maxWaitMillis", ds.getMaxBorrowWaitTimeMillis());
+			json.writeNumberField("borrowed", ds.getBorrowedCount());
+			json.writeNumberField("created", ds.getCreatedCount());
+			json.writeNumberField("destroyed", ds.getDestroyedCount());
+			json.writeNumberField("destroyedByEvictor", ds.getDestroyedByEvictorCount());
+			json.writeEndObject();
+		}
+	}
+	
+	// Number of bytes of the database dump currently being sent, or -1 if 
+	// no dump is being sent
+	private final AtomicLong dumpBytesSent = new AtomicLong(-1);
+	private volatile long dumpStarted;
+	
+	/**
+	 * $PASTAUrl$/admin/downloads/dbdump/ - POST
+	 * <p>
+	 * Send a zipped SQL dump of the database. The dump is streamed from 
+	 * mysqldump through the zip to the response as it is produced. Unless
+	 * only unrelated tables are dumped, the result output held in the 
+	 * {@link BlobStore} is added under <code>blobs/</code>.
+	 * <p>
+	 * <b>REQUIRES: Instructor permission</b>
+	 * 
+	 * @param tables optional comma or space separated list of tables to dump
+	 *        instead of the whole database
+	 */
 	@RequestMapping(value = "/downloads/dbdump/", method = RequestMethod.POST, produces="application/zip")
-	public void downloadDatabaseDump(HttpServletRequest request, HttpServletResponse response) {
+	public void downloadDatabaseDump(HttpServletRequest request, HttpServletResponse response,
+			@RequestParam(value="tables", required=false) String tables) throws IOException {
 		WebUtils.ensureAccess(UserPermissionLevel.INSTRUCTOR);
 		
 		DBInfo info = new DBInfo((BasicDataSource) dataSource);
@@ -355,7 +478,10 @@ public class AdminController {
 		command.add(WhichProgram.getInstance().path("mysqldump"));
 		command.add("--user=" + info.username);
 		command.add("--password=" + info.password);
-		command.add("--lock-tables");
+		// Consistent snapshot without holding table locks while a slow client
+		// reads the dump
+		command.add("--single-transaction");
+		command.add("--quick");
 				
 		String[] ignoreTables = {
 				"user_logins",
@@ -370,43 +496,111 @@ public class AdminController {
 		
 		command.add(info.databaseName);
 		
-		CommandResult result = null;
-		try {
-			result = DockerManager.instance().executeDatabaseDump(command);
-			if(!result.getError().isEmpty()) {
-				throw new IOException(result.getError());
+		if(tables != null && !tables.trim().isEmpty()) {
+			for(String table : tables.trim().split("[,\\s]+")) {
+				if(!table.matches("\\w+")) {
+					response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid table name: " + table);
+					return;
+				}
+				command.add(table);
 			}
-		} catch (IOException e) {
-			logger.error("Error generating SQL dump:", e);
 		}
 		
+		if(!dumpBytesSent.compareAndSet(-1, 0)) {
+			response.sendError(HttpServletResponse.SC_CONFLICT, "A database dump is already being sent.");
+			return;
+		}
+		dumpStarted = System.currentTimeMillis();
+		
 		String filename = "pasta_" + new SimpleDateFormat("YYYY-MM-dd").format(new Date());
-	    response.setHeader("Content-disposition", "attachment; filename=" + filename + ".zip");
-
-	    try {
-	    	// Zip the file
-	    	ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-	    	ZipOutputStream zip = new ZipOutputStream(outStream);
-	    	
-	    	ZipEntry ze = new ZipEntry(filename + ".sql");
-			zip.putNextEntry(ze);
-			
-			ByteArrayInputStream bais = new ByteArrayInputStream(result.getOutput().getBytes());
-			byte[] buffer = new byte[1024];
-			int len;
-			while ((len = bais.read(buffer)) > 0) {
-				zip.write(buffer, 0, len);
-			}
-			bais.close();
+		response.setContentType("application/zip");
+		response.setHeader("Content-disposition", "attachment; filename=" + filename + ".zip");
+		
+		try(ZipOutputStream zip = new ZipOutputStream(response.getOutputStream())) {
+			zip.putNextEntry(new ZipEntry(filename + ".sql"));
+			OutputStream counted = new FilterOutputStream(zip) {
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+					dumpBytesSent.addAndGet(len);
+				}
+			};
+			String errors = DockerManager.instance().executeDatabaseDump(command, counted);
 			zip.closeEntry();
-			zip.close();
-			
-			// Send the file
-			OutputStream out = response.getOutputStream();
-			InputStream in = new ByteArrayInputStream(outStream.toByteArray());
-			IOUtils.copy(in,out);
-		} catch (IOException e) {
+			if(!errors.isEmpty()) {
+				logger.warn("mysqldump reported: " + errors);
+			}
+			if(includesBlobs(tables)) {
+				addBlobs(zip, counted);
+			}
+			logger.info("Sent database dump of " + dumpBytesSent.get() + " bytes in " 
+					+ (System.currentTimeMillis() - dumpStarted) / 1000 + "s");
+		} catch (IOException | RuntimeException e) {
 			logger.error("Error sending SQL dump:", e);
+		} finally {
+			dumpBytesSent.set(-1);
+		}
+	}
+	
+	private boolean includesBlobs(String tables) {
+		if(tables == null || tables.trim().isEmpty()) {
+			return true;
+		}
+		List<String> tableList = Arrays.asList(tables.trim().split("[,\\s]+"));
+		return tableList.contains("unit_test_results") || tableList.contains("unit_test_case_results");
+	}
+	
+	/**
+	 * Add the {@link BlobStore} to the dump under <code>blobs/</code>, as the
+	 * full output of large results is held there rather than in the database.
+	 * To restore, extract that directory into the project location.
+	 */
+	private void addBlobs(ZipOutputStream zip, OutputStream counted) throws IOException {
+		File storeDir = BlobStore.instance().getStoreDirectory();
+		File[] dirs = storeDir.listFiles(File::isDirectory);
+		if(dirs == null) {
+			return;
+		}
+		// Blobs are already compressed
+		zip.setLevel(Deflater.NO_COMPRESSION);
+		for(File dir : dirs) {
+			File[] blobs = dir.listFiles(File::isFile);
+			if(blobs == null) {
+				continue;
+			}
+			for(File blob : blobs) {
+				if(blob.getName().endsWith(".tmp")) {
+					continue;
+				}
+				zip.putNextEntry(new ZipEntry("blobs/" + dir.getName() + "/" + blob.getName()));
+				Files.copy(blob.toPath(), counted);
+				zip.closeEntry();
+			}
+		}
+	}
+	
+	/**
+	 * $PASTAUrl$/admin/downloads/dbdump/progress/
+	 * <p>
+	 * Progress of the database dump being sent, as JSON: whether one is 
+	 * running, and if so the (uncompressed) bytes sent so far and the seconds
+	 * since it started.
+	 * <p>
+	 * <b>REQUIRES: Instructor permission</b>
+	 */
+	@RequestMapping(value = "/downloads/dbdump/progress/", method = RequestMethod.GET)
+	public void viewDatabaseDumpProgress(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		WebUtils.ensureAccess(UserPermissionLevel.INSTRUCTOR);
+		
+		long bytes = dumpBytesSent.get();
+		try(JsonGenerator json = JSONResponse.open(request, response)) {
+			json.writeStartObject();
+			json.writeBooleanField("running", bytes >= 0);
+			if(bytes >= 0) {
+				json.writeNumberField("bytes", bytes);
+				json.writeNumberField("seconds", (System.currentTimeMillis() - dumpStarted) / 1000);
+			}
+			json.writeEndObject();
 		}
 	}
 	
@@ -440,52 +634,74 @@ public class AdminController {
 		}
 	}
 	
+	/**
+	 * $PASTAUrl$/admin/downloads/utchistory/ - POST
+	 * <p>
+	 * Download zipped CSV file(s) of the outcome of every test case of every 
+	 * submission, optionally only for one assessment and/or a range of 
+	 * submission dates (<code>yyyy-MM-dd</code>, both inclusive).
+	 * <p>
+	 * <b>REQUIRES: Instructor permission</b>
+	 */
 	@RequestMapping(value = "/downloads/utchistory/", method = RequestMethod.POST, produces="application/zip")
 	public void downloadUnitTestCaseHistory(HttpServletRequest request, HttpServletResponse response, 
-			@RequestParam(value="maxRowCount", required=false) int maxRowCount) {
+			@RequestParam(value="maxRowCount", required=false) int maxRowCount,
+			@RequestParam(value="assessmentId", required=false) Long assessmentId,
+			@RequestParam(value="from", required=false) String from,
+			@RequestParam(value="to", required=false) String to) throws IOException {
 		WebUtils.ensureAccess(UserPermissionLevel.INSTRUCTOR);
-		CSVReport report = unitTestReportingManager.getAllUnitTestAttemptsReport(maxRowCount);
-		downloadCSVReport(report, response, "pasta_unit_test_results");
+		downloadCSVReport(response, "pasta_unit_test_results", from, to, (zip, fromDate, toDate) -> 
+				unitTestReportingManager.writeAllUnitTestAttemptsReport(zip, maxRowCount, assessmentId, fromDate, toDate));
 	}
 	
+	/**
+	 * $PASTAUrl$/admin/downloads/submissionhistory/ - POST
+	 * <p>
+	 * Download zipped CSV file(s) of the details of every submission, 
+	 * optionally only for one assessment and/or a range of submission dates
+	 * (<code>yyyy-MM-dd</code>, both inclusive).
+	 * <p>
+	 * <b>REQUIRES: Instructor permission</b>
+	 */
 	@RequestMapping(value = "/downloads/submissionhistory/", method = RequestMethod.POST, produces="application/zip")
 	public void downloadSubmissionHistory(HttpServletRequest request, HttpServletResponse response, 
-			@RequestParam(value="maxRowCount", required=false) int maxRowCount) {
+			@RequestParam(value="maxRowCount", required=false) int maxRowCount,
+			@RequestParam(value="assessmentId", required=false) Long assessmentId,
+			@RequestParam(value="from", required=false) String from,
+			@RequestParam(value="to", required=false) String to) throws IOException {
 		WebUtils.ensureAccess(UserPermissionLevel.INSTRUCTOR);
-		CSVReport report = unitTestReportingManager.getAllSubmissionsReport(maxRowCount);
-		downloadCSVReport(report, response, "pasta_submissions");
+		downloadCSVReport(response, "pasta_submissions", from, to, (zip, fromDate, toDate) -> 
+				unitTestReportingManager.writeAllSubmissionsReport(zip, maxRowCount, assessmentId, fromDate, toDate));
+	}
+	
+	private interface CSVReportWriter {
+		void write(ZipOutputStream zip, Date from, Date to) throws IOException;
 	}
 	
-	private void downloadCSVReport(CSVReport report, HttpServletResponse response, String filePrefix) {
-		CSVPage[] pages = report.getPages();
+	private void downloadCSVReport(HttpServletResponse response, String filePrefix, 
+			String from, String to, CSVReportWriter reportWriter) throws IOException {
+		Date fromDate = null;
+		Date toDate = null;
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+		try {
+			if(from != null && !from.isEmpty()) {
+				fromDate = dateFormat.parse(from);
+			}
+			if(to != null && !to.isEmpty()) {
+				// Include the whole of the last day
+				toDate = new Date(dateFormat.parse(to).getTime() + TimeUnit.DAYS.toMillis(1));
+			}
+		} catch(ParseException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Dates must be in the format yyyy-MM-dd");
+			return;
+		}
 		
 		String filename = filePrefix + "_" + new SimpleDateFormat("YYYY-MM-dd").format(new Date());
-	    response.setHeader("Content-disposition", "attachment; filename=" + filename + ".zip");
-
-	    try {
-	    	// Zip the file
-	    	ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-	    	ZipOutputStream zip = new ZipOutputStream(outStream);
-	    	
-	    	for(int i = 0; i < pages.length; i++) {
-	    		String entryName = "results";
-	    		if(pages.length > 1) {
-	    			int numDigits = (int) Math.ceil(Math.log10(pages.length + 1));
-	    			entryName += String.format("%0" + numDigits + "d", i + 1);
-	    		}
-	    		entryName += ".csv";
-	    		ZipEntry ze = new ZipEntry(entryName);
-				zip.putNextEntry(ze);
-				pages[i].output(zip);
-				zip.closeEntry();
-	    	}
-	    	
-			zip.close();
-			
-			// Send the file
-			OutputStream out = response.getOutputStream();
-			InputStream in = new ByteArrayInputStream(outStream.toByteArray());
-			IOUtils.copy(in,out);
+		response.setContentType("application/zip");
+		response.setHeader("Content-disposition", "attachment; filename=" + filename + ".zip");
+		
+		try(ZipOutputStream zip = new ZipOutputStream(response.getOutputStream())) {
+			reportWriter.write(zip, fromDate, toDate);
 		} catch (IOException e) {
 			logger.error("Error sending CSV report:", e);
 		}
@@ -24,25 +24,20 @@ SOFTWARE.
 
 package pasta.web.controller;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.zip.ZipOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -60,7 +55,6 @@ import pasta.domain.FileTreeNode;
 import pasta.domain.UserPermissionLevel;
 import pasta.domain.form.UpdateAssessmentForm;
 import pasta.domain.form.validate.UpdateAssessmentFormValidator;
-import pasta.domain.result.AssessmentResult;
 import pasta.domain.template.Assessment;
 import pasta.domain.template.HandMarking;
 import pasta.domain.template.UnitTest;
@@ -70,12 +64,14 @@ import pasta.domain.user.PASTAUser;
 import pasta.service.AssessmentManager;
 import pasta.service.GroupManager;
 import pasta.service.HandMarkingManager;
+import pasta.service.PASTAOptions;
 import pasta.service.ResultManager;
 import pasta.service.SubmissionManager;
 import pasta.service.UnitTestManager;
 import pasta.service.UserManager;
 import pasta.util.PASTAUtil;
 import pasta.util.ProjectProperties;
+import pasta.util.io.StreamingZipWriter;
 import pasta.web.WebUtils;
 
 /**
@@ -385,8 +381,8 @@ public class AssessmentController {
 	 * Within that there will be a set of folders, one for each student that has made a
 	 * submission with their username as the name of the folder. Within that folder is the
 	 * code they submitted.
-	 * 
-	 * When the zip has been downloaded, it will be removed from memory.
+	 * <p>
+	 * The zip is written straight to the response as it is built.
 	 * 
 	 * @param assessmentId the id for the assessment
 	 * @param model the model used (or not used in this case)
@@ -403,51 +399,36 @@ public class AssessmentController {
 			return;
 		}
 		
+		Collection<PASTAUser> allUsers = userManager.getStudentList();
+		allUsers.addAll(groupManager.getGroups(allUsers, assessmentId));
+		Map<String, Date> latestDates = resultManager.getLatestSubmissionDates(allUsers, assessmentId);
+		
 		response.setContentType("application/zip");
 		response.setHeader("Content-Disposition", "attachment;filename=\""
 				+ assessment.getFileAppropriateName() + "-latest.zip\"");
-		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-		ZipOutputStream zip = new ZipOutputStream(outStream);
 		
-		Collection<PASTAUser> allUsers = userManager.getStudentList();
-		allUsers.addAll(groupManager.getGroups(allUsers, assessmentId));
-		Map<PASTAUser, Map<Long, AssessmentResult>> allResults = resultManager.getLatestResults(allUsers);
-		try {
-			for(Entry<PASTAUser, Map<Long, AssessmentResult> > entry : allResults.entrySet()){
-				if(entry.getValue() != null && 
-						entry.getValue().containsKey(assessmentId) &&
-						entry.getValue().get(assessmentId) != null &&
-						entry.getValue().get(assessmentId).getSubmissionDate() != null){
-					// add
-
-					PASTAUtil.zip(zip, new File(ProjectProperties.getInstance()
-							.getSubmissionsLocation()
-							+ entry.getKey().getUsername()
-							+ "/assessments/"
-							+ assessmentId
-							+ "/"
-							+ PASTAUtil.formatDate(entry.getValue().get(assessmentId).getSubmissionDate())
-							+ "/submission/"), "(" + ProjectProperties.getInstance()
-							.getSubmissionsLocation()
-							+ ")|(assessments.*submission/)" );
-					zip.closeEntry();
+		int readAheadThreads = 2;
+		String readAhead = PASTAOptions.instance().get("downloads.readahead.threads");
+		if(readAhead != null) {
+			try {
+				readAheadThreads = Integer.parseInt(readAhead.trim());
+			} catch(NumberFormatException e) {
+				logger.warn("\"" + readAhead + "\" is not a valid value for downloads.readahead.threads");
+			}
+		}
+		
+		try(StreamingZipWriter zip = new StreamingZipWriter(response.getOutputStream(), readAheadThreads)) {
+			for(Entry<String, Date> entry : latestDates.entrySet()) {
+				String username = entry.getKey();
+				File submission = new File(ProjectProperties.getInstance().getSubmissionsLocation()
+						+ username + "/assessments/" + assessmentId + "/" 
+						+ PASTAUtil.formatDate(entry.getValue()) + "/submission/");
+				if(submission.isDirectory()) {
+					zip.addDirectory(submission, username + "/");
 				}
 			}
-			zip.close();
-			IOUtils.copy(new ByteArrayInputStream(outStream.toByteArray()),
-					response.getOutputStream());
-			response.flushBuffer();
-
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			logger.error(e.getMessage());
-//			e.printStackTrace();
-		}
-		catch (Exception e){
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw);
-			e.printStackTrace(pw);
-			logger.error("Something really wrong happened!!!" + System.getProperty("line.separator")+sw.toString());
+			logger.error("Could not send latest submissions for " + assessment, e);
 		}
 	}
 }
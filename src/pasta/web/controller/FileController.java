@@ -25,9 +25,7 @@ SOFTWARE.
 package pasta.web.controller;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Set;
 import java.util.TreeSet;
@@ -36,7 +34,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -56,6 +53,7 @@ import pasta.domain.user.PASTAUser;
 import pasta.service.GroupManager;
 import pasta.util.PASTAUtil;
 import pasta.util.ProjectProperties;
+import pasta.web.FileResponse;
 import pasta.web.WebUtils;
 
 /**
@@ -93,23 +91,20 @@ public class FileController {
 	 * document, otherwise do nothing. <b>Not sure if it's actually being used</b>
 	 * 
 	 * @param fileName the path to the file.
+	 * @param request the http request, used for conditional and range headers
 	 * @param response the http response being used to serve the content
 	 */
 	@RequestMapping(value = "viewFile/loadFile", method = RequestMethod.GET)
 	public void getFile(@RequestParam("owner") String owner, 
-			@RequestParam("file_name") String fileName, HttpServletResponse response) {
+			@RequestParam("file_name") String fileName, HttpServletRequest request, HttpServletResponse response) {
 		WebUtils.ensureAccess(UserPermissionLevel.TUTOR);
 		fileName = fileName.replace("\"", "");
 		File file = getCorrectFile(owner, fileName);
 		logger.debug("Loading content of file: " + fileName + " owned by " + owner);
 		if(!PASTAUtil.canDisplayFile(file.getAbsolutePath())) {
 			try {
-				// get your file as InputStream
-				InputStream is = new FileInputStream(file.getAbsolutePath());
-				// copy it to response's OutputStream
-				IOUtils.copy(is, response.getOutputStream());
-				response.flushBuffer();
-				is.close();
+				FileResponse.send(request, response, file, 
+						request.getServletContext().getMimeType(file.getName()), null);
 			} catch (IOException ex) {
 				throw new RuntimeException("IOError writing file to output stream", ex);
 			}
@@ -123,11 +118,12 @@ public class FileController {
 	 * document, otherwise do nothing.
 	 * 
 	 * @param fileName the path to the file.
+	 * @param request the http request, used for conditional and range headers
 	 * @param response the http response being used to serve the content
 	 */
 	@RequestMapping(value = "downloadFile", method = RequestMethod.GET)
 	public void downloadFile(@RequestParam("owner") String owner, 
-			@RequestParam("file_name") String fileName, HttpServletResponse response) {
+			@RequestParam("file_name") String fileName, HttpServletRequest request, HttpServletResponse response) {
 
 		fileName = fileName.replace("\"", "");
 		File file = getCorrectFile(owner, fileName);
@@ -145,14 +141,8 @@ public class FileController {
 		}
 		logger.debug("User " + user + " is downloading file: " + file);
 		try {
-			// get your file as InputStream
-			InputStream is = new FileInputStream(file);
-			// copy it to response's OutputStream
-			response.setContentType("application/octet-stream;");
-			response.setHeader("Content-Disposition", "attachment; filename=" + FilenameUtils.getName(fileName));
-			IOUtils.copy(is, response.getOutputStream());
-			response.flushBuffer();
-			is.close();
+			FileResponse.send(request, response, file, "application/octet-stream;", 
+					"attachment; filename=" + FilenameUtils.getName(fileName));
 		} catch (IOException ex) {
 			logger.info("IOException thrown", ex);
 			return;
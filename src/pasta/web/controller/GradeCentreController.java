@@ -24,8 +24,8 @@ SOFTWARE.
 
 package pasta.web.controller;
 
+import java.io.IOException;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -43,17 +43,20 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.ModelAndView;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import pasta.domain.UserPermissionLevel;
 import pasta.domain.template.Assessment;
 import pasta.domain.user.PASTAUser;
 import pasta.service.AssessmentManager;
+import pasta.service.GradeCentreManager;
 import pasta.service.ResultManager;
 import pasta.service.UserManager;
 import pasta.view.ExcelAutoMarkView;
 import pasta.view.ExcelMarkView;
+import pasta.web.JSONResponse;
 import pasta.web.WebUtils;
 
 /**
@@ -81,6 +84,8 @@ public class GradeCentreController {
 	private AssessmentManager assessmentManager;
 	@Autowired
 	private ResultManager resultManager;
+	@Autowired
+	private GradeCentreManager gradeCentreManager;
 	
 	@ModelAttribute("user")
 	public PASTAUser loadUser(HttpServletRequest request) {
@@ -125,7 +130,7 @@ public class GradeCentreController {
 			userList = userManager.getUserList();
 		}
 		data.put("userList", userList);
-		data.put("latestResults", resultManager.getLatestResultsIncludingGroupQuick(userList));
+		data.put("latestResults", resultManager.getLatestSubmissionsIncludingGroup(userList));
 
 		return new ModelAndView(new ExcelMarkView(), data);
 	}
@@ -164,7 +169,7 @@ public class GradeCentreController {
 			userList = userManager.getUserList();
 		}
 		data.put("userList", userList);
-		data.put("latestResults", resultManager.getLatestResultsIncludingGroupQuick(userList));
+		data.put("latestResults", resultManager.getLatestSubmissionsIncludingGroup(userList));
 
 		return new ModelAndView(new ExcelAutoMarkView(), data);
 	}
@@ -178,14 +183,13 @@ public class GradeCentreController {
 	 * <p>
 	 * Serves up the JSON data container for the grade center. If the user has not
 	 * authenticated or is not a tutor: return nothing. Otherwise use
-	 * {@link GradeCentreController#generateJSON(PASTAUser[])} for all users.
-	 * 
-	 * @return the appropriate json file
+	 * {@link GradeCentreController#writeJSON(Collection, HttpServletRequest, HttpServletResponse)}
+	 * for all users.
 	 */
 	@RequestMapping(value = "DATA/")
-	public @ResponseBody String viewGradeCentreData() {
+	public void viewGradeCentreData(HttpServletRequest request, HttpServletResponse response) throws IOException {
 		WebUtils.ensureAccess(UserPermissionLevel.TUTOR);
-		return generateJSON(userManager.getStudentList());
+		writeJSON(userManager.getStudentList(), request, response);
 	}
 
 	/**
@@ -193,18 +197,18 @@ public class GradeCentreController {
 	 * <p>
 	 * Serves up the JSON data container for the grade center for a stream. If the
 	 * user has not authenticated or is not a tutor: return nothing. Otherwise use
-	 * {@link GradeCentreController#generateJSON(PASTAUser[])} for all users in
-	 * the given stream. Return nothing if the stream doesn't exist.
-	 * 
-	 * @return the appropriate json file
+	 * {@link GradeCentreController#writeJSON(Collection, HttpServletRequest, HttpServletResponse)}
+	 * for all users in the given stream. Return nothing if the stream doesn't exist.
 	 */
 	@RequestMapping(value = "stream/{streamName}/DATA/")
-	public @ResponseBody String viewStreamData(@PathVariable("streamName") String streamName) {
+	public void viewStreamData(@PathVariable("streamName") String streamName, 
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
 		WebUtils.ensureAccess(UserPermissionLevel.TUTOR);
-		if (userManager.getUserListByStream(streamName) == null) {
-			return "";
+		Collection<PASTAUser> users = userManager.getUserListByStream(streamName);
+		if (users == null) {
+			return;
 		}
-		return generateJSON(userManager.getUserListByStream(streamName));
+		writeJSON(users, request, response);
 	}
 
 	/**
@@ -212,21 +216,22 @@ public class GradeCentreController {
 	 * <p>
 	 * Serves up the JSON data container for the grade center for a tutorial
 	 * class. If the user has not authenticated or is not a tutor: return nothing.
-	 * Otherwise use {@link GradeCentreController#generateJSON(PASTAUser[])} for
-	 * all users in the given tutorial class. Return nothing if the tutorial class
-	 * doesn't exist.
-	 * 
-	 * @return the appropriate json file
+	 * Otherwise use
+	 * {@link GradeCentreController#writeJSON(Collection, HttpServletRequest, HttpServletResponse)}
+	 * for all users in the given tutorial class. Return nothing if the tutorial
+	 * class doesn't exist.
 	 */
 	@RequestMapping(value = "tutorial/{className}/DATA/")
-	public @ResponseBody String viewTutorialData(@PathVariable("className") String className) {
+	public void viewTutorialData(@PathVariable("className") String className, 
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
 		WebUtils.ensureAccess(UserPermissionLevel.TUTOR);
 
-		if (userManager.getUserListByTutorial(className) == null) {
-			return "";
+		Collection<PASTAUser> users = userManager.getUserListByTutorial(className);
+		if (users == null) {
+			return;
 		}
 
-		return generateJSON(userManager.getUserListByTutorial(className));
+		writeJSON(users, request, response);
 	}
 
 	/**
@@ -235,21 +240,20 @@ public class GradeCentreController {
 	 * Serves up the JSON data container for the grade center for the user's
 	 * tutorial class. If the user has not authenticated or is not a tutor: return
 	 * nothing. Otherwise use
-	 * {@link GradeCentreController#generateJSON(PASTAUser[])} for all users in
-	 * the user's tutorial class.
-	 * 
-	 * @return the appropriate json file
+	 * {@link GradeCentreController#writeJSON(Collection, HttpServletRequest, HttpServletResponse)}
+	 * for all users in the user's tutorial class.
 	 */
 	@RequestMapping(value = "myTutorials/DATA/")
-	public @ResponseBody String viewMyTutorialData(@ModelAttribute("user") PASTAUser user) {
+	public void viewMyTutorialData(@ModelAttribute("user") PASTAUser user, 
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
 		WebUtils.ensureAccess(UserPermissionLevel.TUTOR);
 
 		Collection<PASTAUser> myUsers = userManager.getTutoredStudents(user);
-		return generateJSON(myUsers);
+		writeJSON(myUsers, request, response);
 	}
 
 	/**
-	 * Generate the JSON
+	 * Write the JSON to the response
 	 * <p>
 	 * format:
 	 * 
@@ -264,107 +268,77 @@ public class GradeCentreController {
 	 * 			"$assessmentId$": {
 	 * 				"mark": "######.###",
 	 * 				"percentage": "double",
+	 * 				"max": "double",
 	 * 				"assessmentid": "$assessmentId$"
 	 * 			},
 	 * 			...
-	 * 			"$assessmentId$": {
-	 * 				"mark": "######.###",
-	 * 				"percentage": "double",
-	 * 				"assessmentid": "$assessmentId$"
-	 * 			}
 	 * 		},
 	 * 		...
-	 * 		{
-	 * 			"name": "$username$",
-	 * 			"stream": "$stream$",
-	 * 			"class": "$class$",
-	 * 			"$assessmentId$": {
-	 * 				"mark": "######.###",
-	 * 				"percentage": "double",
-	 * 				"assessmentid": "$assessmentId$"
-	 * 			},
-	 * 			...
-	 * 			"$assessmentId$": {
-	 * 				"mark": "######.###",
-	 * 				"percentage": "double",
-	 * 				"assessmentid": "$assessmentId$"
-	 * 			}
-	 * 		}
 	 * 	]
 	 * }}
 	 * </pre>
 	 * 
 	 * If there is no submission, mark and percentage will be "". Percentage is
 	 * [1.0,0.0]. Mark is displayed to 3 decimal places.
+	 * <p>
+	 * Marks are read from the {@link GradeCentreManager} grade matrix and
+	 * streamed to the response (see {@link JSONResponse}). If the request's
+	 * <code>If-None-Match</code> header matches the slice's ETag, the response
+	 * is a 304 with no body.
 	 * 
 	 * @param allUsers the users for which to generate the JSON
-	 * @return the JSON string
+	 * @param request the request
+	 * @param response the response to write to
+	 * @throws IOException if the response cannot be written
 	 */
-	private String generateJSON(Collection<PASTAUser> allUsers) {
-		if (allUsers.isEmpty()) {
-			return "{\"data\": []}";
+	private void writeJSON(Collection<PASTAUser> allUsers, HttpServletRequest request, 
+			HttpServletResponse response) throws IOException {
+		GradeCentreManager.Slice slice = gradeCentreManager.getSlice(allUsers, assessmentManager.getAssessmentList());
+		// Let the browser cache the data, but always check it is up to date
+		response.setHeader("Cache-Control", "private, no-cache");
+		if (JSONResponse.checkNotModified(request, response, slice.getETag())) {
+			return;
 		}
 
-		List<PASTAUser> usersList = new ArrayList<>(allUsers);
-
+		List<PASTAUser> usersList = slice.getUsers();
+		List<Assessment> allAssessments = slice.getAssessments();
 		DecimalFormat df = new DecimalFormat("#.###");
 
-		StringBuilder data = new StringBuilder("{\r\n  \"data\": [\r\n");
-
-		Map<PASTAUser, Map<Long, Double>> allResults = resultManager
-				.getLatestResultsIncludingGroupEvenQuicker(usersList);
-
-		Assessment[] allAssessments = assessmentManager.getAssessmentList().toArray(new Assessment[0]);
-		for (int i = 0; i < usersList.size(); ++i) {
-			PASTAUser user = usersList.get(i);
-
-			data.append("    {\r\n");
-
-			// name
-			data.append("      \"name\": \"" + user.getUsername() + "\",\r\n");
-			// stream
-			data.append("      \"stream\": \"" + user.getStream() + "\",\r\n");
-			// class
-			data.append("      \"class\": \"" + user.getFullTutorial() + "\"");
-
-			if (allAssessments.length > 0) {
-				data.append(",");
-			}
-			data.append("\r\n");
-
-			Map<Long, Double> userResults = allResults.get(user);
-			// marks
-			for (int j = 0; j < allAssessments.length; j++) {
-				// assessment mark
-				Assessment currAssessment = allAssessments[j];
-				data.append("      \"" + currAssessment.getId() + "\": {");
-				String mark = "";
-				String percentage = "";
-
-				Double latestResult = userResults == null ? null : userResults.get(currAssessment.getId());
-				if (latestResult != null) {
-					percentage = String.valueOf(latestResult);
-					mark = df.format(latestResult * currAssessment.getMarks());
+		try (JsonGenerator json = JSONResponse.open(request, response)) {
+			json.writeStartObject();
+			json.writeArrayFieldStart("data");
+			for (int i = 0; i < usersList.size(); ++i) {
+				PASTAUser user = usersList.get(i);
+
+				json.writeStartObject();
+				json.writeStringField("name", user.getUsername());
+				json.writeStringField("stream", String.valueOf(user.getStream()));
+				json.writeStringField("class", String.valueOf(user.getFullTutorial()));
+
+				// marks
+				for (int j = 0; j < allAssessments.size(); j++) {
+					Assessment currAssessment = allAssessments.get(j);
+					String mark = "";
+					String percentage = "";
+					if (slice.hasResult(i, j)) {
+						double latestResult = slice.getPercentage(i, j);
+						percentage = String.valueOf(latestResult);
+						mark = df.format(latestResult * currAssessment.getMarks());
+					}
+
+					json.writeObjectFieldStart(String.valueOf(currAssessment.getId()));
+					json.writeStringField("mark", mark);
+					json.writeStringField("percentage", percentage);
+					json.writeStringField("max", String.valueOf(currAssessment.getMarks()));
+					json.writeStringField("assessmentid", String.valueOf(currAssessment.getId()));
+					json.writeEndObject();
 				}
-				data.append("\"mark\": \"" + mark + "\",");
-				data.append("\"percentage\": \"" + percentage + "\",");
-				data.append("\"max\": \"" + currAssessment.getMarks() + "\",");
-				data.append("\"assessmentid\": \"" + currAssessment.getId() + "\"");
-				data.append("}");
-
-				if (j < allAssessments.length - 1) {
-					data.append(",");
-				}
-			}
 
-			data.append("}");
-			if (i < usersList.size() - 1) {
-				data.append(",");
+				json.writeEndObject();
 			}
-			data.append("\r\n");
+			json.writeEndArray();
+			json.writeEndObject();
 		}
-		data.append("  ]\r\n}");
-		return data.toString();
 	}
 
 	/**
@@ -24,15 +24,23 @@ SOFTWARE.
 
 package pasta.web.controller;
 
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import pasta.service.AssessmentManager;
 import pasta.service.reporting.AssessmentReportingManager;
 import pasta.service.reporting.UnitTestReportingManager;
+import pasta.web.JSONResponse;
 
 @Controller
 @RequestMapping("api/report/assessment/")
@@ -46,21 +54,28 @@ public class ReportAssessmentController {
 	private UnitTestReportingManager unitTestReportManager;
 	
 	@RequestMapping("all/")
-	@ResponseBody
-	public String getAll() {
-		return assessmentReportManager.getAllAssessments();
+	public void getAll(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		try(JsonGenerator json = JSONResponse.open(request, response)) {
+			assessmentReportManager.writeAllAssessments(json);
+		}
 	}
 	
 	@RequestMapping("{assessmentId}/")
-	@ResponseBody
-	public String getAssessment(@PathVariable("assessmentId") long assessmentId) {
-		return assessmentReportManager.getAssessment(assessmentManager.getAssessment(assessmentId));
+	public void getAssessment(@PathVariable("assessmentId") long assessmentId, 
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		try(JsonGenerator json = JSONResponse.open(request, response)) {
+			assessmentReportManager.writeAssessment(assessmentManager.getAssessment(assessmentId), json);
+		}
 	}
 	
 	@RequestMapping("{assessmentId}/marksSummary/")
-	@ResponseBody
-	public String getMarksSummary(@PathVariable("assessmentId") long assessmentId) {
-		return assessmentReportManager.getMarksSummary(assessmentManager.getAssessment(assessmentId));
+	public void getMarksSummary(@PathVariable("assessmentId") long assessmentId, 
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		try(JsonGenerator json = JSONResponse.open(request, response)) {
+			json.writeStartObject();
+			assessmentReportManager.writeMarksSummaryFields(assessmentManager.getAssessment(assessmentId), json);
+			json.writeEndObject();
+		}
 	}
 	
 	@RequestMapping("{assessmentId}/unitTests/")
@@ -70,8 +85,12 @@ public class ReportAssessmentController {
 	}
 	
 	@RequestMapping("{assessmentId}/ratings/")
-	@ResponseBody
-	public String getRatings(@PathVariable("assessmentId") long assessmentId) {
-		return assessmentReportManager.getAssessmentRatings(assessmentManager.getAssessment(assessmentId));
+	public void getRatings(@PathVariable("assessmentId") long assessmentId, 
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		try(JsonGenerator json = JSONResponse.open(request, response)) {
+			json.writeStartObject();
+			assessmentReportManager.writeAssessmentRatingsFields(assessmentManager.getAssessment(assessmentId), json);
+			json.writeEndObject();
+		}
 	}
 }
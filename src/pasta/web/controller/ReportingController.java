@@ -24,6 +24,7 @@ SOFTWARE.
 
 package pasta.web.controller;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -34,6 +35,7 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -47,10 +49,10 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import pasta.domain.UserPermissionLevel;
@@ -64,6 +66,7 @@ import pasta.service.UserManager;
 import pasta.service.reporting.AssessmentReportingManager;
 import pasta.service.reporting.UnitTestReportingManager;
 import pasta.util.PASTAUtil;
+import pasta.web.JSONResponse;
 import pasta.web.WebUtils;
 
 /**
@@ -156,163 +159,163 @@ public class ReportingController {
 	}
 	
 	@RequestMapping(value = "{reportId}/", method = RequestMethod.GET)
-	@ResponseBody
-	public String loadReport(@PathVariable("reportId") String reportId, @ModelAttribute("user") PASTAUser user, ModelMap model) {
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode node = mapper.createObjectNode();
-		node.put("reportId", reportId);
-		
-		Report report = reportingManager.getReport(reportId);
-		if(reportingManager.userCanViewReport(user, report)) {
-			Set<Assessment> allowedAssessments = reportingManager.getAssessmentsForReport(user, report);
-			Map<String, Set<Assessment>> allAssessmentsByCategory = assessmentManager.getAllAssessmentsByCategory(user.isTutor());
+	public void loadReport(@PathVariable("reportId") String reportId, @ModelAttribute("user") PASTAUser user, 
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		try(JsonGenerator json = JSONResponse.open(request, response)) {
+			json.writeStartObject();
+			json.writeStringField("reportId", reportId);
 			
-			TreeSet<String> categories = new TreeSet<String>(allAssessmentsByCategory.keySet());
-			for(String category : categories) {
-				Iterator<Assessment> it = allAssessmentsByCategory.get(category).iterator();
-				while(it.hasNext()) {
-					if(!allowedAssessments.contains(it.next())) {
-						it.remove();
+			Report report = reportingManager.getReport(reportId);
+			if(reportingManager.userCanViewReport(user, report)) {
+				Set<Assessment> allowedAssessments = reportingManager.getAssessmentsForReport(user, report);
+				Map<String, Set<Assessment>> allAssessmentsByCategory = assessmentManager.getAllAssessmentsByCategory(user.isTutor());
+				
+				TreeSet<String> categories = new TreeSet<String>(allAssessmentsByCategory.keySet());
+				for(String category : categories) {
+					Iterator<Assessment> it = allAssessmentsByCategory.get(category).iterator();
+					while(it.hasNext()) {
+						if(!allowedAssessments.contains(it.next())) {
+							it.remove();
+						}
+					}
+					if(allAssessmentsByCategory.get(category).isEmpty()) {
+						allAssessmentsByCategory.remove(category);
 					}
 				}
-				if(allAssessmentsByCategory.get(category).isEmpty()) {
-					allAssessmentsByCategory.remove(category);
-				}
-			}
-			
-			Map<Long, ObjectNode> seenNodes = new HashMap<>();
-			ArrayNode categoriesNode = mapper.createArrayNode();
-			for(String category : allAssessmentsByCategory.keySet()) {
-				ObjectNode categoryNode = mapper.createObjectNode();
-				categoryNode.put("category", category);
 				
-				ArrayNode assessmentsNode = mapper.createArrayNode();
-				for(Assessment assessment : allAssessmentsByCategory.get(category)) {
-					if(seenNodes.containsKey(assessment.getId())) {
-						assessmentsNode.add(seenNodes.get(assessment.getId()));
-					} else {
-						ObjectNode summaryNode = mapper.createObjectNode();
-						ObjectNode assessmentNode = assessmentReportManager.getAssessmentJSON(assessment);
-						summaryNode.set("assessment", assessmentNode);
-						seenNodes.put(assessment.getId(), summaryNode);
-						assessmentsNode.add(summaryNode);
+				json.writeArrayFieldStart("categories");
+				for(String category : allAssessmentsByCategory.keySet()) {
+					json.writeStartObject();
+					json.writeStringField("category", category);
+					
+					json.writeArrayFieldStart("assessments");
+					for(Assessment assessment : allAssessmentsByCategory.get(category)) {
+						json.writeStartObject();
+						json.writeFieldName("assessment");
+						assessmentReportManager.writeAssessment(assessment, json);
+						json.writeEndObject();
 					}
+					json.writeEndArray();
+					json.writeEndObject();
 				}
-				categoryNode.set("assessments", assessmentsNode);
-				categoriesNode.add(categoryNode);
-			}
-			
-			node.set("categories", categoriesNode);
-			
-			switch(reportId) {
-			case "mark-histograms": {
-				node.put("callback", "displayHistograms");
-				break;
-			}
-			case "unit-test-attempts": {
-				node.put("callback", "displayUnitTestAttempts");
-				break;
-			}
-			case "assessment-ratings": {
-				node.put("callback", "displayRatings");
-				break;
-			}
-			case "submissions-timeline": {
-				node.put("callback", "displaySubmissions");
-				break;
-			}
-			case "test-case-histograms": {
-				node.put("callback", "displayTestHistograms");
-				break;
-			}
-			case "test-case-difficulty": {
-				node.put("callback", "displayTestDifficulty");
-				break;
-			}
-			}
-		} else {
-			node.put("error", "You are not allowed to view this report.");
-		}
-		
-		return getJSONString(node);
-	}
-	
-	@RequestMapping(value = "user/{otherUser}/{reportId}/", method = RequestMethod.GET)
-	@ResponseBody
-	public String loadReportAsUser(@PathVariable("reportId") String reportId, 
-			@ModelAttribute("user") PASTAUser user, 
-			@PathVariable("otherUser") String otherUserName, 
-			ModelMap model) {
-		PASTAUser otherUser = userManager.getUser(otherUserName);
-		if(otherUser.isInstructor()) {
-			WebUtils.ensureAccess(UserPermissionLevel.INSTRUCTOR);
-		} else {
-			WebUtils.ensureAccess(UserPermissionLevel.TUTOR);
-		}
-		return loadReport(reportId, otherUser, model);
-	}
-	
-	@RequestMapping(value = "{reportId}/{assessmentId}/", method = RequestMethod.GET)
-	@ResponseBody
-	public String loadReportDetails(@PathVariable("reportId") String reportId, @PathVariable("assessmentId") long assessmentId, @ModelAttribute("user") PASTAUser user, ModelMap model) {
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode node = mapper.createObjectNode();
-		
-		Report report = reportingManager.getReport(reportId);
-		if(reportingManager.userCanViewReport(user, report)) {
-			Assessment assessment = assessmentManager.getAssessment(assessmentId);
-			if(assessment == null) {
-				node.put("error", "Assessment ID " + assessmentId + " does not exist");
-			} else {
+				json.writeEndArray();
+				
 				switch(reportId) {
 				case "mark-histograms": {
-					node = assessmentReportManager.getMarksSummaryJSON(assessment, user);
+					json.writeStringField("callback", "displayHistograms");
 					break;
 				}
 				case "unit-test-attempts": {
-					node = unitTestReportManager.getAllTestsSummaryJSON(assessment, user);
+					json.writeStringField("callback", "displayUnitTestAttempts");
 					break;
 				}
 				case "assessment-ratings": {
-					node = assessmentReportManager.getAssessmentRatingsJSON(assessment);
+					json.writeStringField("callback", "displayRatings");
 					break;
 				}
 				case "submissions-timeline": {
-					node = assessmentReportManager.getAssessmentSubmissionsJSON(assessment);
+					json.writeStringField("callback", "displaySubmissions");
 					break;
 				}
 				case "test-case-histograms": {
-					node = assessmentReportManager.getTestCaseCountsSummaryJSON(assessment, user);
+					json.writeStringField("callback", "displayTestHistograms");
 					break;
 				}
 				case "test-case-difficulty": {
-					node = assessmentReportManager.getTestCaseDifficultyJSON(assessment, user);
+					json.writeStringField("callback", "displayTestDifficulty");
 					break;
 				}
 				}
-				node.set("assessment", assessmentReportManager.getAssessmentJSON(assessment));
+			} else {
+				json.writeStringField("error", "You are not allowed to view this report.");
 			}
+			json.writeEndObject();
+		}
+	}
+	
+	@RequestMapping(value = "user/{otherUser}/{reportId}/", method = RequestMethod.GET)
+	public void loadReportAsUser(@PathVariable("reportId") String reportId, 
+			@ModelAttribute("user") PASTAUser user, 
+			@PathVariable("otherUser") String otherUserName, 
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		PASTAUser otherUser = userManager.getUser(otherUserName);
+		if(otherUser.isInstructor()) {
+			WebUtils.ensureAccess(UserPermissionLevel.INSTRUCTOR);
 		} else {
-			node.put("error", "You are not allowed to view this report.");
+			WebUtils.ensureAccess(UserPermissionLevel.TUTOR);
+		}
+		loadReport(reportId, otherUser, request, response);
+	}
+	
+	@RequestMapping(value = "{reportId}/{assessmentId}/", method = RequestMethod.GET)
+	public void loadReportDetails(@PathVariable("reportId") String reportId, @PathVariable("assessmentId") long assessmentId, 
+			@ModelAttribute("user") PASTAUser user, 
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		try(JsonGenerator json = JSONResponse.open(request, response)) {
+			json.writeStartObject();
+			
+			Report report = reportingManager.getReport(reportId);
+			if(reportingManager.userCanViewReport(user, report)) {
+				Assessment assessment = assessmentManager.getAssessment(assessmentId);
+				if(assessment == null) {
+					json.writeStringField("error", "Assessment ID " + assessmentId + " does not exist");
+				} else {
+					switch(reportId) {
+					case "mark-histograms": {
+						assessmentReportManager.writeMarksSummaryFields(assessment, user, json);
+						break;
+					}
+					case "unit-test-attempts": {
+						// Still built as a tree; copy its fields into the stream
+						Iterator<Map.Entry<String, JsonNode>> fields = unitTestReportManager
+								.getAllTestsSummaryJSON(assessment, user).fields();
+						while(fields.hasNext()) {
+							Map.Entry<String, JsonNode> field = fields.next();
+							json.writeFieldName(field.getKey());
+							json.writeTree(field.getValue());
+						}
+						break;
+					}
+					case "assessment-ratings": {
+						assessmentReportManager.writeAssessmentRatingsFields(assessment, json);
+						break;
+					}
+					case "submissions-timeline": {
+						assessmentReportManager.writeAssessmentSubmissionsFields(assessment, json);
+						break;
+					}
+					case "test-case-histograms": {
+						assessmentReportManager.writeTestCaseCountsSummaryFields(assessment, user, json);
+						break;
+					}
+					case "test-case-difficulty": {
+						assessmentReportManager.writeTestCaseDifficultyFields(assessment, user, json);
+						break;
+					}
+					}
+					json.writeFieldName("assessment");
+					assessmentReportManager.writeAssessment(assessment, json);
+				}
+			} else {
+				json.writeStringField("error", "You are not allowed to view this report.");
+			}
+			json.writeEndObject();
 		}
-		
-		return getJSONString(node);
 	}
 	
 	@RequestMapping(value = "user/{otherUser}/{reportId}/{assessmentId}/", method = RequestMethod.GET)
-	@ResponseBody
-	public String loadReportDetailsAsUser(@PathVariable("reportId") String reportId, 
+	public void loadReportDetailsAsUser(@PathVariable("reportId") String reportId, 
 			@PathVariable("assessmentId") long assessmentId, 
 			@ModelAttribute("user") PASTAUser user, 
 			@PathVariable("otherUser") String otherUserName, 
-			ModelMap model) {
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
 		PASTAUser otherUser = userManager.getUser(otherUserName);
 		if(otherUser.isInstructor()) {
 			WebUtils.ensureAccess(UserPermissionLevel.INSTRUCTOR);
 		} else {
 			WebUtils.ensureAccess(UserPermissionLevel.TUTOR);
 		}
-		return loadReportDetails(reportId, assessmentId, otherUser, model);
+		loadReportDetails(reportId, assessmentId, otherUser, request, response);
 	}
 	
 	@RequestMapping(value = "savePermissions/{reportId}/", method = RequestMethod.POST)
@@ -56,6 +56,7 @@ import pasta.domain.form.Submission;
 import pasta.domain.result.AssessmentResult;
 import pasta.domain.template.Assessment;
 import pasta.domain.user.PASTAUser;
+import pasta.scheduler.JobPriority;
 import pasta.service.AssessmentManager;
 import pasta.service.GroupManager;
 import pasta.service.PASTAOptions;
@@ -381,7 +382,7 @@ public class StudentController {
 
 		AssessmentResult result = resultManager.loadAssessmentResult(viewedUser, assessmentId,
 				assessmentDate);
-		manager.runAssessment(result.getUser(), assessmentId, assessmentDate, result);
+		manager.runAssessment(result.getUser(), assessmentId, assessmentDate, result, JobPriority.RERUN);
 		return "redirect:" + request.getHeader("Referer");
 	}
 
@@ -50,6 +50,7 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import pasta.domain.FileTreeNode;
@@ -60,6 +61,7 @@ import pasta.domain.form.TestUnitTestForm;
 import pasta.domain.form.UpdateUnitTestForm;
 import pasta.domain.form.validate.TestUnitTestFormValidator;
 import pasta.domain.form.validate.UpdateUnitTestFormValidator;
+import pasta.domain.result.UnitTestResult;
 import pasta.domain.template.UnitTest;
 import pasta.domain.user.PASTAUser;
 import pasta.service.UnitTestManager;
@@ -232,6 +234,40 @@ public class UnitTestController {
 
 	}
 	
+	/**
+	 * $PASTAUrl$/unitTest/{testId}/output/{part}/
+	 * <p>
+	 * Get one part of the output of the latest test run in full. The view page
+	 * only shows the start of long output, and loads the rest from here when 
+	 * asked to.
+	 * 
+	 * @param test the unit test
+	 * @param part one of filesCompiled, compileErrors, runtimeErrors or fullOutput
+	 * @param response the response, used to report an unknown part
+	 * @return the full text of that part of the output
+	 */
+	@RequestMapping(value = "{testId}/output/{part}/", produces = "text/plain;charset=UTF-8")
+	@ResponseBody
+	public String getTestOutput(@ModelAttribute("unitTest") UnitTest test,
+			@PathVariable("part") String part, HttpServletResponse response) throws IOException {
+		WebUtils.ensureAccess(UserPermissionLevel.TUTOR);
+		
+		UnitTestResult result = test.getTestResult();
+		String output = null;
+		if(result != null) {
+			switch(part) {
+			case "filesCompiled": output = result.getFilesCompiled(); break;
+			case "compileErrors": output = result.getCompileErrors(); break;
+			case "runtimeErrors": output = result.getRuntimeErrors(); break;
+			case "fullOutput": output = result.getFullOutput(); break;
+			}
+		}
+		if(output == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+		}
+		return output;
+	}
+	
 	/**
 	 * $PASTAUrl$/unitTest/{testId}/ - POST
 	 * <p>
@@ -0,0 +1,432 @@
+package pasta;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TimeZone;
+
+/**
+ * Runs all black box test cases for a Java submission in a single JVM,
+ * rather than starting a new JVM for every test case.
+ * <p>
+ * Each test case gets a fresh class loader (so static state is reset), its
+ * own standard in and standard out, and its own thread group so that it can
+ * be timed out. Calls to <code>System.exit</code> from a test case end only
+ * that test case. The output and meta files written match those of the
+ * one-JVM-per-case runner.
+ * <p>
+ * If a test case leaves behind threads that cannot be stopped, the harness
+ * exits straight away; any test case not marked as executed is then run
+ * one JVM at a time by the build file.
+ * <p>
+ * Usage: <code>PASTABlackBoxHarness solutionName casesFile inputDir
+ * outputDir metaDir</code>, where each line of the cases file is
+ * <code>name&lt;TAB&gt;timeoutSeconds&lt;TAB&gt;commandLine</code>.
+ */
+public class PASTABlackBoxHarness {
+
+	private static final int EXIT_TIMEOUT = 124;
+	private static final int EXIT_ABORTED = 3;
+	private static final long STOP_GRACE_MS = 1000;
+	private static final long POLL_MS = 50;
+
+	private static volatile ThreadGroup currentGroup;
+	private static volatile Integer exitStatus;
+
+	private final String solutionName;
+	private final File inputDir;
+	private final File outputDir;
+	private final File metaDir;
+
+	private PASTABlackBoxHarness(String solutionName, File inputDir, File outputDir, File metaDir) {
+		this.solutionName = solutionName;
+		this.inputDir = inputDir;
+		this.outputDir = outputDir;
+		this.metaDir = metaDir;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 5) {
+			System.out.println("Usage: PASTABlackBoxHarness solutionName casesFile inputDir outputDir metaDir");
+			System.exit(1);
+		}
+		PASTABlackBoxHarness harness = new PASTABlackBoxHarness(args[0],
+				new File(args[2]), new File(args[3]), new File(args[4]));
+		List<String[]> cases = readCases(new File(args[1]));
+
+		System.setSecurityManager(new ExitTrap());
+		for(String[] testCase : cases) {
+			if(!harness.runCase(testCase[0], Double.parseDouble(testCase[1]), testCase[2])) {
+				System.out.println("Test case " + testCase[0] + " could not be stopped; leaving remaining cases.");
+				System.exit(EXIT_ABORTED);
+			}
+		}
+		System.exit(0);
+	}
+
+	private static List<String[]> readCases(File file) throws IOException {
+		List<String[]> cases = new ArrayList<String[]>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while((line = in.readLine()) != null) {
+				line = line.trim();
+				if(line.isEmpty()) {
+					continue;
+				}
+				String[] parts = line.split("\t", 3);
+				cases.add(new String[] {parts[0], parts[1], parts.length > 2 ? parts[2] : ""});
+			}
+		} finally {
+			in.close();
+		}
+		return cases;
+	}
+
+	/**
+	 * @return false if the test case could not be cleaned up, in which case
+	 * no more test cases should be run in this JVM
+	 */
+	private boolean runCase(String name, double timeoutSeconds, String commandLine) throws IOException {
+		final String[] caseArgs = splitCommandLine(commandLine);
+		File inputFile = new File(inputDir, name);
+		InputStream stdin = inputFile.isFile() ? new FileInputStream(inputFile) : new ByteArrayInputStream(new byte[0]);
+		PrintStream stdout = new PrintStream(new BufferedOutputStream(new FileOutputStream(new File(outputDir, name))));
+		final PrintStream stderr = System.err;
+
+		InputStream oldIn = System.in;
+		PrintStream oldOut = System.out;
+		Properties oldProperties = (Properties) System.getProperties().clone();
+		Locale oldLocale = Locale.getDefault();
+		TimeZone oldTimeZone = TimeZone.getDefault();
+
+		final URLClassLoader loader = new URLClassLoader(new URL[] {new File(".").toURI().toURL()},
+				ClassLoader.getSystemClassLoader().getParent());
+		ThreadGroup group = new ThreadGroup("pasta-case-" + name);
+		final int[] mainStatus = {0};
+		Thread main = new Thread(group, new Runnable() {
+			@Override
+			public void run() {
+				mainStatus[0] = invokeMain(loader, caseArgs, stderr);
+			}
+		}, "main");
+		main.setContextClassLoader(loader);
+
+		System.setIn(stdin);
+		System.setOut(stdout);
+		exitStatus = null;
+		currentGroup = group;
+		long cpuStart = getProcessCpuTime();
+		long start = System.nanoTime();
+		long deadline = start + (long) (timeoutSeconds * 1e9);
+
+		main.start();
+		// Like the JVM, also wait for any other non-daemon threads the program started
+		while(exitStatus == null && System.nanoTime() < deadline) {
+			Thread live = main.isAlive() ? main : findLiveThread(group, false);
+			if(live == null) {
+				break;
+			}
+			joinUntil(live, Math.min(deadline, System.nanoTime() + POLL_MS * 1000000));
+		}
+		boolean timedOut = exitStatus == null && (main.isAlive() || findLiveThread(group, false) != null);
+		long elapsed = System.nanoTime() - start;
+		long cpu = getProcessCpuTime() - cpuStart;
+
+		boolean stopped = stopAll(group);
+		currentGroup = null;
+
+		stdout.flush();
+		System.setIn(oldIn);
+		System.setOut(oldOut);
+		System.setProperties(oldProperties);
+		Locale.setDefault(oldLocale);
+		TimeZone.setDefault(oldTimeZone);
+		stdout.close();
+		stdin.close();
+		try {
+			loader.close();
+		} catch(IOException e) {}
+
+		int status = timedOut ? EXIT_TIMEOUT : exitStatus != null ? exitStatus : mainStatus[0];
+		writeMeta(name, elapsed, cpu, status);
+		if(timedOut) {
+			new File(metaDir, name + ".timedout").createNewFile();
+		}
+		new File(metaDir, name + ".executed").createNewFile();
+		return stopped;
+	}
+
+	/**
+	 * Run the solution's main method as the <code>java</code> launcher would,
+	 * reporting errors to standard error in the same format.
+	 *
+	 * @return the exit status the JVM would have had
+	 */
+	private int invokeMain(ClassLoader loader, String[] args, PrintStream stderr) {
+		Method mainMethod;
+		try {
+			Class<?> mainClass = Class.forName(solutionName, false, loader);
+			mainMethod = mainClass.getMethod("main", String[].class);
+			if(!Modifier.isStatic(mainMethod.getModifiers()) || mainMethod.getReturnType() != void.class) {
+				throw new NoSuchMethodException();
+			}
+			Class.forName(solutionName, true, loader);
+		} catch(ClassNotFoundException | NoClassDefFoundError e) {
+			stderr.println("Error: Could not find or load main class " + solutionName);
+			return 1;
+		} catch(NoSuchMethodException e) {
+			stderr.println("Error: Main method not found in class " + solutionName + ", please define the main method as:");
+			stderr.println("   public static void main(String[] args)");
+			stderr.println("or a JavaFX application class must extend javafx.application.Application");
+			return 1;
+		} catch(Throwable e) {
+			return uncaught(e, stderr);
+		}
+		try {
+			mainMethod.setAccessible(true);
+			mainMethod.invoke(null, (Object) args);
+			return 0;
+		} catch(InvocationTargetException e) {
+			return uncaught(e.getCause(), stderr);
+		} catch(Throwable e) {
+			return uncaught(e, stderr);
+		}
+	}
+
+	private int uncaught(Throwable e, PrintStream stderr) {
+		if(e instanceof ExitException) {
+			return ((ExitException) e).status;
+		}
+		if(e instanceof ThreadDeath) {
+			return EXIT_TIMEOUT;
+		}
+		trimHarnessFrames(e);
+		stderr.print("Exception in thread \"main\" ");
+		e.printStackTrace(stderr);
+		return 1;
+	}
+
+	/**
+	 * Remove the reflection and harness frames below the solution's main
+	 * method, so stack traces look as they would from the launcher.
+	 */
+	private static void trimHarnessFrames(Throwable e) {
+		StackTraceElement[] trace = e.getStackTrace();
+		int end = trace.length;
+		while(end > 0) {
+			String className = trace[end - 1].getClassName();
+			if(className.startsWith(PASTABlackBoxHarness.class.getName()) || className.startsWith("java.lang.Thread")
+					|| className.startsWith("sun.reflect.") || className.startsWith("java.lang.reflect.")
+					|| className.startsWith("jdk.internal.reflect.")) {
+				end--;
+			} else {
+				break;
+			}
+		}
+		if(end > 0 && end < trace.length) {
+			StackTraceElement[] trimmed = new StackTraceElement[end];
+			System.arraycopy(trace, 0, trimmed, 0, end);
+			e.setStackTrace(trimmed);
+		}
+	}
+
+	private static void joinUntil(Thread thread, long deadline) {
+		long remaining = deadline - System.nanoTime();
+		while(thread.isAlive() && remaining > 0) {
+			try {
+				thread.join(Math.max(1, remaining / 1000000));
+			} catch(InterruptedException e) {}
+			remaining = deadline - System.nanoTime();
+		}
+	}
+
+	private static Thread findLiveThread(ThreadGroup group, boolean includeDaemon) {
+		Thread[] threads = new Thread[group.activeCount() + 8];
+		int count = group.enumerate(threads, true);
+		for(int i = 0; i < count; i++) {
+			if(threads[i].isAlive() && (includeDaemon || !threads[i].isDaemon())) {
+				return threads[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stop every thread left in the test case's thread group.
+	 *
+	 * @return true if they all stopped
+	 */
+	@SuppressWarnings("deprecation")
+	private static boolean stopAll(ThreadGroup group) {
+		if(findLiveThread(group, true) == null) {
+			return true;
+		}
+		try {
+			group.stop();
+		} catch(UnsupportedOperationException | SecurityException e) {
+			return false;
+		}
+		long deadline = System.nanoTime() + STOP_GRACE_MS * 1000000;
+		Thread live;
+		while((live = findLiveThread(group, true)) != null && System.nanoTime() < deadline) {
+			joinUntil(live, deadline);
+		}
+		return live == null;
+	}
+
+	/**
+	 * Write the same format as <code>time -f "real %e\nuser %U\nsys %S\nmemory
+	 * %M\nexit %x"</code>. CPU time is for the whole JVM and is all reported
+	 * as user time; memory is the JVM's peak resident set size.
+	 */
+	private void writeMeta(String name, long elapsedNanos, long cpuNanos, int status) throws IOException {
+		PrintWriter out = new PrintWriter(new FileOutputStream(new File(metaDir, name)));
+		try {
+			if(status != 0) {
+				out.print("Command exited with non-zero status " + status + "\n");
+			}
+			out.print(String.format(Locale.ROOT, "real %.2f\n", elapsedNanos / 1e9));
+			out.print(String.format(Locale.ROOT, "user %.2f\n", Math.max(0, cpuNanos) / 1e9));
+			out.print("sys 0.00\n");
+			out.print("memory " + getPeakMemoryKB() + "\n");
+			out.print("exit " + status + "\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	private static long getProcessCpuTime() {
+		java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if(os instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+		}
+		return 0;
+	}
+
+	private static long getPeakMemoryKB() {
+		try {
+			BufferedReader in = new BufferedReader(new FileReader("/proc/self/status"));
+			try {
+				String line;
+				while((line = in.readLine()) != null) {
+					if(line.startsWith("VmHWM:")) {
+						return Long.parseLong(line.replaceAll("[^0-9]", ""));
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch(IOException | NumberFormatException e) {}
+		return 0;
+	}
+
+	/**
+	 * Split a command line the same way as Ant's <code>&lt;arg line="..."/&gt;</code>:
+	 * on spaces, except within single or double quotes.
+	 */
+	static String[] splitCommandLine(String line) {
+		List<String> args = new ArrayList<String>();
+		StringBuilder current = new StringBuilder();
+		char quote = 0;
+		boolean inArg = false;
+		for(int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if(quote != 0) {
+				if(c == quote) {
+					quote = 0;
+				} else {
+					current.append(c);
+				}
+			} else if(c == '\'' || c == '"') {
+				quote = c;
+				inArg = true;
+			} else if(c == ' ') {
+				if(inArg) {
+					args.add(current.toString());
+					current.setLength(0);
+					inArg = false;
+				}
+			} else {
+				current.append(c);
+				inArg = true;
+			}
+		}
+		if(inArg) {
+			args.add(current.toString());
+		}
+		return args.toArray(new String[args.size()]);
+	}
+
+	private static boolean inCurrentCase() {
+		ThreadGroup group = currentGroup;
+		if(group == null) {
+			return false;
+		}
+		for(ThreadGroup g = Thread.currentThread().getThreadGroup(); g != null; g = g.getParent()) {
+			if(g == group) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static class ExitException extends SecurityException {
+		private static final long serialVersionUID = 1L;
+		private final int status;
+
+		ExitException(int status) {
+			super("System.exit(" + status + ")");
+			this.status = status;
+		}
+	}
+
+	/**
+	 * Allows everything the program could do in its own JVM, but turns
+	 * <code>System.exit</code> from a test case into the end of that test case.
+	 * Replacing or removing the security manager is denied, as that would let
+	 * a test case exit the harness and take later test cases with it.
+	 */
+	private static class ExitTrap extends SecurityManager {
+		@Override
+		public void checkPermission(Permission perm) {
+			if(perm instanceof RuntimePermission && "setSecurityManager".equals(perm.getName())) {
+				throw new SecurityException("The security manager cannot be replaced");
+			}
+		}
+
+		@Override
+		public void checkPermission(Permission perm, Object context) {
+			checkPermission(perm);
+		}
+
+		@Override
+		public void checkExit(int status) {
+			if(inCurrentCase()) {
+				if(exitStatus == null) {
+					exitStatus = status;
+				}
+				throw new ExitException(status);
+			}
+		}
+	}
+}
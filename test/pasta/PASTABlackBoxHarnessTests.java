@@ -0,0 +1,217 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package pasta;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The harness is a template copied into submissions rather than part of the
+ * application, so it is compiled from <code>templates/</code> here and run in
+ * its own JVM, as the black box build file runs it.
+ */
+public class PASTABlackBoxHarnessTests {
+	
+	private static final File HARNESS_SOURCE = new File("templates/pasta/PASTABlackBoxHarness.java");
+	
+	private static final String SOLUTION = 
+			"public class Solution {\n" + 
+			"	static int runs = 0;\n" + 
+			"	public static void main(String[] args) {\n" + 
+			"		runs++;\n" + 
+			"		System.out.println(\"runs \" + runs);\n" + 
+			"		System.out.println(\"property \" + System.getProperty(\"solution.leak\"));\n" + 
+			"		System.setProperty(\"solution.leak\", \"set\");\n" + 
+			"		System.out.println(\"args \" + String.join(\"|\", args));\n" + 
+			"		if(args.length > 0 && args[0].equals(\"exit\")) {\n" + 
+			"			System.exit(Integer.parseInt(args[1]));\n" + 
+			"		}\n" + 
+			"		if(args.length > 0 && args[0].equals(\"replace\")) {\n" + 
+			"			try {\n" + 
+			"				System.setSecurityManager(null);\n" + 
+			"				System.out.println(\"replaced\");\n" + 
+			"			} catch(SecurityException e) {\n" + 
+			"				System.out.println(\"denied\");\n" + 
+			"			}\n" + 
+			"		}\n" + 
+			"	}\n" + 
+			"}\n";
+	
+	@ClassRule
+	public static TemporaryFolder harnessFolder = new TemporaryFolder();
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private static File harnessClasses;
+	private File outputDir;
+	private File metaDir;
+	
+	@BeforeClass
+	public static void compileHarness() throws Exception {
+		harnessClasses = harnessFolder.newFolder("harness");
+		compile(harnessClasses, HARNESS_SOURCE);
+	}
+	
+	private static void compile(File outputDir, File... sources) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assertNotNull("Tests must be run on a JDK", compiler);
+		List<String> args = new ArrayList<>(Arrays.asList("-nowarn", "-d", outputDir.getPath()));
+		for(File source : sources) {
+			args.add(source.getPath());
+		}
+		assertEquals(0, compiler.run(null, null, null, args.toArray(new String[args.size()])));
+	}
+	
+	private static String[] split(String line) throws Exception {
+		try(URLClassLoader loader = new URLClassLoader(new URL[] {harnessClasses.toURI().toURL()}, null)) {
+			Method split = loader.loadClass("pasta.PASTABlackBoxHarness").getDeclaredMethod("splitCommandLine", String.class);
+			split.setAccessible(true);
+			return (String[]) split.invoke(null, line);
+		}
+	}
+	
+	@Test
+	public void testSplitOnSpaces() throws Exception {
+		assertArrayEquals(new String[] {"a", "b", "c"}, split("a b c"));
+		assertArrayEquals(new String[] {"a", "b"}, split("  a   b  "));
+		assertArrayEquals(new String[0], split(""));
+		assertArrayEquals(new String[0], split("   "));
+	}
+	
+	@Test
+	public void testSplitKeepsQuotedSpaces() throws Exception {
+		assertArrayEquals(new String[] {"a", "b c", "d"}, split("a \"b c\" d"));
+		assertArrayEquals(new String[] {"a", "b c"}, split("a 'b c'"));
+		assertArrayEquals(new String[] {"it's", "say \"hi\""}, split("\"it's\" 'say \"hi\"'"));
+	}
+	
+	@Test
+	public void testSplitJoinsQuotesWithinAnArgument() throws Exception {
+		assertArrayEquals(new String[] {"ab c", "d"}, split("a\"b c\" d"));
+		assertArrayEquals(new String[] {"", "x"}, split("\"\" x"));
+		assertArrayEquals(new String[] {"a b"}, split("\"a b"));
+	}
+	
+	@Test
+	public void testCasesDoNotShareStaticStateOrProperties() throws Exception {
+		runHarness("first\t10\t", "second\t10\tx \"y z\"");
+		
+		assertEquals("runs 1\nproperty null\nargs \n", output("first"));
+		assertEquals("runs 1\nproperty null\nargs x|y z\n", output("second"));
+		assertTrue(meta("first").contains("exit 0\n"));
+		assertTrue(meta("second").contains("exit 0\n"));
+	}
+	
+	@Test
+	public void testExitEndsOnlyItsCase() throws Exception {
+		runHarness("exits\t10\texit 7", "after\t10\t");
+		
+		assertTrue(meta("exits").startsWith("Command exited with non-zero status 7\n"));
+		assertTrue(meta("exits").contains("exit 7\n"));
+		assertEquals("runs 1\nproperty null\nargs \n", output("after"));
+		assertTrue(new File(metaDir, "after.executed").isFile());
+	}
+	
+	@Test
+	public void testSecurityManagerCannotBeReplaced() throws Exception {
+		runHarness("replace\t10\treplace", "exits\t10\texit 5", "after\t10\t");
+		
+		assertEquals("runs 1\nproperty null\nargs replace\ndenied\n", output("replace"));
+		// System.exit is still trapped, so the later case runs
+		assertTrue(meta("exits").contains("exit 5\n"));
+		assertTrue(new File(metaDir, "after.executed").isFile());
+	}
+	
+	/**
+	 * Compile the solution and run the harness over the given cases.
+	 */
+	private void runHarness(String... cases) throws Exception {
+		File bin = folder.newFolder("bin");
+		File source = new File(folder.newFolder("src"), "Solution.java");
+		write(source, SOLUTION);
+		compile(bin, source);
+		
+		File casesFile = folder.newFile("cases");
+		write(casesFile, String.join("\n", cases) + "\n");
+		File inputDir = folder.newFolder("in");
+		outputDir = folder.newFolder("out");
+		metaDir = folder.newFolder("meta");
+		
+		List<String> command = new ArrayList<>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		if(!System.getProperty("java.specification.version").startsWith("1.")) {
+			// Newer JVMs only allow a security manager to be set if asked
+			command.add("-Djava.security.manager=allow");
+		}
+		command.addAll(Arrays.asList("-cp", harnessClasses.getPath(), "pasta.PASTABlackBoxHarness", "Solution", 
+				casesFile.getPath(), inputDir.getPath(), outputDir.getPath(), metaDir.getPath()));
+		Process process = new ProcessBuilder(command)
+				.directory(bin)
+				.redirectErrorStream(true)
+				.redirectOutput(folder.newFile("harness.log"))
+				.start();
+		assertTrue("Harness did not finish", process.waitFor(60, TimeUnit.SECONDS));
+		assertEquals(read(new File(folder.getRoot(), "harness.log")), 0, process.exitValue());
+	}
+	
+	private String output(String name) throws IOException {
+		return read(new File(outputDir, name));
+	}
+	
+	private String meta(String name) throws IOException {
+		return read(new File(metaDir, name));
+	}
+	
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+	
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
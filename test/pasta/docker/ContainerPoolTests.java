@@ -0,0 +1,295 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.docker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ContainerPoolTests {
+	
+	private static class StubOperations implements PooledContainerOperations {
+		final AtomicInteger created = new AtomicInteger();
+		final Set<PooledContainer> live = ConcurrentHashMap.newKeySet();
+		final Set<PooledContainer> removed = ConcurrentHashMap.newKeySet();
+		volatile boolean failCreate = false;
+		volatile boolean failReset = false;
+		volatile boolean healthy = true;
+		volatile CountDownLatch healthCheckStarted;
+		volatile CountDownLatch healthCheckBlock;
+		
+		@Override
+		public PooledContainer create(Language language, String name) {
+			if(failCreate) {
+				return null;
+			}
+			created.incrementAndGet();
+			PooledContainer container = new PooledContainer(name, new File(name));
+			container.setId(name);
+			live.add(container);
+			return container;
+		}
+		@Override
+		public boolean reset(PooledContainer container) {
+			return !failReset;
+		}
+		@Override
+		public boolean isHealthy(PooledContainer container) {
+			CountDownLatch started = healthCheckStarted;
+			CountDownLatch block = healthCheckBlock;
+			if(started != null) {
+				started.countDown();
+			}
+			if(block != null) {
+				try {
+					block.await(5, TimeUnit.SECONDS);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return healthy;
+		}
+		@Override
+		public void remove(PooledContainer container) {
+			assertTrue("Container removed twice: " + container, removed.add(container));
+			live.remove(container);
+		}
+	}
+	
+	private StubOperations operations = new StubOperations();
+	
+	private ContainerPool createPool(int minSize, int maxSize, int maxUses) {
+		return new ContainerPool(new Language(), minSize, maxSize, 0, maxUses, operations);
+	}
+	
+	@Test
+	public void testLeaseUntilExhausted() {
+		ContainerPool pool = createPool(0, 2, 0);
+		PooledContainer first = pool.lease();
+		PooledContainer second = pool.lease();
+		assertNotNull(first);
+		assertNotNull(second);
+		assertNull(pool.lease());
+		assertEquals(2, pool.getSize());
+		assertEquals(2, operations.created.get());
+		
+		pool.release(first);
+		assertEquals(1, pool.getIdleCount());
+		assertSame(first, pool.lease());
+		assertEquals(2, first.getUses());
+		assertEquals(2, operations.created.get());
+	}
+	
+	@Test
+	public void testCreateFailure() {
+		ContainerPool pool = createPool(0, 1, 0);
+		operations.failCreate = true;
+		assertNull(pool.lease());
+		assertEquals(0, pool.getSize());
+		
+		// The failed attempt must not use up the pool's only slot
+		operations.failCreate = false;
+		assertNotNull(pool.lease());
+		assertEquals(1, pool.getSize());
+	}
+	
+	@Test
+	public void testCreateFailureWhileMaintaining() {
+		ContainerPool pool = createPool(2, 2, 0);
+		operations.failCreate = true;
+		pool.maintain();
+		assertEquals(0, pool.getSize());
+		operations.failCreate = false;
+		pool.maintain();
+		assertEquals(2, pool.getSize());
+		assertEquals(2, pool.getIdleCount());
+	}
+	
+	@Test
+	public void testFailedResetDiscardsContainer() {
+		ContainerPool pool = createPool(0, 1, 0);
+		PooledContainer container = pool.lease();
+		operations.failReset = true;
+		pool.release(container);
+		assertTrue(operations.removed.contains(container));
+		assertEquals(0, pool.getSize());
+		assertEquals(0, pool.getIdleCount());
+		
+		operations.failReset = false;
+		PooledContainer replacement = pool.lease();
+		assertNotNull(replacement);
+		assertFalse(replacement == container);
+	}
+	
+	@Test
+	public void testMaxUsesRecyclesContainer() {
+		ContainerPool pool = createPool(0, 1, 2);
+		PooledContainer container = pool.lease();
+		pool.release(container);
+		assertSame(container, pool.lease());
+		pool.release(container);
+		assertTrue(operations.removed.contains(container));
+		assertEquals(0, pool.getSize());
+	}
+	
+	@Test
+	public void testUnhealthyContainersReplaced() {
+		ContainerPool pool = createPool(1, 1, 0);
+		pool.maintain();
+		PooledContainer first = pool.lease();
+		pool.release(first);
+		operations.healthy = false;
+		pool.maintain();
+		assertTrue(operations.removed.contains(first));
+		assertEquals(1, pool.getSize());
+		assertEquals(1, pool.getIdleCount());
+	}
+	
+	@Test
+	public void testLoweringMaxSizeTrimsPool() {
+		ContainerPool pool = createPool(0, 3, 0);
+		List<PooledContainer> leased = new ArrayList<>();
+		for(int i = 0; i < 3; i++) {
+			leased.add(pool.lease());
+		}
+		pool.release(leased.get(0));
+		assertEquals(1, pool.getIdleCount());
+		
+		pool.configure(0, 1, 0, 0);
+		assertTrue(operations.removed.contains(leased.get(0)));
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(2, pool.getSize());
+		
+		// Still over the maximum, so this one is removed on release
+		pool.release(leased.get(1));
+		assertTrue(operations.removed.contains(leased.get(1)));
+		assertEquals(1, pool.getSize());
+		
+		// ... but this one fits
+		pool.release(leased.get(2));
+		assertFalse(operations.removed.contains(leased.get(2)));
+		assertEquals(1, pool.getSize());
+		assertEquals(1, pool.getIdleCount());
+		assertSame(leased.get(2), pool.lease());
+		assertNull(pool.lease());
+	}
+	
+	@Test
+	public void testReleaseDuringMaintain() throws Exception {
+		ContainerPool pool = createPool(0, 2, 0);
+		PooledContainer idle = pool.lease();
+		PooledContainer leased = pool.lease();
+		pool.release(idle);
+		
+		operations.healthCheckStarted = new CountDownLatch(1);
+		operations.healthCheckBlock = new CountDownLatch(1);
+		Thread maintainer = new Thread(pool::maintain);
+		maintainer.start();
+		assertTrue(operations.healthCheckStarted.await(5, TimeUnit.SECONDS));
+		
+		// The idle container is out of the pool being checked
+		pool.release(leased);
+		assertEquals(2, pool.getSize());
+		
+		operations.healthCheckBlock.countDown();
+		maintainer.join(5000);
+		assertFalse(maintainer.isAlive());
+		assertEquals(2, pool.getSize());
+		assertEquals(2, pool.getIdleCount());
+		assertTrue(operations.removed.isEmpty());
+	}
+	
+	@Test
+	public void testConcurrentLeaseReleaseAndMaintain() throws Exception {
+		final ContainerPool pool = createPool(1, 3, 5);
+		final AtomicInteger leases = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+		for(int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				for(int i = 0; i < 500; i++) {
+					PooledContainer container = pool.lease();
+					if(container != null) {
+						leases.incrementAndGet();
+						pool.release(container);
+					}
+				}
+			}));
+		}
+		threads.add(new Thread(() -> {
+			for(int i = 0; i < 200; i++) {
+				pool.maintain();
+			}
+		}));
+		for(Thread thread : threads) {
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join(30000);
+			assertFalse(thread.isAlive());
+		}
+		
+		assertTrue(leases.get() > 0);
+		assertEquals(operations.live.size(), pool.getSize());
+		assertEquals(pool.getSize(), pool.getIdleCount());
+		assertEquals(operations.created.get(), operations.live.size() + operations.removed.size());
+		assertTrue(pool.getSize() <= 3);
+	}
+	
+	@Test
+	public void testShutdownWhileLeased() {
+		ContainerPool pool = createPool(0, 3, 0);
+		PooledContainer leased = pool.lease();
+		PooledContainer idle = pool.lease();
+		pool.release(idle);
+		
+		pool.shutdown();
+		assertTrue(operations.removed.contains(idle));
+		assertFalse(operations.removed.contains(leased));
+		assertEquals(1, pool.getSize());
+		assertNull(pool.lease());
+		
+		pool.release(leased);
+		assertTrue(operations.removed.contains(leased));
+		assertEquals(0, pool.getSize());
+		assertTrue(operations.live.isEmpty());
+		
+		pool.maintain();
+		assertEquals(0, operations.created.get() - 2);
+	}
+}
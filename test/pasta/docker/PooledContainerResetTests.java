@@ -0,0 +1,130 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.docker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs {@link DockerManager#POOL_RESET_SCRIPT} in a real container, set up 
+ * like the execution images, to check that nothing the sandbox user writes 
+ * survives into the next lease.
+ * <p>
+ * Needs the <code>docker</code> command and the image named by the 
+ * <code>pasta.test.docker.image</code> system property (default 
+ * <code>openjdk:8-jdk</code>, the base of the execution images); skipped 
+ * otherwise.
+ */
+public class PooledContainerResetTests {
+	
+	private static final String[] PLANTED = {
+			DockerManager.WORK_DIR + "/leak", "/tmp/leak", "/var/tmp/leak", "/dev/shm/leak", 
+			"/home/pastasandbox/.leak", DockerManager.PASTA_OUT + "/leak", "/var/tmp/dir/nested/leak"
+	};
+	
+	private String containerId;
+	
+	@Before
+	public void startContainer() throws Exception {
+		String image = System.getProperty("pasta.test.docker.image", "openjdk:8-jdk");
+		Result started;
+		try {
+			started = run("docker", "run", "-d", "--rm", image, "sleep", "600");
+		} catch(IOException e) {
+			started = null;
+		}
+		assumeTrue("Docker is not available", started != null && started.exitCode == 0);
+		containerId = started.output.trim();
+		
+		// As in the execution images, with a home directory as for MATLAB
+		assertEquals(0, exec("useradd -c 'PASTA Sandbox User' -m -b /home/ -s /bin/bash -u 1001 pastasandbox && " +
+				"mkdir -p " + DockerManager.WORK_DIR + " " + DockerManager.PASTA_SRC + " " + DockerManager.PASTA_OUT + " && " +
+				"chmod 777 " + DockerManager.WORK_DIR + " " + DockerManager.PASTA_OUT).exitCode);
+	}
+	
+	@After
+	public void removeContainer() throws Exception {
+		if(containerId != null) {
+			run("docker", "rm", "-f", containerId);
+		}
+	}
+	
+	@Test
+	public void testResetRemovesSandboxFiles() throws Exception {
+		StringBuilder plant = new StringBuilder("mkdir -p /var/tmp/dir/nested");
+		for(String file : PLANTED) {
+			plant.append(" && echo secret > ").append(file);
+		}
+		plant.append(" && (nohup sleep 600 > /dev/null 2>&1 &)");
+		assertEquals(0, exec("su -s /bin/sh pastasandbox -c '" + plant + "'").exitCode);
+		for(String file : PLANTED) {
+			assertEquals(file, 0, exec("test -e " + file).exitCode);
+		}
+		
+		Result reset = exec(DockerManager.POOL_RESET_SCRIPT);
+		assertTrue(reset.output, reset.output.trim().endsWith("ok"));
+		
+		// What the next lease would see
+		for(String file : PLANTED) {
+			assertEquals(file + " survived the reset", 1, exec("test -e " + file).exitCode);
+		}
+		assertEquals("Sandbox processes survived the reset", 1, exec("pgrep -u pastasandbox").exitCode);
+		assertEquals(0, exec("test -d /home/pastasandbox").exitCode);
+		assertEquals(0, exec("test -d /var/tmp && test -d /dev/shm").exitCode);
+	}
+	
+	private Result exec(String script) throws Exception {
+		return run("docker", "exec", containerId, "sh", "-c", script);
+	}
+	
+	private static Result run(String... command) throws IOException, InterruptedException {
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+		if(!process.waitFor(5, TimeUnit.MINUTES)) {
+			process.destroyForcibly();
+			throw new IOException("Timed out running " + String.join(" ", command));
+		}
+		return new Result(process.exitValue(), output);
+	}
+	
+	private static class Result {
+		final int exitCode;
+		final String output;
+		Result(int exitCode, String output) {
+			this.exitCode = exitCode;
+			this.output = output;
+		}
+	}
+}
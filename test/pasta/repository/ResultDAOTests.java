@@ -0,0 +1,184 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package pasta.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Cache;
+import org.hibernate.Query;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import pasta.domain.result.AssessmentResult;
+import pasta.domain.result.UnitTestCaseResult;
+import pasta.domain.result.UnitTestResult;
+
+/**
+ * Checks the statements and evictions of the bulk unit test result delete
+ * against a recording session, as there is no database in the unit tests.
+ */
+public class ResultDAOTests {
+	
+	private static final long RESULT_ID = 42L;
+	
+	private final List<String> calls = new ArrayList<>();
+	private final AssessmentResult loaded = new AssessmentResult();
+	private ResultDAO dao;
+	
+	@Before
+	public void setUp() {
+		Cache cache = recorder(Cache.class, "cache", null);
+		Session session = recorder(Session.class, "session", (proxy, method, args) -> {
+			switch(method.getName()) {
+			case "createSQLQuery":
+				return recorder(SQLQuery.class, "query", null);
+			case "createQuery":
+				return recorder(Query.class, "query", null);
+			case "load":
+				assertSame(AssessmentResult.class, args[0]);
+				assertEquals(RESULT_ID, args[1]);
+				return loaded;
+			default:
+				return null;
+			}
+		});
+		dao = new ResultDAO();
+		dao.sessionFactory = recorder(SessionFactory.class, "sessionFactory", (proxy, method, args) -> {
+			switch(method.getName()) {
+			case "getCurrentSession":
+				return session;
+			case "getCache":
+				return cache;
+			default:
+				return null;
+			}
+		});
+	}
+	
+	@After
+	public void tearDown() {
+		if(TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+	
+	@Test
+	public void testFlushesBeforeDeletingAndEvictsLoadedResult() {
+		assertEquals(3, dao.deleteUnitTestResults(RESULT_ID));
+		
+		List<String> sessionCalls = callsTo("session.");
+		assertEquals(6, sessionCalls.size());
+		assertEquals("session.flush", sessionCalls.get(0));
+		assertTrue(sessionCalls.get(1).startsWith("session.createSQLQuery DELETE ve FROM unit_test_results_validation_errors"));
+		assertTrue(sessionCalls.get(2).startsWith("session.createQuery delete from UnitTestCaseResult"));
+		assertTrue(sessionCalls.get(3).startsWith("session.createQuery delete from UnitTestResult"));
+		assertTrue(sessionCalls.get(4).startsWith("session.load"));
+		assertEquals("session.evict " + System.identityHashCode(loaded), sessionCalls.get(5));
+		
+		assertEquals(3, callsTo("query.executeUpdate").size());
+		assertEquals(3, callsTo("query.setLong resultId " + RESULT_ID).size());
+	}
+	
+	@Test
+	public void testEvictsCachesWithoutTransaction() {
+		dao.deleteUnitTestResults(RESULT_ID);
+		assertCachesEvicted();
+	}
+	
+	@Test
+	public void testEvictsCachesOnlyAfterCommit() {
+		TransactionSynchronizationManager.initSynchronization();
+		dao.deleteUnitTestResults(RESULT_ID);
+		assertTrue(callsTo("cache.").isEmpty());
+		
+		for(TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			synchronization.afterCommit();
+		}
+		assertCachesEvicted();
+	}
+	
+	private void assertCachesEvicted() {
+		List<String> cacheCalls = callsTo("cache.");
+		assertTrue(cacheCalls.contains("cache.evictCollection " + AssessmentResult.class.getName() + ".unitTests " + RESULT_ID));
+		assertTrue(cacheCalls.contains("cache.evictEntityRegion " + UnitTestResult.class));
+		assertTrue(cacheCalls.contains("cache.evictEntityRegion " + UnitTestCaseResult.class));
+		assertTrue(cacheCalls.contains("cache.evictCollectionRegion " + UnitTestResult.class.getName() + ".testCases"));
+		assertTrue(cacheCalls.contains("cache.evictCollectionRegion " + UnitTestResult.class.getName() + ".validationErrors"));
+	}
+	
+	private List<String> callsTo(String prefix) {
+		List<String> matching = new ArrayList<>();
+		for(String call : calls) {
+			if(call.startsWith(prefix)) {
+				matching.add(call);
+			}
+		}
+		return matching;
+	}
+	
+	/**
+	 * Create an implementation of the given interface that records each call
+	 * as "<name>.<method> <args>". Queries return themselves from setters
+	 * and 3 from executeUpdate; anything else is left to <code>answer</code>.
+	 */
+	private <T> T recorder(final Class<T> type, final String name, final InvocationHandler answer) {
+		return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+			switch(method.getName()) {
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return name;
+			}
+			StringBuilder call = new StringBuilder(name).append('.').append(method.getName());
+			if(args != null) {
+				for(Object arg : args) {
+					call.append(' ').append(arg instanceof AssessmentResult ? System.identityHashCode(arg) : arg);
+				}
+			}
+			calls.add(call.toString());
+			if(method.getReturnType() != Object.class && method.getReturnType().isInstance(proxy)) {
+				return proxy;
+			}
+			if(method.getName().equals("executeUpdate")) {
+				return 3;
+			}
+			return answer == null ? null : answer.invoke(proxy, method, args);
+		}));
+	}
+}
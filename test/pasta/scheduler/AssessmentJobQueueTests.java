@@ -0,0 +1,276 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package pasta.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import pasta.domain.result.AssessmentResult;
+import pasta.domain.template.Assessment;
+import pasta.domain.user.PASTAUser;
+
+public class AssessmentJobQueueTests {
+	
+	/**
+	 * Uses a settable clock and fixed estimates rather than the wall clock 
+	 * and {@link ExecutionEstimator}.
+	 */
+	private static class TestQueue extends AssessmentJobQueue {
+		final Map<AssessmentJob, Long> estimates = new HashMap<>();
+		long time = 1000000;
+		
+		TestQueue(DispatchPolicy policy, double agingFactor) {
+			super(policy, agingFactor);
+		}
+		@Override
+		long estimate(AssessmentJob job) {
+			Long estimate = estimates.get(job);
+			return estimate == null ? 0 : estimate;
+		}
+		@Override
+		long now() {
+			return time;
+		}
+		
+		AssessmentJobExecutor.AssessmentJobTask add(String user, JobPriority priority, long estimate) {
+			return add(user, priority, null, estimate);
+		}
+		AssessmentJobExecutor.AssessmentJobTask add(String user, JobPriority priority, Date dueDate, long estimate) {
+			AssessmentJobExecutor.AssessmentJobTask task = task(user, priority, dueDate);
+			estimates.put(task.getJob(), estimate);
+			offer(task);
+			return task;
+		}
+	}
+	
+	private static long nextId = 1;
+	
+	private static AssessmentJobExecutor.AssessmentJobTask task(String username, JobPriority priority, Date dueDate) {
+		PASTAUser user = new PASTAUser();
+		user.setUsername(username);
+		Assessment assessment = new Assessment();
+		assessment.setDueDate(dueDate);
+		AssessmentResult result = new AssessmentResult();
+		result.setAssessment(assessment);
+		AssessmentJob job = new AssessmentJob(user, nextId, new Date(nextId), result, priority);
+		job.setId(nextId++);
+		return new AssessmentJobExecutor.AssessmentJobTask(job, null, new ConcurrentHashMap<>());
+	}
+	
+	private static List<Runnable> drain(AssessmentJobQueue queue) {
+		List<Runnable> tasks = new ArrayList<>();
+		Runnable task;
+		while((task = queue.poll()) != null) {
+			tasks.add(task);
+		}
+		return tasks;
+	}
+	
+	@Test
+	public void testPriorityClassesRunInOrder() throws Exception {
+		TestQueue queue = new TestQueue(DispatchPolicy.DUE_DATE, 1.0);
+		Runnable bulk = queue.add("a", JobPriority.BULK, 0);
+		Runnable rerun = queue.add("b", JobPriority.RERUN, 0);
+		Runnable interactive = queue.add("c", JobPriority.INTERACTIVE, 0);
+		
+		assertSame(interactive, queue.peek());
+		assertSame(interactive, queue.take());
+		assertSame(rerun, queue.poll());
+		assertSame(bulk, queue.poll(1, TimeUnit.MILLISECONDS));
+		assertNull(queue.poll());
+	}
+	
+	@Test
+	public void testEqualKeysRunInArrivalOrder() {
+		TestQueue queue = new TestQueue(DispatchPolicy.DUE_DATE, 1.0);
+		Runnable first = () -> {};
+		Runnable second = () -> {};
+		Runnable third = () -> {};
+		queue.offer(first);
+		queue.offer(second);
+		queue.offer(third);
+		
+		assertEquals(3, queue.size());
+		assertEquals(Arrays.asList(first, second, third), queue.getOrderedTasks());
+		assertEquals(Arrays.asList(first, second, third), drain(queue));
+	}
+	
+	@Test
+	public void testEarlierDueDateRunsFirst() {
+		TestQueue queue = new TestQueue(DispatchPolicy.DUE_DATE, 1.0);
+		Runnable noDueDate = queue.add("a", JobPriority.INTERACTIVE, null, 0);
+		Runnable late = queue.add("b", JobPriority.INTERACTIVE, new Date(2000), 0);
+		Runnable early = queue.add("c", JobPriority.INTERACTIVE, new Date(1000), 0);
+		
+		assertEquals(Arrays.asList(early, late, noDueDate), drain(queue));
+	}
+	
+	@Test
+	public void testTimedPollReturnsNullWhenEmpty() throws Exception {
+		TestQueue queue = new TestQueue(DispatchPolicy.DUE_DATE, 1.0);
+		assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+		assertNull(queue.peek());
+	}
+	
+	@Test
+	public void testTakeWaitsForOffer() throws Exception {
+		TestQueue queue = new TestQueue(DispatchPolicy.DUE_DATE, 1.0);
+		Runnable task = () -> {};
+		Thread producer = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch(InterruptedException e) {
+				return;
+			}
+			queue.offer(task);
+		});
+		producer.start();
+		assertSame(task, queue.take());
+		producer.join();
+	}
+	
+	@Test
+	public void testUsersShareEachRound() {
+		TestQueue queue = new TestQueue(DispatchPolicy.DUE_DATE, 1.0);
+		Runnable a1 = queue.add("a", JobPriority.INTERACTIVE, 0);
+		Runnable a2 = queue.add("a", JobPriority.INTERACTIVE, 0);
+		Runnable a3 = queue.add("a", JobPriority.INTERACTIVE, 0);
+		Runnable b1 = queue.add("b", JobPriority.INTERACTIVE, 0);
+		
+		// b queued after all of a's jobs but still gets the first round
+		assertEquals(Arrays.asList(a1, b1, a2, a3), drain(queue));
+	}
+	
+	@Test
+	public void testLateArrivalJoinsCurrentRound() {
+		TestQueue queue = new TestQueue(DispatchPolicy.DUE_DATE, 1.0);
+		Runnable a1 = queue.add("a", JobPriority.INTERACTIVE, 0);
+		Runnable a2 = queue.add("a", JobPriority.INTERACTIVE, 0);
+		Runnable a3 = queue.add("a", JobPriority.INTERACTIVE, 0);
+		assertSame(a1, queue.poll());
+		assertSame(a2, queue.poll());
+		
+		// Round 1 is now running, so b's job goes in round 1 rather than 0,
+		// which is still ahead of a's job in round 2
+		Runnable b1 = queue.add("b", JobPriority.INTERACTIVE, 0);
+		assertEquals(Arrays.asList(b1, a3), drain(queue));
+	}
+	
+	@Test
+	public void testRoundsAreKeptPerPriority() {
+		TestQueue queue = new TestQueue(DispatchPolicy.DUE_DATE, 1.0);
+		Runnable bulk1 = queue.add("a", JobPriority.BULK, 0);
+		Runnable bulk2 = queue.add("a", JobPriority.BULK, 0);
+		Runnable interactive = queue.add("a", JobPriority.INTERACTIVE, 0);
+		
+		assertEquals(Arrays.asList(interactive, bulk1, bulk2), drain(queue));
+	}
+	
+	@Test
+	public void testShortestFirst() {
+		TestQueue queue = new TestQueue(DispatchPolicy.SHORTEST_FIRST, 0);
+		Runnable slow = queue.add("a", JobPriority.INTERACTIVE, 5000);
+		Runnable fast = queue.add("b", JobPriority.INTERACTIVE, 100);
+		Runnable medium = queue.add("c", JobPriority.INTERACTIVE, 1000);
+		
+		assertSame(fast, queue.peek());
+		assertEquals(Arrays.asList(fast, medium, slow), queue.getOrderedTasks());
+		assertEquals(Arrays.asList(fast, medium, slow), drain(queue));
+	}
+	
+	@Test
+	public void testAgingLetsWaitingJobOvertakeShorterJob() {
+		TestQueue queue = new TestQueue(DispatchPolicy.SHORTEST_FIRST, 1.0);
+		Runnable slow = queue.add("a", JobPriority.INTERACTIVE, 5000);
+		queue.time += 4000;
+		Runnable fast = queue.add("b", JobPriority.INTERACTIVE, 2000);
+		
+		// slow: 5000 - 4000 = 1000 against fast: 2000 - 0
+		assertSame(slow, queue.peek());
+		assertEquals(Arrays.asList(slow, fast), drain(queue));
+	}
+	
+	@Test
+	public void testAgingTakesEffectWhileQueued() {
+		TestQueue queue = new TestQueue(DispatchPolicy.SHORTEST_FIRST, 1.0);
+		Runnable slow = queue.add("a", JobPriority.INTERACTIVE, 5000);
+		Runnable fast = queue.add("b", JobPriority.INTERACTIVE, 2000);
+		assertSame(fast, queue.peek());
+		
+		// Both age at the same rate, so waiting alone does not reorder them
+		queue.time += 10000;
+		assertSame(fast, queue.peek());
+		
+		Runnable newer = queue.add("c", JobPriority.INTERACTIVE, 1000);
+		assertEquals(Arrays.asList(fast, slow, newer), drain(queue));
+	}
+	
+	@Test
+	public void testAgingNeverCrossesPriorityClass() {
+		TestQueue queue = new TestQueue(DispatchPolicy.SHORTEST_FIRST, 1.0);
+		Runnable bulk = queue.add("a", JobPriority.BULK, 1);
+		queue.time += 1000000;
+		Runnable interactive = queue.add("b", JobPriority.INTERACTIVE, 500000);
+		
+		assertEquals(Arrays.asList(interactive, bulk), drain(queue));
+	}
+	
+	@Test
+	public void testAgingNeverCrossesRound() {
+		TestQueue queue = new TestQueue(DispatchPolicy.SHORTEST_FIRST, 1.0);
+		Runnable a1 = queue.add("a", JobPriority.INTERACTIVE, 1000);
+		Runnable a2 = queue.add("a", JobPriority.INTERACTIVE, 1000);
+		queue.time += 1000000;
+		Runnable b1 = queue.add("b", JobPriority.INTERACTIVE, 500000);
+		
+		// a2 has waited longer and is shorter, but is in round 1
+		assertEquals(Arrays.asList(a1, b1, a2), drain(queue));
+	}
+	
+	@Test
+	public void testDrainToAndRemove() {
+		TestQueue queue = new TestQueue(DispatchPolicy.DUE_DATE, 1.0);
+		Runnable a = queue.add("a", JobPriority.INTERACTIVE, 0);
+		Runnable b = queue.add("b", JobPriority.RERUN, 0);
+		Runnable c = queue.add("c", JobPriority.BULK, 0);
+		
+		assertEquals(true, queue.remove(b));
+		List<Runnable> drained = new ArrayList<>();
+		assertEquals(2, queue.drainTo(drained));
+		assertEquals(Arrays.asList(a, c), drained);
+		assertEquals(0, queue.size());
+	}
+}
@@ -0,0 +1,265 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package pasta.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import pasta.domain.result.AssessmentResult;
+import pasta.domain.user.PASTAUser;
+import pasta.service.ExecutionManager;
+import pasta.service.PASTAOptions;
+import pasta.service.ResultManager;
+
+/**
+ * Checks that new jobs reach the dispatcher only once their transaction has 
+ * committed, and that the dispatcher's claim is then made against the
+ * database, using a recording session in place of Hibernate.
+ */
+public class ExecutionSchedulerTests {
+	
+	private static final long JOB_ID = 42L;
+	private static final String NODE = "node-a";
+	
+	private static class RecordingDispatcher implements JobDispatcher {
+		final ExecutionScheduler scheduler;
+		final List<AssessmentJob> offered = new ArrayList<>();
+		final List<Boolean> claims = new ArrayList<>();
+		
+		RecordingDispatcher(ExecutionScheduler scheduler) {
+			this.scheduler = scheduler;
+		}
+		@Override
+		public boolean offer(AssessmentJob job) {
+			offered.add(job);
+			boolean claimed = scheduler.claim(job);
+			claims.add(claimed);
+			return claimed;
+		}
+		@Override
+		public boolean hasCapacity() {
+			return true;
+		}
+		@Override
+		public List<AssessmentJob> getJobQueue() {
+			return offered;
+		}
+	}
+	
+	private final List<String> statements = new ArrayList<>();
+	private final Map<String, Object> parameters = new HashMap<>();
+	private int updatedRows = 1;
+	private ExecutionScheduler scheduler;
+	private AssessmentResult result;
+	
+	@Before
+	public void setUp() throws Exception {
+		Constructor<PASTAOptions> optionsConstructor = PASTAOptions.class.getDeclaredConstructor();
+		optionsConstructor.setAccessible(true);
+		Properties properties = new Properties();
+		properties.setProperty("execution.node.id", NODE);
+		setField(PASTAOptions.class, optionsConstructor.newInstance(), "properties", properties);
+		
+		Query query = proxy(Query.class, (proxy, method, args) -> {
+			switch(method.getName()) {
+			case "setParameter":
+				parameters.put((String) args[0], args[1]);
+				return proxy;
+			case "executeUpdate":
+				return updatedRows;
+			default:
+				return null;
+			}
+		});
+		Session session = proxy(Session.class, (proxy, method, args) -> {
+			switch(method.getName()) {
+			case "save":
+				statements.add("save");
+				((Job) args[0]).setId(JOB_ID);
+				return JOB_ID;
+			case "createQuery":
+				statements.add((String) args[0]);
+				return query;
+			default:
+				return null;
+			}
+		});
+		
+		scheduler = new ExecutionScheduler();
+		setField(ExecutionScheduler.class, scheduler, "sessionFactory", proxy(SessionFactory.class, 
+				(proxy, method, args) -> method.getName().equals("getCurrentSession") ? session : null));
+		setField(ExecutionScheduler.class, scheduler, "resultManager", new ResultManager() {
+			@Override
+			public void update(AssessmentResult result) {
+				statements.add("update result");
+			}
+		});
+		result = new AssessmentResult();
+		
+		TransactionSynchronizationManager.initSynchronization();
+	}
+	
+	@After
+	public void tearDown() {
+		if(TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+	
+	@Test
+	public void testJobIsClaimedAfterCommit() {
+		RecordingDispatcher dispatcher = new RecordingDispatcher(scheduler);
+		scheduler.setDispatcher(dispatcher);
+		
+		scheduler.scheduleJob(user(), 10, result, new Date());
+		assertEquals(Arrays.asList("update result", "save"), statements);
+		assertTrue(result.isWaitingToRun());
+		assertTrue(dispatcher.offered.isEmpty());
+		
+		commit();
+		assertEquals(1, dispatcher.offered.size());
+		AssessmentJob job = dispatcher.offered.get(0);
+		assertEquals(Long.valueOf(JOB_ID), job.getId());
+		assertEquals(Collections.singletonList(true), dispatcher.claims);
+		assertEquals(3, statements.size());
+		assertTrue(statements.get(2).startsWith("update AssessmentJob set owner = :node"));
+		assertEquals(NODE, parameters.get("node"));
+		assertEquals(JOB_ID, parameters.get("id"));
+		assertEquals(NODE, job.getOwner());
+		assertSame(parameters.get("expiry"), job.getLeaseExpiry());
+	}
+	
+	@Test
+	public void testRolledBackJobIsNeverOffered() {
+		RecordingDispatcher dispatcher = new RecordingDispatcher(scheduler);
+		scheduler.setDispatcher(dispatcher);
+		
+		scheduler.scheduleJob(user(), 10, result, new Date());
+		for(TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+		}
+		assertTrue(dispatcher.offered.isEmpty());
+	}
+	
+	@Test
+	public void testJobAlreadyWaitingIsNotScheduledAgain() {
+		RecordingDispatcher dispatcher = new RecordingDispatcher(scheduler);
+		scheduler.setDispatcher(dispatcher);
+		result.setWaitingToRun(true);
+		
+		scheduler.scheduleJob(user(), 10, result, new Date());
+		commit();
+		assertTrue(statements.isEmpty());
+		assertTrue(dispatcher.offered.isEmpty());
+	}
+	
+	@Test
+	public void testJobWaitsInDatabaseWithoutDispatcher() {
+		scheduler.scheduleJob(user(), 10, result, new Date());
+		commit();
+		assertEquals(Arrays.asList("update result", "save"), statements);
+	}
+	
+	@Test
+	public void testExecutorRejectsJobClaimedByAnotherNode() throws Exception {
+		AssessmentJobExecutor executor = new AssessmentJobExecutor(1, 1);
+		try {
+			setField(AssessmentJobExecutor.class, executor, "scheduler", scheduler);
+			setField(AssessmentJobExecutor.class, executor, "executionManager", new ExecutionManager());
+			executor.registerWithScheduler();
+			updatedRows = 0;
+			
+			scheduler.scheduleJob(user(), 10, result, new Date());
+			commit();
+			
+			assertTrue(statements.get(statements.size() - 1).startsWith("update AssessmentJob set owner = :node"));
+			assertEquals(JOB_ID, parameters.get("id"));
+			assertTrue(executor.getHeldJobIds().isEmpty());
+			assertTrue(executor.getQueue().isEmpty());
+			assertEquals(0, executor.getActiveCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testQueueComesFromRegisteredDispatcher() {
+		RecordingDispatcher dispatcher = new RecordingDispatcher(scheduler);
+		scheduler.setDispatcher(dispatcher);
+		scheduler.scheduleJob(user(), 10, result, new Date());
+		commit();
+		
+		List<AssessmentJob> queue = scheduler.getAssessmentQueue();
+		assertSame(dispatcher.offered, queue);
+		assertFalse(queue.isEmpty());
+		assertEquals(NODE, queue.get(0).getOwner());
+	}
+	
+	private static void commit() {
+		for(TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			synchronization.afterCommit();
+		}
+	}
+	
+	private static PASTAUser user() {
+		PASTAUser user = new PASTAUser();
+		user.setUsername("alice");
+		return user;
+	}
+	
+	private static void setField(Class<?> clazz, Object target, String name, Object value) throws Exception {
+		Field field = clazz.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+	
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(ExecutionSchedulerTests.class.getClassLoader(), 
+				new Class<?>[] { type }, handler));
+	}
+}
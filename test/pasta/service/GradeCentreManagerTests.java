@@ -0,0 +1,237 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package pasta.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import pasta.domain.BaseEntity;
+import pasta.domain.result.AssessmentResult;
+import pasta.domain.result.AssessmentResultSummary;
+import pasta.domain.template.Assessment;
+import pasta.domain.user.PASTAUser;
+import pasta.repository.ResultDAO;
+import pasta.service.reporting.SubmissionStatsManager;
+import pasta.service.reporting.TestCaseStatsManager;
+
+public class GradeCentreManagerTests {
+	
+	/*
+	 * Holds summaries and results in memory in place of the database.
+	 */
+	private static class StubResultDAO extends ResultDAO {
+		final Map<List<Long>, Double> summaries = new LinkedHashMap<>();
+		final List<AssessmentResult> results = new ArrayList<>();
+		int loads = 0;
+		
+		@Override
+		public List<Object[]> getAllResultSummaryCells() {
+			loads++;
+			List<Object[]> cells = new ArrayList<>();
+			for(Map.Entry<List<Long>, Double> summary : summaries.entrySet()) {
+				cells.add(new Object[] {summary.getKey().get(0), summary.getKey().get(1), summary.getValue()});
+			}
+			return cells;
+		}
+		
+		@Override
+		public Double getResultSummaryPercentage(long userId, long assessmentId) {
+			return summaries.get(Arrays.asList(userId, assessmentId));
+		}
+		
+		@Override
+		public List<AssessmentResult> getAllResults(PASTAUser user, long assessmentId, boolean latestFirst, boolean includeGroup) {
+			List<AssessmentResult> matching = new ArrayList<>();
+			for(AssessmentResult result : results) {
+				if(result.getAssessment().getId() == assessmentId) {
+					matching.add(result);
+				}
+			}
+			return matching;
+		}
+		
+		@Override
+		public void delete(BaseEntity entity) {
+			results.remove(entity);
+		}
+		
+		@Override
+		public List<AssessmentResultSummary> getAllResultSummariesForAssessment(Assessment assessment) {
+			List<AssessmentResultSummary> matching = new ArrayList<>();
+			for(Map.Entry<List<Long>, Double> summary : summaries.entrySet()) {
+				if(summary.getKey().get(1).equals(assessment.getId())) {
+					matching.add(new AssessmentResultSummary(user(summary.getKey().get(0)), assessment, summary.getValue()));
+				}
+			}
+			return matching;
+		}
+		
+		@Override
+		public void delete(AssessmentResultSummary summary) {
+			summaries.remove(Arrays.asList(summary.getUser().getId(), summary.getAssessment().getId()));
+		}
+	}
+	
+	private StubResultDAO resultDAO;
+	private GradeCentreManager gradeCentreManager;
+	private ResultManager resultManager;
+	private final PASTAUser alice = user(1);
+	private final PASTAUser bob = user(2);
+	private final Assessment assessment = assessment(10);
+	
+	@Before
+	public void setUp() throws Exception {
+		Constructor<PASTAOptions> optionsConstructor = PASTAOptions.class.getDeclaredConstructor();
+		optionsConstructor.setAccessible(true);
+		setField(PASTAOptions.class, optionsConstructor.newInstance(), "properties", new Properties());
+		
+		resultDAO = new StubResultDAO();
+		resultDAO.summaries.put(Arrays.asList(1L, 10L), 0.5);
+		resultDAO.summaries.put(Arrays.asList(2L, 10L), 0.75);
+		
+		gradeCentreManager = new GradeCentreManager();
+		setField(GradeCentreManager.class, gradeCentreManager, "resultDAO", resultDAO);
+		
+		resultManager = new ResultManager();
+		setField(ResultManager.class, resultManager, "resultDAO", resultDAO);
+		setField(ResultManager.class, resultManager, "gradeCentreManager", gradeCentreManager);
+		setField(ResultManager.class, resultManager, "testCaseStatsManager", new TestCaseStatsManager());
+		setField(ResultManager.class, resultManager, "submissionStatsManager", new SubmissionStatsManager());
+	}
+	
+	@After
+	public void tearDown() {
+		if(TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+	
+	private static void setField(Class<?> clazz, Object target, String name, Object value) throws Exception {
+		Field field = clazz.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+	
+	private static PASTAUser user(long id) {
+		PASTAUser user = new PASTAUser();
+		user.setId(id);
+		user.setUsername("user" + id);
+		return user;
+	}
+	
+	private static Assessment assessment(long id) {
+		Assessment assessment = new Assessment();
+		assessment.setId(id);
+		return assessment;
+	}
+	
+	private GradeCentreManager.Slice slice() {
+		return gradeCentreManager.getSlice(Arrays.asList(alice, bob), Arrays.asList(assessment));
+	}
+	
+	private static void commit() {
+		for(TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			synchronization.afterCommit();
+		}
+		TransactionSynchronizationManager.clearSynchronization();
+	}
+	
+	@Test
+	public void testDeletedSummaryDisappearsFromSlice() {
+		GradeCentreManager.Slice before = slice();
+		assertEquals(0.5, before.getPercentage(0, 0), 0);
+		
+		resultManager.delete(new AssessmentResultSummary(alice, assessment, 0.5));
+		
+		GradeCentreManager.Slice after = slice();
+		assertFalse(after.hasResult(0, 0));
+		assertEquals(0.75, after.getPercentage(1, 0), 0);
+		assertNotEquals(before.getETag(), after.getETag());
+		// Only the one cell was re-read
+		assertEquals(1, resultDAO.loads);
+	}
+	
+	@Test
+	public void testDeletedSummaryStaysUntilCommit() {
+		slice();
+		TransactionSynchronizationManager.initSynchronization();
+		resultManager.delete(new AssessmentResultSummary(alice, assessment, 0.5));
+		
+		// Another request reading before the commit still sees the old value
+		assertTrue(slice().hasResult(0, 0));
+		
+		commit();
+		assertFalse(slice().hasResult(0, 0));
+	}
+	
+	@Test
+	public void testDeletedResultsDisappearFromSlice() {
+		for(PASTAUser user : Arrays.asList(alice, bob)) {
+			AssessmentResult result = new AssessmentResult();
+			result.setUser(user);
+			result.setAssessment(assessment);
+			resultDAO.results.add(result);
+		}
+		GradeCentreManager.Slice before = slice();
+		assertTrue(before.hasResult(0, 0));
+		assertTrue(before.hasResult(1, 0));
+		
+		TransactionSynchronizationManager.initSynchronization();
+		resultManager.deleteAllResultsForAssessment(assessment.getId());
+		commit();
+		
+		GradeCentreManager.Slice after = slice();
+		assertTrue(resultDAO.results.isEmpty());
+		assertFalse(after.hasResult(0, 0));
+		assertFalse(after.hasResult(1, 0));
+		assertNotEquals(before.getETag(), after.getETag());
+		assertEquals(2, resultDAO.loads);
+	}
+	
+	@Test
+	public void testInvalidateReloadsMatrix() {
+		slice();
+		resultDAO.summaries.put(Arrays.asList(1L, 10L), 0.25);
+		gradeCentreManager.invalidate();
+		assertEquals(0.25, slice().getPercentage(0, 0), 0);
+		assertEquals(2, resultDAO.loads);
+	}
+}
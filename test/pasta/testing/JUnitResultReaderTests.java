@@ -0,0 +1,261 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package pasta.testing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import pasta.domain.result.UnitTestCaseResult;
+import pasta.service.PASTAOptions;
+import pasta.util.ProjectProperties;
+
+/**
+ * Checks that {@link JUnitResultReader} reads reports the same way as the 
+ * DOM parser it replaced (kept below as {@link #readWithDom}).
+ */
+public class JUnitResultReaderTests {
+	
+	private static final String REPORT = 
+			"<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n" + 
+			"<testsuite errors=\"3\" failures=\"1\" name=\"MainTest\" tests=\"6\" time=\"0.31\">\n" + 
+			"  <properties>\n" + 
+			"    <property name=\"java.version\" value=\"1.8.0_151\" />\n" + 
+			"  </properties>\n" + 
+			"  <testcase classname=\"MainTest\" name=\"testPass\" time=\"0.002\" />\n" + 
+			"  <testcase classname=\"MainTest\" name=\"testFailure\" time=\"0.011\">\n" + 
+			"    <failure message=\"expected:&lt;3&gt; but was:&lt;4&gt;\" type=\"junit.framework.AssertionFailedError\">junit.framework.AssertionFailedError: expected:&lt;3&gt; but was:&lt;4&gt;\n" + 
+			"\tat MainTest.testFailure(MainTest.java:21)\n" + 
+			"</failure>\n" + 
+			"  </testcase>\n" + 
+			"  <testcase classname=\"MainTest\" name=\"testError\" time=\"0.004\">\n" + 
+			"    <error type=\"java.lang.NullPointerException\">java.lang.NullPointerException\n" + 
+			"\tat java.util.ArrayList.get(ArrayList.java:429)\n" + 
+			"\tat Helper.lookup(Helper.java:8)\n" + 
+			"\tat Main.run(Main.java:12)\n" + 
+			"\tat MainTest.testError(MainTest.java:30)\n" + 
+			"</error>\n" + 
+			"  </testcase>\n" + 
+			"  <testcase classname=\"MainTest\" name=\"testNestedError\" time=\"0.021\">\n" + 
+			"    <error message=\"Index: 5, Size: 2\" type=\"java.lang.IndexOutOfBoundsException\">java.lang.IndexOutOfBoundsException: Index: 5, Size: 2\n" + 
+			"\tat pkg.Main$Inner.get(Main.java:40)\n" + 
+			"\tat MainTest.testNestedError(MainTest.java:35)\n" + 
+			"</error>\n" + 
+			"  </testcase>\n" + 
+			"  <testcase classname=\"MainTest\" name=\"testTimeout\" time=\"1.5\">\n" + 
+			"    <error message=\"test timed out after 1000 milliseconds\" type=\"java.lang.Exception\">java.lang.Exception: test timed out after 1000 milliseconds\n" + 
+			"\tat Solver.solve(Solver.java:99)\n" + 
+			"</error>\n" + 
+			"  </testcase>\n" + 
+			"  <testcase classname=\"MainTest\" name=\"testSkipped\" time=\"0.0\">\n" + 
+			"    <skipped />\n" + 
+			"  </testcase>\n" + 
+			"  <system-out><![CDATA[]]></system-out>\n" + 
+			"  <system-err><![CDATA[]]></system-err>\n" + 
+			"</testsuite>\n";
+	
+	@BeforeClass
+	public static void disableBlobStore() throws Exception {
+		// Result setters consult the blob store, which needs the options and 
+		// project settings normally set up by Spring
+		Constructor<PASTAOptions> optionsConstructor = PASTAOptions.class.getDeclaredConstructor();
+		optionsConstructor.setAccessible(true);
+		PASTAOptions options = optionsConstructor.newInstance();
+		Properties properties = new Properties();
+		properties.setProperty("results.blobstore.enabled", "false");
+		setField(PASTAOptions.class, options, "properties", properties);
+		
+		Constructor<ProjectProperties> projectConstructor = ProjectProperties.class.getDeclaredConstructor();
+		projectConstructor.setAccessible(true);
+		setField(ProjectProperties.class, null, "properties", projectConstructor.newInstance());
+	}
+	
+	private static void setField(Class<?> clazz, Object target, String name, Object value) throws Exception {
+		Field field = clazz.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+	
+	@Test
+	public void testNoContext() throws Exception {
+		assertSameResults(null, null);
+	}
+	
+	@Test
+	public void testDescriptions() throws Exception {
+		Map<String, String> descriptions = new HashMap<>();
+		descriptions.put("testPass", "Passes");
+		descriptions.put("testError", "Throws");
+		assertSameResults(null, descriptions);
+	}
+	
+	@Test
+	public void testJavaFileContext() throws Exception {
+		List<UnitTestCaseResult> results = assertSameResults(Arrays.asList("Main.java", "Helper.java"), null);
+		assertEquals("java.lang.NullPointerException at (Helper.java:8)", results.get(2).getType());
+		assertEquals("java.lang.IndexOutOfBoundsException at (Main.java:40)", results.get(3).getType());
+		assertEquals("java.lang.Exception", results.get(4).getType());
+	}
+	
+	@Test
+	public void testPartialContext() throws Exception {
+		// Context entries match anywhere in the frame, not just whole file names
+		List<UnitTestCaseResult> results = assertSameResults(Arrays.asList("Main"), null);
+		assertEquals("java.lang.NullPointerException at (Main.java:12)", results.get(2).getType());
+		results = assertSameResults(Arrays.asList("Solver"), null);
+		assertEquals("java.lang.Exception at (Solver.java:99)", results.get(4).getType());
+		results = assertSameResults(Arrays.asList("List"), null);
+		assertEquals("java.lang.NullPointerException at (ArrayList.java:429)", results.get(2).getType());
+	}
+	
+	@Test
+	public void testNonJavaContext() throws Exception {
+		List<UnitTestCaseResult> results = assertSameResults(Arrays.asList("main.py", "Main.class"), null);
+		assertEquals("java.lang.NullPointerException", results.get(2).getType());
+	}
+	
+	@Test
+	public void testEmptyReport() throws Exception {
+		String report = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<testsuite name=\"Empty\" tests=\"0\" />\n";
+		assertEquals(0, assertSameResults(report, Collections.singletonList("Main.java"), null).size());
+	}
+	
+	private List<UnitTestCaseResult> assertSameResults(Collection<String> errorContext, Map<String, String> testDescriptions) throws Exception {
+		return assertSameResults(REPORT, errorContext, testDescriptions);
+	}
+	
+	private List<UnitTestCaseResult> assertSameResults(String report, Collection<String> errorContext, Map<String, String> testDescriptions) throws Exception {
+		byte[] bytes = report.getBytes(StandardCharsets.UTF_8);
+		List<UnitTestCaseResult> expected = readWithDom(bytes, errorContext, testDescriptions);
+		List<UnitTestCaseResult> actual = new JUnitResultReader(errorContext, testDescriptions).read(new ByteArrayInputStream(bytes));
+		assertEquals(expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++) {
+			UnitTestCaseResult e = expected.get(i);
+			UnitTestCaseResult a = actual.get(i);
+			String name = e.getTestName();
+			assertEquals(name, e.getTestName(), a.getTestName());
+			assertEquals(name, e.getTestResult(), a.getTestResult());
+			assertEquals(name, e.getTestMessage(), a.getTestMessage());
+			assertEquals(name, e.getType(), a.getType());
+			assertEquals(name, e.getExtendedMessage(), a.getExtendedMessage());
+			assertEquals(name, e.getTestDescription(), a.getTestDescription());
+			assertEquals(name, e.getTime(), a.getTime(), 0);
+		}
+		return actual;
+	}
+	
+	/*
+	 * The DOM parser previously used by ResultDAO.getUnitTestResultFromDisk
+	 */
+	private static List<UnitTestCaseResult> readWithDom(byte[] report, Collection<String> errorContext, Map<String, String> testDescriptions) throws Exception {
+		DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		Document doc = dBuilder.parse(new ByteArrayInputStream(report));
+		doc.getDocumentElement().normalize();
+		
+		List<UnitTestCaseResult> testCases = new ArrayList<UnitTestCaseResult>();
+		NodeList unitTestList = doc.getElementsByTagName("testcase");
+		for (int i = 0; i < unitTestList.getLength(); i++) {
+			Node unitTestNode = unitTestList.item(i);
+			if (unitTestNode.getNodeType() != Node.ELEMENT_NODE) {
+				continue;
+			}
+			UnitTestCaseResult caseResult = new UnitTestCaseResult();
+			Element unitTestElement = (Element) unitTestNode;
+			caseResult.setTestName(unitTestElement.getAttribute("name"));
+			caseResult.setTime(Double.parseDouble(unitTestElement.getAttribute("time")));
+			caseResult.setTestResult(UnitTestCaseResult.PASS);
+			if(testDescriptions != null) {
+				caseResult.setTestDescription(testDescriptions.get(caseResult.getTestName()));
+			}
+			if(unitTestElement.hasChildNodes()){
+				Element failedUnitTestElement = (Element) unitTestNode.getChildNodes().item(1);
+				caseResult.setTestResult(failedUnitTestElement.getNodeName());
+				if(failedUnitTestElement.hasAttribute("message")){
+					caseResult.setTestMessage(failedUnitTestElement.getAttribute("message"));
+				}
+				if(failedUnitTestElement.hasAttribute("type")){
+					caseResult.setType((failedUnitTestElement.getAttribute("type")));
+				}
+				if(getText(failedUnitTestElement) != null){
+					String message = getText(failedUnitTestElement);
+					caseResult.setExtendedMessage(message);
+					if(errorContext != null && caseResult.getType() != null && caseResult.isError()) {
+						Matcher m = Pattern.compile("(\\(.+?\\.java:[0-9]+\\))").matcher(message);
+						boolean found = false;
+						while(m.find() && !found) {
+							String line = m.group();
+							for(String file : errorContext) {
+								if(line.contains(file)) {
+									caseResult.setType(caseResult.getType() + " at " + line);
+									found = true;
+									break;
+								}
+							}
+						}
+					}
+				}
+			}
+			testCases.add(caseResult);
+		}
+		return testCases;
+	}
+	
+	private static String getText(Element element) {
+		StringBuffer stringBuffer = new StringBuffer();
+		NodeList elementChildren = element.getChildNodes();
+		boolean found = false;
+		for (int i = 0; i < elementChildren.getLength(); i++) {
+			Node node = elementChildren.item(i);
+			if (node.getNodeType() == Node.TEXT_NODE) {
+				stringBuffer.append(node.getNodeValue());
+				found = true;
+			}
+		}
+		return found ? stringBuffer.toString() : null;
+	}
+}
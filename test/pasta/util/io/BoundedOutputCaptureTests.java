@@ -0,0 +1,148 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package pasta.util.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BoundedOutputCaptureTests {
+	
+	private static final String SEP = System.lineSeparator();
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private static byte[] bytes(int count) {
+		byte[] bytes = new byte[count];
+		for(int i = 0; i < count; i++) {
+			bytes[i] = (byte) ('a' + i % 26);
+		}
+		return bytes;
+	}
+	
+	private static byte[] utf8(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	private static String omitted(long count) {
+		return SEP + "[... " + count + " bytes omitted ...]" + SEP;
+	}
+	
+	@Test
+	public void testSingleWritePastMemoryAndMaxSpillsEachByteOnce() throws IOException {
+		File dir = folder.getRoot();
+		AtomicInteger overflows = new AtomicInteger();
+		byte[] written = bytes(30);
+		try(BoundedOutputCapture capture = new BoundedOutputCapture(10, 20, dir, "run")) {
+			capture.setOverflowHandler(overflows::incrementAndGet);
+			capture.getOutputStream().write(written, 0, written.length);
+		}
+		byte[] spilled = Files.readAllBytes(new File(dir, "run.out.log").toPath());
+		assertArrayEquals(Arrays.copyOf(written, 20), spilled);
+		assertEquals(1, overflows.get());
+	}
+	
+	@Test
+	public void testSpillFromOffsetPastMemoryAndMax() throws IOException {
+		File dir = folder.getRoot();
+		byte[] written = bytes(40);
+		try(BoundedOutputCapture capture = new BoundedOutputCapture(10, 20, dir, "run")) {
+			OutputStream out = capture.getOutputStream();
+			out.write(written, 0, 5);
+			out.write(written, 5, 30);
+			out.write(written, 35, 5);
+		}
+		byte[] spilled = Files.readAllBytes(new File(dir, "run.out.log").toPath());
+		assertArrayEquals(Arrays.copyOf(written, 20), spilled);
+	}
+	
+	@Test
+	public void testSpillAcrossSeveralWrites() throws IOException {
+		File dir = folder.getRoot();
+		byte[] written = bytes(25);
+		try(BoundedOutputCapture capture = new BoundedOutputCapture(10, 100, dir, "run")) {
+			OutputStream err = capture.getErrorStream();
+			for(int off = 0; off < written.length; off += 7) {
+				err.write(written, off, Math.min(7, written.length - off));
+			}
+		}
+		byte[] spilled = Files.readAllBytes(new File(dir, "run.err.log").toPath());
+		assertArrayEquals(written, spilled);
+	}
+	
+	@Test
+	public void testGapTrimsSplitCharacters() throws IOException {
+		// Head is "abc" plus the first byte of the first euro sign; the tail 
+		// is the last two bytes of the second euro sign plus "yz"
+		byte[] written = utf8("abc€0123456789€yz");
+		BoundedOutputCapture capture = new BoundedOutputCapture(4, 100, null, null);
+		capture.getOutputStream().write(written);
+		assertEquals("abc" + omitted(written.length - 5) + "yz", capture.getOutput());
+	}
+	
+	@Test
+	public void testCharacterSplitBetweenHeadAndTailIsKeptWithoutGap() throws IOException {
+		BoundedOutputCapture capture = new BoundedOutputCapture(4, 100, null, null);
+		capture.getOutputStream().write(utf8("ab€"));
+		assertEquals("ab€", capture.getOutput());
+	}
+	
+	@Test
+	public void testTailWrapsAround() throws IOException {
+		// The tail keeps as many bytes as the memory limit
+		BoundedOutputCapture capture = new BoundedOutputCapture(4, 100, null, null);
+		OutputStream out = capture.getOutputStream();
+		out.write(utf8("01234"));
+		out.write(utf8("567"));
+		out.write('8');
+		out.write(utf8("9"));
+		assertEquals("0123" + omitted(2) + "6789", capture.getOutput());
+		
+		out.write(utf8("abcdefgh"));
+		assertEquals("0123" + omitted(10) + "efgh", capture.getOutput());
+	}
+	
+	@Test
+	public void testCombinedStreamInterleaves() throws IOException {
+		BoundedOutputCapture capture = new BoundedOutputCapture(100, 100, null, null);
+		capture.getOutputStream().write(utf8("out "));
+		capture.getErrorStream().write(utf8("err"));
+		assertEquals("out err", capture.getCombined());
+		assertEquals(7, capture.getTotalBytes());
+		assertTrue(!capture.isOverflowed());
+	}
+}
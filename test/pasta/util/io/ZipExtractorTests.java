@@ -0,0 +1,260 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package pasta.util.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import pasta.util.io.ZipExtractor.ZipLimitException;
+
+public class ZipExtractorTests {
+	
+	private static final int MB = 1024 * 1024;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private static ZipExtractor extractor() {
+		return new ZipExtractor(100, 10 * MB, 100, 1);
+	}
+	
+	private static byte[] utf8(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Write a zip of the given entry names and contents. Names are written
+	 * as given, so they may be unsafe.
+	 */
+	private static void zip(File file, Object... namesAndContents) throws IOException {
+		try(OutputStream out = new FileOutputStream(file)) {
+			out.write(zip(namesAndContents));
+		}
+	}
+	
+	private static byte[] zip(Object... namesAndContents) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ZipOutputStream zip = new ZipOutputStream(bytes)) {
+			for(int i = 0; i < namesAndContents.length; i += 2) {
+				zip.putNextEntry(new ZipEntry((String) namesAndContents[i]));
+				zip.write((byte[]) namesAndContents[i + 1]);
+				zip.closeEntry();
+			}
+		}
+		return bytes.toByteArray();
+	}
+	
+	private void assertRejected(ZipExtractor extractor, File zipFile) throws IOException {
+		try {
+			extractor.extract(zipFile);
+			fail("Expected the zip to be rejected");
+		} catch(ZipLimitException e) {
+		}
+	}
+	
+	/**
+	 * @return the names of the files left in the directory, other than the zip
+	 */
+	private static String[] remaining(File dir, File zipFile) {
+		return dir.list((parent, name) -> !name.equals(zipFile.getName()));
+	}
+	
+	@Test
+	public void testExtractsIntoContainingDirectory() throws IOException {
+		File dir = folder.newFolder("submission");
+		File zipFile = new File(dir, "submission.zip");
+		zip(zipFile, "Main.java", utf8("class Main {}"), "pkg/", new byte[0], "pkg/Util.java", utf8("class Util {}"));
+		
+		ZipExtractor.Result result = extractor().extract(zipFile);
+		assertEquals(3, result.getEntries());
+		assertEquals(26, result.getBytes());
+		assertArrayEquals(utf8("class Main {}"), Files.readAllBytes(new File(dir, "Main.java").toPath()));
+		assertArrayEquals(utf8("class Util {}"), Files.readAllBytes(new File(dir, "pkg/Util.java").toPath()));
+	}
+	
+	@Test
+	public void testExtractsNestedZips() throws IOException {
+		File dir = folder.newFolder("submission");
+		File zipFile = new File(dir, "outer.zip");
+		zip(zipFile, "inner/inner.zip", zip("Main.java", utf8("class Main {}")));
+		
+		extractor().extract(zipFile);
+		assertTrue(new File(dir, "inner/Main.java").isFile());
+	}
+	
+	@Test
+	public void testRejectsParentDirectoryEntries() throws IOException {
+		File parent = folder.newFolder("parent");
+		File dir = new File(parent, "submission");
+		dir.mkdir();
+		File zipFile = new File(dir, "submission.zip");
+		zip(zipFile, "Main.java", utf8("ok"), "../escaped.txt", utf8("bad"));
+		
+		assertRejected(extractor(), zipFile);
+		assertFalse(new File(parent, "escaped.txt").exists());
+		assertEquals(0, remaining(dir, zipFile).length);
+	}
+	
+	@Test
+	public void testRejectsParentDirectoryInsideEntryName() throws IOException {
+		File parent = folder.newFolder("parent");
+		File dir = new File(parent, "submission");
+		dir.mkdir();
+		File zipFile = new File(dir, "submission.zip");
+		zip(zipFile, "src/../../escaped.txt", utf8("bad"));
+		
+		assertRejected(extractor(), zipFile);
+		assertFalse(new File(parent, "escaped.txt").exists());
+	}
+	
+	@Test
+	public void testRejectsSiblingWithSamePrefix() throws IOException {
+		File parent = folder.newFolder("parent");
+		File dir = new File(parent, "submission");
+		dir.mkdir();
+		File zipFile = new File(dir, "submission.zip");
+		zip(zipFile, "../submission-other/escaped.txt", utf8("bad"));
+		
+		assertRejected(extractor(), zipFile);
+		assertFalse(new File(parent, "submission-other/escaped.txt").exists());
+	}
+	
+	@Test
+	public void testKeepsAbsoluteEntriesInsideTarget() throws IOException {
+		File dir = folder.newFolder("submission");
+		File zipFile = new File(dir, "submission.zip");
+		File outside = new File(folder.getRoot(), "absolute.txt");
+		zip(zipFile, outside.getAbsolutePath(), utf8("abs"));
+		
+		extractor().extract(zipFile);
+		assertFalse(outside.exists());
+		assertTrue(new File(dir, outside.getAbsolutePath()).isFile());
+	}
+	
+	@Test
+	public void testRejectsNestedZipWithUnsafeEntries() throws IOException {
+		File parent = folder.newFolder("parent");
+		File dir = new File(parent, "submission");
+		dir.mkdir();
+		File zipFile = new File(dir, "outer.zip");
+		zip(zipFile, "inner.zip", zip("../../escaped.txt", utf8("bad")));
+		
+		assertRejected(extractor(), zipFile);
+		assertFalse(new File(parent, "escaped.txt").exists());
+		assertFalse(new File(dir, "inner.zip").exists());
+	}
+	
+	@Test
+	public void testRejectsHighlyCompressedEntry() throws IOException {
+		File dir = folder.newFolder("submission");
+		File zipFile = new File(dir, "bomb.zip");
+		zip(zipFile, "zeros.bin", new byte[5 * MB]);
+		assertTrue(zipFile.length() < 5 * MB / 100);
+		
+		assertRejected(extractor(), zipFile);
+		assertEquals(0, remaining(dir, zipFile).length);
+	}
+	
+	@Test
+	public void testAllowsSmallRepetitiveEntry() throws IOException {
+		File dir = folder.newFolder("submission");
+		File zipFile = new File(dir, "blank.zip");
+		zip(zipFile, "blank.txt", new byte[512 * 1024]);
+		
+		extractor().extract(zipFile);
+		assertEquals(512 * 1024, new File(dir, "blank.txt").length());
+	}
+	
+	@Test
+	public void testRejectsTooManyBytes() throws IOException {
+		File dir = folder.newFolder("submission");
+		File zipFile = new File(dir, "large.zip");
+		zip(zipFile, "a.bin", new byte[600 * 1024], "b.bin", new byte[600 * 1024]);
+		
+		assertRejected(new ZipExtractor(100, MB, 1000, 1), zipFile);
+		assertEquals(0, remaining(dir, zipFile).length);
+	}
+	
+	@Test
+	public void testRejectsTooManyEntries() throws IOException {
+		File dir = folder.newFolder("submission");
+		File zipFile = new File(dir, "many.zip");
+		zip(zipFile, "a", utf8("a"), "b", utf8("b"), "c", utf8("c"));
+		
+		assertRejected(new ZipExtractor(2, MB, 100, 1), zipFile);
+		assertEquals(0, remaining(dir, zipFile).length);
+	}
+	
+	@Test
+	public void testNestedZipsCountTowardsLimits() throws IOException {
+		File dir = folder.newFolder("submission");
+		File zipFile = new File(dir, "outer.zip");
+		zip(zipFile, "inner.zip", zip("a", utf8("a"), "b", utf8("b")));
+		
+		// One entry in the outer zip and two in the inner one
+		assertRejected(new ZipExtractor(2, MB, 100, 1), zipFile);
+		assertFalse(new File(dir, "a").exists());
+	}
+	
+	@Test
+	public void testRejectsDeeplyNestedZips() throws IOException {
+		File dir = folder.newFolder("submission");
+		File zipFile = new File(dir, "outer.zip");
+		byte[] nested = zip("Main.java", utf8("class Main {}"));
+		for(int i = 0; i < 6; i++) {
+			nested = zip("level" + i + ".zip", nested);
+		}
+		zip(zipFile, "level.zip", nested);
+		
+		assertRejected(extractor(), zipFile);
+		assertFalse(new File(dir, "Main.java").exists());
+	}
+	
+	@Test
+	public void testRejectsBombOnSeveralThreads() throws IOException {
+		File dir = folder.newFolder("submission");
+		File zipFile = new File(dir, "bomb.zip");
+		zip(zipFile, "a.txt", utf8("a"), "zeros1.bin", new byte[5 * MB], "zeros2.bin", new byte[5 * MB], "b.txt", utf8("b"));
+		
+		assertRejected(new ZipExtractor(100, 100 * MB, 100, 4), zipFile);
+		assertEquals(0, remaining(dir, zipFile).length);
+	}
+}
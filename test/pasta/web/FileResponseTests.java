@@ -0,0 +1,204 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package pasta.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class FileResponseTests {
+	
+	private static final String CONTENT = "abcdefghijklmnopqrstuvwxyz";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File file;
+	
+	@Before
+	public void setUp() throws IOException {
+		file = folder.newFile("file.txt");
+		Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	private MockHttpServletResponse send(String range) throws IOException {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file.txt");
+		if(range != null) {
+			request.addHeader("Range", range);
+		}
+		return send(request);
+	}
+	
+	private MockHttpServletResponse send(MockHttpServletRequest request) throws IOException {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		FileResponse.send(request, response, file, "text/plain", null);
+		return response;
+	}
+	
+	private static void assertWhole(MockHttpServletResponse response) throws IOException {
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertNull(response.getHeader("Content-Range"));
+		assertEquals(CONTENT, response.getContentAsString());
+		assertEquals(Integer.toString(CONTENT.length()), response.getHeader("Content-Length"));
+	}
+	
+	private static void assertPartial(MockHttpServletResponse response, int start, int end) throws IOException {
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes " + start + "-" + end + "/" + CONTENT.length(), response.getHeader("Content-Range"));
+		assertEquals(CONTENT.substring(start, end + 1), response.getContentAsString());
+		assertEquals(Integer.toString(end - start + 1), response.getHeader("Content-Length"));
+	}
+	
+	private static void assertUnsatisfiable(MockHttpServletResponse response, int length) {
+		assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+		assertEquals("bytes */" + length, response.getHeader("Content-Range"));
+	}
+	
+	@Test
+	public void testNoRange() throws IOException {
+		MockHttpServletResponse response = send((String) null);
+		assertWhole(response);
+		assertEquals("bytes", response.getHeader("Accept-Ranges"));
+	}
+	
+	@Test
+	public void testSingleRange() throws IOException {
+		assertPartial(send("bytes=2-5"), 2, 5);
+		assertPartial(send("bytes=0-0"), 0, 0);
+		assertPartial(send(" bytes=3 - 4 "), 3, 4);
+	}
+	
+	@Test
+	public void testOpenEndedRange() throws IOException {
+		assertPartial(send("bytes=20-"), 20, 25);
+	}
+	
+	@Test
+	public void testRangePastEndIsClipped() throws IOException {
+		assertPartial(send("bytes=20-100"), 20, 25);
+	}
+	
+	@Test
+	public void testSuffixRange() throws IOException {
+		assertPartial(send("bytes=-4"), 22, 25);
+		assertPartial(send("bytes=-26"), 0, 25);
+	}
+	
+	@Test
+	public void testSuffixLongerThanFileSendsWholeFileAsPartial() throws IOException {
+		assertPartial(send("bytes=-100"), 0, 25);
+	}
+	
+	@Test
+	public void testUnsatisfiableRanges() throws IOException {
+		assertUnsatisfiable(send("bytes=26-"), CONTENT.length());
+		assertUnsatisfiable(send("bytes=100-200"), CONTENT.length());
+		assertUnsatisfiable(send("bytes=-0"), CONTENT.length());
+	}
+	
+	@Test
+	public void testEmptyFileRangeIsUnsatisfiable() throws IOException {
+		Files.write(file.toPath(), new byte[0]);
+		assertUnsatisfiable(send("bytes=0-"), 0);
+		assertUnsatisfiable(send("bytes=-5"), 0);
+	}
+	
+	@Test
+	public void testMultipleRangesSendWholeFile() throws IOException {
+		assertWhole(send("bytes=0-1,4-5"));
+		assertWhole(send("bytes=0-1, -3"));
+	}
+	
+	@Test
+	public void testMalformedRangesSendWholeFile() throws IOException {
+		assertWhole(send("bytes=abc"));
+		assertWhole(send("bytes=a-b"));
+		assertWhole(send("bytes=5"));
+		assertWhole(send("bytes=5-2"));
+		assertWhole(send("bytes=--3"));
+		assertWhole(send("bytes=-"));
+		assertWhole(send("bytes="));
+		assertWhole(send("items=0-5"));
+		assertWhole(send("bytes=99999999999999999999-"));
+	}
+	
+	@Test
+	public void testIfRange() throws IOException {
+		String eTag = send((String) null).getHeader("ETag");
+		
+		MockHttpServletRequest matching = new MockHttpServletRequest("GET", "/file.txt");
+		matching.addHeader("Range", "bytes=2-5");
+		matching.addHeader("If-Range", eTag);
+		assertPartial(send(matching), 2, 5);
+		
+		MockHttpServletRequest stale = new MockHttpServletRequest("GET", "/file.txt");
+		stale.addHeader("Range", "bytes=2-5");
+		stale.addHeader("If-Range", "\"0-0\"");
+		assertWhole(send(stale));
+		
+		MockHttpServletRequest weak = new MockHttpServletRequest("GET", "/file.txt");
+		weak.addHeader("Range", "bytes=2-5");
+		weak.addHeader("If-Range", "W/" + eTag);
+		assertWhole(send(weak));
+	}
+	
+	@Test
+	public void testNotModified() throws IOException {
+		String eTag = send((String) null).getHeader("ETag");
+		
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file.txt");
+		request.addHeader("If-None-Match", eTag);
+		request.addHeader("Range", "bytes=2-5");
+		MockHttpServletResponse response = send(request);
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+	
+	@Test
+	public void testSendfileRange() throws IOException {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file.txt");
+		request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+		request.addHeader("Range", "bytes=-4");
+		MockHttpServletResponse response = send(request);
+		
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals(file.getCanonicalPath(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+		assertEquals(22L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+		assertEquals(26L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+}
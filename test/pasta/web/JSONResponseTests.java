@@ -0,0 +1,93 @@
+/*
+MIT License
+
+Copyright (c) 2012-2017 PASTA Contributors (see CONTRIBUTORS.txt)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package pasta.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class JSONResponseTests {
+	
+	private static final String TAG = "\"3-42-1f\"";
+	
+	private static MockHttpServletRequest request(String acceptEncoding, String ifNoneMatch) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/gradeCentre/DATA/");
+		if(acceptEncoding != null) {
+			request.addHeader("Accept-Encoding", acceptEncoding);
+		}
+		if(ifNoneMatch != null) {
+			request.addHeader("If-None-Match", ifNoneMatch);
+		}
+		return request;
+	}
+	
+	@Test
+	public void testIdentityKeepsTag() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		assertFalse(JSONResponse.checkNotModified(request(null, null), response, TAG));
+		assertEquals(TAG, response.getHeader("ETag"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+	}
+	
+	@Test
+	public void testGzipHasOwnTag() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		assertFalse(JSONResponse.checkNotModified(request("gzip, deflate", null), response, TAG));
+		assertEquals("\"3-42-1f-gzip\"", response.getHeader("ETag"));
+	}
+	
+	@Test
+	public void testGzipRefusedKeepsTag() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		JSONResponse.checkNotModified(request("gzip;q=0", null), response, TAG);
+		assertEquals(TAG, response.getHeader("ETag"));
+	}
+	
+	@Test
+	public void testMatchingTagIsNotModified() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		assertTrue(JSONResponse.checkNotModified(request("gzip", "\"3-42-1f-gzip\""), response, TAG));
+		assertEquals(304, response.getStatus());
+		
+		response = new MockHttpServletResponse();
+		assertTrue(JSONResponse.checkNotModified(request(null, TAG), response, TAG));
+		assertEquals(304, response.getStatus());
+	}
+	
+	@Test
+	public void testTagOfOtherEncodingIsModified() {
+		// A cached identity body must not be revalidated for a gzip request, or vice versa
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		assertFalse(JSONResponse.checkNotModified(request("gzip", TAG), response, TAG));
+		assertEquals(200, response.getStatus());
+		
+		response = new MockHttpServletResponse();
+		assertFalse(JSONResponse.checkNotModified(request(null, "\"3-42-1f-gzip\""), response, TAG));
+		assertEquals(200, response.getStatus());
+	}
+}
@@ -40,6 +40,23 @@ SOFTWARE.
 						<input class="maxRowCount" name="maxRowCount" type="number" min="0" value="0" />
 					</div>
 				</div>
+				<div class='pf-item'>
+					<div class='pf-label'>Assessment (optional):</div>
+					<div class='pf-input'>
+						<select name="assessmentId">
+							<option value="">All assessments</option>
+							<c:forEach var="assessment" items="${assessments}">
+								<option value="${assessment.id}"><c:out value="${assessment.name}" /></option>
+							</c:forEach>
+						</select>
+					</div>
+				</div>
+				<div class='pf-item'>
+					<div class='pf-label'>Submitted between (optional):</div>
+					<div class='pf-input'>
+						<input name="from" type="date" placeholder="yyyy-mm-dd" /> and <input name="to" type="date" placeholder="yyyy-mm-dd" />
+					</div>
+				</div>
 				<div class='pf-item'>
 					<p>Set max rows to:
 					<ul>
@@ -73,6 +90,23 @@ SOFTWARE.
 						<input class="maxRowCount" name="maxRowCount" type="number" min="0" value="0" />
 					</div>
 				</div>
+				<div class='pf-item'>
+					<div class='pf-label'>Assessment (optional):</div>
+					<div class='pf-input'>
+						<select name="assessmentId">
+							<option value="">All assessments</option>
+							<c:forEach var="assessment" items="${assessments}">
+								<option value="${assessment.id}"><c:out value="${assessment.name}" /></option>
+							</c:forEach>
+						</select>
+					</div>
+				</div>
+				<div class='pf-item'>
+					<div class='pf-label'>Submitted between (optional):</div>
+					<div class='pf-input'>
+						<input name="from" type="date" placeholder="yyyy-mm-dd" /> and <input name="to" type="date" placeholder="yyyy-mm-dd" />
+					</div>
+				</div>
 				<div class='pf-item'>
 					<p>Set max rows to:
 					<ul>
@@ -93,12 +127,24 @@ SOFTWARE.
 	<h2 class='section-title'>Database Download</h2>
 	<div class='part no-line'>
 		Download an SQL dump of the contents of the PASTA database for analysis.
+		Long test output held outside the database is included in the <code>blobs/</code> 
+		folder; to restore it, extract that folder into the PASTA project location.
 	</div>
-	<div class='button-panel'>
-		<form action="dbdump/" method="post">
-			<button type='submit'>Download</button>
-		</form>
-	</div>
+	<form action="dbdump/" method="post">
+		<div class='part'>
+			<div class='pasta-form'>
+				<div class='pf-item'>
+					<div class='pf-label'>Only these tables (optional):</div>
+					<div class='pf-input'>
+						<input name="tables" type="text" placeholder="e.g. assessment_results, unit_test_results" />
+					</div>
+				</div>
+				<div class='button-panel'>
+					<button type='submit'>Download</button>
+				</div>
+			</div>
+		</div>
+	</form>
 </div>
 
 <script>
@@ -391,11 +391,14 @@ SOFTWARE.
 				</c:choose>
 			</h2>
 			
-			<c:if test="${not empty latestResult.filesCompiled}">
+			<c:if test="${not empty latestResult.filesCompiledPreview}">
 				<div class='part no-line'>
 					<h3 class='part-title'>Files Compiled:</h3>
 					<div class="ui-state-highlight">
-						<pre>${latestResult.filesCompiled}</pre>
+						<pre data-output-part="${latestResult.filesCompiledTruncated ? 'filesCompiled' : ''}">${latestResult.filesCompiledPreview}</pre>
+						<c:if test="${latestResult.filesCompiledTruncated}">
+							<button class='flat showAllOutput'>Show all</button>
+						</c:if>
 					</div>
 				</div>
 			</c:if>
@@ -416,29 +419,38 @@ SOFTWARE.
 					</div>
 				</div>
 			</c:if>
-			<c:if test="${not empty latestResult.compileErrors}">
+			<c:if test="${not empty latestResult.compileErrorsPreview}">
 				<div class='part no-line'>
 					<h3 class='part-title'>Compile Errors:</h3>
 					<div class="ui-state-error">
-						<pre>${latestResult.compileErrors}</pre>
+						<pre data-output-part="${latestResult.compileErrorsTruncated ? 'compileErrors' : ''}">${latestResult.compileErrorsPreview}</pre>
+						<c:if test="${latestResult.compileErrorsTruncated}">
+							<button class='flat showAllOutput'>Show all</button>
+						</c:if>
 					</div>
 				</div>
 			</c:if>
-			<c:if test="${not empty latestResult.runtimeErrors}">
+			<c:if test="${not empty latestResult.runtimeErrorsPreview}">
 				<div class='part no-line'>
 					<h3 class='part-title'>Runtime Errors:</h3>
 					<div class="ui-state-error">
-						<pre>${latestResult.runtimeErrors}</pre>
+						<pre data-output-part="${latestResult.runtimeErrorsTruncated ? 'runtimeErrors' : ''}">${latestResult.runtimeErrorsPreview}</pre>
+						<c:if test="${latestResult.runtimeErrorsTruncated}">
+							<button class='flat showAllOutput'>Show all</button>
+						</c:if>
 					</div>
 				</div>
 			</c:if>
-			<c:if test='${not empty latestResult.fullOutput}'>
+			<c:if test='${not empty latestResult.fullOutputPreview}'>
 				<c:choose>
 					<c:when test="${latestResult.error}">
 						<div class='part no-line'>
 							<h3 class='part-title'>Full Output:</h3>
 							<div class="ui-state-error">
-								<pre>${latestResult.fullOutput}</pre>
+								<pre data-output-part="${latestResult.fullOutputTruncated ? 'fullOutput' : ''}">${latestResult.fullOutputPreview}</pre>
+								<c:if test="${latestResult.fullOutputTruncated}">
+									<button class='flat showAllOutput'>Show all</button>
+								</c:if>
 							</div>
 						</div>
 					</c:when>
@@ -449,7 +461,7 @@ SOFTWARE.
 						<div id='fullOutputPopup' class='popup'>
 							<h3 class='part-title'>Full Output:</h3>
 							<div class="ui-state-highlight largeOutputBox">
-								<pre>${latestResult.fullOutput}</pre>
+								<pre data-output-part="${latestResult.fullOutputTruncated ? 'fullOutput' : ''}">${latestResult.fullOutputPreview}</pre>
 							</div>
 						</div>
 					</c:otherwise>
@@ -540,9 +552,32 @@ SOFTWARE.
             	$('#testUnitTestDiv').bPopup();
        		</spring:hasBindErrors>
             
+            <%-- Long output is only sent in part; fetch the rest when asked for --%>
+            function loadAllOutput($pre, done) {
+            	var part = $pre.attr('data-output-part');
+            	if(!part) {
+            		done();
+            		return;
+            	}
+            	$.get('./output/' + part + '/', function(text) {
+            		$pre.text(text).attr('data-output-part', '');
+            		done();
+            	}, 'text');
+            }
+            
+            $('.showAllOutput').on('click', function(e) {
+                e.preventDefault();
+                var $button = $(this);
+                loadAllOutput($button.siblings('pre'), function() {
+                	$button.remove();
+                });
+            });
+            
             $('#showFullOutput').on('click', function(e) {
                 e.preventDefault();
-                $('#fullOutputPopup').bPopup();
+                loadAllOutput($('#fullOutputPopup pre'), function() {
+                	$('#fullOutputPopup').bPopup();
+                });
             });
             
             $('#acceptUnitTest').on('click', function(e) {